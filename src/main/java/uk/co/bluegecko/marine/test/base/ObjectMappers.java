@@ -0,0 +1,27 @@
+package uk.co.bluegecko.marine.test.base;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.experimental.UtilityClass;
+
+/**
+ * The {@link ObjectMapper} configuration shared by the tests and the fixture loaders.
+ */
+@UtilityClass
+public class ObjectMappers {
+
+	/**
+	 * Create a mapper with lenient dates, and {@code java.time} values written as ISO-8601 strings.
+	 *
+	 * @return a new mapper.
+	 */
+	public static ObjectMapper standard() {
+		return JsonMapper.builder()
+				.defaultLeniency(true)
+				.addModule(new JavaTimeModule())
+				.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+				.build();
+	}
+}
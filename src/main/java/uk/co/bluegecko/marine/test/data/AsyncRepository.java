@@ -0,0 +1,240 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Sort;
+
+/**
+ * A non-blocking view of an {@link InMemoryRepository}, sharing its storage, for testing code written against
+ * {@link CompletableFuture}-based or reactive repositories.
+ * <p>
+ * Every operation runs on an executor, after an optional simulated latency, chosen uniformly at random between a
+ * minimum and a maximum, so that pipelines can be load-tested at a realistic concurrency. The default executor starts a
+ * virtual thread per operation when the JVM supports them, so thousands of operations can wait out their latency at
+ * once; otherwise it falls back to a cached pool of daemon threads. Queries returning many entities are also available
+ * as cold {@link Flow.Publisher}s, which run the query once per subscriber and honour its demand.
+ * <pre>{@code
+ * AsyncRepository<Vessel, Long> async = new AsyncRepository<>(repository, Duration.ofMillis(2), Duration.ofMillis(20));
+ * async.findById(id).thenAccept(...);
+ * }</pre>
+ *
+ * @param <T>  the type of the entities.
+ * @param <ID> the type of the entity ids.
+ */
+public class AsyncRepository<T, ID> {
+
+	private static final Executor VIRTUAL_THREADS = virtualThreads();
+
+	private final InMemoryRepository<T, ID> repository;
+	private final Executor executor;
+	private final long minLatency;
+	private final long maxLatency;
+
+	/**
+	 * Create an async view with no simulated latency.
+	 *
+	 * @param repository the repository to share.
+	 */
+	public AsyncRepository(final InMemoryRepository<T, ID> repository) {
+		this(repository, Duration.ZERO, Duration.ZERO);
+	}
+
+	/**
+	 * Create an async view running on virtual threads where available.
+	 *
+	 * @param repository the repository to share.
+	 * @param minLatency the least latency to simulate for each operation.
+	 * @param maxLatency the greatest latency to simulate for each operation.
+	 */
+	public AsyncRepository(final InMemoryRepository<T, ID> repository, final Duration minLatency,
+			final Duration maxLatency) {
+		this(repository, VIRTUAL_THREADS, minLatency, maxLatency);
+	}
+
+	/**
+	 * Create an async view.
+	 *
+	 * @param repository the repository to share.
+	 * @param executor   the executor running the operations.
+	 * @param minLatency the least latency to simulate for each operation.
+	 * @param maxLatency the greatest latency to simulate for each operation.
+	 */
+	public AsyncRepository(final InMemoryRepository<T, ID> repository, final Executor executor,
+			final Duration minLatency, final Duration maxLatency) {
+		if (minLatency.isNegative() || maxLatency.compareTo(minLatency) < 0) {
+			throw new IllegalArgumentException(
+					String.format("Latency `%s` to `%s` is not a valid range", minLatency, maxLatency));
+		}
+		this.repository = repository;
+		this.executor = executor;
+		this.minLatency = minLatency.toNanos();
+		this.maxLatency = maxLatency.toNanos();
+	}
+
+	/**
+	 * Get the blocking repository this view shares.
+	 *
+	 * @return the repository.
+	 */
+	public InMemoryRepository<T, ID> blocking() {
+		return repository;
+	}
+
+	public <S extends T> CompletableFuture<S> save(final S entity) {
+		return supply(() -> repository.save(entity));
+	}
+
+	public <S extends T> CompletableFuture<List<S>> saveAll(final Iterable<S> entities) {
+		return supply(() -> repository.saveAll(entities));
+	}
+
+	public CompletableFuture<Optional<T>> findById(final ID id) {
+		return supply(() -> repository.findById(id));
+	}
+
+	public CompletableFuture<Boolean> existsById(final ID id) {
+		return supply(() -> repository.existsById(id));
+	}
+
+	public CompletableFuture<List<T>> findAll() {
+		return supply(repository::findAll);
+	}
+
+	public CompletableFuture<List<T>> findAll(final Sort sort) {
+		return supply(() -> repository.findAll(sort));
+	}
+
+	public CompletableFuture<List<T>> findAllById(final Iterable<ID> ids) {
+		return supply(() -> repository.findAllById(ids));
+	}
+
+	public <S extends T> CompletableFuture<List<S>> findAll(final Example<S> example) {
+		return supply(() -> repository.findAll(example));
+	}
+
+	public <S extends T> CompletableFuture<Optional<S>> findOne(final Example<S> example) {
+		return supply(() -> repository.findOne(example));
+	}
+
+	public CompletableFuture<Long> count() {
+		return supply(repository::count);
+	}
+
+	public CompletableFuture<Void> deleteById(final ID id) {
+		return supply(() -> {
+			repository.deleteById(id);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> delete(final T entity) {
+		return supply(() -> {
+			repository.delete(entity);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> deleteAll() {
+		return supply(() -> {
+			repository.deleteAll();
+			return null;
+		});
+	}
+
+	/**
+	 * Publish all entities.
+	 *
+	 * @return a cold publisher, querying the repository for each subscriber.
+	 */
+	public Flow.Publisher<T> publishAll() {
+		return publish(repository::findAll);
+	}
+
+	/**
+	 * Publish all entities in order.
+	 *
+	 * @param sort the order of the entities.
+	 * @return a cold publisher, querying the repository for each subscriber.
+	 */
+	public Flow.Publisher<T> publishAll(final Sort sort) {
+		return publish(() -> repository.findAll(sort));
+	}
+
+	/**
+	 * Publish the entities matching an example.
+	 *
+	 * @param example the example to match.
+	 * @param <S>     the type of the example.
+	 * @return a cold publisher, querying the repository for each subscriber.
+	 */
+	public <S extends T> Flow.Publisher<S> publishAll(final Example<S> example) {
+		return publish(() -> repository.findAll(example));
+	}
+
+	/**
+	 * Run an operation on the executor after the simulated latency.
+	 *
+	 * @param operation the operation.
+	 * @param <R>       the type of the result.
+	 * @return the future result.
+	 */
+	protected <R> CompletableFuture<R> supply(final Callable<R> operation) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return delayed(operation);
+			} catch (RuntimeException ex) {
+				throw ex;
+			} catch (Exception ex) {
+				throw new CompletionException(ex);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Publish the results of a query run on the executor after the simulated latency.
+	 *
+	 * @param query the query.
+	 * @param <R>   the type of the results.
+	 * @return a cold publisher.
+	 */
+	protected <R> Flow.Publisher<R> publish(final Callable<? extends List<? extends R>> query) {
+		return new ResultPublisher<>(executor, () -> delayed(query));
+	}
+
+	private <R> R delayed(final Callable<R> operation) throws Exception {
+		long latency = maxLatency > minLatency
+				? ThreadLocalRandom.current().nextLong(minLatency, maxLatency + 1) : minLatency;
+		if (latency > 0) {
+			TimeUnit.NANOSECONDS.sleep(latency);
+		}
+		return operation.call();
+	}
+
+	/**
+	 * Create an executor starting a virtual thread per task if the JVM supports them, or else a cached pool of daemon
+	 * threads.
+	 */
+	private static Executor virtualThreads() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "async-repository");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.NonNull;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import uk.co.bluegecko.marine.test.data.RepositoryMetrics.Operation;
+
+/**
+ * An {@link InMemoryRepository} bounded in size, by entity count or total weight, and in time, by a time to live for
+ * each entity measured against an injectable {@link Clock}, for long-running soak tests.
+ * <pre>{@code
+ * BoundedRepository<Voyage, Long> voyages = new BoundedRepository<Voyage, Long>(Voyage::getId, Voyage::setId,
+ *         Generators.number(), EvictionPolicy.tinyLfu(10_000))
+ *         .maximumSize(10_000)
+ *         .expireAfterWrite(Duration.ofHours(1), clock());
+ * }</pre>
+ * Once the bound is exceeded, the {@link EvictionPolicy} chooses entities to evict. Entities past their time to live
+ * are never found by id, and are removed in order of expiry. Both are done by whichever thread next finds work to do,
+ * after a write or before a bulk read, and only by one thread at a time: others carry on rather than wait. Reads by id
+ * never lock, only telling the policy of the access. Evictions and expiries are changes like any other, so listeners
+ * see them as deletes, and a transaction rolled back restores them.
+ * <p>
+ * A {@link #fork() fork} is an ordinary persistent repository, which is not bounded.
+ *
+ * @param <T>  the type of the entities.
+ * @param <ID> the type of the entity ids.
+ */
+public class BoundedRepository<T, ID> extends InMemoryRepository<T, ID> {
+
+	private final EvictionPolicy<ID> policy;
+	private final ReentrantLock maintenance = new ReentrantLock();
+	private final LongAdder weight = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expiries = new LongAdder();
+	private final AtomicLong sequence = new AtomicLong();
+	private final Map<ID, Deadline> deadlines = new ConcurrentHashMap<>();
+	private final ConcurrentSkipListMap<Deadline, ID> expiring = new ConcurrentSkipListMap<>();
+	private volatile long maximum = Long.MAX_VALUE;
+	private volatile ToLongFunction<? super T> weigher = entity -> 1;
+	private volatile Function<? super T, Duration> timeToLive;
+	private volatile Clock clock = Clock.systemUTC();
+
+	/**
+	 * Create an empty repository, which is unbounded until given a {@link #maximumSize maximum size} or
+	 * {@link #maximumWeight weight}, or a {@link #expireAfterWrite(Duration, Clock) time to live}.
+	 *
+	 * @param extractor extract the id from an entity.
+	 * @param inserter  set the id of an entity.
+	 * @param generator generate ids for new entities.
+	 * @param policy    choose the entities to evict.
+	 */
+	public BoundedRepository(final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator,
+			final EvictionPolicy<ID> policy) {
+		super(extractor, inserter, generator);
+		this.policy = policy;
+		listen(this::changed);
+	}
+
+	/**
+	 * Bound the number of entities.
+	 *
+	 * @param maximum the maximum number of entities.
+	 * @return this repository.
+	 * @throws IllegalArgumentException if the maximum is negative.
+	 */
+	public BoundedRepository<T, ID> maximumSize(final long maximum) {
+		return maximumWeight(maximum, entity -> 1);
+	}
+
+	/**
+	 * Bound the total weight of the entities. The weight of an entity is taken when it is saved, so should not change
+	 * while it is stored. Any existing entities are weighed, and evicted if need be, immediately.
+	 *
+	 * @param maximum the maximum total weight.
+	 * @param weigher weigh an entity, which must not be negative.
+	 * @return this repository.
+	 * @throws IllegalArgumentException if the maximum is negative.
+	 */
+	public BoundedRepository<T, ID> maximumWeight(final long maximum, final ToLongFunction<? super T> weigher) {
+		if (maximum < 0) {
+			throw new IllegalArgumentException(String.format("Maximum `%d` must not be negative", maximum));
+		}
+		maintenance.lock();
+		try {
+			this.weigher = weigher;
+			this.maximum = maximum;
+			weight.reset();
+			entities.values().forEach(entity -> weight.add(weigher.applyAsLong(entity)));
+		} finally {
+			maintenance.unlock();
+		}
+		maintain();
+		return this;
+	}
+
+	/**
+	 * Expire every entity a fixed time after it was last saved.
+	 *
+	 * @param timeToLive the time to live of each entity.
+	 * @param clock      the clock to measure time by, such as {@code DatedTest.clock()}.
+	 * @return this repository.
+	 * @see #expireAfterWrite(Function, Clock)
+	 */
+	public BoundedRepository<T, ID> expireAfterWrite(final Duration timeToLive, final Clock clock) {
+		return expireAfterWrite(entity -> timeToLive, clock);
+	}
+
+	/**
+	 * Expire each entity a time after it was last saved that depends on the entity. Any existing entities are given
+	 * their time to live from now.
+	 *
+	 * @param timeToLive the time to live of an entity, or {@literal null} for it not to expire.
+	 * @param clock      the clock to measure time by, such as {@code DatedTest.clock()}.
+	 * @return this repository.
+	 */
+	public BoundedRepository<T, ID> expireAfterWrite(final Function<? super T, Duration> timeToLive,
+			final Clock clock) {
+		maintenance.lock();
+		try {
+			this.clock = clock;
+			this.timeToLive = timeToLive;
+			entities.forEach(this::schedule);
+		} finally {
+			maintenance.unlock();
+		}
+		maintain();
+		return this;
+	}
+
+	/**
+	 * Get the total weight of the entities, which is their number unless given a {@link #maximumWeight weigher}.
+	 *
+	 * @return the total weight.
+	 */
+	public long weight() {
+		return weight.sum();
+	}
+
+	/**
+	 * Get the number of entities evicted to keep within the bound.
+	 *
+	 * @return the number of evictions.
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Get the number of entities removed once past their time to live.
+	 *
+	 * @return the number of expiries.
+	 */
+	public long expiries() {
+		return expiries.sum();
+	}
+
+	/**
+	 * Remove any expired entities and evict any entities over the bound now, waiting for any other thread doing so.
+	 */
+	public void cleanUp() {
+		maintenance.lock();
+		try {
+			expire();
+			evict();
+		} finally {
+			maintenance.unlock();
+		}
+	}
+
+	@Override
+	public @NonNull Optional<T> findById(@NonNull final ID id) {
+		long start = started();
+		try {
+			return Optional.ofNullable(read(id));
+		} finally {
+			finished(Operation.FIND_BY_ID, start);
+		}
+	}
+
+	@Override
+	public boolean existsById(@NonNull final ID id) {
+		long start = started();
+		try {
+			return entities.containsKey(id) && !expired(id);
+		} finally {
+			finished(Operation.EXISTS, start);
+		}
+	}
+
+	@Override
+	public Stream<T> streamAllById(final Iterable<ID> ids) {
+		return StreamSupport.stream(ids.spliterator(), false).map(this::read).filter(Objects::nonNull);
+	}
+
+	@Override
+	public @NonNull List<T> findAll() {
+		maintain();
+		return super.findAll();
+	}
+
+	@Override
+	public @NonNull List<T> findAll(@NonNull final Sort sort) {
+		maintain();
+		return super.findAll(sort);
+	}
+
+	@Override
+	public @NonNull Page<T> findAll(@NonNull final Pageable pageable) {
+		maintain();
+		return super.findAll(pageable);
+	}
+
+	@Override
+	public Stream<T> streamAll() {
+		maintain();
+		return super.streamAll();
+	}
+
+	@Override
+	public long count() {
+		maintain();
+		return super.count();
+	}
+
+	@Override
+	protected Stream<T> scan(final Filter<? super T> filter) {
+		maintain();
+		return super.scan(filter);
+	}
+
+	@Override
+	protected Stream<T> scan(final Filter<? super T> filter, final Sort sort) {
+		maintain();
+		return super.scan(filter, sort);
+	}
+
+	@Override
+	protected void store(final ID id, final T entity) {
+		super.store(id, entity);
+		maintain();
+	}
+
+	@Override
+	protected void merge(final ID id, final T entity) {
+		super.merge(id, entity);
+		maintain();
+	}
+
+	/**
+	 * Read an entity by id, unless it has expired, telling the policy of the access.
+	 */
+	private T read(final ID id) {
+		T entity = entities.get(id);
+		if (entity == null || expired(id)) {
+			return null;
+		}
+		policy.accessed(id);
+		return entity;
+	}
+
+	private boolean expired(final ID id) {
+		Deadline deadline = timeToLive != null ? deadlines.get(id) : null;
+		return deadline != null && deadline.at() <= clock.millis();
+	}
+
+	/**
+	 * Expire and evict entities if there is any work to do and no other thread is doing it. Checks again after
+	 * finishing, in case another thread found work while this one held the lock.
+	 */
+	private void maintain() {
+		while (pending() && maintenance.tryLock()) {
+			try {
+				expire();
+				evict();
+			} finally {
+				maintenance.unlock();
+			}
+		}
+	}
+
+	private boolean pending() {
+		if (weight.sum() > maximum) {
+			return true;
+		}
+		Map.Entry<Deadline, ID> first = timeToLive != null ? expiring.firstEntry() : null;
+		return first != null && first.getKey().at() <= clock.millis();
+	}
+
+	private void expire() {
+		long now = clock.millis();
+		for (Map.Entry<Deadline, ID> first = expiring.firstEntry(); first != null && first.getKey().at() <= now;
+				first = expiring.firstEntry()) {
+			Deadline deadline = first.getKey();
+			ID id = first.getValue();
+			eraseIf(id, entity -> {
+				boolean current = deadlines.get(id) == deadline;
+				if (current) {
+					expiries.increment();
+				}
+				return current;
+			});
+			expiring.remove(deadline, id);
+		}
+	}
+
+	private void evict() {
+		while (weight.sum() > maximum) {
+			ID victim = policy.victim();
+			if (victim == null) {
+				return;
+			}
+			if (entities.containsKey(victim)) {
+				erase(victim);
+				evictions.increment();
+			}
+		}
+	}
+
+	/**
+	 * Keep the policy, weight and deadlines in step with each change, atomically with the change.
+	 */
+	private void changed(final ID id, final T previous, final T current) {
+		if (current == null) {
+			policy.removed(id);
+		} else if (previous == null) {
+			policy.added(id);
+		} else {
+			policy.accessed(id);
+		}
+		ToLongFunction<? super T> weights = weigher;
+		weight.add((current != null ? weights.applyAsLong(current) : 0)
+				- (previous != null ? weights.applyAsLong(previous) : 0));
+		schedule(id, current);
+	}
+
+	/**
+	 * Set the deadline of an entity, or clear it if the entity has been removed or does not expire.
+	 */
+	private void schedule(final ID id, final T entity) {
+		Function<? super T, Duration> lifetimes = timeToLive;
+		Duration lifetime = entity != null && lifetimes != null ? lifetimes.apply(entity) : null;
+		Deadline deadline = lifetime != null
+				? new Deadline(clock.millis() + lifetime.toMillis(), sequence.incrementAndGet()) : null;
+		Deadline previous = deadline != null ? deadlines.put(id, deadline) : deadlines.remove(id);
+		if (previous != null) {
+			expiring.remove(previous, id);
+		}
+		if (deadline != null) {
+			expiring.put(deadline, id);
+		}
+	}
+
+	/**
+	 * When an entity expires, ordered by time, then by when the deadline was set.
+	 */
+	private record Deadline(long at, long sequence) implements Comparable<Deadline> {
+
+		@Override
+		public int compareTo(final Deadline other) {
+			int compare = Long.compare(at, other.at);
+			return compare != 0 ? compare : Long.compare(sequence, other.sequence);
+		}
+	}
+}
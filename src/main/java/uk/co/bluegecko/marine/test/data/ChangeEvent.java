@@ -0,0 +1,37 @@
+package uk.co.bluegecko.marine.test.data;
+
+/**
+ * A change to one entity in an {@link InMemoryRepository}.
+ *
+ * @param type   the kind of change.
+ * @param id     the id of the entity.
+ * @param before the entity replaced, or {@literal null} if it was created.
+ * @param after  the entity saved, or {@literal null} if it was deleted.
+ * @param <T>    the type of the entities.
+ * @param <ID>   the type of the entity ids.
+ * @see ChangePublisher
+ */
+public record ChangeEvent<T, ID>(Type type, ID id, T before, T after) {
+
+	/**
+	 * The kinds of change.
+	 */
+	public enum Type {
+		CREATED, UPDATED, DELETED
+	}
+
+	/**
+	 * Describe a change from the entities before and after it.
+	 *
+	 * @param id     the id of the entity.
+	 * @param before the entity replaced, or {@literal null} if there was none.
+	 * @param after  the entity saved, or {@literal null} if it was deleted.
+	 * @param <T>    the type of the entities.
+	 * @param <ID>   the type of the entity ids.
+	 * @return the event.
+	 */
+	public static <T, ID> ChangeEvent<T, ID> of(final ID id, final T before, final T after) {
+		Type type = before == null ? Type.CREATED : after == null ? Type.DELETED : Type.UPDATED;
+		return new ChangeEvent<>(type, id, before, after);
+	}
+}
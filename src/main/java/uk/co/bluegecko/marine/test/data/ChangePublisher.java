@@ -0,0 +1,234 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the changes to an {@link InMemoryRepository} as batches of {@link ChangeEvent}s.
+ * <p>
+ * Each subscriber has its own queue, to which the writing thread adds an event without blocking, and from which an
+ * executor delivers the queued events in batches, as many batches as the subscriber has requested. A slow subscriber
+ * therefore never stalls writers, or other subscribers: its events wait until it requests more. If its queue
+ * reaches the capacity, it is cancelled, and receives {@link Flow.Subscriber#onError onError}. A subscriber sees the
+ * changes to any one entity in order, but only the changes made after it subscribed.
+ *
+ * @param <T>  the type of the entities.
+ * @param <ID> the type of the entity ids.
+ * @see InMemoryRepository#changes()
+ */
+public final class ChangePublisher<T, ID> implements Flow.Publisher<List<ChangeEvent<T, ID>>>,
+		RepositoryListener<T, ID>, AutoCloseable {
+
+	/**
+	 * The most events delivered in one batch, by default.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	/**
+	 * The most events queued for one subscriber, by default.
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	private final Executor executor;
+	private final int batchSize;
+	private final int capacity;
+	private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+	private volatile boolean closed;
+
+	public ChangePublisher() {
+		this(ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a publisher.
+	 *
+	 * @param executor  the executor delivering the events.
+	 * @param batchSize the most events delivered in one batch.
+	 * @param capacity  the most events queued for one subscriber.
+	 */
+	public ChangePublisher(final Executor executor, final int batchSize, final int capacity) {
+		if (batchSize < 1 || capacity < 1) {
+			throw new IllegalArgumentException("Batch size and capacity must be positive");
+		}
+		this.executor = executor;
+		this.batchSize = batchSize;
+		this.capacity = capacity;
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super List<ChangeEvent<T, ID>>> subscriber) {
+		Objects.requireNonNull(subscriber);
+		ChangeSubscription subscription = new ChangeSubscription(subscriber);
+		subscriptions.add(subscription);
+		subscriber.onSubscribe(subscription);
+		if (closed) {
+			subscriptions.remove(subscription);
+			subscription.complete();
+		}
+	}
+
+	/**
+	 * Queue a change for every subscriber. Called by the repository.
+	 *
+	 * @param id       the id of the entity.
+	 * @param previous the entity replaced, or {@literal null} if there was none.
+	 * @param current  the entity saved, or {@literal null} if it was deleted.
+	 */
+	@Override
+	public void changed(final ID id, final T previous, final T current) {
+		if (!subscriptions.isEmpty()) {
+			ChangeEvent<T, ID> event = ChangeEvent.of(id, previous, current);
+			for (ChangeSubscription subscription : subscriptions) {
+				subscription.offer(event);
+			}
+		}
+	}
+
+	/**
+	 * Complete every subscriber once it has received the events already queued for it. Later changes are not
+	 * published.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (ChangeSubscription subscription : subscriptions) {
+			subscription.complete();
+		}
+		subscriptions.clear();
+	}
+
+	/**
+	 * Get the number of current subscribers.
+	 *
+	 * @return the number of subscribers.
+	 */
+	public int subscribers() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * The queue and outstanding demand of one subscriber. Delivery runs on the executor, at most one task at a time
+	 * per subscriber, rescheduled by any offer or request made while it runs.
+	 */
+	private final class ChangeSubscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super List<ChangeEvent<T, ID>>> subscriber;
+		private final Queue<ChangeEvent<T, ID>> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger queued = new AtomicInteger();
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger work = new AtomicInteger();
+		private volatile boolean completed;
+		private volatile boolean cancelled;
+		private volatile Throwable failure;
+
+		private ChangeSubscription(final Flow.Subscriber<? super List<ChangeEvent<T, ID>>> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		private void offer(final ChangeEvent<T, ID> event) {
+			if (queued.incrementAndGet() > capacity) {
+				fail(new IllegalStateException(
+						String.format("Subscriber `%s` has more than `%d` events queued", subscriber, capacity)));
+				return;
+			}
+			queue.add(event);
+			schedule();
+		}
+
+		private void complete() {
+			completed = true;
+			schedule();
+		}
+
+		private void fail(final Throwable throwable) {
+			if (failure == null) {
+				failure = throwable;
+				subscriptions.remove(this);
+				schedule();
+			}
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				fail(new IllegalArgumentException(String.format("Request `%d` must be positive", n)));
+				return;
+			}
+			demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+			queue.clear();
+		}
+
+		private void schedule() {
+			if (!cancelled && work.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (drain()) {
+					return;
+				}
+				missed = work.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		/**
+		 * Deliver batches while there is demand, then any terminal signal.
+		 *
+		 * @return whether the subscription has ended.
+		 */
+		private boolean drain() {
+			while (!cancelled) {
+				if (failure != null) {
+					cancelled = true;
+					queue.clear();
+					subscriber.onError(failure);
+					return true;
+				}
+				if (demand.get() == 0 || queue.isEmpty()) {
+					if (completed && queue.isEmpty()) {
+						cancelled = true;
+						subscriber.onComplete();
+						return true;
+					}
+					return false;
+				}
+				List<ChangeEvent<T, ID>> batch = new ArrayList<>(Math.min(batchSize, queued.get()));
+				ChangeEvent<T, ID> event;
+				while (batch.size() < batchSize && (event = queue.poll()) != null) {
+					batch.add(event);
+				}
+				queued.addAndGet(-batch.size());
+				if (demand.get() != Long.MAX_VALUE) {
+					demand.decrementAndGet();
+				}
+				try {
+					subscriber.onNext(batch);
+				} catch (RuntimeException ex) {
+					cancel();
+					subscriber.onError(ex);
+					return true;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An {@link EvictionPolicy} giving each entity a saturating use count, and evicting the first entity in order of
+ * addition whose count is zero, decrementing the counts it passes over and moving them to the back.
+ * <p>
+ * With a limit of {@literal 1} this is CLOCK, approximating LRU; with a higher limit it is GCLOCK, approximating LFU
+ * with ageing. Accesses update the count without locking or allocating, and may occasionally be lost under
+ * contention, which only makes the approximation a little coarser.
+ *
+ * @param <ID> the type of the entity ids.
+ */
+final class ClockPolicy<ID> implements EvictionPolicy<ID> {
+
+	private final int limit;
+	private final Map<ID, Node<ID>> nodes = new ConcurrentHashMap<>();
+	private final Queue<Node<ID>> queue = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Create a policy.
+	 *
+	 * @param limit the largest use count kept for an entity.
+	 */
+	ClockPolicy(final int limit) {
+		this.limit = limit;
+	}
+
+	@Override
+	public void added(final ID id) {
+		Node<ID> node = new Node<>(id);
+		nodes.put(id, node);
+		queue.add(node);
+	}
+
+	@Override
+	public void accessed(final ID id) {
+		Node<ID> node = nodes.get(id);
+		if (node != null && node.count < limit) {
+			node.count++;
+		}
+	}
+
+	@Override
+	public void removed(final ID id) {
+		nodes.remove(id);
+	}
+
+	@Override
+	public ID victim() {
+		for (Node<ID> node = queue.poll(); node != null; node = queue.poll()) {
+			if (nodes.get(node.id) != node) {
+				continue;
+			}
+			if (node.count == 0) {
+				return node.id;
+			}
+			node.count--;
+			queue.add(node);
+		}
+		return null;
+	}
+
+	private static final class Node<ID> {
+
+		private final ID id;
+		private volatile int count;
+
+		private Node(final ID id) {
+			this.id = id;
+		}
+	}
+}
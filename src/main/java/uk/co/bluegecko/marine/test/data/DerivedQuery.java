@@ -0,0 +1,352 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.data.repository.core.RepositoryMetadata;
+import org.springframework.data.repository.query.ParametersParameterAccessor;
+import org.springframework.data.repository.query.QueryMethod;
+import org.springframework.data.repository.query.ReturnedType;
+import org.springframework.data.repository.query.parser.Part;
+import org.springframework.data.repository.query.parser.PartTree;
+
+/**
+ * A query derived from the name of a repository method, such as {@code findByNameAndStatusOrderByEtaDesc} or
+ * {@code countByFlag}.
+ * <p>
+ * The method name is parsed by Spring Data's {@link PartTree} once, when the query is created, and each part compiled
+ * into a {@link Condition}. Executing the query only binds the arguments and evaluates the resulting {@link Filter},
+ * which uses the repository's indexes when the conditions allow.
+ */
+final class DerivedQuery {
+
+	static final ProjectionFactory PROJECTIONS = new SpelAwareProxyProjectionFactory();
+
+	private final QueryMethod method;
+	private final Class<?> returnType;
+	private final PartTree tree;
+	private final List<List<Condition>> conditions;
+
+	private DerivedQuery(final QueryMethod method, final Class<?> returnType, final PartTree tree) {
+		this.method = method;
+		this.returnType = returnType;
+		this.tree = tree;
+		this.conditions = tree.stream()
+				.map(or -> or.stream().map(Condition::of).toList())
+				.toList();
+	}
+
+	/**
+	 * Parse and compile a query method.
+	 *
+	 * @param method   the repository method.
+	 * @param metadata the metadata of the repository declaring the method.
+	 * @return the compiled query.
+	 * @throws org.springframework.data.mapping.PropertyReferenceException if the name refers to an unknown property.
+	 * @throws UnsupportedOperationException                               if the name uses an unsupported keyword.
+	 */
+	static DerivedQuery of(final Method method, final RepositoryMetadata metadata) {
+		QueryMethod queryMethod = new QueryMethod(method, metadata, PROJECTIONS);
+		return new DerivedQuery(queryMethod, method.getReturnType(), new PartTree(method.getName(), metadata.getDomainType()));
+	}
+
+	/**
+	 * Execute the query against a repository.
+	 *
+	 * @param repository the repository to query.
+	 * @param args       the arguments of the method call.
+	 * @param <T>        the type of the entities.
+	 * @return the result, in the form declared by the method.
+	 */
+	<T> Object execute(final InMemoryRepository<T, ?> repository, final Object[] args) {
+		long start = repository.started();
+		try {
+			return run(repository, args);
+		} finally {
+			repository.finished(RepositoryMetrics.Operation.QUERY, start);
+		}
+	}
+
+	private <T> Object run(final InMemoryRepository<T, ?> repository, final Object[] args) {
+		ParametersParameterAccessor accessor = new ParametersParameterAccessor(method.getParameters(),
+				args != null ? args : new Object[0]);
+		Filter<T> filter = bind(accessor.iterator());
+
+		if (tree.isCountProjection()) {
+			return number(repository.scan(filter).count());
+		}
+		if (tree.isExistsProjection()) {
+			return repository.scan(filter).findAny().isPresent();
+		}
+		if (tree.isDelete()) {
+			List<T> deleted = repository.scan(filter).collect(Collectors.toList());
+			repository.deleteAll(deleted);
+			return method.isCollectionQuery() ? deleted : number(deleted.size());
+		}
+
+		Sort sort = tree.getSort().and(accessor.getSort());
+		Function<Object, Object> projection = projection(accessor.findDynamicProjection());
+		Integer max = tree.isLimiting() ? tree.getMaxResults() : null;
+
+		if (method.isPageQuery() || method.isSliceQuery()) {
+			Pageable pageable = accessor.getPageable();
+			List<T> matches = repository.scan(filter).collect(Collectors.toList());
+			if (pageable.isUnpaged()) {
+				return new PageImpl<>(project(sorted(matches, sort, max), projection));
+			}
+			if (max != null && matches.size() > max) {
+				matches = sorted(matches, sort, max);
+			}
+			List<T> content = InMemoryRepository.select(matches.stream(), matches.size(), sort,
+					pageable.getOffset(), pageable.getPageSize());
+			return method.isPageQuery()
+					? new PageImpl<>(project(content, projection), pageable, matches.size())
+					: new SliceImpl<>(project(content, projection), pageable,
+							pageable.getOffset() + content.size() < matches.size());
+		}
+		if (method.isStreamQuery()) {
+			Stream<T> matches = repository.scan(filter, sort);
+			return (max != null ? matches.limit(max) : matches).map(projection);
+		}
+		if (method.isCollectionQuery()) {
+			Stream<T> matches = repository.scan(filter);
+			List<T> results = max != null
+					? InMemoryRepository.select(matches, Long.MAX_VALUE, sort, 0, max)
+					: sort.isSorted() ? repository.scan(filter, sort).collect(Collectors.toList())
+							: matches.collect(Collectors.toList());
+			List<Object> projected = project(results, projection);
+			return Set.class.isAssignableFrom(returnType)
+					? new LinkedHashSet<>(projected) : projected;
+		}
+		Object result = single(repository, filter, sort, max);
+		result = result != null ? projection.apply(result) : null;
+		return Optional.class.isAssignableFrom(returnType)
+				? Optional.ofNullable(result) : result;
+	}
+
+	private <T> Object single(final InMemoryRepository<T, ?> repository, final Filter<T> filter, final Sort sort,
+			final Integer max) {
+		if (max != null) {
+			Stream<T> matches = repository.scan(filter);
+			return (sort.isSorted() ? matches.min(SortComparators.of(sort)) : matches.findFirst()).orElse(null);
+		}
+		Iterator<T> matches = repository.scan(filter).iterator();
+		if (!matches.hasNext()) {
+			return null;
+		}
+		T match = matches.next();
+		if (matches.hasNext()) {
+			throw new IncorrectResultSizeDataAccessException(
+					String.format("Query `%s` matches more than one entity", method.getName()), 1);
+		}
+		return match;
+	}
+
+	private <T> Filter<T> bind(final Iterator<Object> values) {
+		List<Predicate<Object>> any = new ArrayList<>(conditions.size());
+		List<Restriction> restrictions = new ArrayList<>();
+		for (List<Condition> and : conditions) {
+			Predicate<Object> all = e -> true;
+			for (Condition condition : and) {
+				Term term = condition.bind(values);
+				all = all.and(term.predicate());
+				if (conditions.size() == 1 && term.restriction() != null) {
+					restrictions.add(term.restriction());
+				}
+			}
+			any.add(all);
+		}
+		Predicate<Object> predicate = any.isEmpty() ? e -> true
+				: any.size() == 1 ? any.get(0)
+						: e -> any.stream().anyMatch(p -> p.test(e));
+		return new Filter<>(predicate, restrictions);
+	}
+
+	private Object number(final long count) {
+		return returnType == int.class || returnType == Integer.class ? (Object) (int) count : (Object) count;
+	}
+
+	private Function<Object, Object> projection(final Class<?> dynamic) {
+		ReturnedType returned = method.getResultProcessor().getReturnedType();
+		Class<?> type = dynamic != null ? dynamic
+				: returned.isProjecting() ? returned.getReturnedType() : null;
+		if (type == null || type.isAssignableFrom(returned.getDomainType())) {
+			return Function.identity();
+		}
+		return InMemoryFluentQuery.projection(type)::apply;
+	}
+
+	private static <T> List<T> sorted(final List<T> values, final Sort sort, final Integer max) {
+		List<T> sorted = sort.isSorted() ? InMemoryRepository.sorted(values, SortComparators.of(sort)) : values;
+		return max != null && sorted.size() > max ? sorted.subList(0, max) : sorted;
+	}
+
+	private static List<Object> project(final List<?> values, final Function<Object, Object> projection) {
+		return values.stream().map(projection).collect(Collectors.toList());
+	}
+
+	/**
+	 * A part of the query bound to its arguments.
+	 *
+	 * @param predicate   the test on the entity.
+	 * @param restriction the equivalent index restriction, or {@literal null} if there is none.
+	 */
+	private record Term(Predicate<Object> predicate, Restriction restriction) {
+
+	}
+
+	/**
+	 * A compiled {@link Part} of a derived query.
+	 * <p>
+	 * Arguments are converted to the type of the property where that is exact, such as a {@code long} to an
+	 * {@link Integer} property, so that index lookups match a scan; otherwise the part is evaluated by scanning.
+	 */
+	private record Condition(Part.Type type, PropertyAccessor accessor, Class<?> property, boolean ignoreCase) {
+
+		private static Condition of(final Part part) {
+			Part.Type type = part.getType();
+			switch (type) {
+				case NEAR, WITHIN, EXISTS -> throw new UnsupportedOperationException(
+						String.format("Keyword `%s` is not supported for in-memory queries", type));
+				default -> {
+					// supported
+				}
+			}
+			return new Condition(type, PropertyAccessor.of(part.getProperty().toDotPath()),
+					part.getProperty().getLeafType(), part.shouldIgnoreCase() != Part.IgnoreCaseType.NEVER);
+		}
+
+		private Term bind(final Iterator<Object> values) {
+			String path = accessor.path();
+			return switch (type) {
+				case SIMPLE_PROPERTY -> {
+					Object value = values.next();
+					Object key = convert(value);
+					Object match = key != null ? key : value;
+					yield value instanceof String string && ignoreCase
+							? string(StringMatchers.equalTo(string, true))
+							: new Term(test(v -> Objects.equals(match, v)),
+									key != null || value == null ? new Restriction.Equal(path, key) : null);
+				}
+				case NEGATING_SIMPLE_PROPERTY -> {
+					Object value = values.next();
+					Object key = convert(value);
+					Object match = key != null ? key : value;
+					yield value instanceof String string && ignoreCase
+							? string(StringMatchers.equalTo(string, true).negate())
+							: new Term(test(v -> !Objects.equals(match, v)), null);
+				}
+				case GREATER_THAN, AFTER -> range(comparable(values), false, null, false);
+				case GREATER_THAN_EQUAL -> range(comparable(values), true, null, false);
+				case LESS_THAN, BEFORE -> range(null, false, comparable(values), false);
+				case LESS_THAN_EQUAL -> range(null, false, comparable(values), true);
+				case BETWEEN -> range(comparable(values), true, comparable(values), true);
+				case IS_NULL -> new Term(test(Objects::isNull), new Restriction.Equal(path, null));
+				case IS_NOT_NULL -> new Term(test(Objects::nonNull), null);
+				case TRUE -> new Term(test(Boolean.TRUE::equals), new Restriction.Equal(path, Boolean.TRUE));
+				case FALSE -> new Term(test(Boolean.FALSE::equals), new Restriction.Equal(path, Boolean.FALSE));
+				case LIKE -> string(StringMatchers.like(text(values), ignoreCase));
+				case NOT_LIKE -> string(StringMatchers.like(text(values), ignoreCase).negate());
+				case STARTING_WITH -> string(StringMatchers.startingWith(text(values), ignoreCase));
+				case ENDING_WITH -> string(StringMatchers.endingWith(text(values), ignoreCase));
+				case CONTAINING -> containing(values.next());
+				case NOT_CONTAINING -> {
+					Term containing = containing(values.next());
+					yield new Term(containing.predicate().negate(), null);
+				}
+				case REGEX -> string(StringMatchers.matching(text(values), ignoreCase));
+				case IN -> {
+					Set<Object> in = set(values.next());
+					yield new Term(test(in::contains), null);
+				}
+				case NOT_IN -> {
+					Set<Object> in = set(values.next());
+					yield new Term(test(v -> !in.contains(v)), null);
+				}
+				case IS_EMPTY -> new Term(test(v -> v == null || v instanceof Collection<?> c && c.isEmpty()), null);
+				case IS_NOT_EMPTY -> new Term(test(v -> v instanceof Collection<?> c && !c.isEmpty()), null);
+				default -> throw new UnsupportedOperationException(
+						String.format("Keyword `%s` is not supported for in-memory queries", type));
+			};
+		}
+
+		private Predicate<Object> test(final Predicate<Object> test) {
+			return e -> test.test(accessor.apply(e));
+		}
+
+		private Term string(final Predicate<String> test) {
+			return new Term(e -> accessor.apply(e) instanceof String actual && test.test(actual), null);
+		}
+
+		private Term range(final Comparable<?> lower, final boolean lowerInclusive, final Comparable<?> upper,
+				final boolean upperInclusive) {
+			Restriction.Range range = new Restriction.Range(accessor.path(), lower, lowerInclusive, upper, upperInclusive);
+			Object from = convert(lower);
+			Object to = convert(upper);
+			Restriction hint = (lower == null || from != null) && (upper == null || to != null)
+					? new Restriction.Range(accessor.path(), (Comparable<?>) from, lowerInclusive,
+							(Comparable<?>) to, upperInclusive)
+					: null;
+			return new Term(test(range::test), hint);
+		}
+
+		/**
+		 * Convert an argument to the type of the property.
+		 *
+		 * @return the converted value, or {@literal null} if it is {@literal null} or cannot be converted exactly.
+		 */
+		private Object convert(final Object value) {
+			return value != null ? JpqlQuery.coerce(value, property) : null;
+		}
+
+		private Term containing(final Object value) {
+			if (value instanceof String string) {
+				Predicate<String> contains = StringMatchers.containing(string, ignoreCase);
+				return new Term(test(v -> v instanceof Collection<?> c ? c.contains(value)
+						: v instanceof String actual && contains.test(actual)), null);
+			}
+			return new Term(test(v -> v instanceof Collection<?> c && c.contains(value)), null);
+		}
+
+		private static Comparable<?> comparable(final Iterator<Object> values) {
+			return (Comparable<?>) values.next();
+		}
+
+		private static String text(final Iterator<Object> values) {
+			return String.valueOf(values.next());
+		}
+
+		private static Set<Object> set(final Object value) {
+			if (value instanceof Collection<?> collection) {
+				return new HashSet<>(collection);
+			}
+			if (value != null && value.getClass().isArray()) {
+				Set<Object> set = new HashSet<>();
+				for (int i = 0, length = Array.getLength(value); i < length; i++) {
+					set.add(Array.get(value, i));
+				}
+				return set;
+			}
+			return value != null ? Set.of(value) : Set.of();
+		}
+	}
+}
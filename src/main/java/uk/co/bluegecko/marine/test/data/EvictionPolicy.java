@@ -0,0 +1,79 @@
+package uk.co.bluegecko.marine.test.data;
+
+/**
+ * Chooses which entities a {@link BoundedRepository} evicts when it exceeds its bound.
+ * <p>
+ * The repository reports each entity added, accessed and removed, from any thread: {@link #accessed} is on the read
+ * path, so must be cheap and must not lock. {@link #victim()} is only called by one thread at a time, while the
+ * repository is evicting, so may do more work, amortised over the evictions.
+ *
+ * @param <ID> the type of the entity ids.
+ * @see BoundedRepository#BoundedRepository(java.util.function.Function, java.util.function.BiConsumer,
+ * java.util.function.Supplier, EvictionPolicy)
+ */
+public interface EvictionPolicy<ID> {
+
+	/**
+	 * An entity has been added.
+	 *
+	 * @param id the id of the entity.
+	 */
+	void added(ID id);
+
+	/**
+	 * An entity has been read by id, or replaced.
+	 *
+	 * @param id the id of the entity.
+	 */
+	void accessed(ID id);
+
+	/**
+	 * An entity has been removed, whether evicted, expired or deleted.
+	 *
+	 * @param id the id of the entity.
+	 */
+	void removed(ID id);
+
+	/**
+	 * Choose the next entity to evict. The repository then removes it, and reports its removal.
+	 *
+	 * @return the id of the entity to evict, or {@literal null} if there are none.
+	 */
+	ID victim();
+
+	/**
+	 * Evict the least recently used entity, approximately. Entities are kept in order of addition and given a second
+	 * chance if used since they were last considered, as in the CLOCK algorithm, so an access only sets a flag.
+	 *
+	 * @param <ID> the type of the entity ids.
+	 * @return a new policy.
+	 */
+	static <ID> EvictionPolicy<ID> lru() {
+		return new ClockPolicy<>(1);
+	}
+
+	/**
+	 * Evict the least frequently used entity, approximately. Each entity counts its uses, up to {@literal 15}, and
+	 * each time it is considered for eviction and spared its count is decremented, so that old popularity ages away,
+	 * as in the GCLOCK algorithm.
+	 *
+	 * @param <ID> the type of the entity ids.
+	 * @return a new policy.
+	 */
+	static <ID> EvictionPolicy<ID> lfu() {
+		return new ClockPolicy<>(15);
+	}
+
+	/**
+	 * Evict using W-TinyLFU: new entities enter a small window, and leave it for the main region only if a frequency
+	 * sketch of recent uses rates them above the entity the main region would evict. This keeps popular entities
+	 * through bursts of one-off reads, while still admitting new entities that become popular.
+	 *
+	 * @param expectedSize the expected number of entities, to size the frequency sketch.
+	 * @param <ID>         the type of the entity ids.
+	 * @return a new policy.
+	 */
+	static <ID> EvictionPolicy<ID> tinyLfu(final int expectedSize) {
+		return new TinyLfuPolicy<>(expectedSize);
+	}
+}
@@ -0,0 +1,192 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import lombok.experimental.UtilityClass;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.ExampleMatcher.NullHandler;
+import org.springframework.data.domain.ExampleMatcher.PropertyValueTransformer;
+import org.springframework.data.domain.ExampleMatcher.StringMatcher;
+import org.springframework.data.support.ExampleMatcherAccessor;
+
+/**
+ * Compiles an {@link Example} into a {@link Predicate}, following the same rules as Spring Data JPA's query by
+ * example.
+ * <p>
+ * The properties of the probe type, and how each is matched, are worked out once per probe type and
+ * {@link ExampleMatcher}, so building the predicate for another probe only reads the probe's values. Properties of
+ * application types are matched property by property, everything else is compared with
+ * {@link Object#equals(Object)}, or the configured {@link StringMatcher} for strings.
+ */
+@UtilityClass
+public class ExamplePredicates {
+
+	private static final int MAX_DEPTH = 8;
+	private static final Map<Shape, Term[]> TERMS = new ConcurrentHashMap<>();
+
+	/**
+	 * Get a predicate matching entities against the probe of an {@link Example}.
+	 *
+	 * @param example the example to match against.
+	 * @param <T>     the type of the entities.
+	 * @return a predicate accepting entities that match the example.
+	 */
+	public static <T> Predicate<T> of(final Example<? extends T> example) {
+		return ExamplePredicates.<T>filter(example).predicate()::test;
+	}
+
+	/**
+	 * Get a {@link Filter} matching entities against the probe of an {@link Example}. When all properties must match,
+	 * exact matches are also given as {@link Restriction}s, so they can be answered by an index.
+	 *
+	 * @param example the example to match against.
+	 * @param <T>     the type of the entities.
+	 * @return a filter accepting entities that match the example.
+	 */
+	public static <T> Filter<T> filter(final Example<? extends T> example) {
+		ExampleMatcher matcher = example.getMatcher();
+		Term[] terms = TERMS.computeIfAbsent(new Shape(example.getProbeType(), matcher), ExamplePredicates::compile);
+		Object probe = example.getProbe();
+
+		List<Predicate<Object>> predicates = new ArrayList<>(terms.length);
+		List<Restriction> restrictions = new ArrayList<>();
+		for (Term term : terms) {
+			Object value = term.value(probe);
+			Predicate<Object> predicate = term.bind(value);
+			if (predicate != null) {
+				predicates.add(predicate);
+				if (matcher.isAllMatching() && term.isExact(value)) {
+					restrictions.add(new Restriction.Equal(term.accessor().path(), value));
+				}
+			}
+		}
+		return new Filter<>(all(example.getProbeType(), predicates, matcher.isAllMatching()), restrictions);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Predicate<T> all(final Class<?> type, final List<Predicate<Object>> predicates,
+			final boolean all) {
+		if (predicates.isEmpty()) {
+			return type::isInstance;
+		}
+		Predicate<Object>[] array = predicates.toArray(Predicate[]::new);
+		return all ? e -> {
+			if (!type.isInstance(e)) {
+				return false;
+			}
+			for (Predicate<Object> predicate : array) {
+				if (!predicate.test(e)) {
+					return false;
+				}
+			}
+			return true;
+		} : e -> {
+			if (!type.isInstance(e)) {
+				return false;
+			}
+			for (Predicate<Object> predicate : array) {
+				if (predicate.test(e)) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+
+	private static Term[] compile(final Shape shape) {
+		ExampleMatcherAccessor accessor = new ExampleMatcherAccessor(shape.matcher());
+		List<Term> terms = new ArrayList<>();
+		collect(shape.type(), "", accessor, terms, new HashSet<>(), 0);
+		return terms.toArray(Term[]::new);
+	}
+
+	private static void collect(final Class<?> type, final String prefix, final ExampleMatcherAccessor accessor,
+			final List<Term> terms, final Set<Class<?>> visiting, final int depth) {
+		visiting.add(type);
+		for (Class<?> current = type; current != null && current != Object.class;
+				current = current.getSuperclass()) {
+			for (Field field : current.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+					continue;
+				}
+				String path = prefix + field.getName();
+				if (accessor.isIgnoredPath(path)) {
+					continue;
+				}
+				Class<?> fieldType = field.getType();
+				if (isNested(fieldType) && !visiting.contains(fieldType) && depth < MAX_DEPTH) {
+					collect(fieldType, path + ".", accessor, terms, visiting, depth + 1);
+				} else {
+					terms.add(new Term(PropertyAccessor.of(path),
+							accessor.getNullHandler() == NullHandler.INCLUDE,
+							accessor.getStringMatcherForPath(path),
+							accessor.isIgnoreCaseForPath(path),
+							accessor.getValueTransformerForPath(path)));
+				}
+			}
+		}
+		visiting.remove(type);
+	}
+
+	private static boolean isNested(final Class<?> type) {
+		return !type.isPrimitive() && !type.isArray() && !type.isEnum() && !type.isInterface()
+				&& type.getClassLoader() != null
+				&& !Collection.class.isAssignableFrom(type) && !Map.class.isAssignableFrom(type);
+	}
+
+	private record Shape(Class<?> type, ExampleMatcher matcher) {
+
+	}
+
+	private record Term(PropertyAccessor accessor, boolean includeNull, StringMatcher stringMatcher,
+						boolean ignoreCase, PropertyValueTransformer transformer) {
+
+		private Object value(final Object probe) {
+			return transformer.apply(Optional.ofNullable(accessor.apply(probe))).orElse(null);
+		}
+
+		private boolean isExact(final Object value) {
+			return value != null ? !(value instanceof String) || !ignoreCase
+					&& (stringMatcher == StringMatcher.DEFAULT || stringMatcher == StringMatcher.EXACT)
+					: includeNull;
+		}
+
+		/**
+		 * Bind the term to the value held by the probe.
+		 *
+		 * @return a predicate for the property, or {@literal null} if the property does not constrain the match.
+		 */
+		private Predicate<Object> bind(final Object value) {
+			if (value == null) {
+				return includeNull ? e -> accessor.apply(e) == null : null;
+			}
+			if (value instanceof String string) {
+				Predicate<String> match = match(string);
+				return e -> accessor.apply(e) instanceof String actual && match.test(actual);
+			}
+			return e -> Objects.equals(value, accessor.apply(e));
+		}
+
+		private Predicate<String> match(final String value) {
+			return switch (stringMatcher) {
+				case DEFAULT, EXACT -> StringMatchers.equalTo(value, ignoreCase);
+				case STARTING -> StringMatchers.startingWith(value, ignoreCase);
+				case ENDING -> StringMatchers.endingWith(value, ignoreCase);
+				case CONTAINING -> StringMatchers.containing(value, ignoreCase);
+				case REGEX -> StringMatchers.matching(value, ignoreCase);
+			};
+		}
+	}
+}
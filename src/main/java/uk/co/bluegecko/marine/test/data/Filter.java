@@ -0,0 +1,44 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A compiled query over entities: the predicate each entity must pass, and the {@link Restriction}s implied by it,
+ * which an {@link InMemoryRepository} can answer from an {@link Index} instead of scanning every entity.
+ *
+ * @param predicate    the test each matching entity must pass.
+ * @param restrictions restrictions every matching entity also satisfies.
+ * @param <T>          the type of the entities.
+ */
+public record Filter<T>(Predicate<? super T> predicate, List<Restriction> restrictions) {
+
+	/**
+	 * A filter with no index hints.
+	 *
+	 * @param predicate the test each matching entity must pass.
+	 * @param <T>       the type of the entities.
+	 * @return a filter that can only be answered by scanning.
+	 */
+	public static <T> Filter<T> of(final Predicate<? super T> predicate) {
+		return new Filter<>(predicate, List.of());
+	}
+
+	/**
+	 * A filter accepting entities that satisfy all the restrictions, reading each property by name.
+	 *
+	 * @param restrictions the restrictions to satisfy.
+	 * @param <T>          the type of the entities.
+	 * @return a filter that can be answered by an index on any of the restricted properties.
+	 */
+	public static <T> Filter<T> where(final Restriction... restrictions) {
+		List<Restriction> all = List.of(restrictions);
+		Predicate<Object> predicate = e -> true;
+		for (Restriction restriction : all) {
+			Function<Object, Object> accessor = PropertyAccessor.of(restriction.path());
+			predicate = predicate.and(e -> restriction.test(accessor.apply(e)));
+		}
+		return new Filter<>(predicate, all);
+	}
+}
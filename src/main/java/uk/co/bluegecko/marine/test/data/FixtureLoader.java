@@ -0,0 +1,142 @@
+package uk.co.bluegecko.marine.test.data;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.experimental.UtilityClass;
+import uk.co.bluegecko.marine.test.base.ObjectMappers;
+
+/**
+ * Streams entities from a JSON fixture straight into an {@link InMemoryRepository}.
+ * <p>
+ * The fixture is either a JSON array of entities, or newline-delimited JSON, with one entity per line. A single thread
+ * tokenizes the input with Jackson's incremental parser, and hands chunks of entities to a pool of workers, which bind
+ * them to the entity type and save them, so the fixture is never held in memory as a whole. At most two chunks per
+ * worker are in flight, and the parser waits for a worker to finish before reading further, keeping memory flat
+ * however large the fixture. Entities are saved in no particular order, so any ids generated for them are too.
+ */
+@UtilityClass
+public class FixtureLoader {
+
+	/**
+	 * The number of entities bound and saved together.
+	 */
+	public static final int CHUNK_SIZE = 1 << 10;
+
+	/**
+	 * Load a fixture file, using the {@link ObjectMappers#standard() standard} mapper and a worker per processor.
+	 *
+	 * @param file       the fixture file.
+	 * @param type       the type of the entities.
+	 * @param repository the repository to save the entities to.
+	 * @param <T>        the type of the entities.
+	 * @return the number of entities loaded.
+	 * @throws IOException if the file cannot be read, or an entity bound.
+	 */
+	public static <T> long load(final Path file, final Class<T> type, final InMemoryRepository<T, ?> repository)
+			throws IOException {
+		try (InputStream input = Files.newInputStream(file)) {
+			return load(input, ObjectMappers.standard(), type, repository, CHUNK_SIZE,
+					Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	/**
+	 * Load a fixture from a stream, which is left open.
+	 *
+	 * @param input       the fixture.
+	 * @param mapper      the mapper binding the entities.
+	 * @param type        the type of the entities.
+	 * @param repository  the repository to save the entities to.
+	 * @param chunkSize   the number of entities bound and saved together.
+	 * @param parallelism the number of workers.
+	 * @param <T>         the type of the entities.
+	 * @return the number of entities loaded.
+	 * @throws IOException if the fixture cannot be read, or an entity bound.
+	 */
+	public static <T> long load(final InputStream input, final ObjectMapper mapper, final Class<T> type,
+			final InMemoryRepository<T, ?> repository, final int chunkSize, final int parallelism) throws IOException {
+		if (chunkSize < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("Chunk size and parallelism must be positive");
+		}
+		JavaType javaType = mapper.constructType(type);
+		Semaphore permits = new Semaphore(parallelism * 2);
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		AtomicLong count = new AtomicLong();
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+		try (JsonParser parser = mapper.createParser(input)) {
+			parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+			JsonToken token = parser.nextToken();
+			boolean array = token == JsonToken.START_ARRAY;
+			if (array) {
+				token = parser.nextToken();
+			}
+			List<TokenBuffer> chunk = new ArrayList<>(chunkSize);
+			while (token != null && token != JsonToken.END_ARRAY && failure.get() == null) {
+				TokenBuffer entity = new TokenBuffer(parser);
+				entity.copyCurrentStructure(parser);
+				chunk.add(entity);
+				if (chunk.size() == chunkSize) {
+					submit(workers, permits, chunk, mapper, javaType, repository, count, failure);
+					chunk = new ArrayList<>(chunkSize);
+				}
+				token = parser.nextToken();
+			}
+			if (!chunk.isEmpty() && failure.get() == null) {
+				submit(workers, permits, chunk, mapper, javaType, repository, count, failure);
+			}
+		} finally {
+			workers.shutdown();
+			try {
+				workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		Exception exception = failure.get();
+		if (exception instanceof IOException io) {
+			throw io;
+		} else if (exception != null) {
+			throw (RuntimeException) exception;
+		}
+		return count.get();
+	}
+
+	private static <T> void submit(final ExecutorService workers, final Semaphore permits,
+			final List<TokenBuffer> chunk, final ObjectMapper mapper, final JavaType type,
+			final InMemoryRepository<T, ?> repository, final AtomicLong count,
+			final AtomicReference<Exception> failure) {
+		permits.acquireUninterruptibly();
+		workers.execute(() -> {
+			try {
+				List<T> entities = new ArrayList<>(chunk.size());
+				for (TokenBuffer buffer : chunk) {
+					try (JsonParser parser = buffer.asParser(mapper)) {
+						entities.add(mapper.readValue(parser, type));
+					}
+				}
+				repository.insert(entities, false);
+				count.addAndGet(entities.size());
+			} catch (IOException | RuntimeException ex) {
+				failure.compareAndSet(null, ex instanceof UncheckedIOException unchecked ? unchecked.getCause() : ex);
+			} finally {
+				permits.release();
+			}
+		});
+	}
+}
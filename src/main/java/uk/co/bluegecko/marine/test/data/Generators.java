@@ -4,32 +4,33 @@ import lombok.experimental.UtilityClass;
 
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
 @UtilityClass
 public class Generators {
 
-	public static Supplier<UUID> uuid(long most, long least) {
+	public static BlockSupplier<UUID> uuid(long most, long least) {
 		return new UUIDGenerator(most, least);
 	}
 
-	public static Supplier<UUID> uuid() {
+	public static BlockSupplier<UUID> uuid() {
 		return uuid(0, 0);
 	}
 
-	public static Supplier<Long> number(long initial) {
+	public static BlockSupplier<Long> number(long initial) {
 		return new LongGenerator(initial);
 	}
 
-	public static Supplier<Long> number() {
+	public static BlockSupplier<Long> number() {
 		return number(0);
 	}
 
-	public static Supplier<String> str(long initial, int length) {
+	public static BlockSupplier<String> str(long initial, int length) {
 		return new StringGenerator(initial, length);
 	}
 
-	public static Supplier<String> str() {
+	public static BlockSupplier<String> str() {
 		return str(0, 6);
 	}
 
@@ -37,7 +38,31 @@ public class Generators {
 		return () -> null;
 	}
 
-	private static class UUIDGenerator implements Supplier<UUID> {
+	/**
+	 * A supplier of sequential values that can also hand out a contiguous block of values in one atomic step, so
+	 * bulk inserts pay for a single atomic update rather than one per value.
+	 *
+	 * @param <T> the type of the values.
+	 */
+	public interface BlockSupplier<T> extends Supplier<T> {
+
+		/**
+		 * Reserve a block of consecutive values.
+		 *
+		 * @param count the number of values to reserve, must not be negative.
+		 * @return a function giving the value at each index of the block, from {@literal 0} to {@code count - 1}.
+		 */
+		IntFunction<T> reserve(int count);
+	}
+
+	private static long reserve(final AtomicLong next, final int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Count must not be negative");
+		}
+		return next.getAndAdd(count);
+	}
+
+	private static class UUIDGenerator implements BlockSupplier<UUID> {
 
 		private final long most;
 		private final AtomicLong least;
@@ -51,9 +76,15 @@ public class Generators {
 		public UUID get() {
 			return new UUID(most, least.getAndIncrement());
 		}
+
+		@Override
+		public IntFunction<UUID> reserve(final int count) {
+			long first = Generators.reserve(least, count);
+			return i -> new UUID(most, first + i);
+		}
 	}
 
-	private static class LongGenerator implements Supplier<Long> {
+	private static class LongGenerator implements BlockSupplier<Long> {
 
 		private final AtomicLong next;
 
@@ -65,9 +96,15 @@ public class Generators {
 		public Long get() {
 			return next.getAndIncrement();
 		}
+
+		@Override
+		public IntFunction<Long> reserve(final int count) {
+			long first = Generators.reserve(next, count);
+			return i -> first + i;
+		}
 	}
 
-	private static class StringGenerator implements Supplier<String> {
+	private static class StringGenerator implements BlockSupplier<String> {
 
 		private final AtomicLong next;
 		private final int length;
@@ -81,6 +118,12 @@ public class Generators {
 		public String get() {
 			return base26Encode(next.getAndIncrement(), length);
 		}
+
+		@Override
+		public IntFunction<String> reserve(final int count) {
+			long first = Generators.reserve(next, count);
+			return i -> base26Encode(first + i, length);
+		}
 	}
 
 	public static String base26Encode(final long value, final int length) {
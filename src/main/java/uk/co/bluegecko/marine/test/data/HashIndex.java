@@ -0,0 +1,89 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * An {@link Index} answering equality restrictions in constant time.
+ * <p>
+ * The key each id was indexed under is remembered, so an entity that has been changed in place is still removed
+ * from the right entry when it is saved again.
+ *
+ * @param <T>  the type of the entities.
+ * @param <ID> the type of the entity ids.
+ */
+final class HashIndex<T, ID> implements Index<T, ID> {
+
+	private static final Object NULL = new Object();
+
+	private final String property;
+	private final Function<? super T, ?> extractor;
+	private final Map<Object, Set<ID>> index = new ConcurrentHashMap<>();
+	private final Map<ID, Object> keys = new ConcurrentHashMap<>();
+
+	HashIndex(final String property, final Function<? super T, ?> extractor) {
+		this.property = property;
+		this.extractor = extractor;
+	}
+
+	@Override
+	public String property() {
+		return property;
+	}
+
+	@Override
+	public Index<T, ID> empty() {
+		return new HashIndex<>(property, extractor);
+	}
+
+	@Override
+	public void add(final ID id, final T entity) {
+		Object key = mask(extractor.apply(entity));
+		Object previous = keys.put(id, key);
+		if (previous != null && !previous.equals(key)) {
+			unlink(previous, id);
+		}
+		index.compute(key, (k, ids) -> {
+			Set<ID> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+			result.add(id);
+			return result;
+		});
+	}
+
+	@Override
+	public void remove(final ID id) {
+		Object previous = keys.remove(id);
+		if (previous != null) {
+			unlink(previous, id);
+		}
+	}
+
+	@Override
+	public void clear() {
+		index.clear();
+		keys.clear();
+	}
+
+	@Override
+	public Collection<ID> lookup(final Restriction restriction) {
+		if (restriction instanceof Restriction.Equal equal) {
+			Set<ID> ids = index.get(mask(equal.value()));
+			return ids != null ? ids : Set.of();
+		}
+		return null;
+	}
+
+	private void unlink(final Object key, final ID id) {
+		index.computeIfPresent(key, (k, ids) -> {
+			ids.remove(id);
+			return ids.isEmpty() ? null : ids;
+		});
+	}
+
+	private static Object mask(final Object key) {
+		return key != null ? key : NULL;
+	}
+}
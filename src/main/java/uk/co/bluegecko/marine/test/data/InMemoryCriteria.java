@@ -0,0 +1,697 @@
+package uk.co.bluegecko.marine.test.data;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.Attribute;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Compiles a JPA {@link Specification} into a {@link Filter}, by calling it with an in-memory implementation of the
+ * Criteria API.
+ * <p>
+ * Each call to the specification's {@link CriteriaBuilder} builds a node of an expression tree, which is evaluated
+ * against each entity with SQL's three-valued logic, so a comparison with {@literal null} is unknown, and only entities
+ * for which the whole predicate is true match. Equality and range comparisons of a property with a value, when every
+ * conjunct of the predicate, become {@link Restriction}s that an index can answer; as the property's type is not known
+ * here, the value is given as it is, and the index converts it to the property's type, or declines to answer, so an
+ * indexed query matches the same entities as a scan. Joins read the joined property, and a join to a collection matches
+ * an entity when any element matches. Orders given to the query become a {@link Sort}. A specification is compiled
+ * again on each query, which only builds the tree, so any values it reads when called, such as a parameter held in a
+ * field, are always current.
+ * <p>
+ * Supported are the logical operators, comparisons, {@code like}, {@code in}, null and collection tests, the string
+ * and arithmetic functions, literals, {@code distinct} and {@code orderBy}. Values should have the type of the
+ * property they are compared with, as no conversion is made for equality. Anything else, such as subqueries or the
+ * metamodel, throws {@link UnsupportedOperationException}.
+ */
+final class InMemoryCriteria {
+
+	private static final ClassLoader LOADER = Predicate.class.getClassLoader();
+	private static final CriteriaBuilder BUILDER = (CriteriaBuilder) Proxy.newProxyInstance(LOADER,
+			new Class<?>[]{CriteriaBuilder.class}, new Builder());
+
+	private InMemoryCriteria() {
+	}
+
+	/**
+	 * A compiled specification.
+	 *
+	 * @param filter the filter matching the entities.
+	 * @param sort   the order given to the query, or {@link Sort#unsorted()}.
+	 * @param <T>    the type of the entities.
+	 */
+	record Compiled<T>(Filter<T> filter, Sort sort) {
+
+	}
+
+	/**
+	 * Compile a specification.
+	 *
+	 * @param specification the specification, or {@literal null} to match every entity.
+	 * @param <T>           the type of the entities.
+	 * @return the compiled specification.
+	 * @throws UnsupportedOperationException if the specification uses an unsupported part of the Criteria API.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> Compiled<T> compile(final Specification<T> specification) {
+		if (specification == null) {
+			return new Compiled<>(Filter.of(entity -> true), Sort.unsorted());
+		}
+		Node root = Node.root();
+		Query query = new Query(root);
+		Predicate predicate = specification.toPredicate((Root<T>) root.proxy(Root.class),
+				(CriteriaQuery<?>) query.proxy, BUILDER);
+		if (predicate == null) {
+			return new Compiled<>(Filter.of(entity -> true), query.sort());
+		}
+		Node node = node(predicate);
+		return new Compiled<>(new Filter<>(entity -> Boolean.TRUE.equals(node.eval(entity)), node.restrictions),
+				query.sort());
+	}
+
+	private static Node node(final Object expression) {
+		if (expression != null && Proxy.isProxyClass(expression.getClass())
+				&& Proxy.getInvocationHandler(expression) instanceof Node node) {
+			return node;
+		}
+		throw new IllegalArgumentException(String.format("Expression `%s` was not built in memory", expression));
+	}
+
+	/**
+	 * An argument that may be an expression or a value.
+	 */
+	private static Node operand(final Object argument) {
+		return argument instanceof Expression<?> ? node(argument) : Node.literal(argument);
+	}
+
+	private static UnsupportedOperationException unsupported(final Method method) {
+		return new UnsupportedOperationException(
+				String.format("Criteria method `%s` is not supported in memory", method.getName()));
+	}
+
+	/**
+	 * Apply an operator to two values, either of which may be a {@link Multi}, in which case the result is true if any
+	 * of its values gives true, otherwise unknown if any gives unknown.
+	 */
+	private static Boolean test(final Object left, final Object right,
+			final BiFunction<Object, Object, Boolean> operator) {
+		if (left instanceof Multi multi) {
+			return any(multi, value -> test(value, right, operator));
+		}
+		if (right instanceof Multi multi) {
+			return any(multi, value -> test(left, value, operator));
+		}
+		return left == null || right == null ? null : operator.apply(left, right);
+	}
+
+	private static Boolean any(final Multi multi, final Function<Object, Boolean> test) {
+		boolean unknown = multi.values().isEmpty();
+		for (Object value : multi.values()) {
+			Boolean result = test.apply(value);
+			if (Boolean.TRUE.equals(result)) {
+				return true;
+			}
+			unknown |= result == null;
+		}
+		return unknown ? null : false;
+	}
+
+	/**
+	 * Compare two values by their natural order, and numbers of different types by value.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static int compare(final Object left, final Object right) {
+		if (left instanceof Number a && right instanceof Number b && a.getClass() != b.getClass()) {
+			return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+		}
+		return ((Comparable) left).compareTo(right);
+	}
+
+	private static Function<Object, Object> arithmetic(final Node left, final Node right,
+			final BiFunction<BigDecimal, BigDecimal, BigDecimal> operator) {
+		return entity -> {
+			Object a = left.eval(entity);
+			Object b = right.eval(entity);
+			if (a == null || b == null) {
+				return null;
+			}
+			BigDecimal result = operator.apply(new BigDecimal(a.toString()), new BigDecimal(b.toString()));
+			return narrow(result, a, b);
+		};
+	}
+
+	/**
+	 * Return an arithmetic result as the wider type of its operands.
+	 */
+	static Number narrow(final BigDecimal result, final Object a, final Object b) {
+		if (a instanceof BigDecimal || b instanceof BigDecimal) {
+			return result;
+		} else if (a instanceof Double || b instanceof Double || a instanceof Float || b instanceof Float) {
+			return result.doubleValue();
+		} else if (a instanceof Long || b instanceof Long) {
+			return result.longValue();
+		}
+		return result.intValue();
+	}
+
+	/**
+	 * The values reached through a join to a collection.
+	 */
+	private record Multi(List<Object> values) {
+
+	}
+
+	/**
+	 * A node of the expression tree, and the handler of the proxies that present it as a Criteria API type.
+	 */
+	private static final class Node implements InvocationHandler {
+
+		private final Function<Object, Object> evaluator;
+		private final String path;
+		private final Node parent;
+		private final Predicate.BooleanOperator operator;
+		private final List<Node> expressions;
+		private final boolean negated;
+		private final List<Restriction> restrictions;
+		private final List<Node> values;
+		private Object proxy;
+		private String alias;
+		private boolean constant;
+
+		private Node(final Function<Object, Object> evaluator, final String path, final Node parent,
+				final Predicate.BooleanOperator operator, final List<Node> expressions, final boolean negated,
+				final List<Restriction> restrictions, final List<Node> values) {
+			this.evaluator = evaluator;
+			this.path = path;
+			this.parent = parent;
+			this.operator = operator;
+			this.expressions = expressions;
+			this.negated = negated;
+			this.restrictions = restrictions;
+			this.values = values;
+		}
+
+		private static Node root() {
+			return new Node(entity -> entity, "", null, null, List.of(), false, List.of(), null);
+		}
+
+		private static Node literal(final Object value) {
+			Node literal = new Node(entity -> value, null, null, null, List.of(), false, List.of(), null);
+			literal.constant = true;
+			return literal;
+		}
+
+		private static Node expression(final Function<Object, Object> evaluator) {
+			return new Node(evaluator, null, null, null, List.of(), false, List.of(), null);
+		}
+
+		private static Node predicate(final Function<Object, Object> evaluator, final List<Restriction> restrictions) {
+			return new Node(evaluator, null, null, Predicate.BooleanOperator.AND, List.of(), false, restrictions, null);
+		}
+
+		/**
+		 * A predicate combining others with a logical operator.
+		 */
+		private static Node compound(final Predicate.BooleanOperator operator, final List<Node> expressions) {
+			boolean and = operator == Predicate.BooleanOperator.AND;
+			Function<Object, Object> evaluator = entity -> {
+				boolean unknown = false;
+				for (Node expression : expressions) {
+					Object result = expression.eval(entity);
+					if (result == null) {
+						unknown = true;
+					} else if ((Boolean) result != and) {
+						return !and;
+					}
+				}
+				return unknown ? null : and;
+			};
+			List<Restriction> restrictions = and
+					? expressions.stream().flatMap(expression -> expression.restrictions.stream()).toList()
+					: List.of();
+			return new Node(evaluator, null, null, operator, expressions, false, restrictions, null);
+		}
+
+		/**
+		 * A comparison of two operands, with a restriction if the left is a property and the right a value.
+		 */
+		private static Node comparison(final Node left, final Node right, final BiFunction<Object, Object, Boolean> test,
+				final Function<Comparable<?>, Restriction> restriction) {
+			List<Restriction> restrictions = left.restrictable() && right.constant
+					&& right.eval(null) instanceof Comparable<?> value && restriction != null
+					? List.of(restriction.apply(value)) : List.of();
+			return predicate(entity -> test(left.eval(entity), right.eval(entity), test), restrictions);
+		}
+
+		private Object eval(final Object entity) {
+			return evaluator.apply(entity);
+		}
+
+		/**
+		 * Whether the node is a property path of plain reads from the root, that an index could answer.
+		 */
+		private boolean restrictable() {
+			return path != null && !path.isEmpty() && !path.contains("*");
+		}
+
+		private Object proxy(final Class<?> type) {
+			if (proxy == null) {
+				proxy = Proxy.newProxyInstance(LOADER, new Class<?>[]{type}, this);
+			}
+			return proxy;
+		}
+
+		private Node child(final String name, final boolean join) {
+			String childPath = path.isEmpty() ? name : path + "." + name;
+			Function<Object, Object> read = PropertyAccessor.of(name);
+			Function<Object, Object> evaluator = entity -> read(eval(entity), read, join);
+			Node child = new Node(evaluator, join ? childPath + "*" : childPath, this, null, List.of(), false,
+					List.of(), null);
+			child.proxy(join ? Join.class : Path.class);
+			return child;
+		}
+
+		private static Object read(final Object value, final Function<Object, Object> read, final boolean join) {
+			if (value == null) {
+				return null;
+			}
+			if (value instanceof Multi multi) {
+				List<Object> results = new ArrayList<>();
+				for (Object element : multi.values()) {
+					Object result = read(element, read, join);
+					if (result instanceof Multi nested) {
+						results.addAll(nested.values());
+					} else if (result != null) {
+						results.add(result);
+					}
+				}
+				return new Multi(results);
+			}
+			Object result = read.apply(value);
+			return join && result instanceof Collection<?> collection ? new Multi(new ArrayList<>(collection)) : result;
+		}
+
+		private Node not() {
+			return new Node(entity -> {
+				Object result = eval(entity);
+				return result == null ? null : !(Boolean) result;
+			}, null, null, operator != null ? operator : Predicate.BooleanOperator.AND, expressions, !negated,
+					List.of(), null);
+		}
+
+		/**
+		 * A predicate testing whether the node's value is one of the candidates, which may be added to later.
+		 */
+		private Node in(final List<Node> candidates) {
+			return new Node(entity -> {
+				Object value = eval(entity);
+				boolean unknown = false;
+				for (Node candidate : candidates) {
+					Object other = candidate.eval(entity);
+					Collection<?> options = other instanceof Collection<?> collection ? collection : Arrays.asList(other);
+					for (Object option : options) {
+						Boolean result = test(value, option, Object::equals);
+						if (Boolean.TRUE.equals(result)) {
+							return true;
+						}
+						unknown |= result == null;
+					}
+				}
+				return unknown ? null : false;
+			}, null, this, Predicate.BooleanOperator.AND, List.of(), false, List.of(), candidates);
+		}
+
+		@Override
+		public Object invoke(final Object self, final Method method, final Object[] args) {
+			String name = method.getName();
+			int count = args != null ? args.length : 0;
+			switch (name) {
+				case "equals":
+					return self == args[0];
+				case "hashCode":
+					return System.identityHashCode(self);
+				case "toString":
+					return path != null ? path.replace("*", "") : String.format("Expression@%x", hashCode());
+				case "get":
+					if (args[0] instanceof Attribute<?, ?> attribute) {
+						return child(attribute.getName(), false).proxy;
+					}
+					return child((String) args[0], false).proxy;
+				case "join":
+					String attribute = args[0] instanceof Attribute<?, ?> a ? a.getName() : (String) args[0];
+					return child(attribute, true).proxy;
+				case "fetch":
+					return Proxy.newProxyInstance(LOADER, new Class<?>[]{Fetch.class}, this);
+				case "getParentPath":
+					return parent != null ? parent.proxy : null;
+				case "isNull":
+					return predicate(entity -> eval(entity) == null, List.of()).proxy(Predicate.class);
+				case "isNotNull":
+					return predicate(entity -> eval(entity) != null, List.of()).proxy(Predicate.class);
+				case "in":
+					if (count == 1 && args[0] instanceof Collection<?> collection) {
+						return in(collection.stream().map(Node::literal).collect(Collectors.toList())).proxy(Predicate.class);
+					}
+					Object[] items = count == 1 && args[0] instanceof Object[] array ? array : args;
+					return in(Arrays.stream(items).map(InMemoryCriteria::operand).collect(Collectors.toList()))
+							.proxy(Predicate.class);
+				case "value":
+					values.add(operand(args[0]));
+					return self;
+				case "getExpression":
+					return parent.proxy;
+				case "as":
+				case "distinct":
+					return self;
+				case "alias":
+					alias = (String) args[0];
+					return self;
+				case "getAlias":
+					return alias;
+				case "getJavaType":
+					return null;
+				case "isCompoundSelection":
+				case "isCorrelated":
+					return false;
+				case "getCompoundSelectionItems":
+					throw new IllegalStateException("Not a compound selection");
+				case "getJoins":
+				case "getFetches":
+					return Set.of();
+				case "not":
+					return not().proxy(Predicate.class);
+				case "isNegated":
+					return negated;
+				case "getOperator":
+					return operator;
+				case "getExpressions":
+					return expressions.stream().map(expression -> expression.proxy).toList();
+				default:
+					throw unsupported(method);
+			}
+		}
+	}
+
+	/**
+	 * The handler of the {@link CriteriaQuery} proxy, recording orders and ignoring everything the repository does
+	 * itself.
+	 */
+	private static final class Query implements InvocationHandler {
+
+		private final Node root;
+		private final Object proxy;
+		private List<Order> orders = List.of();
+
+		private Query(final Node root) {
+			this.root = root;
+			this.proxy = Proxy.newProxyInstance(LOADER, new Class<?>[]{CriteriaQuery.class}, this);
+		}
+
+		private Sort sort() {
+			List<Sort.Order> sort = new ArrayList<>();
+			for (Order order : orders) {
+				Node node = node(order.getExpression());
+				if (!node.restrictable()) {
+					throw new UnsupportedOperationException("Only properties can be ordered by in memory");
+				}
+				sort.add(order.isAscending() ? Sort.Order.asc(node.path) : Sort.Order.desc(node.path));
+			}
+			return Sort.by(sort);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object invoke(final Object self, final Method method, final Object[] args) {
+			switch (method.getName()) {
+				case "equals":
+					return self == args[0];
+				case "hashCode":
+					return System.identityHashCode(self);
+				case "toString":
+					return "CriteriaQuery";
+				case "distinct":
+				case "where":
+				case "select":
+				case "multiselect":
+					return self;
+				case "orderBy":
+					orders = args[0] instanceof List<?> list ? (List<Order>) list : List.of((Order[]) args[0]);
+					return self;
+				case "getOrderList":
+					return orders;
+				case "getResultType":
+					return Object.class;
+				case "getRoots":
+					return Set.of(root.proxy);
+				case "from":
+					return root.proxy;
+				case "isDistinct":
+					return false;
+				case "getRestriction":
+					return null;
+				default:
+					throw unsupported(method);
+			}
+		}
+	}
+
+	/**
+	 * The handler of the {@link CriteriaBuilder} proxy.
+	 */
+	private static final class Builder implements InvocationHandler {
+
+		@Override
+		public Object invoke(final Object self, final Method method, final Object[] args) {
+			String name = method.getName();
+			int count = args != null ? args.length : 0;
+			switch (name) {
+				case "equals":
+					return self == args[0];
+				case "hashCode":
+					return System.identityHashCode(self);
+				case "toString":
+					return "CriteriaBuilder";
+				case "and":
+				case "or":
+					Object[] operands = count == 1 && args[0] instanceof Object[] array ? array : args;
+					return Node.compound(name.equals("and") ? Predicate.BooleanOperator.AND : Predicate.BooleanOperator.OR,
+							Arrays.stream(operands).map(InMemoryCriteria::node).toList()).proxy(Predicate.class);
+				case "conjunction":
+					return Node.compound(Predicate.BooleanOperator.AND, List.of()).proxy(Predicate.class);
+				case "disjunction":
+					return Node.compound(Predicate.BooleanOperator.OR, List.of()).proxy(Predicate.class);
+				case "not":
+					return node(args[0]).not().proxy(Predicate.class);
+				case "isTrue":
+					return comparison(args[0], Boolean.TRUE, Object::equals, null);
+				case "isFalse":
+					return comparison(args[0], Boolean.FALSE, Object::equals, null);
+				case "isNull":
+				case "isNotNull":
+					Node operand = node(args[0]);
+					boolean isNull = name.equals("isNull");
+					return Node.predicate(entity -> (operand.eval(entity) == null) == isNull, List.of())
+							.proxy(Predicate.class);
+				case "equal":
+					return comparison(args[0], args[1], Object::equals, value -> new Restriction.Equal(path(args[0]),
+							value));
+				case "notEqual":
+					return comparison(args[0], args[1], (a, b) -> !a.equals(b), null);
+				case "greaterThan":
+				case "gt":
+					return comparison(args[0], args[1], (a, b) -> compare(a, b) > 0,
+							value -> new Restriction.Range(path(args[0]), value, false, null, false));
+				case "greaterThanOrEqualTo":
+				case "ge":
+					return comparison(args[0], args[1], (a, b) -> compare(a, b) >= 0,
+							value -> new Restriction.Range(path(args[0]), value, true, null, false));
+				case "lessThan":
+				case "lt":
+					return comparison(args[0], args[1], (a, b) -> compare(a, b) < 0,
+							value -> new Restriction.Range(path(args[0]), null, false, value, false));
+				case "lessThanOrEqualTo":
+				case "le":
+					return comparison(args[0], args[1], (a, b) -> compare(a, b) <= 0,
+							value -> new Restriction.Range(path(args[0]), null, false, value, true));
+				case "between":
+					return between(args[0], args[1], args[2]);
+				case "like":
+				case "notLike":
+					return like(args, name.equals("notLike"));
+				case "in":
+					return node(args[0]).in(new ArrayList<>()).proxy(CriteriaBuilder.In.class);
+				case "lower":
+					return function(args[0], value -> ((String) value).toLowerCase());
+				case "upper":
+					return function(args[0], value -> ((String) value).toUpperCase());
+				case "length":
+					return function(args[0], value -> ((String) value).length());
+				case "trim":
+					if (count != 1) {
+						throw unsupported(method);
+					}
+					return function(args[0], value -> ((String) value).trim());
+				case "concat":
+					if (count != 2) {
+						throw unsupported(method);
+					}
+					Node first = operand(args[0]);
+					Node second = operand(args[1]);
+					return Node.expression(entity -> {
+						Object a = first.eval(entity);
+						Object b = second.eval(entity);
+						return a == null || b == null ? null : a.toString() + b;
+					}).proxy(Expression.class);
+				case "abs":
+					return function(args[0], value -> narrow(new BigDecimal(value.toString()).abs(), value, value));
+				case "neg":
+					return function(args[0], value -> narrow(new BigDecimal(value.toString()).negate(), value, value));
+				case "sum":
+				case "diff":
+				case "prod":
+				case "quot":
+					if (count != 2) {
+						throw unsupported(method);
+					}
+					BiFunction<BigDecimal, BigDecimal, BigDecimal> operator = switch (name) {
+						case "sum" -> BigDecimal::add;
+						case "diff" -> BigDecimal::subtract;
+						case "prod" -> BigDecimal::multiply;
+						default -> (a, b) -> a.divide(b, MathContext.DECIMAL64);
+					};
+					return Node.expression(arithmetic(operand(args[0]), operand(args[1]), operator))
+							.proxy(Expression.class);
+				case "coalesce":
+					if (count != 2) {
+						throw unsupported(method);
+					}
+					Node preferred = operand(args[0]);
+					Node fallback = operand(args[1]);
+					return Node.expression(entity -> {
+						Object value = preferred.eval(entity);
+						return value != null ? value : fallback.eval(entity);
+					}).proxy(Expression.class);
+				case "literal":
+					return Node.literal(args[0]).proxy(Expression.class);
+				case "nullLiteral":
+					return Node.literal(null).proxy(Expression.class);
+				case "size":
+					return function(args[0], value -> ((Collection<?>) value).size());
+				case "isEmpty":
+				case "isNotEmpty":
+					Node collection = node(args[0]);
+					boolean empty = name.equals("isEmpty");
+					return Node.predicate(entity -> {
+						Object value = collection.eval(entity);
+						return value == null ? empty : ((Collection<?>) value).isEmpty() == empty;
+					}, List.of()).proxy(Predicate.class);
+				case "isMember":
+				case "isNotMember":
+					Node element = operand(args[0]);
+					Node members = node(args[1]);
+					boolean member = name.equals("isMember");
+					return Node.predicate(entity -> {
+						Object value = members.eval(entity);
+						return value == null ? null : ((Collection<?>) value).contains(element.eval(entity)) == member;
+					}, List.of()).proxy(Predicate.class);
+				case "asc":
+				case "desc":
+					return order(node(args[0]), name.equals("asc"));
+				default:
+					throw unsupported(method);
+			}
+		}
+
+		private static String path(final Object expression) {
+			return node(expression).path;
+		}
+
+		private static Object comparison(final Object left, final Object right,
+				final BiFunction<Object, Object, Boolean> test, final Function<Comparable<?>, Restriction> restriction) {
+			return Node.comparison(node(left), operand(right), test, restriction).proxy(Predicate.class);
+		}
+
+		private static Object between(final Object value, final Object lower, final Object upper) {
+			Node node = node(value);
+			Node from = operand(lower);
+			Node to = operand(upper);
+			List<Restriction> restrictions = node.restrictable() && lower instanceof Comparable<?> low
+					&& !(lower instanceof Expression<?>) && upper instanceof Comparable<?> high
+					&& !(upper instanceof Expression<?>)
+					? List.of(new Restriction.Range(node.path, low, true, high, true))
+					: List.of();
+			return Node.predicate(entity -> {
+				Object actual = node.eval(entity);
+				Boolean above = test(actual, from.eval(entity), (a, b) -> compare(a, b) >= 0);
+				Boolean below = test(actual, to.eval(entity), (a, b) -> compare(a, b) <= 0);
+				if (Boolean.FALSE.equals(above) || Boolean.FALSE.equals(below)) {
+					return false;
+				}
+				return above == null || below == null ? null : true;
+			}, restrictions).proxy(Predicate.class);
+		}
+
+		private static Object like(final Object[] args, final boolean not) {
+			Node value = node(args[0]);
+			Node pattern = operand(args[1]);
+			Character escape = args.length > 2
+					? (args[2] instanceof Expression<?> e ? (Character) node(e).eval(null) : (Character) args[2])
+					: null;
+			Map<String, java.util.function.Predicate<String>> compiled = new ConcurrentHashMap<>();
+			return Node.predicate(entity -> {
+				Object like = pattern.eval(entity);
+				return test(value.eval(entity), like, (a, b) -> compiled
+						.computeIfAbsent((String) b, key -> StringMatchers.like(key, escape, false))
+						.test((String) a) != not);
+			}, List.of()).proxy(Predicate.class);
+		}
+
+		private static Object function(final Object argument, final Function<Object, Object> function) {
+			Node operand = operand(argument);
+			Node result = Node.expression(entity -> {
+				Object value = operand.eval(entity);
+				if (value instanceof Multi multi) {
+					return new Multi(multi.values().stream().map(function).toList());
+				}
+				return value == null ? null : function.apply(value);
+			});
+			return result.proxy(Expression.class);
+		}
+
+		private static Object order(final Node expression, final boolean ascending) {
+			return Proxy.newProxyInstance(LOADER, new Class<?>[]{Order.class}, (self, method, args) -> switch (
+					method.getName()) {
+				case "isAscending" -> ascending;
+				case "getExpression" -> expression.proxy;
+				case "reverse" -> order(expression, !ascending);
+				case "equals" -> self == args[0];
+				case "hashCode" -> System.identityHashCode(self);
+				case "toString" -> expression + (ascending ? " ASC" : " DESC");
+				default -> throw unsupported(method);
+			});
+		}
+	}
+}
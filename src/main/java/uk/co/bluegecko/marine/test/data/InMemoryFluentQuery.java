@@ -0,0 +1,181 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.NonNull;
+import org.springframework.beans.BeanUtils;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.data.repository.query.FluentQuery;
+
+/**
+ * A {@link FluentQuery.FetchableFluentQuery} over a lazily evaluated stream of matching entities. Each terminal
+ * operation evaluates the query again, so results always reflect the current state of the repository.
+ * <p>
+ * Unsorted {@link #stream()}, {@link #first()} and {@link #exists()} stop as soon as they have their answer, and a
+ * sorted {@link #first()} makes a single pass without collecting the matches.
+ *
+ * @param <S> the type of the matching entities.
+ * @param <R> the result type.
+ */
+final class InMemoryFluentQuery<S, R> implements FluentQuery.FetchableFluentQuery<R> {
+
+	private static final ProjectionFactory PROJECTIONS = new SpelAwareProxyProjectionFactory();
+
+	private final Supplier<Stream<S>> source;
+	private final Sort sort;
+	private final int limit;
+	private final Function<? super S, ? extends R> projection;
+
+	private InMemoryFluentQuery(final Supplier<Stream<S>> source, final Sort sort, final int limit,
+			final Function<? super S, ? extends R> projection) {
+		this.source = source;
+		this.sort = sort;
+		this.limit = limit;
+		this.projection = projection;
+	}
+
+	/**
+	 * Create a query returning the matching entities themselves.
+	 *
+	 * @param source supply a fresh stream of the matching entities.
+	 * @param <S>    the type of the matching entities.
+	 * @return an unsorted, unlimited query.
+	 */
+	static <S> InMemoryFluentQuery<S, S> of(final Supplier<Stream<S>> source) {
+		return new InMemoryFluentQuery<>(source, Sort.unsorted(), 0, Function.identity());
+	}
+
+	@Override
+	public @NonNull FluentQuery.FetchableFluentQuery<R> sortBy(@NonNull final Sort sort) {
+		return new InMemoryFluentQuery<>(source, this.sort.and(sort), limit, projection);
+	}
+
+	/**
+	 * Limit the number of results.
+	 *
+	 * @param limit the maximum number of results, must not be negative.
+	 * @return a new query with the limit applied.
+	 */
+	@Override
+	public @NonNull FluentQuery.FetchableFluentQuery<R> limit(final int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("Limit must not be negative");
+		}
+		return new InMemoryFluentQuery<>(source, sort, limit, projection);
+	}
+
+	@Override
+	public <N> @NonNull FluentQuery.FetchableFluentQuery<N> as(@NonNull final Class<N> resultType) {
+		return new InMemoryFluentQuery<>(source, sort, limit, projection(resultType));
+	}
+
+	/**
+	 * All properties are already in memory, so the projection hint has no effect.
+	 *
+	 * @param properties the properties to fetch.
+	 * @return this query.
+	 */
+	@Override
+	public @NonNull FluentQuery.FetchableFluentQuery<R> project(@NonNull final Collection<String> properties) {
+		return this;
+	}
+
+	@Override
+	public R oneValue() {
+		Iterator<S> matches = source.get().iterator();
+		if (!matches.hasNext()) {
+			return null;
+		}
+		S match = matches.next();
+		if (matches.hasNext()) {
+			throw new IncorrectResultSizeDataAccessException("Query matches more than one entity", 1);
+		}
+		return projection.apply(match);
+	}
+
+	@Override
+	public R firstValue() {
+		Stream<S> matches = source.get();
+		Optional<S> first = sort.isSorted() ? matches.min(SortComparators.of(sort)) : matches.findFirst();
+		return first.map(projection).orElse(null);
+	}
+
+	@Override
+	public @NonNull List<R> all() {
+		if (sort.isSorted() && limit > 0) {
+			return InMemoryRepository.select(source.get(), Long.MAX_VALUE, PageRequest.of(0, limit, sort))
+					.stream().map(projection).collect(Collectors.toList());
+		}
+		return stream().collect(Collectors.toList());
+	}
+
+	@Override
+	public @NonNull Page<R> page(@NonNull final Pageable pageable) {
+		if (pageable.isUnpaged()) {
+			return new PageImpl<>(all());
+		}
+		List<S> matches = source.get().collect(Collectors.toList());
+		Pageable sorted = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),
+				sort.and(pageable.getSort()));
+		return new PageImpl<>(InMemoryRepository.select(matches.stream(), matches.size(), sorted)
+				.stream().map(projection).collect(Collectors.toList()), pageable, matches.size());
+	}
+
+	@Override
+	public @NonNull Stream<R> stream() {
+		Stream<S> matches = source.get();
+		if (sort.isSorted()) {
+			matches = matches.sorted(SortComparators.of(sort));
+		}
+		if (limit > 0) {
+			matches = matches.limit(limit);
+		}
+		return matches.map(projection);
+	}
+
+	@Override
+	public long count() {
+		Stream<S> matches = source.get();
+		return (limit > 0 ? matches.limit(limit) : matches).count();
+	}
+
+	@Override
+	public boolean exists() {
+		return source.get().findAny().isPresent();
+	}
+
+	/**
+	 * Get a function projecting entities to a result type: an interface is backed by the entity, and a class is
+	 * instantiated and has the matching properties copied from the entity.
+	 *
+	 * @param resultType the type to project to.
+	 * @param <N>        the result type.
+	 * @return the projection.
+	 */
+	static <N> Function<Object, N> projection(final Class<N> resultType) {
+		return entity -> {
+			if (resultType.isInstance(entity)) {
+				return resultType.cast(entity);
+			}
+			if (resultType.isInterface()) {
+				return PROJECTIONS.createProjection(resultType, entity);
+			}
+			N result = BeanUtils.instantiateClass(resultType);
+			BeanUtils.copyProperties(entity, result);
+			return result;
+		};
+	}
+}
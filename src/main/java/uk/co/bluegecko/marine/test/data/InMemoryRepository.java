@@ -1,15 +1,26 @@
 package uk.co.bluegecko.marine.test.data;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.EntityManager;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -22,15 +33,36 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.repository.query.FluentQuery;
+import uk.co.bluegecko.marine.test.data.RepositoryMetrics.Operation;
 
-public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
+public class InMemoryRepository<T, ID> implements JpaRepository<T, ID>, JpaSpecificationExecutor<T> {
 
 	protected final Function<T, ID> extractor;
 	protected final BiConsumer<ID, T> inserter;
 	protected final Supplier<ID> generator;
-	protected final Map<ID, T> entities = new ConcurrentHashMap<>();
+	protected final Map<ID, T> entities;
+	protected final Map<String, Index<T, ID>> indexes = new ConcurrentHashMap<>();
+	protected Function<T, Long> versionExtractor;
+	protected BiConsumer<Long, T> versionInserter;
+	protected final List<RepositoryListener<? super T, ? super ID>> listeners = new CopyOnWriteArrayList<>();
+	protected volatile RepositoryMetrics metrics;
+	private volatile ChangePublisher<T, ID> publisher;
+	private volatile List<Index<T, ID>> deferred = List.of();
+	private volatile List<Index<T, ID>> maintained = List.of();
+
+	/**
+	 * Result size above which sorting switches to {@link Arrays#parallelSort}.
+	 */
+	protected static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+
+	/**
+	 * The actions listeners of the changes in progress on each thread have left to run once the changes are applied.
+	 */
+	private static final ThreadLocal<AfterChange> AFTER_CHANGE = ThreadLocal.withInitial(AfterChange::new);
 
 	@SafeVarargs
 	public InMemoryRepository(final Function<T, ID> extractor,
@@ -52,20 +84,312 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 			final BiConsumer<ID, T> inserter,
 			final Supplier<ID> generator,
 			final Map<ID, T> entities) {
-		this(extractor, inserter, generator);
+		this(entities.size(), extractor, inserter, generator);
 		this.entities.putAll(entities);
 	}
 
 	public InMemoryRepository(final Function<T, ID> extractor,
 			final BiConsumer<ID, T> inserter,
 			final Supplier<ID> generator) {
+		this(16, extractor, inserter, generator);
+	}
+
+	/**
+	 * Create an empty repository, with storage presized for the expected number of entities so that seeding it does
+	 * not repeatedly resize the storage. The size comes first so that it can't be taken for an entity.
+	 *
+	 * @param expectedSize the expected number of entities.
+	 * @param extractor    extract the id from an entity.
+	 * @param inserter     set the id of an entity.
+	 * @param generator    generate ids for new entities.
+	 */
+	public InMemoryRepository(final int expectedSize,
+			final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator) {
+		this(new ConcurrentHashMap<>(Math.max(expectedSize, 16)), extractor, inserter, generator);
+	}
+
+	/**
+	 * Create an empty repository using the given map as its storage. The map must be safe for concurrent use, and its
+	 * {@code compute} methods must be atomic, as for a {@link java.util.concurrent.ConcurrentMap}.
+	 *
+	 * @param storage   the map to hold the entities, by id.
+	 * @param extractor extract the id from an entity.
+	 * @param inserter  set the id of an entity.
+	 * @param generator generate ids for new entities.
+	 */
+	protected InMemoryRepository(final Map<ID, T> storage,
+			final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator) {
 		this.extractor = extractor;
 		this.inserter = inserter;
 		this.generator = generator;
+		this.entities = storage;
+	}
+
+	/**
+	 * Create an empty repository with persistent storage, so that {@link #fork()} takes constant time however many
+	 * entities it holds. Seed it, then fork it for each test.
+	 *
+	 * @param extractor extract the id from an entity.
+	 * @param inserter  set the id of an entity.
+	 * @param generator generate ids for new entities.
+	 * @param <T>       the type of the entities.
+	 * @param <ID>      the type of the entity ids.
+	 * @return the repository.
+	 */
+	public static <T, ID> InMemoryRepository<T, ID> persistent(final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator) {
+		return new InMemoryRepository<>(new TrieMap<>(), extractor, inserter, generator);
+	}
+
+	/**
+	 * Create an independent repository holding the same entities. Changes to either repository are not seen by the
+	 * other, though the entity instances themselves are shared, so entities should be replaced rather than changed in
+	 * place.
+	 * <p>
+	 * A {@link #persistent persistent} repository forks in constant time, sharing its storage with the fork until
+	 * either changes it, and then copying only the changed paths. Other repositories copy their entities once, into a
+	 * fork that is itself persistent. Indexes and versioning are carried over, with each index rebuilt on the first
+	 * query of the fork that needs one. The fork shares the id generator, so ids stay unique across forks.
+	 *
+	 * @return the fork.
+	 */
+	public InMemoryRepository<T, ID> fork() {
+		Map<ID, T> storage = entities instanceof TrieMap<ID, T> trie ? trie.fork() : new TrieMap<>(entities);
+		InMemoryRepository<T, ID> fork = new InMemoryRepository<>(storage, extractor, inserter, generator);
+		fork.versioned(versionExtractor, versionInserter);
+		List<Index<T, ID>> definitions = new ArrayList<>(deferred);
+		definitions.addAll(indexes.values());
+		fork.deferred = definitions.stream().map(Index::empty).toList();
+		return fork;
+	}
+
+	/**
+	 * Write the entities to a compact snapshot file, which {@link #open} maps back into memory. Entities and ids are
+	 * encoded as JSON, so both must round-trip through the mapper. Indexes and versioning are not written.
+	 *
+	 * @param file   the file to write, replacing any existing file.
+	 * @param mapper the mapper encoding the entities and ids.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void snapshot(final Path file, final ObjectMapper mapper) throws IOException {
+		SnapshotMap.write(entities, file, mapper);
+	}
+
+	/**
+	 * Open a repository over a snapshot file written by {@link #snapshot}. The file is memory-mapped and only the ids
+	 * decoded, with each entity decoded on first access, so a large fixture opens in a fraction of the time it takes
+	 * to rebuild, and its pages are shared by every test JVM that maps it. Changes are held in memory and never
+	 * written back to the file. Declaring an index decodes every entity.
+	 *
+	 * @param file      the snapshot file.
+	 * @param mapper    the mapper decoding the entities and ids.
+	 * @param type      the type of the entities.
+	 * @param idType    the type of the entity ids.
+	 * @param extractor extract the id from an entity.
+	 * @param inserter  set the id of an entity.
+	 * @param generator generate ids for new entities.
+	 * @param <T>       the type of the entities.
+	 * @param <ID>      the type of the entity ids.
+	 * @return the repository.
+	 * @throws IOException if the file cannot be read, or is not a snapshot.
+	 */
+	public static <T, ID> InMemoryRepository<T, ID> open(final Path file, final ObjectMapper mapper,
+			final Class<T> type, final Class<ID> idType,
+			final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator) throws IOException {
+		SnapshotMap<ID, T> storage = SnapshotMap.open(file, mapper, mapper.constructType(idType),
+				mapper.constructType(type));
+		return new InMemoryRepository<>(storage, extractor, inserter, generator);
 	}
 
+	/**
+	 * Add entities to the repository, assigning ids to any without one. The stream is consumed in chunks, so it is
+	 * never held in memory as a whole.
+	 *
+	 * @param entities the entities to add.
+	 * @return this repository.
+	 * @see #saveAll(Iterable)
+	 * @see FixtureLoader
+	 */
 	public InMemoryRepository<T, ID> populate(Stream<T> entities) {
-		this.entities.putAll(entities.collect(Collectors.toMap(extractor, e -> e)));
+		List<T> chunk = new ArrayList<>(FixtureLoader.CHUNK_SIZE);
+		for (Iterator<T> iterator = entities.iterator(); iterator.hasNext(); ) {
+			chunk.add(iterator.next());
+			if (chunk.size() == FixtureLoader.CHUNK_SIZE) {
+				insert(chunk, false);
+				chunk.clear();
+			}
+		}
+		insert(chunk, false);
+		return this;
+	}
+
+	/**
+	 * Declare a hash index on a property, so that equality queries on it can avoid scanning every entity. Any
+	 * existing entities are indexed immediately, and the index is kept up to date by all further changes.
+	 *
+	 * @param property  the property path, as used by {@link Example} and derived queries.
+	 * @param extractor extract the indexed value from an entity.
+	 * @return this repository.
+	 */
+	public InMemoryRepository<T, ID> index(final String property, final Function<? super T, ?> extractor) {
+		return index(new HashIndex<>(property, extractor));
+	}
+
+	/**
+	 * Declare a hash index on a property, reading the property by name.
+	 *
+	 * @param property the property path, as used by {@link Example} and derived queries.
+	 * @return this repository.
+	 * @see #index(String, Function)
+	 */
+	public InMemoryRepository<T, ID> index(final String property) {
+		return index(property, PropertyAccessor.of(property));
+	}
+
+	/**
+	 * Declare an ordered index on a {@link Comparable} property, so that equality and range queries on it can avoid
+	 * scanning every entity, and sorting by it can avoid a sort. Any existing entities are indexed immediately, and the
+	 * index is kept up to date by all further changes.
+	 *
+	 * @param property  the property path, as used by {@link Sort} and derived queries.
+	 * @param extractor extract the indexed value from an entity.
+	 * @return this repository.
+	 */
+	public InMemoryRepository<T, ID> orderedIndex(final String property,
+			final Function<? super T, ? extends Comparable<?>> extractor) {
+		return index(new OrderedIndex<>(property, extractor));
+	}
+
+	/**
+	 * Declare an ordered index on a {@link Comparable} property, reading the property by name.
+	 *
+	 * @param property the property path, as used by {@link Sort} and derived queries.
+	 * @return this repository.
+	 * @see #orderedIndex(String, Function)
+	 */
+	public InMemoryRepository<T, ID> orderedIndex(final String property) {
+		PropertyAccessor accessor = PropertyAccessor.of(property);
+		return orderedIndex(property, e -> (Comparable<?>) accessor.apply(e));
+	}
+
+	/**
+	 * Enable optimistic locking on a version property, in the same way as a JPA {@code @Version} attribute.
+	 * <p>
+	 * A new entity is stored with version {@literal 0}. Saving or deleting an existing entity checks its version
+	 * against the stored one, and saving increments it, in a single atomic step per entity, so concurrent writers to
+	 * the same entity conflict just as they would in the database, without taking a lock across the repository.
+	 * Entities are held by reference, so, as with separate persistence contexts, each writer must save its own copy.
+	 *
+	 * @param extractor extract the version from an entity, {@literal null} if the entity is new.
+	 * @param inserter  set the version of an entity.
+	 * @return this repository.
+	 */
+	public InMemoryRepository<T, ID> versioned(final Function<T, Long> extractor, final BiConsumer<Long, T> inserter) {
+		this.versionExtractor = extractor;
+		this.versionInserter = inserter;
+		return this;
+	}
+
+	/**
+	 * Register a listener for every further save and delete.
+	 *
+	 * @param listener the listener.
+	 * @return this repository.
+	 * @see RepositoryJournal
+	 */
+	public InMemoryRepository<T, ID> listen(final RepositoryListener<? super T, ? super ID> listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Publish the further changes to the repository, as batches of events delivered asynchronously. The publisher is
+	 * created and registered as a listener on first use.
+	 *
+	 * @return the publisher.
+	 */
+	public ChangePublisher<T, ID> changes() {
+		ChangePublisher<T, ID> current = publisher;
+		if (current == null) {
+			synchronized (listeners) {
+				current = publisher;
+				if (current == null) {
+					current = new ChangePublisher<>();
+					listen(current);
+					publisher = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Remove a listener.
+	 *
+	 * @param listener the listener.
+	 * @return this repository.
+	 */
+	public InMemoryRepository<T, ID> unlisten(final RepositoryListener<? super T, ? super ID> listener) {
+		listeners.remove(listener);
+		return this;
+	}
+
+	/**
+	 * Record the count and latency of each operation, and the entities each query scans, in a set of metrics, which
+	 * may be shared with other repositories. Recording never locks, and costs little enough to leave on under load.
+	 *
+	 * @param metrics the metrics to record in, or {@literal null} to stop recording.
+	 * @return this repository.
+	 */
+	public InMemoryRepository<T, ID> instrument(final RepositoryMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	/**
+	 * Get the metrics the repository is recording in.
+	 *
+	 * @return the metrics, or {@literal null} if it is not instrumented.
+	 */
+	public RepositoryMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Add an index, replacing any index on the same property. The index is kept up to date by every change from the
+	 * moment it is added, then filled with the existing entities, each while it is locked, and only then used by
+	 * queries, so it neither misses a concurrent change nor answers a query before it is complete.
+	 *
+	 * @param index the empty index.
+	 * @return this repository.
+	 */
+	protected InMemoryRepository<T, ID> index(final Index<T, ID> index) {
+		synchronized (indexes) {
+			List<Index<T, ID>> updated = new ArrayList<>(maintained);
+			updated.add(index);
+			maintained = List.copyOf(updated);
+		}
+		for (ID id : entities.keySet()) {
+			entities.computeIfPresent(id, (key, entity) -> {
+				index.add(key, entity);
+				return entity;
+			});
+		}
+		synchronized (indexes) {
+			Index<T, ID> replaced = indexes.put(index.property(), index);
+			if (replaced != null) {
+				List<Index<T, ID>> updated = new ArrayList<>(maintained);
+				updated.remove(replaced);
+				maintained = List.copyOf(updated);
+			}
+		}
 		return this;
 	}
 
@@ -83,18 +407,27 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public <S extends T> @NonNull S save(@NonNull S entity) {
-		ID id = extractor.apply(entity);
-		if (id == null) {
-			id = generator != null ? generator.get() : null;
-			if (id == null || inserter == null) {
-				throw new IllegalArgumentException("Id must not be `null`");
+		long start = started();
+		try {
+			ID id = extractor.apply(entity);
+			if (id == null) {
+				id = generator != null ? generator.get() : null;
+				if (id == null || inserter == null) {
+					throw new IllegalArgumentException("Id must not be `null`");
+				}
+				if (inserter != null) {
+					inserter.accept(id, entity);
+				}
 			}
-			if (inserter != null) {
-				inserter.accept(id, entity);
+			if (versionExtractor != null) {
+				merge(id, entity);
+			} else {
+				store(id, entity);
 			}
+			return entity;
+		} finally {
+			finished(Operation.SAVE, start);
 		}
-		entities.put(id, entity);
-		return entity;
 	}
 
 	/**
@@ -112,9 +445,20 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public <S extends T> @NonNull List<S> saveAll(Iterable<S> entities) {
-		List<S> result = new ArrayList<>();
-		entities.forEach(e -> result.add(save(e)));
-		return result;
+		long start = started();
+		try {
+			List<S> result;
+			if (entities instanceof Collection<S> collection) {
+				result = new ArrayList<>(collection);
+			} else {
+				result = new ArrayList<>();
+				entities.forEach(result::add);
+			}
+			insert(result, versionExtractor != null);
+			return result;
+		} finally {
+			finished(Operation.SAVE_ALL, start);
+		}
 	}
 
 	/**
@@ -126,7 +470,12 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public @NonNull Optional<T> findById(@NonNull ID id) {
-		return Optional.ofNullable(entities.get(id));
+		long start = started();
+		try {
+			return Optional.ofNullable(entities.get(id));
+		} finally {
+			finished(Operation.FIND_BY_ID, start);
+		}
 	}
 
 	/**
@@ -138,7 +487,12 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public boolean existsById(@NonNull ID id) {
-		return entities.containsKey(id);
+		long start = started();
+		try {
+			return entities.containsKey(id);
+		} finally {
+			finished(Operation.EXISTS, start);
+		}
 	}
 
 	/**
@@ -148,7 +502,12 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public @NonNull List<T> findAll() {
-		return new ArrayList<>(entities.values());
+		long start = started();
+		try {
+			return new ArrayList<>(entities.values());
+		} finally {
+			finished(Operation.FIND_ALL, start);
+		}
 	}
 
 	/**
@@ -165,9 +524,59 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public @NonNull List<T> findAllById(Iterable<ID> ids) {
+		long start = started();
+		try {
+			return streamAllById(ids).toList();
+		} finally {
+			finished(Operation.FIND_BY_ID, start);
+		}
+	}
+
+	/**
+	 * Streams all instances of the type, directly over the live storage without copying.
+	 * <p>
+	 * The stream is weakly consistent: it reflects some, all or none of the changes made while it is being consumed,
+	 * and never throws {@link java.util.ConcurrentModificationException}. It splits efficiently, so can be made
+	 * {@link Stream#parallel() parallel}.
+	 *
+	 * @return a lazy stream of all entities.
+	 */
+	public Stream<T> streamAll() {
+		return entities.values().stream();
+	}
+
+	/**
+	 * Streams all instances of the type passing a predicate, directly over the live storage without copying.
+	 *
+	 * @param predicate the test entities must pass.
+	 * @return a lazy stream of the matching entities.
+	 * @see #streamAll()
+	 */
+	public Stream<T> streamAll(final Predicate<? super T> predicate) {
+		return scan(Filter.of(predicate));
+	}
+
+	/**
+	 * Streams all instances matching an {@link Example}, directly over the live storage or an index without copying.
+	 *
+	 * @param example must not be {@literal null}.
+	 * @param <S>     the probe type.
+	 * @return a lazy stream of the matching entities.
+	 * @see #streamAll()
+	 */
+	public <S extends T> Stream<S> streamAll(@NonNull final Example<S> example) {
+		return stream(example);
+	}
+
+	/**
+	 * Streams all instances of the type {@code T} with the given IDs, skipping ids that are not found.
+	 *
+	 * @param ids must not be {@literal null} nor contain any {@literal null} values.
+	 * @return a lazy stream of the entities found.
+	 */
+	public Stream<T> streamAllById(final Iterable<ID> ids) {
 		return StreamSupport.stream(ids.spliterator(), false)
-				.map(entities::get).filter(Objects::nonNull)
-				.toList();
+				.map(entities::get).filter(Objects::nonNull);
 	}
 
 	/**
@@ -177,7 +586,12 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public long count() {
-		return entities.size();
+		long start = started();
+		try {
+			return entities.size();
+		} finally {
+			finished(Operation.COUNT, start);
+		}
 	}
 
 	/**
@@ -190,7 +604,12 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public void deleteById(@NonNull ID id) {
-		entities.remove(id);
+		long start = started();
+		try {
+			erase(id);
+		} finally {
+			finished(Operation.DELETE, start);
+		}
 	}
 
 	/**
@@ -205,7 +624,16 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public void delete(@NonNull T entity) {
-		entities.remove(extractor.apply(entity));
+		long start = started();
+		try {
+			if (versionExtractor != null) {
+				erase(extractor.apply(entity), entity);
+			} else {
+				erase(extractor.apply(entity));
+			}
+		} finally {
+			finished(Operation.DELETE, start);
+		}
 	}
 
 	/**
@@ -219,7 +647,12 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public void deleteAllById(Iterable<? extends ID> ids) {
-		ids.forEach(this::deleteById);
+		long start = started();
+		try {
+			ids.forEach(this::erase);
+		} finally {
+			finished(Operation.DELETE_ALL, start);
+		}
 	}
 
 	/**
@@ -235,7 +668,18 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public void deleteAll(@NonNull Iterable<? extends T> entities) {
-		entities.forEach(this::delete);
+		long start = started();
+		try {
+			for (T entity : entities) {
+				if (versionExtractor != null) {
+					erase(extractor.apply(entity), entity);
+				} else {
+					erase(extractor.apply(entity));
+				}
+			}
+		} finally {
+			finished(Operation.DELETE_ALL, start);
+		}
 	}
 
 	/**
@@ -243,13 +687,24 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public void deleteAll() {
-		entities.clear();
+		long start = started();
+		try {
+			if (maintained.isEmpty() && listeners.isEmpty() && InMemoryTransaction.current() == null) {
+				entities.clear();
+			} else {
+				entities.keySet().forEach(this::erase);
+			}
+		} finally {
+			finished(Operation.DELETE_ALL, start);
+		}
 	}
 
 	/**
 	 * Returns all entities sorted by the given options.
 	 * <p>
-	 * NOTE implementation will always return unsorted results.
+	 * NOTE: when the first order is on a property with an {@link #orderedIndex ordered index}, entities are read in
+	 * index order. Otherwise, each {@link Sort} is compiled once into a cached comparator chain, and results larger
+	 * than {@link #PARALLEL_SORT_THRESHOLD} are sorted in parallel.
 	 *
 	 * @param sort the {@link Sort} specification to sort the results by, can be {@link Sort#unsorted()}, must not be
 	 *             {@literal null}.
@@ -257,13 +712,19 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public @NonNull List<T> findAll(@NonNull Sort sort) {
-		return findAll();
+		long start = started();
+		try {
+			return all(sort);
+		} finally {
+			finished(Operation.FIND_ALL, start);
+		}
 	}
 
 	/**
 	 * Returns a {@link Page} of entities meeting the paging restriction provided in the {@link Pageable} object.
 	 * <p>
-	 * NOTE: implementation will always return un-paged results.
+	 * NOTE: sorted pages are read in index order when an {@link #orderedIndex ordered index} is available, or else
+	 * selected with a bounded heap holding at most {@code offset + size} entities, rather than sorting everything.
 	 *
 	 * @param pageable the pageable to request a paged result, can be {@link Pageable#unpaged()}, must not be
 	 *                 {@literal null}.
@@ -271,22 +732,46 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 */
 	@Override
 	public @NonNull Page<T> findAll(@NonNull Pageable pageable) {
-		return new PageImpl<>(findAll());
+		long start = started();
+		try {
+			if (pageable.isUnpaged()) {
+				return new PageImpl<>(all(pageable.getSort()));
+			}
+			Stream<T> ordered = pageable.getSort().isSorted() ? ordered(pageable.getSort()) : null;
+			List<T> content = ordered != null
+					? ordered.skip(pageable.getOffset()).limit(pageable.getPageSize()).collect(Collectors.toList())
+					: select(entities.values().stream(), entities.size(), pageable);
+			return new PageImpl<>(content, pageable, entities.size());
+		} finally {
+			finished(Operation.FIND_ALL, start);
+		}
 	}
 
 	/**
 	 * Returns a single entity matching the given {@link Example} or {@link Optional#empty()} if none was found.
 	 * <p>
-	 * NOTE implementation will always ignore the {@link Example}.
+	 * NOTE: the search stops as soon as a second match is found.
 	 *
 	 * @param example must not be {@literal null}.
 	 * @return a single entity matching the given {@link Example} or {@link Optional#empty()} if none was found.
 	 * @throws IncorrectResultSizeDataAccessException if the Example yields more than one result.
 	 */
 	@Override
-	@SuppressWarnings("unchecked")
 	public <S extends T> @NonNull Optional<S> findOne(@NonNull Example<S> example) {
-		return (Optional<S>) entities.values().stream().findFirst();
+		long start = started();
+		try {
+			Iterator<S> matches = stream(example).iterator();
+			if (!matches.hasNext()) {
+				return Optional.empty();
+			}
+			S match = matches.next();
+			if (matches.hasNext()) {
+				throw new IncorrectResultSizeDataAccessException("Example matches more than one entity", 1);
+			}
+			return Optional.of(match);
+		} finally {
+			finished(Operation.FIND_BY_EXAMPLE, start);
+		}
 	}
 
 	/**
@@ -436,23 +921,23 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	/**
 	 * Returns all entities matching the given {@link Example}. In case no match could be found an empty
 	 * {@link Iterable} is returned.
-	 * <p>
-	 * NOTE implementation will always ignore the {@link Example}.
 	 *
 	 * @param example must not be {@literal null}.
 	 * @return all entities matching the given {@link Example}.
 	 */
 	@Override
-	@SuppressWarnings("unchecked")
 	public <S extends T> @NonNull List<S> findAll(@NonNull Example<S> example) {
-		return (List<S>) findAll();
+		long start = started();
+		try {
+			return stream(example).collect(Collectors.toList());
+		} finally {
+			finished(Operation.FIND_BY_EXAMPLE, start);
+		}
 	}
 
 	/**
 	 * Returns all entities matching the given {@link Example} applying the given {@link Sort}. In case no match could
 	 * be found an empty {@link Iterable} is returned.
-	 * <p>
-	 * NOTE implementation will always ignore the {@link Example}.
 	 *
 	 * @param example must not be {@literal null}.
 	 * @param sort    the {@link Sort} specification to sort the results by, may be {@link Sort#unsorted()}, must not be
@@ -461,16 +946,19 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 * @since 1.10
 	 */
 	@Override
-	@SuppressWarnings("unchecked")
 	public <S extends T> @NonNull List<S> findAll(@NonNull Example<S> example, @NonNull Sort sort) {
-		return (List<S>) findAll();
+		long start = started();
+		try {
+			List<S> matches = stream(example).collect(Collectors.toList());
+			return sort.isSorted() ? sorted(matches, SortComparators.of(sort)) : matches;
+		} finally {
+			finished(Operation.FIND_BY_EXAMPLE, start);
+		}
 	}
 
 	/**
 	 * Returns a {@link Page} of entities matching the given {@link Example}. In case no match could be found, an empty
 	 * {@link Page} is returned.
-	 * <p>
-	 * NOTE implementation will always ignore the {@link Example}.
 	 *
 	 * @param example  must not be {@literal null}.
 	 * @param pageable the pageable to request a paged result, can be {@link Pageable#unpaged()}, must not be
@@ -478,43 +966,61 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 * @return a {@link Page} of entities matching the given {@link Example}.
 	 */
 	@Override
-	@SuppressWarnings("unchecked")
 	public <S extends T> @NonNull Page<S> findAll(@NonNull Example<S> example,
 			@NonNull Pageable pageable) {
-		return (Page<S>) findAll(pageable);
+		long start = started();
+		try {
+			List<S> matches = stream(example).collect(Collectors.toList());
+			if (pageable.isUnpaged()) {
+				Sort sort = pageable.getSort();
+				return new PageImpl<>(sort.isSorted() ? sorted(matches, SortComparators.of(sort)) : matches);
+			}
+			return new PageImpl<>(select(matches.stream(), matches.size(), pageable), pageable, matches.size());
+		} finally {
+			finished(Operation.FIND_BY_EXAMPLE, start);
+		}
 	}
 
 	/**
 	 * Returns the number of instances matching the given {@link Example}.
-	 * <p>
-	 * NOTE implementation will always ignore the {@link Example}.
 	 *
 	 * @param example the {@link Example} to count instances for. Must not be {@literal null}.
 	 * @return the number of instances matching the {@link Example}.
 	 */
 	@Override
 	public <S extends T> long count(@NonNull Example<S> example) {
-		return count();
+		long start = started();
+		try {
+			return stream(example).count();
+		} finally {
+			finished(Operation.COUNT, start);
+		}
 	}
 
 	/**
 	 * Checks whether the data store contains elements that match the given {@link Example}.
 	 * <p>
-	 * NOTE implementation will always ignore the {@link Example}.
+	 * NOTE: the search stops at the first match.
 	 *
 	 * @param example the {@link Example} to use for the existence check. Must not be {@literal null}.
 	 * @return {@literal true} if the data store contains elements that match the given {@link Example}.
 	 */
 	@Override
 	public <S extends T> boolean exists(@NonNull Example<S> example) {
-		return !entities.isEmpty();
+		long start = started();
+		try {
+			return stream(example).findAny().isPresent();
+		} finally {
+			finished(Operation.EXISTS, start);
+		}
 	}
 
 	/**
 	 * Returns entities matching the given {@link Example} applying the {@link Function queryFunction} that defines the
 	 * query and its result type.
 	 * <p>
-	 * NOTE implementation will always ignore the {@link Example}.
+	 * NOTE: the query is evaluated lazily, each time a terminal operation such as {@code all()} or {@code first()} is
+	 * called.
 	 *
 	 * @param example       must not be {@literal null}.
 	 * @param queryFunction the query function defining projection, sorting, and the result type
@@ -522,15 +1028,702 @@ public class InMemoryRepository<T, ID> implements JpaRepository<T, ID> {
 	 * @since 2.6
 	 */
 	@Override
-	@SuppressWarnings("unchecked")
 	public <S extends T, R> @NonNull R findBy(@NonNull Example<S> example,
 			Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
-		return queryFunction.apply(
-				(FluentQuery.FetchableFluentQuery<S>) findOne(example).orElseThrow());
+		return queryFunction.apply(InMemoryFluentQuery.of(() -> stream(example)));
+	}
+
+	/**
+	 * List all entities in sort order, using an ordered index if one provides the first order.
+	 *
+	 * @param sort the order of the entities, may be {@link Sort#unsorted()}.
+	 * @return a new list of the entities.
+	 */
+	private List<T> all(final Sort sort) {
+		if (sort.isUnsorted()) {
+			return new ArrayList<>(entities.values());
+		}
+		Stream<T> ordered = ordered(sort);
+		return ordered != null ? ordered.collect(Collectors.toList())
+				: sorted(entities.values(), SortComparators.of(sort));
+	}
+
+	/**
+	 * Stream the entities matching an {@link Example}.
+	 *
+	 * @param example the example to match.
+	 * @param <S>     the probe type.
+	 * @return a lazy stream of the matching entities.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <S extends T> Stream<S> stream(final Example<S> example) {
+		return (Stream<S>) scan(ExamplePredicates.<T>filter(example));
+	}
+
+	/**
+	 * Returns a single entity matching the given {@link Specification} or {@link Optional#empty()} if none found.
+	 *
+	 * @param spec can be {@literal null}.
+	 * @return never {@literal null}.
+	 * @throws IncorrectResultSizeDataAccessException if more than one entity found.
+	 */
+	@Override
+	public @NonNull Optional<T> findOne(final Specification<T> spec) {
+		long start = started();
+		try {
+			Iterator<T> matches = scan(InMemoryCriteria.compile(spec).filter()).iterator();
+			if (!matches.hasNext()) {
+				return Optional.empty();
+			}
+			T match = matches.next();
+			if (matches.hasNext()) {
+				throw new IncorrectResultSizeDataAccessException("Specification matches more than one entity", 1);
+			}
+			return Optional.of(match);
+		} finally {
+			finished(Operation.FIND_BY_SPECIFICATION, start);
+		}
+	}
+
+	/**
+	 * Returns all entities matching the given {@link Specification}, in the order given to the criteria query, if
+	 * any.
+	 * <p>
+	 * NOTE: the specification is evaluated by an in-memory implementation of the Criteria API, which supports the
+	 * common predicates and expressions, and uses any indexes on properties it compares with values.
+	 *
+	 * @param spec can be {@literal null}.
+	 * @return never {@literal null}.
+	 */
+	@Override
+	public @NonNull List<T> findAll(final Specification<T> spec) {
+		long start = started();
+		try {
+			InMemoryCriteria.Compiled<T> compiled = InMemoryCriteria.compile(spec);
+			return scan(compiled.filter(), compiled.sort()).collect(Collectors.toList());
+		} finally {
+			finished(Operation.FIND_BY_SPECIFICATION, start);
+		}
+	}
+
+	/**
+	 * Returns a {@link Page} of entities matching the given {@link Specification}.
+	 *
+	 * @param spec     can be {@literal null}.
+	 * @param pageable must not be {@literal null}.
+	 * @return never {@literal null}.
+	 */
+	@Override
+	public @NonNull Page<T> findAll(final Specification<T> spec, @NonNull final Pageable pageable) {
+		long start = started();
+		try {
+			InMemoryCriteria.Compiled<T> compiled = InMemoryCriteria.compile(spec);
+			Sort sort = pageable.getSort().isSorted() ? pageable.getSort() : compiled.sort();
+			if (pageable.isUnpaged()) {
+				return new PageImpl<>(scan(compiled.filter(), sort).collect(Collectors.toList()));
+			}
+			List<T> matches = scan(compiled.filter()).collect(Collectors.toList());
+			return new PageImpl<>(select(matches.stream(), matches.size(), sort, pageable.getOffset(),
+					pageable.getPageSize()), pageable, matches.size());
+		} finally {
+			finished(Operation.FIND_BY_SPECIFICATION, start);
+		}
+	}
+
+	/**
+	 * Returns all entities matching the given {@link Specification} and {@link Sort}.
+	 *
+	 * @param spec can be {@literal null}.
+	 * @param sort must not be {@literal null}.
+	 * @return never {@literal null}.
+	 */
+	@Override
+	public @NonNull List<T> findAll(final Specification<T> spec, @NonNull final Sort sort) {
+		long start = started();
+		try {
+			InMemoryCriteria.Compiled<T> compiled = InMemoryCriteria.compile(spec);
+			return scan(compiled.filter(), sort.isSorted() ? sort : compiled.sort()).collect(Collectors.toList());
+		} finally {
+			finished(Operation.FIND_BY_SPECIFICATION, start);
+		}
+	}
+
+	/**
+	 * Returns the number of instances that the given {@link Specification} will return.
+	 *
+	 * @param spec the {@link Specification} to count instances for, must not be {@literal null}.
+	 * @return the number of instances.
+	 */
+	@Override
+	public long count(final Specification<T> spec) {
+		long start = started();
+		try {
+			return scan(InMemoryCriteria.compile(spec).filter()).count();
+		} finally {
+			finished(Operation.COUNT, start);
+		}
+	}
+
+	/**
+	 * Checks whether the data store contains elements that match the given {@link Specification}.
+	 *
+	 * @param spec the {@link Specification} to use for the existence check, must not be {@literal null}.
+	 * @return {@code true} if the data store contains elements that match the given {@link Specification} otherwise
+	 * {@code false}.
+	 */
+	@Override
+	public boolean exists(@NonNull final Specification<T> spec) {
+		long start = started();
+		try {
+			return scan(InMemoryCriteria.compile(spec).filter()).findAny().isPresent();
+		} finally {
+			finished(Operation.EXISTS, start);
+		}
+	}
+
+	/**
+	 * Deletes by the {@link Specification} and returns the number of rows deleted.
+	 *
+	 * @param spec the {@link Specification} to use for the delete query, can be {@literal null}.
+	 * @return the number of entities deleted.
+	 */
+	@Override
+	public long delete(final Specification<T> spec) {
+		List<T> matches = scan(InMemoryCriteria.compile(spec).filter()).collect(Collectors.toList());
+		deleteAll(matches);
+		return matches.size();
+	}
+
+	/**
+	 * Returns entities matching the given {@link Specification} applying the {@code queryFunction} that defines the
+	 * query and its result type.
+	 *
+	 * @param spec          must not be null.
+	 * @param queryFunction the query function defining projection, sorting, and the result type
+	 * @return all entities matching the given Example.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <S extends T, R> @NonNull R findBy(@NonNull final Specification<T> spec,
+			final Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+		Filter<T> filter = InMemoryCriteria.compile(spec).filter();
+		return queryFunction.apply(InMemoryFluentQuery.of(() -> (Stream<S>) scan(filter)));
+	}
+
+	/**
+	 * Find all entities with a property between two values, inclusive.
+	 *
+	 * @param property the property path.
+	 * @param from     the lowest value.
+	 * @param to       the highest value.
+	 * @return the matching entities.
+	 */
+	public List<T> findAllBetween(final String property, final Comparable<?> from, final Comparable<?> to) {
+		long start = started();
+		try {
+			return scan(Filter.where(Restriction.Range.between(property, from, to))).collect(Collectors.toList());
+		} finally {
+			finished(Operation.QUERY, start);
+		}
+	}
+
+	/**
+	 * Find all entities with a property strictly after (greater than) a value.
+	 *
+	 * @param property the property path.
+	 * @param value    the exclusive lower bound.
+	 * @return the matching entities.
+	 */
+	public List<T> findAllAfter(final String property, final Comparable<?> value) {
+		long start = started();
+		try {
+			return scan(Filter.where(Restriction.Range.after(property, value))).collect(Collectors.toList());
+		} finally {
+			finished(Operation.QUERY, start);
+		}
+	}
+
+	/**
+	 * Find all entities with a property strictly before (less than) a value.
+	 *
+	 * @param property the property path.
+	 * @param value    the exclusive upper bound.
+	 * @return the matching entities.
+	 */
+	public List<T> findAllBefore(final String property, final Comparable<?> value) {
+		long start = started();
+		try {
+			return scan(Filter.where(Restriction.Range.before(property, value))).collect(Collectors.toList());
+		} finally {
+			finished(Operation.QUERY, start);
+		}
+	}
+
+	/**
+	 * Stream the entities passing a {@link Filter}. When an index can answer one of the filter's restrictions, only
+	 * the {@link #candidates candidates} it returns are tested.
+	 *
+	 * @param filter the filter to apply.
+	 * @return a lazy stream of the matching entities.
+	 */
+	protected Stream<T> scan(final Filter<? super T> filter) {
+		buildDeferred();
+		Collection<ID> candidates = candidates(filter);
+		Stream<T> values = candidates != null
+				? candidates.stream().map(entities::get).filter(Objects::nonNull)
+				: entities.values().stream();
+		return filter(values, filter, candidates == null);
+	}
+
+	/**
+	 * Find the ids of the candidates for a {@link Filter} using the indexes, choosing the most selective equality
+	 * restriction an index can answer, or failing that a range restriction.
+	 *
+	 * @param filter the filter to apply.
+	 * @return the candidate ids, or {@literal null} if no index can answer the filter.
+	 */
+	protected Collection<ID> candidates(final Filter<? super T> filter) {
+		Collection<ID> candidates = null;
+		Collection<ID> range = null;
+		for (Restriction restriction : filter.restrictions()) {
+			Index<T, ID> index = indexes.get(restriction.path());
+			Collection<ID> ids = index != null ? index.lookup(restriction) : null;
+			if (ids == null) {
+				continue;
+			}
+			if (restriction instanceof Restriction.Equal) {
+				if (candidates == null || ids.size() < candidates.size()) {
+					candidates = ids;
+				}
+			} else if (range == null) {
+				range = ids;
+			}
+		}
+		return candidates != null ? candidates : range;
+	}
+
+	/**
+	 * Stream the entities passing a {@link Filter} in sort order. When no index answers the filter, but an ordered
+	 * index provides the sort, entities are read in index order and tested, rather than collected and sorted.
+	 *
+	 * @param filter the filter to apply.
+	 * @param sort   the order of the results, may be {@link Sort#unsorted()}.
+	 * @return a stream of the matching entities.
+	 */
+	protected Stream<T> scan(final Filter<? super T> filter, final Sort sort) {
+		if (sort.isUnsorted()) {
+			return scan(filter);
+		}
+		buildDeferred();
+		boolean indexed = filter.restrictions().stream()
+				.anyMatch(restriction -> indexes.containsKey(restriction.path()));
+		Stream<T> ordered = indexed ? null : ordered(sort);
+		return ordered != null ? filter(ordered, filter, true)
+				: scan(filter).sorted(SortComparators.of(sort));
+	}
+
+	/**
+	 * Apply a filter to the entities of a scan, counting the entities scanned and returned if instrumented.
+	 *
+	 * @param values the entities to scan.
+	 * @param filter the filter to apply.
+	 * @param full   whether the scan covers every entity.
+	 * @return a lazy stream of the matching entities.
+	 */
+	protected Stream<T> filter(final Stream<T> values, final Filter<? super T> filter, final boolean full) {
+		RepositoryMetrics current = metrics;
+		if (current == null) {
+			return values.filter(filter.predicate());
+		}
+		RepositoryMetrics.ScanRecorder recorder = current.scan(RepositoryMetrics.pattern(filter.restrictions()), full);
+		return values.peek(entity -> recorder.scanned.increment())
+				.filter(filter.predicate())
+				.peek(entity -> recorder.returned.increment());
+	}
+
+	/**
+	 * Stream all entities in sort order using an ordered index on the first sort property. Entities sharing a value
+	 * for that property are sorted by the remaining orders.
+	 *
+	 * @param sort the order to stream in.
+	 * @return a lazy stream of entities, or {@literal null} if no index provides the first order.
+	 */
+	protected Stream<T> ordered(final Sort sort) {
+		buildDeferred();
+		return ordered(indexes.get(sort.iterator().next().getProperty()), sort);
+	}
+
+	/**
+	 * Stream all entities held by an index in sort order, where the index is on the first sort property.
+	 *
+	 * @param index the index on the first sort property, may be {@literal null}.
+	 * @param sort  the order to stream in.
+	 * @return a lazy stream of entities, or {@literal null} if the index cannot provide the first order.
+	 */
+	protected Stream<T> ordered(final Index<T, ID> index, final Sort sort) {
+		Iterator<Sort.Order> orders = sort.iterator();
+		Sort.Order first = orders.next();
+		Stream<? extends Collection<ID>> groups = index != null ? index.ordered(first) : null;
+		if (groups == null) {
+			return null;
+		}
+		List<Sort.Order> remaining = new ArrayList<>();
+		orders.forEachRemaining(remaining::add);
+		Comparator<T> comparator = remaining.isEmpty() ? null : SortComparators.of(Sort.by(remaining));
+		return groups.flatMap(ids -> {
+			Stream<T> values = ids.stream().map(entities::get).filter(Objects::nonNull);
+			return comparator != null && ids.size() > 1 ? values.sorted(comparator) : values;
+		});
+	}
+
+	/**
+	 * Save a batch of entities. Ids for all the entities without one are reserved in a single step when the generator
+	 * is a {@link Generators.BlockSupplier}, then each entity is given its id and stored in the same pass.
+	 *
+	 * @param batch     the entities to save.
+	 * @param versioned whether to check and increment versions, or store the entities as they are.
+	 * @throws IllegalArgumentException          if an entity has no id and none can be generated.
+	 * @throws OptimisticLockingFailureException if versioned, and a version does not match.
+	 */
+	protected void insert(final List<? extends T> batch, final boolean versioned) {
+		IntFunction<ID> ids = null;
+		if (generator instanceof Generators.BlockSupplier<ID> block && inserter != null) {
+			int missing = 0;
+			for (T entity : batch) {
+				if (extractor.apply(entity) == null) {
+					missing++;
+				}
+			}
+			ids = missing > 0 ? block.reserve(missing) : null;
+		}
+		int next = 0;
+		for (T entity : batch) {
+			ID id = extractor.apply(entity);
+			if (id == null) {
+				id = ids != null ? ids.apply(next++) : generator != null ? generator.get() : null;
+				if (id == null || inserter == null) {
+					throw new IllegalArgumentException("Id must not be `null`");
+				}
+				inserter.accept(id, entity);
+			}
+			if (versioned) {
+				merge(id, entity);
+			} else {
+				store(id, entity);
+			}
+		}
+	}
+
+	/**
+	 * Build the indexes carried over by a {@link #fork()}, if that has not been done yet.
+	 */
+	protected void buildDeferred() {
+		if (!deferred.isEmpty()) {
+			synchronized (this) {
+				deferred.forEach(this::index);
+				deferred = List.of();
+			}
+		}
+	}
+
+	/**
+	 * Store an entity, updating the indexes atomically with the entity.
+	 *
+	 * @param id     the id of the entity.
+	 * @param entity the entity.
+	 */
+	protected void store(final ID id, final T entity) {
+		change(id, () -> entities.compute(id, (key, previous) -> {
+			InMemoryTransaction.record(this, key, previous, entity);
+			maintained.forEach(index -> index.add(key, entity));
+			notify(key, previous, entity);
+			return entity;
+		}));
+	}
+
+	/**
+	 * Store an entity if its version matches the stored entity, incrementing the version and updating the indexes
+	 * atomically with the entity.
+	 *
+	 * @param id     the id of the entity.
+	 * @param entity the entity.
+	 * @throws OptimisticLockingFailureException if the version does not match, or the entity has a version but is not
+	 *                                           stored.
+	 */
+	protected void merge(final ID id, final T entity) {
+		change(id, () -> entities.compute(id, (key, previous) -> {
+			Long version = versionExtractor.apply(entity);
+			if (previous == null) {
+				if (version != null) {
+					throw new OptimisticLockingFailureException(
+							String.format("Entity `%s` with version `%s` does not exist", key, version));
+				}
+				versionInserter.accept(0L, entity);
+			} else {
+				verify(key, previous, version);
+				versionInserter.accept(version + 1, entity);
+			}
+			InMemoryTransaction.record(this, key, previous, entity);
+			maintained.forEach(index -> index.add(key, entity));
+			notify(key, previous, entity);
+			return entity;
+		}));
+	}
+
+	/**
+	 * Remove an entity, updating the indexes atomically with the entity.
+	 *
+	 * @param id the id of the entity.
+	 */
+	protected void erase(final ID id) {
+		change(id, () -> entities.computeIfPresent(id, (key, previous) -> {
+			InMemoryTransaction.record(this, key, previous, null);
+			maintained.forEach(index -> index.remove(key));
+			notify(key, previous, null);
+			return null;
+		}));
+	}
+
+	/**
+	 * Remove an entity if it passes a condition, tested while the entity is locked, updating the indexes atomically
+	 * with the entity.
+	 *
+	 * @param id        the id of the entity.
+	 * @param condition the test the stored entity must pass to be removed.
+	 */
+	protected void eraseIf(final ID id, final Predicate<? super T> condition) {
+		change(id, () -> entities.computeIfPresent(id, (key, previous) -> {
+			if (!condition.test(previous)) {
+				return previous;
+			}
+			InMemoryTransaction.record(this, key, previous, null);
+			maintained.forEach(index -> index.remove(key));
+			notify(key, previous, null);
+			return null;
+		}));
+	}
+
+	/**
+	 * Put back the entity a transaction replaced, without recording the change or checking versions, but only if the
+	 * stored entity is still the one the transaction left, so that a change made since by another writer is kept.
+	 *
+	 * @param id       the id of the entity.
+	 * @param expected the entity the transaction stored, or {@literal null} if it removed the entity.
+	 * @param previous the entity to restore, or {@literal null} to remove the entity.
+	 * @return {@literal true} if the entity was restored, {@literal false} if it has been changed since.
+	 */
+	protected boolean restore(final ID id, final T expected, final T previous) {
+		boolean[] restored = {false};
+		change(id, () -> entities.compute(id, (key, current) -> {
+			if (current != expected) {
+				return current;
+			}
+			restored[0] = true;
+			maintained.forEach(index -> {
+				if (previous != null) {
+					index.add(key, previous);
+				} else {
+					index.remove(key);
+				}
+			});
+			if (current != null || previous != null) {
+				notify(key, current, previous);
+			}
+			return previous;
+		}));
+		return restored[0];
+	}
+
+	/**
+	 * Remove an entity if its version matches the stored entity, updating the indexes atomically with the entity.
+	 *
+	 * @param id     the id of the entity.
+	 * @param entity the entity being removed.
+	 * @throws OptimisticLockingFailureException if the version does not match.
+	 */
+	protected void erase(final ID id, final T entity) {
+		change(id, () -> entities.computeIfPresent(id, (key, previous) -> {
+			verify(key, previous, versionExtractor.apply(entity));
+			InMemoryTransaction.record(this, key, previous, null);
+			maintained.forEach(index -> index.remove(key));
+			notify(key, previous, null);
+			return null;
+		}));
+	}
+
+	/**
+	 * Start timing an operation.
+	 *
+	 * @return the start time, or {@literal 0} if not instrumented.
+	 */
+	protected long started() {
+		return metrics != null ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Finish timing an operation.
+	 *
+	 * @param operation the operation.
+	 * @param start     the start time from {@link #started()}.
+	 */
+	protected void finished(final Operation operation, final long start) {
+		RepositoryMetrics current = metrics;
+		if (current != null && start != 0) {
+			current.record(operation, start);
+		}
+	}
+
+	/**
+	 * Run an action once the change being made to an entity on this thread has been applied and the entity unlocked,
+	 * still on this thread and so within its transaction, if any. This lets a {@link RepositoryListener} change other
+	 * entities in response, which it must not do while notified. Actions left by a change that fails are discarded.
+	 * Outside a change, the action runs straight away.
+	 *
+	 * @param action the action.
+	 */
+	protected static void afterChange(final Runnable action) {
+		AfterChange after = AFTER_CHANGE.get();
+		if (after.depth == 0) {
+			action.run();
+		} else {
+			after.actions.add(action);
+		}
+	}
+
+	/**
+	 * Make a change to an entity, then run the actions its listeners left, in order. A failed change discards its
+	 * actions, but not those of any enclosing change. If an index was added while the change was made, the change may
+	 * not have been seen by either the index or the filling of it, so the entity is added to the indexes again.
+	 */
+	private void change(final ID id, final Runnable change) {
+		AfterChange after = AFTER_CHANGE.get();
+		int mark = after.actions.size();
+		List<Index<T, ID>> before = maintained;
+		after.depth++;
+		try {
+			change.run();
+			if (maintained != before) {
+				entities.computeIfPresent(id, (key, entity) -> {
+					maintained.forEach(index -> index.add(key, entity));
+					return entity;
+				});
+			}
+		} catch (RuntimeException | Error e) {
+			after.actions.subList(mark, after.actions.size()).clear();
+			throw e;
+		} finally {
+			after.depth--;
+		}
+		if (after.actions.size() > mark) {
+			List<Runnable> actions = after.actions.subList(mark, after.actions.size());
+			List<Runnable> pending = new ArrayList<>(actions);
+			actions.clear();
+			pending.forEach(Runnable::run);
+		}
+	}
+
+	private void notify(final ID id, final T previous, final T current) {
+		for (RepositoryListener<? super T, ? super ID> listener : listeners) {
+			listener.changed(id, previous, current);
+		}
+	}
+
+	private void verify(final ID id, final T stored, final Long version) {
+		Long current = versionExtractor.apply(stored);
+		if (version == null || !version.equals(current)) {
+			throw new OptimisticLockingFailureException(
+					String.format("Entity `%s` has version `%s`, but the stored version is `%s`", id, version, current));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static <E> List<E> sorted(final Collection<? extends E> values, final Comparator<? super E> comparator) {
+		E[] array = (E[]) values.toArray();
+		if (array.length >= PARALLEL_SORT_THRESHOLD) {
+			Arrays.parallelSort(array, comparator);
+		} else {
+			Arrays.sort(array, comparator);
+		}
+		return new ArrayList<>(Arrays.asList(array));
+	}
+
+	/**
+	 * Select a page of values, sorted according to the {@link Pageable}.
+	 * <p>
+	 * Unsorted pages skip straight to the offset. Sorted pages keep the first {@code offset + size} values in a
+	 * bounded heap, unless that is a large part of the whole, when a full sort is cheaper. Ties keep their encounter
+	 * order, so consecutive pages neither repeat nor drop values.
+	 *
+	 * @param values   the values to select from.
+	 * @param size     the (maximum) number of values.
+	 * @param pageable the page to select, must be paged.
+	 * @param <E>      the type of the values.
+	 * @return the content of the page.
+	 */
+	protected static <E> List<E> select(final Stream<? extends E> values, final long size, final Pageable pageable) {
+		return select(values, size, pageable.getSort(), pageable.getOffset(), pageable.getPageSize());
+	}
+
+	/**
+	 * Select a range of values, in sort order.
+	 *
+	 * @param values the values to select from.
+	 * @param size   the (maximum) number of values.
+	 * @param sort   the order of the values, may be {@link Sort#unsorted()}.
+	 * @param offset the number of values to skip.
+	 * @param limit  the maximum number of values to return.
+	 * @param <E>    the type of the values.
+	 * @return the selected values.
+	 * @see #select(Stream, long, Pageable)
+	 */
+	protected static <E> List<E> select(final Stream<? extends E> values, final long size, final Sort sort,
+			final long offset, final int limit) {
+		if (offset >= size) {
+			return List.of();
+		}
+		if (sort.isUnsorted()) {
+			return values.skip(offset).limit(limit).collect(Collectors.toList());
+		}
+		Comparator<? super E> comparator = SortComparators.of(sort);
+		long bound = offset + limit;
+		if (bound * 4 >= size) {
+			List<E> sorted = sorted(values.collect(Collectors.toList()), comparator);
+			return new ArrayList<>(sorted.subList((int) Math.min(offset, sorted.size()),
+					(int) Math.min(bound, sorted.size())));
+		}
+		Comparator<Ranked<E>> ranking = Comparator.<Ranked<E>, E>comparing(Ranked::value, comparator)
+				.thenComparingLong(Ranked::rank);
+		PriorityQueue<Ranked<E>> heap = new PriorityQueue<>((int) bound + 1, ranking.reversed());
+		long[] rank = {0};
+		values.forEachOrdered(value -> {
+			Ranked<E> ranked = new Ranked<>(rank[0]++, value);
+			if (heap.size() < bound) {
+				heap.add(ranked);
+			} else if (ranking.compare(ranked, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(ranked);
+			}
+		});
+		List<E> page = new ArrayList<>(limit);
+		for (long i = heap.size(); i > offset; i--) {
+			page.add(heap.poll().value());
+		}
+		Collections.reverse(page);
+		return page;
+	}
+
+	private record Ranked<E>(long rank, E value) {
+
 	}
 
 	public static <T, ID> BiConsumer<T, ID> noop() {
 		return (e, i) -> {
 		};
 	}
-}
\ No newline at end of file
+
+	private static final class AfterChange {
+
+		private final List<Runnable> actions = new ArrayList<>();
+		private int depth;
+	}
+}
@@ -0,0 +1,182 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.experimental.UtilityClass;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.core.RepositoryMetadata;
+import org.springframework.data.repository.core.support.AbstractRepositoryMetadata;
+
+/**
+ * Creates implementations of Spring Data repository interfaces backed by an {@link InMemoryRepository}.
+ * <p>
+ * Methods the {@link InMemoryRepository} already provides, such as {@code save} or {@code findAll}, are delegated to
+ * it, default methods are invoked as declared, and every other method is treated as a query derived from its name,
+ * for example:
+ * <pre>{@code
+ * interface VoyageRepository extends JpaRepository<Voyage, UUID> {
+ *     List<Voyage> findByVesselAndStatusOrderByEtaDesc(String vessel, Status status);
+ *     long countByDelayedTrue();
+ * }
+ *
+ * VoyageRepository voyages = InMemoryRepositoryFactory.create(VoyageRepository.class, repository);
+ * }</pre>
+ * Each derived query is parsed once per repository interface, so calling it only binds the arguments.
+ * <p>
+ * Methods annotated with a JPQL {@link Query @Query} run the query instead, which may join the entities of other
+ * repositories, given by entity type:
+ * <pre>{@code
+ * interface VoyageRepository extends JpaRepository<Voyage, UUID> {
+ *     @Query("select v from Voyage v join Vessel s on s.name = v.vessel where s.flag = :flag order by v.eta")
+ *     List<Voyage> findByVesselFlag(@Param("flag") String flag);
+ * }
+ *
+ * VoyageRepository voyages = InMemoryRepositoryFactory.create(VoyageRepository.class, repository,
+ *         Map.of(Vessel.class, vesselRepository));
+ * }</pre>
+ * Each query string is parsed and planned once, however many repositories declare it.
+ */
+@UtilityClass
+public class InMemoryRepositoryFactory {
+
+	private static final ClassValue<Map<Class<?>, Map<Method, Handler>>> HANDLERS = new ClassValue<>() {
+		@Override
+		protected Map<Class<?>, Map<Method, Handler>> computeValue(final Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	/**
+	 * Create a repository backed by an {@link InMemoryRepository}.
+	 *
+	 * @param repositoryInterface the repository interface to implement.
+	 * @param repository          the repository holding the entities.
+	 * @param <R>                 the type of the repository.
+	 * @param <T>                 the type of the entities.
+	 * @param <ID>                the type of the entity ids.
+	 * @return an implementation of the repository interface.
+	 * @throws IllegalArgumentException if the type is not an interface, or declares an invalid query method.
+	 */
+	public static <R, T, ID> R create(final Class<R> repositoryInterface, final InMemoryRepository<T, ID> repository) {
+		return create(repositoryInterface, repository, Map.of());
+	}
+
+	/**
+	 * Create a repository backed by an {@link InMemoryRepository}, whose JPQL queries may also refer to the entities
+	 * of other repositories.
+	 *
+	 * @param repositoryInterface the repository interface to implement.
+	 * @param repository          the repository holding the entities.
+	 * @param joined              the repositories holding other entity types, by type.
+	 * @param <R>                 the type of the repository.
+	 * @param <T>                 the type of the entities.
+	 * @param <ID>                the type of the entity ids.
+	 * @return an implementation of the repository interface.
+	 * @throws IllegalArgumentException if the type is not an interface, or declares an invalid query method.
+	 */
+	public static <R, T, ID> R create(final Class<R> repositoryInterface, final InMemoryRepository<T, ID> repository,
+			final Map<Class<?>, ? extends InMemoryRepository<?, ?>> joined) {
+		if (!repositoryInterface.isInterface()) {
+			throw new IllegalArgumentException(
+					String.format("Repository type `%s` must be an interface", repositoryInterface.getName()));
+		}
+		Map<Method, Handler> handlers = HANDLERS.get(repositoryInterface)
+				.computeIfAbsent(repository.getClass(), type -> compile(repositoryInterface, type));
+		Map<Class<?>, InMemoryRepository<?, ?>> repositories = new HashMap<>(joined);
+		repositories.put(AbstractRepositoryMetadata.getMetadata(repositoryInterface).getDomainType(), repository);
+		InvocationHandler invocation = (proxy, method, args) -> {
+			if (method.getDeclaringClass() == Object.class) {
+				return switch (method.getName()) {
+					case "equals" -> proxy == args[0];
+					case "hashCode" -> System.identityHashCode(proxy);
+					default -> repositoryInterface.getSimpleName() + "(" + repository + ")";
+				};
+			}
+			if (method.isDefault()) {
+				return InvocationHandler.invokeDefault(proxy, method, args);
+			}
+			return handlers.get(method).invoke(repository, repositories, args);
+		};
+		return repositoryInterface.cast(Proxy.newProxyInstance(repositoryInterface.getClassLoader(),
+				new Class<?>[]{repositoryInterface}, invocation));
+	}
+
+	private static Map<Method, Handler> compile(final Class<?> repositoryInterface, final Class<?> type) {
+		RepositoryMetadata metadata = AbstractRepositoryMetadata.getMetadata(repositoryInterface);
+		Map<Method, Handler> handlers = new HashMap<>();
+		for (Method method : repositoryInterface.getMethods()) {
+			if (!Modifier.isStatic(method.getModifiers()) && !method.isDefault()) {
+				handlers.put(method, handler(method, metadata, type));
+			}
+		}
+		return handlers;
+	}
+
+	private static Handler handler(final Method method, final RepositoryMetadata metadata, final Class<?> type) {
+		Query annotation = AnnotatedElementUtils.findMergedAnnotation(method, Query.class);
+		if (annotation != null && !annotation.value().isEmpty()) {
+			if (annotation.nativeQuery()) {
+				throw new IllegalArgumentException(
+						String.format("Native query of method `%s` is not supported in memory", method.getName()));
+			}
+			try {
+				JpqlQuery query = JpqlQuery.of(method, metadata, annotation.value());
+				return query::execute;
+			} catch (RuntimeException ex) {
+				throw new IllegalArgumentException(
+						String.format("Unable to plan the query of method `%s`", method.getName()), ex);
+			}
+		}
+		Method target = target(method, type);
+		if (target != null) {
+			return (repository, repositories, args) -> {
+				try {
+					return target.invoke(repository, args);
+				} catch (InvocationTargetException ex) {
+					throw ex.getCause();
+				}
+			};
+		}
+		try {
+			DerivedQuery query = DerivedQuery.of(method, metadata);
+			return (repository, repositories, args) -> query.execute(repository, args);
+		} catch (RuntimeException ex) {
+			throw new IllegalArgumentException(
+					String.format("Unable to derive a query for method `%s`", method.getName()), ex);
+		}
+	}
+
+	private static Method target(final Method method, final Class<?> type) {
+		for (Method candidate : type.getMethods()) {
+			if (candidate.getName().equals(method.getName()) && !Modifier.isStatic(candidate.getModifiers())
+					&& candidate.getParameterCount() == method.getParameterCount()
+					&& assignable(method.getParameterTypes(), candidate.getParameterTypes())) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private static boolean assignable(final Class<?>[] from, final Class<?>[] to) {
+		for (int i = 0; i < from.length; i++) {
+			if (!to[i].isAssignableFrom(from[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@FunctionalInterface
+	private interface Handler {
+
+		Object invoke(InMemoryRepository<?, ?> repository, Map<Class<?>, InMemoryRepository<?, ?>> repositories,
+				Object[] args) throws Throwable;
+	}
+}
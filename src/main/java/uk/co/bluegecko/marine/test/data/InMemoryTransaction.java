@@ -0,0 +1,253 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionUsageException;
+
+/**
+ * A transaction over one or more {@link InMemoryRepository} instances, bound to the thread that began it.
+ * <p>
+ * Changes are applied to the repositories straight away, and each change records the entity it replaced and the
+ * entity it left in an undo log, so commit only discards the log, and rollback restores the replaced entities in
+ * reverse order. There is no isolation: readers never block or wait on a transaction, but do see its changes before
+ * it commits, and other writers may change the same entities meanwhile. Rollback only restores an entity still as the
+ * transaction left it, so it never overwrites a change it does not own, such as one committed by a nested
+ * {@code REQUIRES_NEW} transaction or made outside any transaction, and reports a conflict instead. Only the
+ * repositories' contents are rolled back: an entity changed in place, rather than replaced by a copy, keeps its
+ * changes.
+ * <pre>{@code
+ * InMemoryTransaction transaction = InMemoryTransaction.begin();
+ * try {
+ *     repository.save(vessel);
+ *     transaction.commit();
+ * } finally {
+ *     transaction.close();
+ * }
+ * }</pre>
+ *
+ * @see InMemoryTransactionManager
+ */
+public final class InMemoryTransaction implements SavepointManager, AutoCloseable {
+
+	private static final ThreadLocal<InMemoryTransaction> CURRENT = new ThreadLocal<>();
+
+	private final Thread owner = Thread.currentThread();
+	private final List<Undo> log = new ArrayList<>();
+	private boolean active = true;
+	private boolean replaying;
+	private boolean rollbackOnly;
+
+	private InMemoryTransaction() {
+	}
+
+	/**
+	 * Begin a transaction on the current thread.
+	 *
+	 * @return the new transaction.
+	 * @throws IllegalTransactionStateException if the thread already has a transaction.
+	 */
+	public static InMemoryTransaction begin() {
+		if (CURRENT.get() != null) {
+			throw new IllegalTransactionStateException("Transaction already active on this thread");
+		}
+		InMemoryTransaction transaction = new InMemoryTransaction();
+		CURRENT.set(transaction);
+		return transaction;
+	}
+
+	/**
+	 * Get the transaction of the current thread.
+	 *
+	 * @return the transaction, or {@literal null} if there is none.
+	 */
+	public static InMemoryTransaction current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Make the changes permanent, and end the transaction.
+	 *
+	 * @throws IllegalTransactionStateException if the transaction has ended, or is marked rollback-only.
+	 */
+	public void commit() {
+		checkActive();
+		if (rollbackOnly) {
+			rollback();
+			throw new IllegalTransactionStateException("Transaction is marked as rollback-only");
+		}
+		end();
+	}
+
+	/**
+	 * Undo the changes, and end the transaction. Entities changed since by another writer keep that change.
+	 *
+	 * @throws IllegalTransactionStateException  if the transaction has ended.
+	 * @throws OptimisticLockingFailureException if any entity could not be restored, as it has been changed since, once
+	 *                                           the rest have been restored and the transaction ended.
+	 */
+	public void rollback() {
+		checkActive();
+		List<Object> conflicts = undo(0);
+		end();
+		conflict(conflicts);
+	}
+
+	/**
+	 * Roll back the transaction, unless it has already ended.
+	 */
+	@Override
+	public void close() {
+		if (active) {
+			rollback();
+		}
+	}
+
+	/**
+	 * Mark the transaction so that it can only be rolled back.
+	 */
+	public void setRollbackOnly() {
+		rollbackOnly = true;
+	}
+
+	public boolean isRollbackOnly() {
+		return rollbackOnly;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Create a savepoint, to which the transaction can later be rolled back.
+	 *
+	 * @return the savepoint.
+	 */
+	@Override
+	public Object createSavepoint() {
+		checkActive();
+		return new Savepoint(this, log.size());
+	}
+
+	/**
+	 * Undo the changes made since a savepoint. The savepoint remains valid.
+	 *
+	 * @param savepoint a savepoint of this transaction.
+	 * @throws OptimisticLockingFailureException if any entity could not be restored, as it has been changed since, once
+	 *                                           the rest have been restored.
+	 */
+	@Override
+	public void rollbackToSavepoint(final Object savepoint) {
+		checkActive();
+		conflict(undo(savepoint(savepoint).position()));
+	}
+
+	/**
+	 * Release a savepoint. Changes since the savepoint remain part of the transaction.
+	 *
+	 * @param savepoint a savepoint of this transaction.
+	 */
+	@Override
+	public void releaseSavepoint(final Object savepoint) {
+		savepoint(savepoint);
+	}
+
+	/**
+	 * Record a change made by a repository, if the current thread has a transaction.
+	 *
+	 * @param repository the repository changed.
+	 * @param id         the id of the changed entity.
+	 * @param previous   the entity replaced, or {@literal null} if there was none.
+	 * @param current    the entity stored, or {@literal null} if it was removed.
+	 */
+	static void record(final InMemoryRepository<?, ?> repository, final Object id, final Object previous,
+			final Object current) {
+		InMemoryTransaction transaction = CURRENT.get();
+		if (transaction != null && !transaction.replaying) {
+			transaction.log.add(new Undo(repository, id, previous, current));
+		}
+	}
+
+	/**
+	 * Detach the transaction from the current thread, so that it can be resumed later.
+	 */
+	void suspend() {
+		if (CURRENT.get() == this) {
+			CURRENT.remove();
+		}
+	}
+
+	/**
+	 * Attach a suspended transaction to the current thread.
+	 */
+	void resume() {
+		if (owner != Thread.currentThread()) {
+			throw new IllegalTransactionStateException("Transaction belongs to another thread");
+		}
+		CURRENT.set(this);
+	}
+
+	/**
+	 * Undo the changes from a position in the log, newest first.
+	 *
+	 * @return the ids of the entities that could not be restored, as they have been changed since.
+	 */
+	private List<Object> undo(final int position) {
+		List<Object> conflicts = new ArrayList<>();
+		replaying = true;
+		try {
+			for (int i = log.size() - 1; i >= position; i--) {
+				Undo undo = log.remove(i);
+				if (!undo.restore() && !conflicts.contains(undo.id())) {
+					conflicts.add(undo.id());
+				}
+			}
+		} finally {
+			replaying = false;
+		}
+		return conflicts;
+	}
+
+	private void conflict(final List<Object> conflicts) {
+		if (!conflicts.isEmpty()) {
+			throw new OptimisticLockingFailureException(String.format(
+					"Entities `%s` were changed outside the transaction, so were not rolled back", conflicts));
+		}
+	}
+
+	private void end() {
+		log.clear();
+		active = false;
+		suspend();
+	}
+
+	private void checkActive() {
+		if (!active) {
+			throw new IllegalTransactionStateException("Transaction has already completed");
+		}
+		if (owner != Thread.currentThread()) {
+			throw new IllegalTransactionStateException("Transaction belongs to another thread");
+		}
+	}
+
+	private Savepoint savepoint(final Object savepoint) {
+		if (savepoint instanceof Savepoint result && result.transaction() == this && result.position() <= log.size()) {
+			return result;
+		}
+		throw new TransactionUsageException(String.format("Savepoint `%s` is not valid", savepoint));
+	}
+
+	private record Savepoint(InMemoryTransaction transaction, int position) {
+
+	}
+
+	private record Undo(InMemoryRepository<?, ?> repository, Object id, Object previous, Object current) {
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private boolean restore() {
+			return ((InMemoryRepository) repository).restore(id, current, previous);
+		}
+	}
+}
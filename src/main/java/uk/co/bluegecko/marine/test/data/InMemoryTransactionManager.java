@@ -0,0 +1,111 @@
+package uk.co.bluegecko.marine.test.data;
+
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.SmartTransactionObject;
+
+/**
+ * A {@link org.springframework.transaction.PlatformTransactionManager} for {@link InMemoryRepository} instances, so
+ * that {@code @Transactional} code, and Spring's test-managed transactions, roll back in-memory changes just as they
+ * would database changes. Each transaction is an {@link InMemoryTransaction}, covering every repository changed by
+ * its thread. Nested transactions use savepoints.
+ */
+public class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+	public InMemoryTransactionManager() {
+		setNestedTransactionAllowed(true);
+	}
+
+	@Override
+	protected Object doGetTransaction() {
+		return new TransactionObject(InMemoryTransaction.current());
+	}
+
+	@Override
+	protected boolean isExistingTransaction(final Object transaction) {
+		InMemoryTransaction current = ((TransactionObject) transaction).transaction;
+		return current != null && current.isActive();
+	}
+
+	@Override
+	protected void doBegin(final Object transaction, final TransactionDefinition definition) {
+		((TransactionObject) transaction).transaction = InMemoryTransaction.begin();
+	}
+
+	@Override
+	protected Object doSuspend(final Object transaction) {
+		TransactionObject object = (TransactionObject) transaction;
+		InMemoryTransaction suspended = object.transaction;
+		suspended.suspend();
+		object.transaction = null;
+		return suspended;
+	}
+
+	@Override
+	protected void doResume(final Object transaction, final Object suspendedResources) {
+		((InMemoryTransaction) suspendedResources).resume();
+	}
+
+	@Override
+	protected void doCommit(final DefaultTransactionStatus status) {
+		((TransactionObject) status.getTransaction()).transaction.commit();
+	}
+
+	@Override
+	protected void doRollback(final DefaultTransactionStatus status) {
+		((TransactionObject) status.getTransaction()).transaction.rollback();
+	}
+
+	@Override
+	protected void doSetRollbackOnly(final DefaultTransactionStatus status) {
+		((TransactionObject) status.getTransaction()).transaction.setRollbackOnly();
+	}
+
+	@Override
+	protected void doCleanupAfterCompletion(final Object transaction) {
+		InMemoryTransaction current = ((TransactionObject) transaction).transaction;
+		if (current != null) {
+			current.close();
+		}
+	}
+
+	/**
+	 * The transaction state for one call to {@link #getTransaction(TransactionDefinition)}, delegating savepoints to
+	 * the {@link InMemoryTransaction}.
+	 */
+	private static final class TransactionObject implements SavepointManager, SmartTransactionObject {
+
+		private InMemoryTransaction transaction;
+
+		private TransactionObject(final InMemoryTransaction transaction) {
+			this.transaction = transaction;
+		}
+
+		@Override
+		public Object createSavepoint() {
+			return transaction.createSavepoint();
+		}
+
+		@Override
+		public void rollbackToSavepoint(final Object savepoint) {
+			transaction.rollbackToSavepoint(savepoint);
+		}
+
+		@Override
+		public void releaseSavepoint(final Object savepoint) {
+			transaction.releaseSavepoint(savepoint);
+		}
+
+		@Override
+		public boolean isRollbackOnly() {
+			return transaction != null && transaction.isRollbackOnly();
+		}
+
+		@Override
+		public void flush() {
+			// changes are applied immediately
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Collection;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Sort;
+
+/**
+ * A secondary index over one property of the entities in an {@link InMemoryRepository}, mapping property values to
+ * entity ids. The repository keeps each index up to date as entities are saved and deleted.
+ *
+ * @param <T>  the type of the entities.
+ * @param <ID> the type of the entity ids.
+ */
+public interface Index<T, ID> {
+
+	/**
+	 * The property path that is indexed.
+	 *
+	 * @return a dotted property path.
+	 */
+	String property();
+
+	/**
+	 * Create an empty index over the same property, for example for a {@link InMemoryRepository#fork() fork} of the
+	 * repository.
+	 *
+	 * @return a new, empty index.
+	 */
+	Index<T, ID> empty();
+
+	/**
+	 * Index an entity, replacing any earlier entry for the same id.
+	 *
+	 * @param id     the id of the entity.
+	 * @param entity the entity.
+	 */
+	void add(ID id, T entity);
+
+	/**
+	 * Remove the entry for an id, if any.
+	 *
+	 * @param id the id of the entity.
+	 */
+	void remove(ID id);
+
+	/**
+	 * Remove all entries.
+	 */
+	void clear();
+
+	/**
+	 * Find the ids of the entities satisfying a restriction.
+	 *
+	 * @param restriction a restriction on the indexed property.
+	 * @return the candidate ids, or {@literal null} if this index cannot answer the restriction.
+	 */
+	Collection<ID> lookup(Restriction restriction);
+
+	/**
+	 * Iterate the ids in the order of the indexed property, grouped by property value.
+	 *
+	 * @param order the order of the indexed property.
+	 * @return groups of ids sharing a value, in order, or {@literal null} if this index cannot provide the order.
+	 */
+	default Stream<? extends Collection<ID>> ordered(final Sort.Order order) {
+		return null;
+	}
+}
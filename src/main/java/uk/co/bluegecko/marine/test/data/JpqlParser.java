@@ -0,0 +1,974 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.springframework.data.domain.Sort;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Evaluator;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Expr;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Hint;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Order;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Source;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Statement;
+
+/**
+ * A recursive descent parser for the subset of JPQL that can be evaluated in memory, producing a {@link JpqlPlan}.
+ * <p>
+ * The subset covers {@code SELECT [DISTINCT]} of identification variables and path expressions, {@code COUNT} and
+ * {@code DELETE}; range variables and {@code [LEFT | INNER] JOIN [FETCH]} of paths or of entities with {@code ON};
+ * {@code WHERE} with {@code AND}, {@code OR}, {@code NOT}, comparisons, {@code BETWEEN}, {@code LIKE ... ESCAPE},
+ * {@code IN}, {@code IS [NOT] NULL}, {@code IS [NOT] EMPTY}, {@code MEMBER OF}, arithmetic and the functions
+ * {@code LOWER}, {@code UPPER}, {@code TRIM}, {@code LENGTH}, {@code CONCAT}, {@code ABS}, {@code MOD},
+ * {@code COALESCE} and {@code SIZE}; {@code ORDER BY} with {@code NULLS FIRST | LAST}; and named or positional
+ * parameters. Subqueries, grouping, {@code CASE} and constructor expressions throw
+ * {@link UnsupportedOperationException}.
+ */
+final class JpqlParser {
+
+	private static final Set<String> RESERVED = Set.of("SELECT", "FROM", "WHERE", "JOIN", "LEFT", "INNER", "OUTER",
+			"FETCH", "ON", "AS", "ORDER", "BY", "GROUP", "HAVING", "AND", "OR", "NOT");
+	private static final Set<String> UNSUPPORTED = Set.of("EXISTS", "ANY", "ALL", "SOME", "CASE", "NEW", "TREAT",
+			"KEY", "VALUE", "ENTRY", "TYPE", "AVG", "MAX", "MIN", "SUM", "FUNCTION");
+
+	private final String jpql;
+	private final List<Token> tokens;
+	private int position;
+
+	private final List<String> aliases = new ArrayList<>();
+	private final List<String> entities = new ArrayList<>();
+	private final List<Expr> paths = new ArrayList<>();
+	private final List<Boolean> lefts = new ArrayList<>();
+	private final List<Expr> ons = new ArrayList<>();
+	private final List<String> parameters = new ArrayList<>();
+	private final Map<Expr, Expr[]> equalities = new IdentityHashMap<>();
+
+	private JpqlParser(final String jpql) {
+		this.jpql = jpql;
+		this.tokens = tokenize(jpql);
+	}
+
+	/**
+	 * Parse and plan a JPQL statement.
+	 *
+	 * @param jpql the statement.
+	 * @return the plan.
+	 * @throws IllegalArgumentException      if the statement is not valid JPQL.
+	 * @throws UnsupportedOperationException if the statement uses JPQL that is not supported in memory.
+	 */
+	static JpqlPlan parse(final String jpql) {
+		return new JpqlParser(jpql).statement();
+	}
+
+	private JpqlPlan statement() {
+		Statement statement = Statement.SELECT;
+		boolean distinct = false;
+		int selection = -1;
+		if (accept("SELECT")) {
+			distinct = accept("DISTINCT");
+			selection = position;
+			skipToFrom();
+		} else if (accept("DELETE")) {
+			statement = Statement.DELETE;
+		} else if (at("UPDATE") || at("INSERT")) {
+			throw unsupported(peek().text().toUpperCase(Locale.ROOT));
+		}
+		expect("FROM");
+		from();
+
+		List<Expr> selected = List.of(path(0, ""));
+		if (selection >= 0) {
+			int end = position;
+			position = selection;
+			if (at("COUNT") && tokens.get(position + 1).text().equals("(")) {
+				position += 2;
+				statement = Statement.COUNT;
+				distinct = accept("DISTINCT");
+				selected = accept("*") ? List.of() : List.of(additive());
+				expect(")");
+			} else {
+				selected = new ArrayList<>();
+				do {
+					selected.add(additive());
+					if (accept("AS")) {
+						position++;
+					}
+				} while (accept(","));
+			}
+			if (!at("FROM")) {
+				throw error();
+			}
+			position = end;
+		}
+
+		Expr where = accept("WHERE") ? or() : null;
+		if (at("GROUP") || at("HAVING")) {
+			throw unsupported(peek().text().toUpperCase(Locale.ROOT) + " BY");
+		}
+		List<Order> orders = accept("ORDER") ? orders() : List.of();
+		if (peek().kind() != Kind.END) {
+			throw error();
+		}
+		if (statement == Statement.DELETE && aliases.size() > 1) {
+			throw unsupported("DELETE with JOIN");
+		}
+		return plan(statement, distinct, selected, where, orders);
+	}
+
+	private void skipToFrom() {
+		int depth = 0;
+		while (depth > 0 || !at("FROM")) {
+			Token token = next();
+			if (token.kind() == Kind.END) {
+				throw new IllegalArgumentException(String.format("Query `%s` has no FROM clause", jpql));
+			}
+			depth += token.text().equals("(") ? 1 : token.text().equals(")") ? -1 : 0;
+		}
+	}
+
+	private void from() {
+		range(word(), false, null);
+		while (true) {
+			if (accept(",")) {
+				range(word(), false, null);
+				continue;
+			}
+			boolean left = false;
+			if (accept("LEFT")) {
+				accept("OUTER");
+				left = true;
+				expect("JOIN");
+			} else if (accept("INNER")) {
+				expect("JOIN");
+			} else if (!accept("JOIN")) {
+				return;
+			}
+			accept("FETCH");
+			Token target = peek();
+			String head = word().split("\\.")[0];
+			if (target.text().contains(".") && aliases.contains(head.toLowerCase(Locale.ROOT))) {
+				range(null, left, path(target));
+			} else {
+				range(target.text(), left, null);
+			}
+			if (accept("ON")) {
+				ons.set(ons.size() - 1, or());
+			}
+		}
+	}
+
+	private void range(final String entity, final boolean left, final Expr path) {
+		accept("AS");
+		Token token = peek();
+		String alias = "";
+		if (token.kind() == Kind.WORD && !token.text().contains(".")
+				&& !RESERVED.contains(token.text().toUpperCase(Locale.ROOT))) {
+			alias = next().text().toLowerCase(Locale.ROOT);
+			if (aliases.contains(alias)) {
+				throw new IllegalArgumentException(
+						String.format("Alias `%s` is defined twice in query `%s`", token.text(), jpql));
+			}
+		}
+		if (aliases.size() == Long.SIZE - 1) {
+			throw unsupported("more than " + (Long.SIZE - 1) + " joins");
+		}
+		aliases.add(alias);
+		entities.add(entity);
+		paths.add(path);
+		lefts.add(left);
+		ons.add(null);
+	}
+
+	private List<Order> orders() {
+		expect("BY");
+		List<Order> orders = new ArrayList<>();
+		do {
+			Expr expr = additive();
+			boolean ascending = true;
+			if (accept("DESC")) {
+				ascending = false;
+			} else {
+				accept("ASC");
+			}
+			Sort.NullHandling nulls = Sort.NullHandling.NATIVE;
+			if (accept("NULLS")) {
+				if (accept("FIRST")) {
+					nulls = Sort.NullHandling.NULLS_FIRST;
+				} else {
+					expect("LAST");
+					nulls = Sort.NullHandling.NULLS_LAST;
+				}
+			}
+			orders.add(new Order(expr, ascending, nulls));
+		} while (accept(","));
+		return orders;
+	}
+
+	// conditional expressions
+
+	private Expr or() {
+		Expr left = and();
+		while (accept("OR")) {
+			Expr a = left;
+			Expr b = and();
+			left = Expr.of((row, params) -> {
+				Object x = a.eval(row, params);
+				if (Boolean.TRUE.equals(x)) {
+					return true;
+				}
+				Object y = b.eval(row, params);
+				return Boolean.TRUE.equals(y) ? Boolean.TRUE : x == null || y == null ? null : Boolean.FALSE;
+			}, a.slots() | b.slots());
+		}
+		return left;
+	}
+
+	private Expr and() {
+		Expr first = not();
+		if (!at("AND")) {
+			return first;
+		}
+		List<Expr> conjuncts = new ArrayList<>(conjuncts(first));
+		long slots = first.slots();
+		while (accept("AND")) {
+			Expr next = not();
+			conjuncts.addAll(conjuncts(next));
+			slots |= next.slots();
+		}
+		Expr[] all = conjuncts.toArray(Expr[]::new);
+		return new Expr((row, params) -> {
+			boolean unknown = false;
+			for (Expr conjunct : all) {
+				Object value = conjunct.eval(row, params);
+				if (Boolean.FALSE.equals(value)) {
+					return false;
+				}
+				unknown |= value == null;
+			}
+			return unknown ? null : Boolean.TRUE;
+		}, slots, -1, null, List.copyOf(conjuncts), null);
+	}
+
+	private Expr not() {
+		if (accept("NOT")) {
+			return negate(not());
+		}
+		return predicate();
+	}
+
+	private Expr predicate() {
+		Expr left = additive();
+		boolean not = accept("NOT");
+		if (not && !(at("BETWEEN") || at("LIKE") || at("IN") || at("MEMBER"))) {
+			throw error();
+		}
+		if (accept("IS")) {
+			boolean negated = accept("NOT");
+			if (accept("NULL")) {
+				Hint hint = restrictable(left) && !negated ? new Hint(left.property(), "NULL", null, null) : null;
+				return new Expr((row, params) -> (left.eval(row, params) == null) != negated,
+						left.slots(), -1, null, List.of(), hint);
+			}
+			expect("EMPTY");
+			return Expr.of((row, params) -> (left.eval(row, params) instanceof Collection<?> collection
+					? collection.isEmpty() : true) != negated, left.slots());
+		}
+		if (accept("BETWEEN")) {
+			Expr lower = additive();
+			expect("AND");
+			Expr upper = additive();
+			Hint hint = restrictable(left) && lower.constant() && upper.constant()
+					? new Hint(left.property(), "BETWEEN", lower, upper) : null;
+			Expr between = new Expr((row, params) -> {
+				Object value = left.eval(row, params);
+				Object from = lower.eval(row, params);
+				Object to = upper.eval(row, params);
+				if (value == null) {
+					return null;
+				}
+				Boolean above = from == null ? null : InMemoryCriteria.compare(value, from) >= 0;
+				Boolean below = to == null ? null : InMemoryCriteria.compare(value, to) <= 0;
+				return Boolean.FALSE.equals(above) || Boolean.FALSE.equals(below) ? Boolean.FALSE
+						: above == null || below == null ? null : Boolean.TRUE;
+			}, left.slots() | lower.slots() | upper.slots(), -1, null, List.of(), hint);
+			return not ? negate(between) : between;
+		}
+		if (accept("LIKE")) {
+			Expr like = like(left, additive(), accept("ESCAPE") ? additive() : null);
+			return not ? negate(like) : like;
+		}
+		if (accept("IN")) {
+			Expr in = in(left);
+			return not ? negate(in) : in;
+		}
+		if (accept("MEMBER")) {
+			accept("OF");
+			Expr collection = additive();
+			Expr member = Expr.of((row, params) -> {
+				Object value = left.eval(row, params);
+				if (!(collection.eval(row, params) instanceof Collection<?> values)) {
+					return null;
+				}
+				return value == null ? null : values.stream().anyMatch(element -> equal(value, element));
+			}, left.slots() | collection.slots());
+			return not ? negate(member) : member;
+		}
+		for (String operator : List.of("=", "<>", "!=", "<", "<=", ">", ">=")) {
+			if (accept(operator)) {
+				return comparison(operator.equals("!=") ? "<>" : operator, left, additive());
+			}
+		}
+		return left;
+	}
+
+	private Expr comparison(final String operator, final Expr left, final Expr right) {
+		BiFunction<Object, Object, Boolean> test = switch (operator) {
+			case "=" -> JpqlParser::equal;
+			case "<>" -> (a, b) -> !equal(a, b);
+			case "<" -> (a, b) -> InMemoryCriteria.compare(a, b) < 0;
+			case "<=" -> (a, b) -> InMemoryCriteria.compare(a, b) <= 0;
+			case ">" -> (a, b) -> InMemoryCriteria.compare(a, b) > 0;
+			default -> (a, b) -> InMemoryCriteria.compare(a, b) >= 0;
+		};
+		Hint hint = null;
+		if (!operator.equals("<>")) {
+			if (restrictable(left) && right.constant()) {
+				hint = new Hint(left.property(), operator, right, null);
+			} else if (restrictable(right) && left.constant()) {
+				hint = new Hint(right.property(), mirror(operator), left, null);
+			}
+		}
+		Expr comparison = new Expr((row, params) -> {
+			Object a = left.eval(row, params);
+			Object b = right.eval(row, params);
+			return a == null || b == null ? null : test.apply(a, b);
+		}, left.slots() | right.slots(), -1, null, List.of(), hint);
+		if (operator.equals("=")) {
+			equalities.put(comparison, new Expr[]{left, right});
+		}
+		return comparison;
+	}
+
+	/**
+	 * Compile a {@code LIKE}, keeping the matcher for the last pattern and escape seen, so that a pattern bound to a
+	 * parameter is compiled once per call rather than once per row.
+	 */
+	private Expr like(final Expr value, final Expr pattern, final Expr escape) {
+		AtomicReference<Map.Entry<String, Predicate<String>>> compiled = new AtomicReference<>();
+		return Expr.of((row, params) -> {
+			Object actual = value.eval(row, params);
+			Object like = pattern.eval(row, params);
+			Character character = escape != null ? escape(escape.eval(row, params)) : null;
+			if (actual == null || like == null) {
+				return null;
+			}
+			String key = character != null ? like + "\0" + character : like.toString();
+			Map.Entry<String, Predicate<String>> matcher = compiled.get();
+			if (matcher == null || !matcher.getKey().equals(key)) {
+				matcher = Map.entry(key, StringMatchers.like(like.toString(), character, false));
+				compiled.set(matcher);
+			}
+			return matcher.getValue().test(actual.toString());
+		}, value.slots() | pattern.slots() | (escape != null ? escape.slots() : 0));
+	}
+
+	private Character escape(final Object escape) {
+		if (!(escape instanceof String string) || string.length() != 1) {
+			throw new IllegalArgumentException(
+					String.format("Escape `%s` of query `%s` is not a single character", escape, jpql));
+		}
+		return string.charAt(0);
+	}
+
+	private Expr in(final Expr value) {
+		List<Expr> items = new ArrayList<>();
+		if (accept("(")) {
+			if (at("SELECT")) {
+				throw unsupported("subquery");
+			}
+			do {
+				items.add(additive());
+			} while (accept(","));
+			expect(")");
+		} else if (peek().kind() == Kind.PARAMETER) {
+			items.add(primary());
+		} else {
+			throw error();
+		}
+		long slots = value.slots();
+		for (Expr item : items) {
+			slots |= item.slots();
+		}
+		Expr[] all = items.toArray(Expr[]::new);
+		return Expr.of((row, params) -> {
+			Object actual = value.eval(row, params);
+			if (actual == null) {
+				return null;
+			}
+			boolean unknown = false;
+			for (Expr item : all) {
+				for (Object element : elements(item.eval(row, params))) {
+					if (element == null) {
+						unknown = true;
+					} else if (equal(actual, element)) {
+						return true;
+					}
+				}
+			}
+			return unknown ? null : Boolean.FALSE;
+		}, slots);
+	}
+
+	// scalar expressions
+
+	private Expr additive() {
+		Expr left = multiplicative();
+		while (at("+") || at("-")) {
+			boolean add = next().text().equals("+");
+			left = arithmetic(left, multiplicative(), add ? BigDecimal::add : BigDecimal::subtract);
+		}
+		return left;
+	}
+
+	private Expr multiplicative() {
+		Expr left = unary();
+		while (at("*") || at("/")) {
+			boolean multiply = next().text().equals("*");
+			left = arithmetic(left, unary(), multiply ? BigDecimal::multiply
+					: (a, b) -> a.divide(b, MathContext.DECIMAL64));
+		}
+		return left;
+	}
+
+	private Expr unary() {
+		if (accept("-")) {
+			return arithmetic(Expr.constant(0), unary(), BigDecimal::subtract);
+		}
+		accept("+");
+		return primary();
+	}
+
+	private Expr primary() {
+		Token token = peek();
+		switch (token.kind()) {
+			case STRING -> {
+				position++;
+				return Expr.constant(token.text());
+			}
+			case NUMBER -> {
+				position++;
+				return Expr.constant(number(token));
+			}
+			case PARAMETER -> {
+				position++;
+				int index = parameters.indexOf(token.text());
+				if (index < 0) {
+					index = parameters.size();
+					parameters.add(token.text());
+				}
+				int parameter = index;
+				return Expr.of((row, params) -> params[parameter], 0);
+			}
+			case WORD -> {
+				position++;
+				String word = token.text().toUpperCase(Locale.ROOT);
+				switch (word) {
+					case "TRUE" -> {
+						return Expr.constant(Boolean.TRUE);
+					}
+					case "FALSE" -> {
+						return Expr.constant(Boolean.FALSE);
+					}
+					case "NULL" -> {
+						return Expr.constant(null);
+					}
+					default -> {
+						if (UNSUPPORTED.contains(word)) {
+							throw unsupported(word);
+						}
+						if (accept("(")) {
+							return function(word);
+						}
+						return path(token);
+					}
+				}
+			}
+			default -> {
+				if (accept("(")) {
+					if (at("SELECT")) {
+						throw unsupported("subquery");
+					}
+					Expr expr = or();
+					expect(")");
+					return expr;
+				}
+				throw error();
+			}
+		}
+	}
+
+	private Expr function(final String name) {
+		if (name.equals("TRIM") && (at("LEADING") || at("TRAILING") || at("BOTH") || at("FROM"))) {
+			throw unsupported("TRIM specification");
+		}
+		List<Expr> args = new ArrayList<>();
+		if (!at(")")) {
+			do {
+				args.add(additive());
+			} while (accept(","));
+		}
+		expect(")");
+		return switch (name) {
+			case "LOWER" -> function(name, args, 1, value -> value.toString().toLowerCase(Locale.ROOT));
+			case "UPPER" -> function(name, args, 1, value -> value.toString().toUpperCase(Locale.ROOT));
+			case "TRIM" -> function(name, args, 1, value -> value.toString().trim());
+			case "LENGTH" -> function(name, args, 1, value -> value.toString().length());
+			case "ABS" -> function(name, args, 1,
+					value -> InMemoryCriteria.narrow(new BigDecimal(value.toString()).abs(), value, value));
+			case "SIZE" -> {
+				arity(name, args, 1);
+				Expr collection = args.get(0);
+				yield Expr.of((row, params) -> collection.eval(row, params) instanceof Collection<?> values
+						? values.size() : 0, collection.slots());
+			}
+			case "MOD" -> {
+				arity(name, args, 2);
+				yield arithmetic(args.get(0), args.get(1), BigDecimal::remainder);
+			}
+			case "CONCAT" -> {
+				if (args.size() < 2) {
+					throw new IllegalArgumentException(String.format(
+							"Function `CONCAT` of query `%s` takes at least 2 arguments", jpql));
+				}
+				yield variadic(args, values -> {
+					StringBuilder text = new StringBuilder();
+					for (Object value : values) {
+						if (value == null) {
+							return null;
+						}
+						text.append(value);
+					}
+					return text.toString();
+				});
+			}
+			case "COALESCE" -> variadic(args, values -> {
+				for (Object value : values) {
+					if (value != null) {
+						return value;
+					}
+				}
+				return null;
+			});
+			default -> throw unsupported("function " + name);
+		};
+	}
+
+	private Expr function(final String name, final List<Expr> args, final int arity,
+			final Function<Object, Object> function) {
+		arity(name, args, arity);
+		Expr arg = args.get(0);
+		return Expr.of((row, params) -> {
+			Object value = arg.eval(row, params);
+			return value != null ? function.apply(value) : null;
+		}, arg.slots());
+	}
+
+	private void arity(final String name, final List<Expr> args, final int arity) {
+		if (args.size() != arity) {
+			throw new IllegalArgumentException(String.format(
+					"Function `%s` of query `%s` takes %d argument(s)", name, jpql, arity));
+		}
+	}
+
+	private static Expr variadic(final List<Expr> args, final Function<Object[], Object> function) {
+		Expr[] all = args.toArray(Expr[]::new);
+		long slots = 0;
+		for (Expr arg : all) {
+			slots |= arg.slots();
+		}
+		return Expr.of((row, params) -> {
+			Object[] values = new Object[all.length];
+			for (int i = 0; i < all.length; i++) {
+				values[i] = all[i].eval(row, params);
+			}
+			return function.apply(values);
+		}, slots);
+	}
+
+	private static Expr arithmetic(final Expr left, final Expr right,
+			final BiFunction<BigDecimal, BigDecimal, BigDecimal> operator) {
+		return Expr.of((row, params) -> {
+			Object a = left.eval(row, params);
+			Object b = right.eval(row, params);
+			if (a == null || b == null) {
+				return null;
+			}
+			BigDecimal result = operator.apply(new BigDecimal(a.toString()), new BigDecimal(b.toString()));
+			return InMemoryCriteria.narrow(result, a, b);
+		}, left.slots() | right.slots());
+	}
+
+	private static Expr negate(final Expr expr) {
+		return Expr.of((row, params) -> {
+			Object value = expr.eval(row, params);
+			return value == null ? null : !(Boolean) value;
+		}, expr.slots());
+	}
+
+	/**
+	 * Resolve a path expression, such as {@code v.name}, against the identification variables declared so far. An
+	 * unqualified path reads the root when it has no identification variable, and a qualified name that is not a
+	 * path may be an enum constant.
+	 */
+	private Expr path(final Token token) {
+		String text = token.text();
+		int dot = text.indexOf('.');
+		int slot = aliases.indexOf((dot < 0 ? text : text.substring(0, dot)).toLowerCase(Locale.ROOT));
+		if (slot >= 0) {
+			return path(slot, dot < 0 ? "" : text.substring(dot + 1));
+		}
+		Object constant = dot > 0 ? constant(text) : null;
+		if (constant != null) {
+			return Expr.constant(constant);
+		}
+		if (!aliases.get(0).isEmpty()) {
+			throw new IllegalArgumentException(String.format(
+					"Unknown identification variable in `%s` at position %d of query `%s`", text, token.offset(), jpql));
+		}
+		return path(0, text);
+	}
+
+	private static Expr path(final int slot, final String property) {
+		Evaluator evaluator;
+		if (property.isEmpty()) {
+			evaluator = (row, params) -> row[slot];
+		} else {
+			PropertyAccessor accessor = PropertyAccessor.of(property);
+			evaluator = (row, params) -> accessor.apply(row[slot]);
+		}
+		return new Expr(evaluator, 1L << slot, slot, property, List.of(), null);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Object constant(final String name) {
+		int dot = name.lastIndexOf('.');
+		String type = name.substring(0, dot);
+		while (true) {
+			try {
+				Class<?> enumType = Class.forName(type, false, Thread.currentThread().getContextClassLoader());
+				return enumType.isEnum() ? Enum.valueOf((Class) enumType, name.substring(dot + 1)) : null;
+			} catch (ClassNotFoundException | IllegalArgumentException ex) {
+				int nested = type.lastIndexOf('.');
+				if (nested < 0 || ex instanceof IllegalArgumentException) {
+					return null;
+				}
+				type = type.substring(0, nested) + '$' + type.substring(nested + 1);
+			}
+		}
+	}
+
+	private Object number(final Token token) {
+		String text = token.text();
+		try {
+			char suffix = Character.toUpperCase(text.charAt(text.length() - 1));
+			if (text.toUpperCase(Locale.ROOT).endsWith("BD")) {
+				return new BigDecimal(text.substring(0, text.length() - 2));
+			} else if (text.toUpperCase(Locale.ROOT).endsWith("BI")) {
+				return new BigInteger(text.substring(0, text.length() - 2));
+			} else if (suffix == 'L') {
+				return Long.valueOf(text.substring(0, text.length() - 1));
+			} else if (suffix == 'D') {
+				return Double.valueOf(text.substring(0, text.length() - 1));
+			} else if (suffix == 'F') {
+				return Float.valueOf(text.substring(0, text.length() - 1));
+			} else if (text.contains(".") || text.contains("e") || text.contains("E")) {
+				return Double.valueOf(text);
+			}
+			long value = Long.parseLong(text);
+			return value == (int) value ? (Object) (int) value : (Object) value;
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException(String.format(
+					"Number `%s` at position %d of query `%s` is not valid", text, token.offset(), jpql), ex);
+		}
+	}
+
+	// planning
+
+	private JpqlPlan plan(final Statement statement, final boolean distinct, final List<Expr> selection,
+			final Expr where, final List<Order> orders) {
+		int size = aliases.size();
+		List<List<Expr>> local = lists(size);
+		List<List<Expr>> on = lists(size);
+		List<List<Expr>> filters = lists(size);
+		String[] keys = new String[size];
+		Expr[] probes = new Expr[size];
+		for (int slot = 1; slot < size; slot++) {
+			Expr condition = ons.get(slot);
+			if (condition != null) {
+				for (Expr conjunct : conjuncts(condition)) {
+					if (conjunct.last() > slot) {
+						throw new IllegalArgumentException(String.format(
+								"ON clause of join %d refers to a later join in query `%s`", slot, jpql));
+					}
+					place(conjunct, slot, true, local, on, filters, keys, probes);
+				}
+			}
+		}
+		if (where != null) {
+			for (Expr conjunct : conjuncts(where)) {
+				place(conjunct, conjunct.last(), false, local, on, filters, keys, probes);
+			}
+		}
+		List<Source> sources = new ArrayList<>(size);
+		for (int slot = 0; slot < size; slot++) {
+			List<Hint> hints = local.get(slot).stream().map(Expr::hint).filter(hint -> hint != null).toList();
+			sources.add(new Source(entities.get(slot), paths.get(slot), lefts.get(slot), List.copyOf(local.get(slot)),
+					hints, keys[slot], probes[slot], List.copyOf(on.get(slot))));
+		}
+		return new JpqlPlan(statement, distinct, List.copyOf(selection), List.copyOf(aliases), List.copyOf(sources),
+				filters.stream().map(List::copyOf).toList(), List.copyOf(orders), List.copyOf(parameters));
+	}
+
+	/**
+	 * Place a conjunct at the earliest point of evaluation: in the scan of an entity it alone reads, as the key of a
+	 * hash join, or as a filter once its last slot is bound. Conjuncts of the {@code WHERE} clause that read an outer
+	 * joined slot must wait until missing matches have been padded, while those of its {@code ON} clause decide the
+	 * matches.
+	 */
+	private void place(final Expr conjunct, final int slot, final boolean join, final List<List<Expr>> local,
+			final List<List<Expr>> on, final List<List<Expr>> filters, final String[] keys, final Expr[] probes) {
+		boolean outer = lefts.get(slot);
+		if (outer && !join) {
+			filters.get(slot).add(conjunct);
+			return;
+		}
+		if (entities.get(slot) != null) {
+			if (conjunct.slots() == 1L << slot) {
+				local.get(slot).add(conjunct);
+				return;
+			}
+			if (slot > 0 && keys[slot] == null && key(conjunct, slot, keys, probes)) {
+				return;
+			}
+		}
+		(outer ? on : filters).get(slot).add(conjunct);
+	}
+
+	private boolean key(final Expr conjunct, final int slot, final String[] keys, final Expr[] probes) {
+		Expr[] sides = equalities.get(conjunct);
+		if (sides == null) {
+			return false;
+		}
+		long earlier = (1L << slot) - 1;
+		for (int i = 0; i < 2; i++) {
+			Expr key = sides[i];
+			Expr probe = sides[1 - i];
+			if (key.slot() == slot && !key.property().isEmpty()
+					&& probe.slots() != 0 && (probe.slots() & ~earlier) == 0) {
+				keys[slot] = key.property();
+				probes[slot] = probe;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static List<Expr> conjuncts(final Expr expr) {
+		return expr.conjuncts().isEmpty() ? List.of(expr) : expr.conjuncts();
+	}
+
+	private static List<List<Expr>> lists(final int size) {
+		List<List<Expr>> lists = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			lists.add(new ArrayList<>());
+		}
+		return lists;
+	}
+
+	private boolean restrictable(final Expr expr) {
+		return expr.slot() >= 0 && !expr.property().isEmpty() && entities.get(expr.slot()) != null;
+	}
+
+	private static String mirror(final String operator) {
+		return switch (operator) {
+			case "<" -> ">";
+			case "<=" -> ">=";
+			case ">" -> "<";
+			case ">=" -> "<=";
+			default -> operator;
+		};
+	}
+
+	/**
+	 * Test two values for equality, comparing numbers by value, and enums with their names.
+	 *
+	 * @param a a value, not {@literal null}.
+	 * @param b another value, not {@literal null}.
+	 * @return whether the values are equal.
+	 */
+	static boolean equal(final Object a, final Object b) {
+		if (a instanceof Number x && b instanceof Number y) {
+			return InMemoryCriteria.compare(x, y) == 0;
+		} else if (a instanceof Enum<?> e && b instanceof String name) {
+			return e.name().equals(name);
+		} else if (a instanceof String name && b instanceof Enum<?> e) {
+			return e.name().equals(name);
+		}
+		return a.equals(b);
+	}
+
+	/**
+	 * The elements of a collection or array argument, or else the argument itself.
+	 *
+	 * @param value the argument.
+	 * @return the elements.
+	 */
+	static Iterable<?> elements(final Object value) {
+		if (value instanceof Collection<?> collection) {
+			return collection;
+		}
+		if (value != null && value.getClass().isArray()) {
+			List<Object> elements = new ArrayList<>();
+			for (int i = 0, length = Array.getLength(value); i < length; i++) {
+				elements.add(Array.get(value, i));
+			}
+			return elements;
+		}
+		return Collections.singletonList(value);
+	}
+
+	// tokens
+
+	private Token peek() {
+		return tokens.get(position);
+	}
+
+	private Token next() {
+		Token token = tokens.get(position);
+		if (token.kind() != Kind.END) {
+			position++;
+		}
+		return token;
+	}
+
+	private String word() {
+		if (peek().kind() != Kind.WORD) {
+			throw error();
+		}
+		return next().text();
+	}
+
+	private boolean at(final String text) {
+		Token token = peek();
+		return (token.kind() == Kind.WORD || token.kind() == Kind.SYMBOL) && token.text().equalsIgnoreCase(text);
+	}
+
+	private boolean accept(final String text) {
+		if (at(text)) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(final String text) {
+		if (!accept(text)) {
+			throw error();
+		}
+	}
+
+	private IllegalArgumentException error() {
+		Token token = peek();
+		return new IllegalArgumentException(String.format("Unexpected `%s` at position %d of query `%s`",
+				token.kind() == Kind.END ? "end" : token.text(), token.offset(), jpql));
+	}
+
+	private static UnsupportedOperationException unsupported(final String feature) {
+		return new UnsupportedOperationException(String.format("JPQL `%s` is not supported in memory", feature));
+	}
+
+	private List<Token> tokenize(final String text) {
+		List<Token> list = new ArrayList<>();
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			char ch = text.charAt(i);
+			int start = i;
+			if (Character.isWhitespace(ch)) {
+				i++;
+			} else if (Character.isJavaIdentifierStart(ch)) {
+				while (i < length && (Character.isJavaIdentifierPart(text.charAt(i)) || text.charAt(i) == '.'
+						&& i + 1 < length && Character.isJavaIdentifierStart(text.charAt(i + 1)))) {
+					i++;
+				}
+				list.add(new Token(Kind.WORD, text.substring(start, i), start));
+			} else if (Character.isDigit(ch) || ch == '.' && i + 1 < length && Character.isDigit(text.charAt(i + 1))) {
+				while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+					i++;
+				}
+				list.add(new Token(Kind.NUMBER, text.substring(start, i), start));
+			} else if (ch == '\'') {
+				StringBuilder literal = new StringBuilder();
+				while (true) {
+					if (++i >= length) {
+						throw new IllegalArgumentException(String.format(
+								"Unterminated string at position %d of query `%s`", start, text));
+					}
+					if (text.charAt(i) == '\'') {
+						if (i + 1 < length && text.charAt(i + 1) == '\'') {
+							i++;
+						} else {
+							i++;
+							break;
+						}
+					}
+					literal.append(text.charAt(i));
+				}
+				list.add(new Token(Kind.STRING, literal.toString(), start));
+			} else if (ch == ':' || ch == '?') {
+				i++;
+				while (i < length && (ch == ':' ? Character.isJavaIdentifierPart(text.charAt(i))
+						: Character.isDigit(text.charAt(i)))) {
+					i++;
+				}
+				if (i == start + 1) {
+					throw unsupported(ch == ':' ? "SpEL expression" : "unnumbered parameter");
+				}
+				list.add(new Token(Kind.PARAMETER, text.substring(start + 1, i), start));
+			} else {
+				String symbol = i + 1 < length ? text.substring(i, i + 2) : "";
+				if (!List.of("<>", "!=", "<=", ">=").contains(symbol)) {
+					symbol = String.valueOf(ch);
+					if ("(),=<>+-*/".indexOf(ch) < 0) {
+						throw new IllegalArgumentException(String.format(
+								"Unexpected `%s` at position %d of query `%s`", symbol, start, text));
+					}
+				}
+				i += symbol.length();
+				list.add(new Token(Kind.SYMBOL, symbol, start));
+			}
+		}
+		list.add(new Token(Kind.END, "", length));
+		return list;
+	}
+
+	private enum Kind {
+		WORD, STRING, NUMBER, PARAMETER, SYMBOL, END
+	}
+
+	private record Token(Kind kind, String text, int offset) {
+
+	}
+}
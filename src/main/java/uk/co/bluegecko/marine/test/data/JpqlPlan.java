@@ -0,0 +1,157 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.data.domain.Sort;
+
+/**
+ * A JPQL statement parsed by {@link JpqlParser} and planned for execution in memory.
+ * <p>
+ * Each range variable and join of the statement is a {@link Source}, which binds one slot of a row. The conjuncts of
+ * the {@code WHERE} and {@code ON} clauses are placed as early as possible: those reading a single entity are pushed
+ * into the scan of its repository, where comparisons with constants become {@link Restriction}s that an index can
+ * answer; an equality between a joined entity and an earlier slot becomes the key of a hash join; and the rest are
+ * evaluated as soon as the last slot they read is bound. Plans hold no arguments, so each query string is planned only
+ * once, however many methods declare it.
+ *
+ * @param statement  the kind of statement.
+ * @param distinct   whether duplicate results are removed.
+ * @param selection  the selected expressions, or the counted expression if any.
+ * @param aliases    the identification variable of each slot, in lower case.
+ * @param sources    the source of each slot, the root first.
+ * @param filters    the conjuncts to evaluate once each slot is bound.
+ * @param orders     the {@code ORDER BY} items.
+ * @param parameters the name of each parameter, or its position for positional parameters.
+ */
+record JpqlPlan(Statement statement, boolean distinct, List<Expr> selection, List<String> aliases,
+				List<Source> sources, List<List<Expr>> filters, List<Order> orders, List<String> parameters) {
+
+	private static final Map<String, JpqlPlan> PLANS = new ConcurrentHashMap<>();
+
+	/**
+	 * Get the plan of a query, parsing the query the first time it is seen.
+	 *
+	 * @param jpql the query.
+	 * @return the shared plan.
+	 * @throws IllegalArgumentException      if the query is not valid JPQL.
+	 * @throws UnsupportedOperationException if the query uses JPQL that is not supported in memory.
+	 */
+	static JpqlPlan of(final String jpql) {
+		JpqlPlan plan = PLANS.get(jpql);
+		return plan != null ? plan : PLANS.computeIfAbsent(jpql, JpqlParser::parse);
+	}
+
+	/**
+	 * Whether the statement selects a single identification variable, and so can be projected.
+	 *
+	 * @return whether the results are entities.
+	 */
+	boolean entities() {
+		return selection.size() == 1 && selection.get(0).slot() >= 0 && selection.get(0).property().isEmpty();
+	}
+
+	/**
+	 * The kinds of statement.
+	 */
+	enum Statement {
+		SELECT, COUNT, DELETE
+	}
+
+	/**
+	 * Evaluates an expression against a row.
+	 */
+	@FunctionalInterface
+	interface Evaluator {
+
+		/**
+		 * Evaluate the expression.
+		 *
+		 * @param row    the entity or value bound to each slot, or {@literal null} for constant expressions.
+		 * @param params the argument bound to each parameter.
+		 * @return the value, where a {@link Boolean} {@literal null} is the unknown truth value.
+		 */
+		Object eval(Object[] row, Object[] params);
+	}
+
+	/**
+	 * A compiled expression.
+	 *
+	 * @param evaluator the evaluator.
+	 * @param slots     a bit for each slot the expression reads, so {@literal 0} for constants.
+	 * @param slot      the slot read by a path expression, otherwise {@literal -1}.
+	 * @param property  the property read by a path expression, {@code ""} for the identification variable itself.
+	 * @param conjuncts the operands of an {@code AND}, otherwise empty.
+	 * @param hint      the index restriction implied by a comparison, or {@literal null} if there is none.
+	 */
+	record Expr(Evaluator evaluator, long slots, int slot, String property, List<Expr> conjuncts, Hint hint) {
+
+		static Expr of(final Evaluator evaluator, final long slots) {
+			return new Expr(evaluator, slots, -1, null, List.of(), null);
+		}
+
+		static Expr constant(final Object value) {
+			return of((row, params) -> value, 0);
+		}
+
+		Object eval(final Object[] row, final Object[] params) {
+			return evaluator.eval(row, params);
+		}
+
+		boolean constant() {
+			return slots == 0;
+		}
+
+		/**
+		 * The highest slot read by the expression.
+		 *
+		 * @return the slot, or {@literal 0} for constants.
+		 */
+		int last() {
+			return slots == 0 ? 0 : Long.SIZE - 1 - Long.numberOfLeadingZeros(slots);
+		}
+	}
+
+	/**
+	 * A comparison of a property with constants, which an index may be able to answer.
+	 *
+	 * @param property the property compared.
+	 * @param operator one of {@code =}, {@code <}, {@code <=}, {@code >}, {@code >=}, {@code BETWEEN} or
+	 *                 {@code NULL}.
+	 * @param value    the constant compared with, or the lower bound of a {@code BETWEEN}.
+	 * @param upper    the upper bound of a {@code BETWEEN}, otherwise {@literal null}.
+	 */
+	record Hint(String property, String operator, Expr value, Expr upper) {
+
+	}
+
+	/**
+	 * The source of the entities or values bound to one slot: either the entities of a repository, by
+	 * {@code entity}, or the values of a {@code path} from an earlier slot.
+	 *
+	 * @param entity the entity name, for a range variable or entity join.
+	 * @param path   the joined path, for a path join.
+	 * @param left   whether the join is a left outer join.
+	 * @param local  conjuncts reading only this slot, tested during the scan of the repository.
+	 * @param hints  the index restrictions implied by the local conjuncts.
+	 * @param key    the property of the entity on which the hash join matches, or {@literal null}.
+	 * @param probe  the expression over earlier slots matched with the key, or {@literal null}.
+	 * @param on     the other conditions of an outer join, tested before a missing match is padded with
+	 *               {@literal null}.
+	 */
+	record Source(String entity, Expr path, boolean left, List<Expr> local, List<Hint> hints, String key, Expr probe,
+				  List<Expr> on) {
+
+	}
+
+	/**
+	 * An {@code ORDER BY} item.
+	 *
+	 * @param expr      the expression ordered by.
+	 * @param ascending whether the order is ascending.
+	 * @param nulls     where nulls are placed.
+	 */
+	record Order(Expr expr, boolean ascending, Sort.NullHandling nulls) {
+
+	}
+}
@@ -0,0 +1,535 @@
+package uk.co.bluegecko.marine.test.data;
+
+import jakarta.persistence.Entity;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyPath;
+import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.data.repository.core.RepositoryMetadata;
+import org.springframework.data.repository.query.Parameters;
+import org.springframework.data.repository.query.ParametersParameterAccessor;
+import org.springframework.data.repository.query.QueryMethod;
+import org.springframework.data.repository.query.ReturnedType;
+import org.springframework.util.ClassUtils;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Expr;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Hint;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Order;
+import uk.co.bluegecko.marine.test.data.JpqlPlan.Source;
+
+/**
+ * A query declared in JPQL by the {@link org.springframework.data.jpa.repository.Query @Query} annotation of a
+ * repository method, such as {@code @Query("select v from Vessel v where v.flag = :flag order by v.name")}.
+ * <p>
+ * The query is parsed and planned once per query string by {@link JpqlPlan#of(String)}, so executing it only binds
+ * the arguments and evaluates the plan. Each row of the evaluation binds an entity or value to each identification
+ * variable. The root entities come from a scan of their repository, which uses its indexes for comparisons with
+ * constants. Each join then extends the rows: a path join with the values of the path, and an entity join with the
+ * entities of another registered repository, matched by a hash join on an equality with an earlier variable, or by
+ * the joined repository's index on the key when it has one.
+ */
+final class JpqlQuery {
+
+	private final QueryMethod method;
+	private final Class<?> returnType;
+	private final JpqlPlan plan;
+	private final int[] bindings;
+
+	private JpqlQuery(final QueryMethod method, final Class<?> returnType, final JpqlPlan plan, final String jpql) {
+		this.method = method;
+		this.returnType = returnType;
+		this.plan = plan;
+		this.bindings = bindings(jpql);
+	}
+
+	/**
+	 * Parse and plan the query of a method.
+	 *
+	 * @param method   the repository method.
+	 * @param metadata the metadata of the repository declaring the method.
+	 * @param jpql     the query.
+	 * @return the query.
+	 * @throws IllegalArgumentException      if the query is not valid, or has a parameter the method does not bind.
+	 * @throws UnsupportedOperationException if the query uses JPQL that is not supported in memory.
+	 */
+	static JpqlQuery of(final Method method, final RepositoryMetadata metadata, final String jpql) {
+		QueryMethod queryMethod = new QueryMethod(method, metadata, DerivedQuery.PROJECTIONS);
+		return new JpqlQuery(queryMethod, method.getReturnType(), JpqlPlan.of(jpql), jpql);
+	}
+
+	/**
+	 * Execute the query.
+	 *
+	 * @param repository   the repository the query is declared for.
+	 * @param repositories the repositories holding each entity type the query may refer to.
+	 * @param args         the arguments of the method call.
+	 * @param <T>          the type of the entities.
+	 * @return the result, in the form declared by the method.
+	 * @throws IllegalArgumentException if the query refers to an entity with no repository.
+	 */
+	<T> Object execute(final InMemoryRepository<T, ?> repository,
+			final Map<Class<?>, InMemoryRepository<?, ?>> repositories, final Object[] args) {
+		long start = repository.started();
+		try {
+			return run(repositories, args);
+		} finally {
+			repository.finished(RepositoryMetrics.Operation.QUERY, start);
+		}
+	}
+
+	private Object run(final Map<Class<?>, InMemoryRepository<?, ?>> repositories, final Object[] args) {
+		ParametersParameterAccessor accessor = new ParametersParameterAccessor(method.getParameters(),
+				args != null ? args : new Object[0]);
+		Object[] params = new Object[bindings.length];
+		for (int i = 0; i < bindings.length; i++) {
+			params[i] = accessor.getBindableValue(bindings[i]);
+		}
+		List<Registered> registered = plan.sources().stream()
+				.map(source -> source.entity() != null ? resolve(source.entity(), repositories) : null)
+				.toList();
+		Stream<Object[]> rows = rows(registered, params);
+
+		switch (plan.statement()) {
+			case DELETE -> {
+				List<Object> deleted = rows.map(row -> row[0]).collect(Collectors.toList());
+				registered.get(0).repository().deleteAll(deleted);
+				return returnType == void.class || returnType == Void.class ? null : number(deleted.size());
+			}
+			case COUNT -> {
+				long count;
+				if (plan.selection().isEmpty()) {
+					count = rows.count();
+				} else {
+					Expr counted = plan.selection().get(0);
+					Stream<Object> values = rows.map(row -> counted.eval(row, params)).filter(Objects::nonNull);
+					count = (plan.distinct() ? values.distinct() : values).count();
+				}
+				return returnType == boolean.class || returnType == Boolean.class ? (Object) (count > 0)
+						: number(count);
+			}
+			default -> {
+				// select
+			}
+		}
+
+		Comparator<Object[]> order = comparator(accessor.getSort(), params);
+		if (order != null) {
+			rows = rows.sorted(order);
+		}
+		Stream<Object> results = select(rows, params).map(projection(accessor.findDynamicProjection()));
+
+		if (method.isPageQuery() || method.isSliceQuery()) {
+			Pageable pageable = accessor.getPageable();
+			List<Object> matches = results.collect(Collectors.toList());
+			if (pageable.isUnpaged()) {
+				return new PageImpl<>(matches);
+			}
+			int from = (int) Math.min(pageable.getOffset(), matches.size());
+			int to = (int) Math.min(from + (long) pageable.getPageSize(), matches.size());
+			List<Object> content = new ArrayList<>(matches.subList(from, to));
+			return method.isPageQuery()
+					? new PageImpl<>(content, pageable, matches.size())
+					: new SliceImpl<>(content, pageable, to < matches.size());
+		}
+		if (method.isStreamQuery()) {
+			return results;
+		}
+		if (method.isCollectionQuery()) {
+			List<Object> list = results.collect(Collectors.toList());
+			return Set.class.isAssignableFrom(returnType) ? new LinkedHashSet<>(list) : list;
+		}
+		Iterator<Object> matches = results.iterator();
+		Object result = null;
+		if (matches.hasNext()) {
+			result = matches.next();
+			if (matches.hasNext()) {
+				throw new IncorrectResultSizeDataAccessException(
+						String.format("Query `%s` matches more than one result", method.getName()), 1);
+			}
+		}
+		return Optional.class.isAssignableFrom(returnType) ? Optional.ofNullable(result) : result;
+	}
+
+	/**
+	 * Evaluate the sources of the plan into rows, applying each filter as soon as its slots are bound.
+	 */
+	private Stream<Object[]> rows(final List<Registered> registered, final Object[] params) {
+		List<Source> sources = plan.sources();
+		int size = sources.size();
+		Source root = sources.get(0);
+		Stream<Object[]> rows = registered.get(0).repository()
+				.scan(new Filter<>(local(root, 0, size, params), restrictions(root, registered.get(0), params)))
+				.map(entity -> {
+					Object[] row = new Object[size];
+					row[0] = entity;
+					return row;
+				});
+		rows = filter(rows, 0, params);
+		for (int slot = 1; slot < size; slot++) {
+			rows = rows.flatMap(join(slot, registered.get(slot), params));
+			rows = filter(rows, slot, params);
+		}
+		return rows;
+	}
+
+	private Stream<Object[]> filter(final Stream<Object[]> rows, final int slot, final Object[] params) {
+		List<Expr> filters = plan.filters().get(slot);
+		return filters.isEmpty() ? rows : rows.filter(row -> test(filters, row, params));
+	}
+
+	/**
+	 * Create the join binding a slot, which maps a row to the rows extending it with each match.
+	 */
+	private Function<Object[], Stream<Object[]>> join(final int slot, final Registered registered,
+			final Object[] params) {
+		Source source = plan.sources().get(slot);
+		Function<Object[], Iterable<?>> matches;
+		if (source.path() != null) {
+			Expr path = source.path();
+			matches = row -> {
+				Object value = path.eval(row, params);
+				return value instanceof Collection<?> values ? values : value != null ? List.of(value) : List.of();
+			};
+		} else {
+			InMemoryRepository<Object, ?> repository = registered.repository();
+			Predicate<Object> local = local(source, slot, plan.sources().size(), params);
+			List<Restriction> restrictions = restrictions(source, registered, params);
+			Expr probe = source.probe();
+			String key = source.key();
+			if (key != null && repository.indexes.containsKey(key)) {
+				matches = row -> {
+					Object value = coerce(probe.eval(row, params), registered.type(), key);
+					if (value == null) {
+						return List.of();
+					}
+					List<Restriction> lookup = new ArrayList<>(restrictions);
+					lookup.add(new Restriction.Equal(key, value));
+					return repository.scan(new Filter<>(local, lookup)).toList();
+				};
+			} else if (key != null) {
+				PropertyAccessor accessor = PropertyAccessor.of(key);
+				Supplier<Map<Object, List<Object>>> table = lazily(() -> repository
+						.scan(new Filter<>(local, restrictions))
+						.filter(entity -> accessor.apply(entity) != null)
+						.collect(Collectors.groupingBy(entity -> normalize(accessor.apply(entity)), HashMap::new,
+								Collectors.toList())));
+				matches = row -> {
+					Object value = probe.eval(row, params);
+					return value != null ? table.get().getOrDefault(normalize(value), List.of()) : List.of();
+				};
+			} else {
+				Supplier<List<Object>> all = lazily(() -> repository.scan(new Filter<>(local, restrictions)).toList());
+				matches = row -> all.get();
+			}
+		}
+		List<Expr> on = source.on();
+		boolean left = source.left();
+		return row -> {
+			List<Object[]> joined = new ArrayList<>();
+			for (Object match : matches.apply(row)) {
+				Object[] next = row.clone();
+				next[slot] = match;
+				if (on.isEmpty() || test(on, next, params)) {
+					joined.add(next);
+				}
+			}
+			return joined.isEmpty() && left ? Stream.<Object[]>of(row) : joined.stream();
+		};
+	}
+
+	/**
+	 * The test of an entity against the conjuncts that read only its slot.
+	 */
+	private static Predicate<Object> local(final Source source, final int slot, final int size,
+			final Object[] params) {
+		List<Expr> local = source.local();
+		if (local.isEmpty()) {
+			return entity -> true;
+		}
+		return entity -> {
+			Object[] row = new Object[size];
+			row[slot] = entity;
+			return test(local, row, params);
+		};
+	}
+
+	private static boolean test(final List<Expr> conjuncts, final Object[] row, final Object[] params) {
+		for (Expr conjunct : conjuncts) {
+			if (!Boolean.TRUE.equals(conjunct.eval(row, params))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Bind the index hints of a source to the arguments. A hint is dropped if its value cannot be converted exactly
+	 * to the type of the property, since the index would then miss entities the predicate accepts.
+	 */
+	private static List<Restriction> restrictions(final Source source, final Registered registered,
+			final Object[] params) {
+		List<Restriction> restrictions = new ArrayList<>(source.hints().size());
+		for (Hint hint : source.hints()) {
+			String property = hint.property();
+			if (hint.operator().equals("NULL")) {
+				restrictions.add(new Restriction.Equal(property, null));
+				continue;
+			}
+			Object value = coerce(hint.value().eval(null, params), registered.type(), property);
+			if (!(value instanceof Comparable<?> bound)) {
+				continue;
+			}
+			switch (hint.operator()) {
+				case "=" -> restrictions.add(new Restriction.Equal(property, value));
+				case "<" -> restrictions.add(Restriction.Range.before(property, bound));
+				case "<=" -> restrictions.add(new Restriction.Range(property, null, false, bound, true));
+				case ">" -> restrictions.add(Restriction.Range.after(property, bound));
+				case ">=" -> restrictions.add(new Restriction.Range(property, bound, true, null, false));
+				default -> {
+					if (coerce(hint.upper().eval(null, params), registered.type(), property)
+							instanceof Comparable<?> upper) {
+						restrictions.add(Restriction.Range.between(property, bound, upper));
+					}
+				}
+			}
+		}
+		return restrictions;
+	}
+
+	private Stream<Object> select(final Stream<Object[]> rows, final Object[] params) {
+		List<Expr> selection = plan.selection();
+		if (selection.size() == 1) {
+			Expr expr = selection.get(0);
+			Stream<Object> results = rows.map(row -> expr.eval(row, params));
+			return plan.distinct() ? results.distinct() : results;
+		}
+		Stream<List<Object>> tuples = rows.map(row -> {
+			Object[] tuple = new Object[selection.size()];
+			for (int i = 0; i < tuple.length; i++) {
+				tuple[i] = selection.get(i).eval(row, params);
+			}
+			return Arrays.asList(tuple);
+		});
+		return (plan.distinct() ? tuples.distinct() : tuples).map(List::toArray);
+	}
+
+	private Comparator<Object[]> comparator(final Sort sort, final Object[] params) {
+		Comparator<Object[]> comparator = null;
+		for (Order order : plan.orders()) {
+			Comparator<Object> values = InMemoryCriteria::compare;
+			if (!order.ascending()) {
+				values = values.reversed();
+			}
+			boolean first = order.nulls() == Sort.NullHandling.NULLS_FIRST
+					|| order.nulls() == Sort.NullHandling.NATIVE && !order.ascending();
+			Comparator<Object> nulls = first ? Comparator.nullsFirst(values) : Comparator.nullsLast(values);
+			Expr expr = order.expr();
+			Comparator<Object[]> next = (a, b) -> nulls.compare(expr.eval(a, params), expr.eval(b, params));
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		for (Sort.Order order : sort) {
+			String property = order.getProperty();
+			int dot = property.indexOf('.');
+			int slot = dot > 0 ? plan.aliases().indexOf(property.substring(0, dot).toLowerCase()) : -1;
+			Sort.Order relative = slot >= 0 ? order.withProperty(property.substring(dot + 1)) : order;
+			Comparator<Object> entities = SortComparators.of(relative);
+			int index = Math.max(slot, 0);
+			Comparator<Object[]> next = (a, b) -> entities.compare(a[index], b[index]);
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		return comparator;
+	}
+
+	private Function<Object, Object> projection(final Class<?> dynamic) {
+		ReturnedType returned = method.getResultProcessor().getReturnedType();
+		Class<?> type = dynamic != null ? dynamic
+				: returned.isProjecting() ? returned.getReturnedType() : null;
+		if (!plan.entities() || type == null || type.isAssignableFrom(returned.getDomainType())) {
+			return Function.identity();
+		}
+		Function<Object, ?> projection = InMemoryFluentQuery.projection(type);
+		return value -> value == null || type.isInstance(value) ? value : projection.apply(value);
+	}
+
+	private Object number(final long count) {
+		return returnType == int.class || returnType == Integer.class ? (Object) (int) count : (Object) count;
+	}
+
+	/**
+	 * Map each parameter of the query to the index of the bindable method parameter supplying it.
+	 */
+	private int[] bindings(final String jpql) {
+		Parameters<?, ?> parameters = method.getParameters().getBindableParameters();
+		List<String> names = plan.parameters();
+		int[] indexes = new int[names.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			String name = names.get(i);
+			int index = -1;
+			if (Character.isDigit(name.charAt(0))) {
+				int position = Integer.parseInt(name) - 1;
+				index = position < parameters.getNumberOfParameters() ? position : -1;
+			} else {
+				for (int j = 0; j < parameters.getNumberOfParameters(); j++) {
+					if (parameters.getParameter(j).getName().filter(name::equals).isPresent()) {
+						index = j;
+					}
+				}
+			}
+			if (index < 0) {
+				throw new IllegalArgumentException(String.format("Parameter `%s` of query `%s` is not bound by method `%s`",
+						name, jpql, method.getName()));
+			}
+			indexes[i] = index;
+		}
+		return indexes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Registered resolve(final String entity, final Map<Class<?>, InMemoryRepository<?, ?>> repositories) {
+		for (Map.Entry<Class<?>, InMemoryRepository<?, ?>> entry : repositories.entrySet()) {
+			if (entity.equals(entityName(entry.getKey())) || entity.equals(entry.getKey().getName())) {
+				return new Registered(entry.getKey(), (InMemoryRepository<Object, ?>) entry.getValue());
+			}
+		}
+		throw new IllegalArgumentException(String.format("Entity `%s` has no in-memory repository", entity));
+	}
+
+	/**
+	 * Get the name by which JPQL refers to an entity type.
+	 *
+	 * @param type the entity type.
+	 * @return the name given by its {@link Entity} annotation, or else its simple name.
+	 */
+	static String entityName(final Class<?> type) {
+		Entity entity = type.getAnnotation(Entity.class);
+		return entity != null && !entity.name().isEmpty() ? entity.name() : type.getSimpleName();
+	}
+
+	/**
+	 * Convert a value to the type of a property, for an index lookup.
+	 *
+	 * @return the converted value, or {@literal null} if it cannot be converted exactly.
+	 */
+	private static Object coerce(final Object value, final Class<?> type, final String property) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return coerce(value, PropertyPath.from(property, type).getLeafType());
+		} catch (PropertyReferenceException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Convert a value to a type, for comparison with values of that type: a number to another type of number, or the
+	 * name of an enum constant to the constant.
+	 *
+	 * @param value the value, not {@literal null}.
+	 * @param type  the type to convert to, which may be primitive.
+	 * @return the converted value, or {@literal null} if it cannot be converted exactly.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static Object coerce(final Object value, final Class<?> type) {
+		Class<?> target = ClassUtils.resolvePrimitiveIfNecessary(type);
+		if (target.isInstance(value)) {
+			return value;
+		}
+		if (value instanceof Number number) {
+			BigDecimal exact = new BigDecimal(number.toString());
+			Object converted;
+			if (target == Long.class) {
+				converted = number.longValue();
+			} else if (target == Integer.class) {
+				converted = number.intValue();
+			} else if (target == Short.class) {
+				converted = number.shortValue();
+			} else if (target == Byte.class) {
+				converted = number.byteValue();
+			} else if (target == Double.class) {
+				converted = number.doubleValue();
+			} else if (target == Float.class) {
+				converted = number.floatValue();
+			} else if (target == BigDecimal.class) {
+				converted = exact;
+			} else if (target == BigInteger.class) {
+				converted = exact.toBigInteger();
+			} else {
+				return null;
+			}
+			return new BigDecimal(converted.toString()).compareTo(exact) == 0 ? converted : null;
+		}
+		if (value instanceof String name && target.isEnum()) {
+			try {
+				return Enum.valueOf((Class) target, name);
+			} catch (IllegalArgumentException ex) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Normalise a join key so that numbers of different types, which compare equal, hash alike.
+	 */
+	private static Object normalize(final Object value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return ((Number) value).longValue();
+		}
+		if (value instanceof Number number) {
+			BigDecimal decimal = new BigDecimal(number.toString()).stripTrailingZeros();
+			try {
+				return decimal.longValueExact();
+			} catch (ArithmeticException ex) {
+				return decimal;
+			}
+		}
+		return value;
+	}
+
+	private static <V> Supplier<V> lazily(final Supplier<V> supplier) {
+		return new Supplier<>() {
+			private V value;
+
+			@Override
+			public V get() {
+				if (value == null) {
+					value = supplier.get();
+				}
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * An entity type and the repository holding its entities.
+	 *
+	 * @param type       the entity type.
+	 * @param repository the repository.
+	 */
+	private record Registered(Class<?> type, InMemoryRepository<Object, ?> repository) {
+
+	}
+}
@@ -0,0 +1,59 @@
+package uk.co.bluegecko.marine.test.data;
+
+/**
+ * A concurrent map from primitive {@code long} keys to values, so that each entry costs a {@code long} slot and a
+ * reference slot, rather than a boxed key and a map node.
+ *
+ * @param <V> the type of the values.
+ * @see PrimitiveKeyMap
+ */
+final class LongKeyMap<V> extends PrimitiveKeyMap<Long, V> {
+
+	LongKeyMap() {
+		this(0);
+	}
+
+	/**
+	 * Create a map presized for a number of entries.
+	 *
+	 * @param expectedSize the expected number of entries.
+	 */
+	LongKeyMap(final int expectedSize) {
+		super(Long.class, 1, expectedSize);
+	}
+
+	/**
+	 * Get the value for a key, without boxing the key.
+	 *
+	 * @param key the key.
+	 * @return the value, or {@literal null} if there is none.
+	 */
+	V get(final long key) {
+		return get(key, 0);
+	}
+
+	/**
+	 * Check for a key, without boxing it.
+	 *
+	 * @param key the key.
+	 * @return {@literal true} if the map holds a value for the key.
+	 */
+	boolean containsKey(final long key) {
+		return get(key, 0) != null;
+	}
+
+	@Override
+	long high(final Long key) {
+		return key;
+	}
+
+	@Override
+	long low(final Long key) {
+		return 0;
+	}
+
+	@Override
+	Long key(final long high, final long low) {
+		return high;
+	}
+}
@@ -0,0 +1,98 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * An {@link InMemoryRepository} for entities with {@link Long} ids, such as those from {@link Generators#number()}.
+ * <p>
+ * Entities are held in a {@link LongKeyMap}, which stores the ids as primitive {@code long}s in open-addressed tables,
+ * rather than as boxed keys in map nodes, so storage costs a {@code long} and a reference per entity.
+ * {@link #findById(long)} and {@link #existsById(long)} look entities up without boxing the id at all.
+ *
+ * @param <T> the type of the entities.
+ */
+public class LongKeyedRepository<T> extends InMemoryRepository<T, Long> {
+
+	private final LongKeyMap<T> storage;
+
+	@SafeVarargs
+	public LongKeyedRepository(final Function<T, Long> extractor,
+			final BiConsumer<Long, T> inserter,
+			final Supplier<Long> generator,
+			final T... entities) {
+		this(entities.length, extractor, inserter, generator);
+		populate(Arrays.stream(entities));
+	}
+
+	public LongKeyedRepository(final Function<T, Long> extractor,
+			final BiConsumer<Long, T> inserter,
+			final Supplier<Long> generator,
+			final Stream<T> entities) {
+		this(extractor, inserter, generator);
+		populate(entities);
+	}
+
+	public LongKeyedRepository(final Function<T, Long> extractor,
+			final BiConsumer<Long, T> inserter,
+			final Supplier<Long> generator) {
+		this(0, extractor, inserter, generator);
+	}
+
+	/**
+	 * Create an empty repository, with storage presized for the expected number of entities.
+	 *
+	 * @param expectedSize the expected number of entities.
+	 * @param extractor    extract the id from an entity.
+	 * @param inserter     set the id of an entity.
+	 * @param generator    generate ids for new entities.
+	 */
+	public LongKeyedRepository(final int expectedSize,
+			final Function<T, Long> extractor,
+			final BiConsumer<Long, T> inserter,
+			final Supplier<Long> generator) {
+		this(new LongKeyMap<>(expectedSize), extractor, inserter, generator);
+	}
+
+	private LongKeyedRepository(final LongKeyMap<T> storage,
+			final Function<T, Long> extractor,
+			final BiConsumer<Long, T> inserter,
+			final Supplier<Long> generator) {
+		super(storage, extractor, inserter, generator);
+		this.storage = storage;
+	}
+
+	/**
+	 * Retrieves an entity by its id, without boxing the id.
+	 *
+	 * @param id the id of the entity.
+	 * @return the entity with the given id or {@literal Optional#empty()} if none found.
+	 */
+	public Optional<T> findById(final long id) {
+		long start = started();
+		try {
+			return Optional.ofNullable(storage.get(id));
+		} finally {
+			finished(RepositoryMetrics.Operation.FIND_BY_ID, start);
+		}
+	}
+
+	/**
+	 * Returns whether an entity with the given id exists, without boxing the id.
+	 *
+	 * @param id the id of the entity.
+	 * @return {@literal true} if an entity with the given id exists, {@literal false} otherwise.
+	 */
+	public boolean existsById(final long id) {
+		long start = started();
+		try {
+			return storage.containsKey(id);
+		} finally {
+			finished(RepositoryMetrics.Operation.EXISTS, start);
+		}
+	}
+}
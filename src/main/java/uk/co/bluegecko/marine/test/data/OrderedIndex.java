@@ -0,0 +1,229 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Sort;
+
+/**
+ * An {@link Index} over a {@link Comparable} property, kept in a {@link ConcurrentSkipListMap} so that it can answer
+ * range restrictions and iterate entities in property order, as well as equality restrictions.
+ * <p>
+ * Entities with a {@literal null} value are kept apart, and placed according to the {@link Sort.NullHandling} of the
+ * requested order, matching {@link SortComparators}.
+ *
+ * @param <T>  the type of the entities.
+ * @param <ID> the type of the entity ids.
+ */
+final class OrderedIndex<T, ID> implements Index<T, ID> {
+
+	private static final Object NULL = new Object();
+
+	private final String property;
+	private final Function<? super T, ? extends Comparable<?>> extractor;
+	private final ConcurrentSkipListMap<Object, Bucket<ID>> index = new ConcurrentSkipListMap<>();
+	private final Set<ID> nulls = ConcurrentHashMap.newKeySet();
+	private final Map<ID, Object> keys = new ConcurrentHashMap<>();
+
+	OrderedIndex(final String property, final Function<? super T, ? extends Comparable<?>> extractor) {
+		this.property = property;
+		this.extractor = extractor;
+	}
+
+	@Override
+	public String property() {
+		return property;
+	}
+
+	@Override
+	public Index<T, ID> empty() {
+		return new OrderedIndex<>(property, extractor);
+	}
+
+	@Override
+	public void add(final ID id, final T entity) {
+		Object key = extractor.apply(entity);
+		Object masked = key != null ? key : NULL;
+		Object previous = keys.put(id, masked);
+		if (previous != null && !previous.equals(masked)) {
+			unlink(previous, id);
+		}
+		if (key == null) {
+			nulls.add(id);
+			return;
+		}
+		while (true) {
+			Bucket<ID> bucket = index.get(key);
+			if (bucket == null) {
+				bucket = new Bucket<>(id);
+				if (index.putIfAbsent(key, bucket) == null) {
+					return;
+				}
+			} else {
+				synchronized (bucket) {
+					if (!bucket.removed) {
+						bucket.ids.add(id);
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void remove(final ID id) {
+		Object previous = keys.remove(id);
+		if (previous != null) {
+			unlink(previous, id);
+		}
+	}
+
+	@Override
+	public void clear() {
+		index.clear();
+		nulls.clear();
+		keys.clear();
+	}
+
+	/**
+	 * Look up the ids matching a restriction. The values of the restriction are first converted to the type of the
+	 * property, as a number of another type would not compare with the keys; if they cannot be converted exactly, the
+	 * index cannot answer, and the caller scans instead.
+	 *
+	 * @param restriction the restriction.
+	 * @return the matching ids, or {@literal null} if the index cannot answer the restriction.
+	 */
+	@Override
+	public Collection<ID> lookup(final Restriction restriction) {
+		if (restriction instanceof Restriction.Equal equal) {
+			if (equal.value() == null) {
+				return nulls;
+			}
+			Map.Entry<Object, Bucket<ID>> first = index.firstEntry();
+			if (first == null) {
+				return Set.of();
+			}
+			Object key = key(equal.value(), first.getKey());
+			if (key == null) {
+				return null;
+			}
+			Bucket<ID> bucket = index.get(key);
+			return bucket != null ? bucket.ids : Set.of();
+		}
+		if (restriction instanceof Restriction.Range range) {
+			Map.Entry<Object, Bucket<ID>> first = index.firstEntry();
+			if (first == null) {
+				return Set.of();
+			}
+			Object lower = range.lower() != null ? key(range.lower(), first.getKey()) : null;
+			Object upper = range.upper() != null ? key(range.upper(), first.getKey()) : null;
+			if (range.lower() != null && lower == null || range.upper() != null && upper == null) {
+				return null;
+			}
+			return flatten(range(new Restriction.Range(range.path(), (Comparable<?>) lower, range.lowerInclusive(),
+					(Comparable<?>) upper, range.upperInclusive())).values());
+		}
+		return null;
+	}
+
+	@Override
+	public Stream<? extends Collection<ID>> ordered(final Sort.Order order) {
+		if (order.isIgnoreCase()) {
+			return null;
+		}
+		NavigableMap<Object, Bucket<ID>> ordered = order.isAscending() ? index : index.descendingMap();
+		Stream<Set<ID>> values = ordered.values().stream().map(Bucket::ids);
+		boolean nullsFirst = switch (order.getNullHandling()) {
+			case NULLS_FIRST -> true;
+			case NULLS_LAST -> false;
+			case NATIVE -> order.isDescending();
+		};
+		return nullsFirst ? Stream.concat(Stream.of(nulls), values) : Stream.concat(values, Stream.of(nulls));
+	}
+
+	/**
+	 * The part of the index within a range. Reversed bounds, or equal bounds either of which is exclusive, give an
+	 * empty range, as in SQL, rather than the exception {@link NavigableMap#subMap} would throw.
+	 */
+	@SuppressWarnings("unchecked")
+	private NavigableMap<Object, Bucket<ID>> range(final Restriction.Range range) {
+		if (range.lower() != null && range.upper() != null) {
+			int compare = ((Comparable<Object>) range.lower()).compareTo(range.upper());
+			if (compare > 0 || compare == 0 && !(range.lowerInclusive() && range.upperInclusive())) {
+				return Collections.emptyNavigableMap();
+			}
+			return index.subMap(range.lower(), range.lowerInclusive(), range.upper(), range.upperInclusive());
+		} else if (range.lower() != null) {
+			return index.tailMap(range.lower(), range.lowerInclusive());
+		} else if (range.upper() != null) {
+			return index.headMap(range.upper(), range.upperInclusive());
+		}
+		return index;
+	}
+
+	/**
+	 * Convert a value to the type of a key of the index.
+	 *
+	 * @return the converted value, or {@literal null} if it cannot be converted exactly.
+	 */
+	private static Object key(final Object value, final Object key) {
+		return JpqlQuery.coerce(value, key instanceof Enum<?> constant ? constant.getDeclaringClass() : key.getClass());
+	}
+
+	private void unlink(final Object key, final ID id) {
+		if (key == NULL) {
+			nulls.remove(id);
+			return;
+		}
+		Bucket<ID> bucket = index.get(key);
+		if (bucket != null) {
+			synchronized (bucket) {
+				bucket.ids.remove(id);
+				if (bucket.ids.isEmpty()) {
+					bucket.removed = true;
+					index.remove(key, bucket);
+				}
+			}
+		}
+	}
+
+	private static <ID> Collection<ID> flatten(final Collection<Bucket<ID>> buckets) {
+		return new AbstractCollection<>() {
+			@Override
+			public Iterator<ID> iterator() {
+				return buckets.stream().flatMap(bucket -> bucket.ids.stream()).iterator();
+			}
+
+			@Override
+			public int size() {
+				return buckets.stream().mapToInt(bucket -> bucket.ids.size()).sum();
+			}
+		};
+	}
+
+	/**
+	 * The ids sharing a key. A bucket is only changed while holding its monitor, and once emptied is marked as
+	 * removed, so that an id is never added to a bucket that has already left the index.
+	 */
+	private static final class Bucket<ID> {
+
+		private final Set<ID> ids = ConcurrentHashMap.newKeySet();
+		private boolean removed;
+
+		private Bucket(final ID id) {
+			ids.add(id);
+		}
+
+		private Set<ID> ids() {
+			return ids;
+		}
+	}
+}
@@ -0,0 +1,713 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A concurrent map whose keys are stored inline as one or two primitive {@code long}s, using open addressing so that
+ * each entry costs its key slots and a reference slot, rather than a key object and a map node.
+ * <p>
+ * The map is split into segments, each a linear-probing table guarded by a {@link StampedLock}. Reads are optimistic,
+ * so they take no lock unless they race with a write to the same segment, and the {@code compute} family runs
+ * atomically under the segment's write lock, as with {@link java.util.concurrent.ConcurrentHashMap}. Removal shifts
+ * later entries back rather than leaving tombstones, so tables never fill with deleted slots.
+ * <p>
+ * Iteration is weakly consistent: each segment is copied under its read lock as it is reached, so iterators never
+ * throw {@link java.util.ConcurrentModificationException}, and streams split by segment.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ * @see LongKeyMap
+ * @see UuidKeyMap
+ */
+abstract class PrimitiveKeyMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+	private static final int SEGMENT_BITS = 6;
+	private static final int SEGMENTS = 1 << SEGMENT_BITS;
+	private static final int MIN_CAPACITY = 8;
+
+	private final Class<K> type;
+	private final int stride;
+	private final Segment<V>[] segments;
+
+	/**
+	 * Create a map presized for a number of entries.
+	 *
+	 * @param type         the type of the keys.
+	 * @param stride       the number of {@code long}s in each key, one or two.
+	 * @param expectedSize the expected number of entries.
+	 */
+	@SuppressWarnings("unchecked")
+	PrimitiveKeyMap(final Class<K> type, final int stride, final int expectedSize) {
+		this.type = type;
+		this.stride = stride;
+		int capacity = capacity(expectedSize / SEGMENTS + 1);
+		@SuppressWarnings("rawtypes")
+		Segment[] raw = new Segment[SEGMENTS];
+		segments = raw;
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment<>(stride, capacity);
+		}
+	}
+
+	/**
+	 * Get the first (or only) {@code long} of a key.
+	 */
+	abstract long high(K key);
+
+	/**
+	 * Get the second {@code long} of a key, or {@literal 0} for single {@code long} keys.
+	 */
+	abstract long low(K key);
+
+	/**
+	 * Rebuild a key from its {@code long}s.
+	 */
+	abstract K key(long high, long low);
+
+	/**
+	 * Get the value for a key given as primitives, without creating a key object.
+	 *
+	 * @param high the first (or only) {@code long} of the key.
+	 * @param low  the second {@code long} of the key, or {@literal 0} for single {@code long} keys.
+	 * @return the value, or {@literal null} if there is none.
+	 */
+	final V get(final long high, final long low) {
+		long hash = hash(high, low);
+		return segment(hash).get(high, low, hash);
+	}
+
+	@Override
+	public V get(final Object key) {
+		if (type.isInstance(key)) {
+			K k = type.cast(key);
+			return get(high(k), low(k));
+		}
+		return null;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public V put(final K key, final V value) {
+		Objects.requireNonNull(value);
+		long high = high(key);
+		long low = low(key);
+		long hash = hash(high, low);
+		return segment(hash).put(high, low, hash, value, false);
+	}
+
+	@Override
+	public V putIfAbsent(final K key, final V value) {
+		Objects.requireNonNull(value);
+		long high = high(key);
+		long low = low(key);
+		long hash = hash(high, low);
+		return segment(hash).put(high, low, hash, value, true);
+	}
+
+	@Override
+	public V remove(final Object key) {
+		if (type.isInstance(key)) {
+			K k = type.cast(key);
+			long high = high(k);
+			long low = low(k);
+			long hash = hash(high, low);
+			return segment(hash).remove(high, low, hash);
+		}
+		return null;
+	}
+
+	@Override
+	public boolean remove(final Object key, final Object value) {
+		if (type.isInstance(key) && value != null) {
+			boolean[] removed = {false};
+			computeIfPresent(type.cast(key), (k, v) -> {
+				removed[0] = value.equals(v);
+				return removed[0] ? null : v;
+			});
+			return removed[0];
+		}
+		return false;
+	}
+
+	@Override
+	public boolean replace(final K key, final V oldValue, final V newValue) {
+		Objects.requireNonNull(newValue);
+		boolean[] replaced = {false};
+		computeIfPresent(key, (k, v) -> {
+			replaced[0] = v.equals(oldValue);
+			return replaced[0] ? newValue : v;
+		});
+		return replaced[0];
+	}
+
+	@Override
+	public V replace(final K key, final V value) {
+		Objects.requireNonNull(value);
+		Object[] previous = {null};
+		computeIfPresent(key, (k, v) -> {
+			previous[0] = v;
+			return value;
+		});
+		@SuppressWarnings("unchecked")
+		V result = (V) previous[0];
+		return result;
+	}
+
+	@Override
+	public V compute(final K key, final BiFunction<? super K, ? super V, ? extends V> remapping) {
+		return compute(key, remapping, false, false);
+	}
+
+	@Override
+	public V computeIfPresent(final K key, final BiFunction<? super K, ? super V, ? extends V> remapping) {
+		return compute(key, remapping, false, true);
+	}
+
+	@Override
+	public V computeIfAbsent(final K key, final Function<? super K, ? extends V> mapping) {
+		V value = get(key);
+		return value != null ? value : compute(key, (k, v) -> mapping.apply(k), true, false);
+	}
+
+	@Override
+	public V merge(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> remapping) {
+		Objects.requireNonNull(value);
+		return compute(key, (k, v) -> v == null ? value : remapping.apply(v, value), false, false);
+	}
+
+	private V compute(final K key, final BiFunction<? super K, ? super V, ? extends V> remapping,
+			final boolean ifAbsent, final boolean ifPresent) {
+		long high = high(key);
+		long low = low(key);
+		long hash = hash(high, low);
+		return segment(hash).compute(high, low, hash, key, remapping, ifAbsent, ifPresent);
+	}
+
+	@Override
+	public int size() {
+		long size = 0;
+		for (Segment<V> segment : segments) {
+			size += segment.size;
+		}
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (Segment<V> segment : segments) {
+			if (segment.size > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		for (Segment<V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void forEach(final BiConsumer<? super K, ? super V> action) {
+		for (Segment<V> segment : segments) {
+			Table snapshot = segment.snapshot();
+			if (snapshot != null) {
+				for (int i = 0; i < snapshot.values.length; i++) {
+					if (snapshot.values[i] != null) {
+						action.accept(snapshot.key(this, i), (V) snapshot.values[i]);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<K> iterator() {
+				return spliterator();
+			}
+
+			@Override
+			public Snapshot<K, V, K> spliterator() {
+				return new Snapshot<>(PrimitiveKeyMap.this, 0, SEGMENTS, (k, v) -> k);
+			}
+
+			@Override
+			public int size() {
+				return PrimitiveKeyMap.this.size();
+			}
+
+			@Override
+			public boolean contains(final Object o) {
+				return containsKey(o);
+			}
+
+			@Override
+			public boolean remove(final Object o) {
+				return PrimitiveKeyMap.this.remove(o) != null;
+			}
+		};
+	}
+
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<>() {
+			@Override
+			public Iterator<V> iterator() {
+				return spliterator();
+			}
+
+			@Override
+			public Snapshot<K, V, V> spliterator() {
+				return new Snapshot<>(PrimitiveKeyMap.this, 0, SEGMENTS, (k, v) -> v);
+			}
+
+			@Override
+			public int size() {
+				return PrimitiveKeyMap.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return spliterator();
+			}
+
+			@Override
+			public Snapshot<K, V, Map.Entry<K, V>> spliterator() {
+				return new Snapshot<>(PrimitiveKeyMap.this, 0, SEGMENTS, SimpleImmutableEntry::new);
+			}
+
+			@Override
+			public int size() {
+				return PrimitiveKeyMap.this.size();
+			}
+
+			@Override
+			public boolean contains(final Object o) {
+				return o instanceof Map.Entry<?, ?> entry && entry.getValue() != null
+						&& entry.getValue().equals(get(entry.getKey()));
+			}
+
+			@Override
+			public boolean remove(final Object o) {
+				return o instanceof Map.Entry<?, ?> entry
+						&& PrimitiveKeyMap.this.remove(entry.getKey(), entry.getValue());
+			}
+		};
+	}
+
+	private Segment<V> segment(final long hash) {
+		return segments[(int) (hash >>> (Long.SIZE - SEGMENT_BITS))];
+	}
+
+	/**
+	 * Spread the bits of a key (the MurmurHash3 finaliser, applied to both halves). The top bits choose the segment,
+	 * and the bottom bits the slot within it, so the two are independent. A single {@code long} key hashes as if its
+	 * low half were {@literal 0}.
+	 */
+	private static long hash(final long high, final long low) {
+		return mix(high ^ mix(low));
+	}
+
+	private static long mix(final long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static int capacity(final int entries) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3L / 4 < entries) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * The keys and values of a segment, replaced as a whole when the segment grows. Slot {@code i} holds its key in
+	 * {@code keys[i * stride]} onwards.
+	 */
+	private record Table(int stride, long[] keys, Object[] values) {
+
+		private Table(final int stride, final int capacity) {
+			this(stride, new long[capacity * stride], new Object[capacity]);
+		}
+
+		/**
+		 * Find the slot of a key.
+		 *
+		 * @return the slot holding the key, or {@code -(slot + 1)} of the empty slot where it would go.
+		 */
+		private int find(final long high, final long low, final long hash) {
+			int mask = values.length - 1;
+			int slot = (int) hash & mask;
+			for (int probes = 0; probes <= mask; probes++) {
+				if (values[slot] == null) {
+					return -(slot + 1);
+				}
+				int offset = slot * stride;
+				if (keys[offset] == high && (stride == 1 || keys[offset + 1] == low)) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -(mask + 2);
+		}
+
+		private long high(final int slot) {
+			return keys[slot * stride];
+		}
+
+		private long low(final int slot) {
+			return stride == 1 ? 0 : keys[slot * stride + 1];
+		}
+
+		private long hash(final int slot) {
+			return PrimitiveKeyMap.hash(high(slot), low(slot));
+		}
+
+		private <K> K key(final PrimitiveKeyMap<K, ?> map, final int slot) {
+			return map.key(high(slot), low(slot));
+		}
+
+		private void set(final int slot, final long high, final long low, final Object value) {
+			int offset = slot * stride;
+			keys[offset] = high;
+			if (stride > 1) {
+				keys[offset + 1] = low;
+			}
+			values[slot] = value;
+		}
+
+		private void move(final int from, final int to) {
+			System.arraycopy(keys, from * stride, keys, to * stride, stride);
+			values[to] = values[from];
+		}
+	}
+
+	private static final class Segment<V> {
+
+		private final StampedLock lock = new StampedLock();
+		private final int stride;
+		private final int initialCapacity;
+		private Table table;
+		private volatile int size;
+
+		private Segment(final int stride, final int capacity) {
+			this.stride = stride;
+			this.initialCapacity = capacity;
+			this.table = new Table(stride, capacity);
+		}
+
+		@SuppressWarnings("unchecked")
+		private V get(final long high, final long low, final long hash) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				Table current = table;
+				int slot = current.find(high, low, hash);
+				Object value = slot >= 0 ? current.values[slot] : null;
+				if (lock.validate(stamp)) {
+					return (V) value;
+				}
+			}
+			stamp = lock.readLock();
+			try {
+				int slot = table.find(high, low, hash);
+				return slot >= 0 ? (V) table.values[slot] : null;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private V put(final long high, final long low, final long hash, final V value, final boolean onlyIfAbsent) {
+			long stamp = lock.writeLock();
+			try {
+				int slot = table.find(high, low, hash);
+				if (slot >= 0) {
+					V previous = (V) table.values[slot];
+					if (!onlyIfAbsent) {
+						table.values[slot] = value;
+					}
+					return previous;
+				}
+				insert(high, low, hash, value);
+				return null;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private V remove(final long high, final long low, final long hash) {
+			long stamp = lock.writeLock();
+			try {
+				int slot = table.find(high, low, hash);
+				if (slot < 0) {
+					return null;
+				}
+				V previous = (V) table.values[slot];
+				delete(slot);
+				return previous;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Recompute the value for a key under the write lock.
+		 *
+		 * @param ifAbsent  only compute when there is no value.
+		 * @param ifPresent only compute when there is a value.
+		 * @return the new value.
+		 */
+		@SuppressWarnings("unchecked")
+		private <K> V compute(final long high, final long low, final long hash, final K key,
+				final BiFunction<? super K, ? super V, ? extends V> remapping,
+				final boolean ifAbsent, final boolean ifPresent) {
+			long stamp = lock.writeLock();
+			try {
+				int slot = table.find(high, low, hash);
+				V previous = slot >= 0 ? (V) table.values[slot] : null;
+				if (previous == null ? ifPresent : ifAbsent) {
+					return previous;
+				}
+				V value = remapping.apply(key, previous);
+				if (value == null) {
+					if (previous != null) {
+						delete(slot);
+					}
+				} else if (previous != null) {
+					table.values[slot] = value;
+				} else {
+					insert(high, low, hash, value);
+				}
+				return value;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		private void clear() {
+			long stamp = lock.writeLock();
+			try {
+				table = new Table(stride, initialCapacity);
+				size = 0;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Copy the keys and values under the read lock.
+		 */
+		private Table snapshot() {
+			long stamp = lock.readLock();
+			try {
+				return size == 0 ? null : new Table(stride, table.keys.clone(), table.values.clone());
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		private void insert(final long high, final long low, final long hash, final Object value) {
+			if ((size + 1) > table.values.length * 3L / 4) {
+				grow();
+			}
+			table.set(-(table.find(high, low, hash) + 1), high, low, value);
+			size++;
+		}
+
+		/**
+		 * Empty a slot, shifting back any later entries of the same probe sequence.
+		 */
+		private void delete(final int removed) {
+			Table current = table;
+			Object[] values = current.values;
+			int mask = values.length - 1;
+			int gap = removed;
+			for (int slot = (gap + 1) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+				int home = (int) current.hash(slot) & mask;
+				boolean movable = gap <= slot ? home <= gap || home > slot : home <= gap && home > slot;
+				if (movable) {
+					current.move(slot, gap);
+					gap = slot;
+				}
+			}
+			current.set(gap, 0, 0, null);
+			size--;
+		}
+
+		private void grow() {
+			Table previous = table;
+			Table next = new Table(stride, previous.values.length << 1);
+			int mask = next.values.length - 1;
+			for (int i = 0; i < previous.values.length; i++) {
+				if (previous.values[i] != null) {
+					int slot = (int) previous.hash(i) & mask;
+					while (next.values[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					next.set(slot, previous.high(i), previous.low(i), previous.values[i]);
+				}
+			}
+			table = next;
+		}
+	}
+
+	@FunctionalInterface
+	private interface EntryMapper<K, V, E> {
+
+		E map(K key, V value);
+	}
+
+	/**
+	 * Walks the segments in a range, copying each as it is reached. Doubles as the iterator for the collection views,
+	 * supporting {@link Iterator#remove()}.
+	 */
+	private static final class Snapshot<K, V, E> implements Spliterator<E>, Iterator<E> {
+
+		private final PrimitiveKeyMap<K, V> map;
+		private final EntryMapper<K, V, E> mapper;
+		private int segment;
+		private final int end;
+		private Table current;
+		private int slot;
+		private int ready = -1;
+		private K last;
+
+		private Snapshot(final PrimitiveKeyMap<K, V> map, final int segment, final int end,
+				final EntryMapper<K, V, E> mapper) {
+			this.map = map;
+			this.segment = segment;
+			this.end = end;
+			this.mapper = mapper;
+		}
+
+		@Override
+		public boolean tryAdvance(final Consumer<? super E> action) {
+			if (!hasNext()) {
+				return false;
+			}
+			action.accept(next());
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(final Consumer<? super E> action) {
+			while (hasNext()) {
+				action.accept(next());
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (ready < 0) {
+				if (current != null) {
+					Object[] values = current.values();
+					while (slot < values.length && ready < 0) {
+						if (values[slot] != null) {
+							ready = slot;
+						}
+						slot++;
+					}
+					if (ready >= 0) {
+						break;
+					}
+					current = null;
+				}
+				if (segment >= end) {
+					return false;
+				}
+				current = map.segments[segment++].snapshot();
+				slot = 0;
+			}
+			return true;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int i = ready;
+			ready = -1;
+			last = current.key(map, i);
+			return mapper.map(last, (V) current.values()[i]);
+		}
+
+		@Override
+		public Spliterator<E> trySplit() {
+			int remaining = end - segment;
+			if (remaining < 2) {
+				return null;
+			}
+			int middle = segment + remaining / 2;
+			Snapshot<K, V, E> prefix = new Snapshot<>(map, segment, middle, mapper);
+			prefix.current = current;
+			prefix.slot = slot;
+			prefix.ready = ready;
+			current = null;
+			ready = -1;
+			segment = middle;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			long size = current != null ? current.values().length - slot : 0;
+			for (int i = segment; i < end; i++) {
+				size += map.segments[i].size;
+			}
+			return size;
+		}
+
+		@Override
+		public int characteristics() {
+			return DISTINCT | NONNULL | CONCURRENT;
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			map.remove(last);
+			last = null;
+		}
+	}
+}
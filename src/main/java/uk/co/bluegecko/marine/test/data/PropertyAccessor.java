@@ -0,0 +1,152 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Reads a (possibly nested) property path from an object, for example {@code "voyage.vessel.name"}.
+ * <p>
+ * Each path segment is resolved once per concrete type, trying {@code getName()}, {@code isName()}, a fluent
+ * {@code name()} accessor and finally the field itself. The resolved accessor is held as a {@link MethodHandle}, so
+ * no reflection happens once a type has been seen. A {@literal null} at any point along the path yields
+ * {@literal null}.
+ */
+final class PropertyAccessor implements Function<Object, Object> {
+
+	private static final Map<String, PropertyAccessor> ACCESSORS = new ConcurrentHashMap<>();
+	private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+	private final String path;
+	private final Segment[] segments;
+
+	private PropertyAccessor(final String path) {
+		this.path = path;
+		this.segments = Arrays.stream(path.split("\\."))
+				.map(Segment::new)
+				.toArray(Segment[]::new);
+	}
+
+	/**
+	 * Get the shared accessor for a property path.
+	 *
+	 * @param path dotted property path.
+	 * @return a cached accessor for the path.
+	 */
+	static PropertyAccessor of(final String path) {
+		return ACCESSORS.computeIfAbsent(path, PropertyAccessor::new);
+	}
+
+	String path() {
+		return path;
+	}
+
+	@Override
+	public Object apply(final Object target) {
+		Object value = target;
+		for (Segment segment : segments) {
+			if (value == null) {
+				return null;
+			}
+			value = segment.read(value);
+		}
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+
+	private static final class Segment extends ClassValue<MethodHandle> {
+
+		private final String name;
+		private final String capitalised;
+
+		private Segment(final String name) {
+			this.name = name;
+			this.capitalised = name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		}
+
+		private Object read(final Object target) {
+			try {
+				return (Object) get(target.getClass()).invokeExact(target);
+			} catch (RuntimeException | Error ex) {
+				throw ex;
+			} catch (Throwable ex) {
+				throw new IllegalStateException(
+						String.format("Unable to read property `%s` of `%s`", name, target.getClass().getName()), ex);
+			}
+		}
+
+		@Override
+		protected MethodHandle computeValue(final Class<?> type) {
+			try {
+				Method method = findGetter(type);
+				if (method != null) {
+					return MethodHandles.lookup().unreflect(accessible(method)).asType(GETTER);
+				}
+				Field field = findField(type);
+				if (field != null) {
+					return MethodHandles.lookup().unreflectGetter(accessible(field)).asType(GETTER);
+				}
+			} catch (IllegalAccessException ex) {
+				throw new IllegalArgumentException(
+						String.format("Property `%s` of type `%s` is not accessible", name, type.getName()), ex);
+			}
+			throw new IllegalArgumentException(
+					String.format("No property `%s` found on type `%s`", name, type.getName()));
+		}
+
+		private Method findGetter(final Class<?> type) {
+			for (String candidate : new String[]{"get" + capitalised, "is" + capitalised, name}) {
+				Method method = findMethod(type, candidate);
+				if (method != null && (!candidate.startsWith("is") || candidate.equals(name)
+						|| method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+					return method;
+				}
+			}
+			return null;
+		}
+
+		private static Method findMethod(final Class<?> type, final String name) {
+			try {
+				return type.getMethod(name);
+			} catch (NoSuchMethodException ex) {
+				for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+					for (Method method : current.getDeclaredMethods()) {
+						if (method.getName().equals(name) && method.getParameterCount() == 0
+								&& method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers())) {
+							return method;
+						}
+					}
+				}
+				return null;
+			}
+		}
+
+		private Field findField(final Class<?> type) {
+			for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+				for (Field field : current.getDeclaredFields()) {
+					if (field.getName().equals(name) && !Modifier.isStatic(field.getModifiers())) {
+						return field;
+					}
+				}
+			}
+			return null;
+		}
+
+		private static <A extends AccessibleObject> A accessible(final A member) {
+			member.trySetAccessible();
+			return member;
+		}
+	}
+}
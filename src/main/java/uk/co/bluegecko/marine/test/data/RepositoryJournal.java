@@ -0,0 +1,433 @@
+package uk.co.bluegecko.marine.test.data;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the changes to a single {@link InMemoryRepository}, which can be replayed into a fresh
+ * repository, or truncated at a point in time.
+ * <p>
+ * Records don't say which repository, or which type of entity, they came from, and are all decoded as the types
+ * given to {@link #replay}, so a journal must listen to exactly one repository.
+ * <p>
+ * Changes are queued by the thread making them, without locking, and written by a background thread in batches, each
+ * with a single write to the file channel, and a single {@link FileChannel#force force} if the journal is
+ * synchronous. The queue is bounded, so a thread making changes faster than they can be written waits for room. Once
+ * a write fails, further changes are dropped, and the failure is reported by {@link #flush()} and {@link #close()}.
+ * Entities and ids are encoded as JSON by an {@link ObjectMapper}, and, as the entity is encoded after it is queued, a
+ * change made to a saved entity in place, without saving it again, may be written with that save. Each record carries
+ * a checksum, so a record torn by a crash is discarded when the journal is reopened.
+ * <pre>{@code
+ * try (RepositoryJournal journal = RepositoryJournal.open(file, mapper)) {
+ *     repository.listen(journal);
+ *     ...
+ * }
+ * RepositoryJournal.replay(file, mapper, Vessel.class, Long.class, fresh);
+ * }</pre>
+ */
+public final class RepositoryJournal implements RepositoryListener<Object, Object>, AutoCloseable {
+
+	private static final int MAX_BATCH = 1 << 12;
+	private static final int CAPACITY = 1 << 16;
+	private static final long PAUSE_NANOS = 10_000;
+	private static final byte SAVE = 'S';
+	private static final byte DELETE = 'D';
+
+	private final FileChannel channel;
+	private final ObjectMapper mapper;
+	private final Clock clock;
+	private final boolean sync;
+	private final Queue<Change> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicLong queued = new AtomicLong();
+	private final Thread writer;
+	private volatile long written;
+	private volatile IOException failure;
+	private volatile boolean closed;
+	private volatile boolean idle;
+
+	private RepositoryJournal(final FileChannel channel, final ObjectMapper mapper, final Clock clock,
+			final boolean sync) {
+		this.channel = channel;
+		this.mapper = mapper;
+		this.clock = clock;
+		this.sync = sync;
+		this.writer = new Thread(this::write, "repository-journal");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Open a journal, appending to any existing file. Changes are written in batches, but not forced to the disk.
+	 *
+	 * @param file   the journal file.
+	 * @param mapper the mapper encoding the entities and ids.
+	 * @return the journal.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public static RepositoryJournal open(final Path file, final ObjectMapper mapper) throws IOException {
+		return open(file, mapper, Clock.systemUTC(), false);
+	}
+
+	/**
+	 * Open a journal, appending to any existing file after its last complete record.
+	 *
+	 * @param file   the journal file.
+	 * @param mapper the mapper encoding the entities and ids.
+	 * @param clock  the clock timestamping each change.
+	 * @param sync   whether to force each batch to the disk, so that it survives a crash of the machine, as well as of
+	 *               the JVM.
+	 * @return the journal.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public static RepositoryJournal open(final Path file, final ObjectMapper mapper, final Clock clock,
+			final boolean sync) throws IOException {
+		long end = Files.exists(file) ? scan(file, record -> true) : 0;
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		channel.truncate(end);
+		channel.position(end);
+		return new RepositoryJournal(channel, mapper, clock, sync);
+	}
+
+	/**
+	 * Queue a change to be written, waiting while the queue is full. Called by the repository. The change is dropped
+	 * if a write has failed.
+	 *
+	 * @param id       the id of the entity.
+	 * @param previous the entity replaced, or {@literal null} if there was none.
+	 * @param current  the entity saved, or {@literal null} if it was deleted.
+	 * @throws IllegalStateException if the journal is closed.
+	 */
+	@Override
+	public void changed(final Object id, final Object previous, final Object current) {
+		long timestamp = clock.millis();
+		if (reserve()) {
+			queue.add(new Change(timestamp, id, current));
+			if (idle) {
+				LockSupport.unpark(writer);
+			}
+		}
+	}
+
+	/**
+	 * Wait until every change queued so far has been written, and forced to the disk if the journal is synchronous.
+	 *
+	 * @throws IOException          if a change could not be written.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void flush() throws IOException, InterruptedException {
+		synchronized (this) {
+			long target = queued.get();
+			while (written < target && failure == null) {
+				wait();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Write any queued changes, and close the file. Changes made after the journal is closed are rejected.
+	 *
+	 * @throws IOException if a change could not be written, or the file closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Replay a journal into a repository, applying each change as it was made.
+	 *
+	 * @param file       the journal file.
+	 * @param mapper     the mapper decoding the entities and ids.
+	 * @param type       the type of the entities.
+	 * @param idType     the type of the entity ids.
+	 * @param repository the repository to change.
+	 * @param <T>        the type of the entities.
+	 * @param <ID>       the type of the entity ids.
+	 * @return the number of changes replayed.
+	 * @throws IOException if the file cannot be read, or a record decoded.
+	 */
+	public static <T, ID> long replay(final Path file, final ObjectMapper mapper, final Class<T> type,
+			final Class<ID> idType, final InMemoryRepository<T, ID> repository) throws IOException {
+		return replay(file, mapper, type, idType, repository, Instant.MAX);
+	}
+
+	/**
+	 * Replay a journal into a repository, up to a point in time.
+	 *
+	 * @param file       the journal file.
+	 * @param mapper     the mapper decoding the entities and ids.
+	 * @param type       the type of the entities.
+	 * @param idType     the type of the entity ids.
+	 * @param repository the repository to change.
+	 * @param until      the time of the last change to replay.
+	 * @param <T>        the type of the entities.
+	 * @param <ID>       the type of the entity ids.
+	 * @return the number of changes replayed.
+	 * @throws IOException if the file cannot be read, or a record decoded.
+	 */
+	public static <T, ID> long replay(final Path file, final ObjectMapper mapper, final Class<T> type,
+			final Class<ID> idType, final InMemoryRepository<T, ID> repository, final Instant until)
+			throws IOException {
+		JavaType entityType = mapper.constructType(type);
+		JavaType keyType = mapper.constructType(idType);
+		long limit = millis(until);
+		long[] count = {0};
+		scan(file, record -> {
+			if (record.timestamp() > limit) {
+				return false;
+			}
+			ID id = mapper.readValue(record.key(), keyType);
+			if (record.operation() == SAVE) {
+				repository.store(id, mapper.readValue(record.value(), entityType));
+			} else {
+				repository.erase(id);
+			}
+			count[0]++;
+			return true;
+		});
+		return count[0];
+	}
+
+	/**
+	 * Truncate a journal after a point in time, discarding every later change. The journal must not be open.
+	 *
+	 * @param file  the journal file.
+	 * @param after the time of the last change to keep.
+	 * @return the number of changes kept.
+	 * @throws IOException if the file cannot be read or truncated.
+	 */
+	public static long truncate(final Path file, final Instant after) throws IOException {
+		long limit = millis(after);
+		long[] count = {0};
+		long end = scan(file, record -> {
+			if (record.timestamp() > limit) {
+				return false;
+			}
+			count[0]++;
+			return true;
+		});
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(end);
+		}
+		return count[0];
+	}
+
+	/**
+	 * Read the complete records of a journal in order, until the visitor stops, or the records end.
+	 *
+	 * @return the offset of the record the visitor stopped at, or the end of the last complete record.
+	 */
+	private static long scan(final Path file, final Visitor visitor) throws IOException {
+		long offset = 0;
+		CRC32 crc = new CRC32();
+		try (InputStream stream = Files.newInputStream(file);
+				DataInputStream input = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+			while (true) {
+				byte[] body;
+				int checksum;
+				try {
+					int length = input.readInt();
+					checksum = input.readInt();
+					if (length < Long.BYTES + 1 + Integer.BYTES) {
+						return offset;
+					}
+					body = input.readNBytes(length);
+					if (body.length < length) {
+						return offset;
+					}
+				} catch (EOFException ex) {
+					return offset;
+				}
+				crc.reset();
+				crc.update(body);
+				if ((int) crc.getValue() != checksum) {
+					return offset;
+				}
+				ByteBuffer buffer = ByteBuffer.wrap(body);
+				long timestamp = buffer.getLong();
+				byte operation = buffer.get();
+				byte[] key = new byte[buffer.getInt()];
+				buffer.get(key);
+				byte[] value = new byte[buffer.remaining()];
+				buffer.get(value);
+				if (!visitor.visit(new Record(timestamp, operation, key, value))) {
+					return offset;
+				}
+				offset += Integer.BYTES * 2 + body.length;
+			}
+		}
+	}
+
+	/**
+	 * Convert a point in time to epoch milliseconds, clamping those beyond the range of a {@code long}, such as
+	 * {@link Instant#MAX}.
+	 */
+	private static long millis(final Instant instant) {
+		if (instant.isAfter(Instant.ofEpochMilli(Long.MAX_VALUE))) {
+			return Long.MAX_VALUE;
+		}
+		return instant.isBefore(Instant.ofEpochMilli(Long.MIN_VALUE)) ? Long.MIN_VALUE : instant.toEpochMilli();
+	}
+
+	/**
+	 * Count a change into the queue, waiting while the queue is full.
+	 *
+	 * @return whether to queue the change, which is not if a write has failed.
+	 * @throws IllegalStateException if the journal is closed.
+	 */
+	private boolean reserve() {
+		while (true) {
+			if (closed) {
+				throw new IllegalStateException("Journal is closed");
+			}
+			if (failure != null) {
+				return false;
+			}
+			long count = queued.get();
+			if (count - written >= CAPACITY) {
+				LockSupport.parkNanos(this, PAUSE_NANOS);
+			} else if (queued.compareAndSet(count, count + 1)) {
+				if (closed) {
+					queued.decrementAndGet();
+					throw new IllegalStateException("Journal is closed");
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * The body of the writer thread, which drains the queue in batches until the journal is closed and every change
+	 * counted into the queue has been written, or a write fails.
+	 */
+	private void write() {
+		List<Change> batch = new ArrayList<>();
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		CRC32 crc = new CRC32();
+		while (true) {
+			Change next;
+			while (batch.size() < MAX_BATCH && (next = queue.poll()) != null) {
+				batch.add(next);
+			}
+			if (batch.isEmpty()) {
+				if (closed && written == queued.get()) {
+					return;
+				}
+				await();
+				continue;
+			}
+			buffer.clear();
+			try {
+				for (Change change : batch) {
+					buffer = encode(change, buffer, crc);
+				}
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				if (sync) {
+					channel.force(false);
+				}
+			} catch (IOException | UncheckedIOException ex) {
+				synchronized (this) {
+					failure = ex instanceof UncheckedIOException unchecked ? unchecked.getCause() : (IOException) ex;
+					notifyAll();
+				}
+				queue.clear();
+				return;
+			}
+			synchronized (this) {
+				written += batch.size();
+				notifyAll();
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Wait for a change to be queued, or the journal closed. Once closed, only waits briefly, for changes counted into
+	 * the queue but not yet added.
+	 */
+	private void await() {
+		idle = true;
+		if (queue.isEmpty()) {
+			if (closed) {
+				LockSupport.parkNanos(this, PAUSE_NANOS);
+			} else {
+				LockSupport.park(this);
+			}
+		}
+		idle = false;
+		Thread.interrupted();
+	}
+
+	private ByteBuffer encode(final Change change, final ByteBuffer buffer, final CRC32 crc) throws IOException {
+		byte[] key = mapper.writeValueAsBytes(change.id());
+		byte[] value = change.entity() != null ? mapper.writeValueAsBytes(change.entity()) : new byte[0];
+		int length = Long.BYTES + 1 + Integer.BYTES + key.length + value.length;
+		ByteBuffer target = buffer;
+		if (target.remaining() < Integer.BYTES * 2 + length) {
+			target = ByteBuffer.allocate(Math.max(target.capacity() * 2, target.position() + Integer.BYTES * 2 + length))
+					.put(target.flip());
+		}
+		int start = target.position();
+		target.putInt(length).putInt(0).putLong(change.timestamp())
+				.put(change.entity() != null ? SAVE : DELETE).putInt(key.length).put(key).put(value);
+		crc.reset();
+		crc.update(target.array(), start + Integer.BYTES * 2, length);
+		target.putInt(start + Integer.BYTES, (int) crc.getValue());
+		return target;
+	}
+
+	private record Change(long timestamp, Object id, Object entity) {
+
+	}
+
+	private record Record(long timestamp, byte operation, byte[] key, byte[] value) {
+
+	}
+
+	@FunctionalInterface
+	private interface Visitor {
+
+		boolean visit(Record record) throws IOException;
+	}
+}
@@ -0,0 +1,25 @@
+package uk.co.bluegecko.marine.test.data;
+
+/**
+ * Notified of each change to the entities in an {@link InMemoryRepository}.
+ * <p>
+ * A listener is called while the repository holds the lock on the changed entity, atomically with the change, so it
+ * sees the changes to any one entity in order. It must therefore be quick, and must not call back into the repository;
+ * anything slower belongs on another thread. Changes undone by a transaction rollback are notified as further changes.
+ *
+ * @param <T>  the type of the entities.
+ * @param <ID> the type of the entity ids.
+ * @see InMemoryRepository#listen(RepositoryListener)
+ */
+@FunctionalInterface
+public interface RepositoryListener<T, ID> {
+
+	/**
+	 * An entity has been saved or deleted.
+	 *
+	 * @param id       the id of the entity.
+	 * @param previous the entity replaced, or {@literal null} if there was none.
+	 * @param current  the entity saved, or {@literal null} if it was deleted.
+	 */
+	void changed(ID id, T previous, T current);
+}
@@ -0,0 +1,260 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Counts, latencies and scan statistics for the operations on one or more {@link InMemoryRepository} instances.
+ * <p>
+ * Recording never locks: counters are {@link LongAdder}s, and each latency lands in one bucket of a log-linear
+ * histogram, with four buckets for every power of two nanoseconds, so percentiles are accurate to within 25%. Scans are
+ * grouped by their access pattern, the restrictions that an index could have answered, so that patterns needing an
+ * index stand out by their full scans and high ratio of scanned to returned entities. Read everything at once with
+ * {@link #snapshot()}.
+ *
+ * @see InMemoryRepository#instrument(RepositoryMetrics)
+ */
+public final class RepositoryMetrics {
+
+	/**
+	 * The access pattern of a scan with no restrictions.
+	 */
+	public static final String UNRESTRICTED = "*";
+
+	private static final int SUB_BUCKETS = 4;
+	private static final int BUCKETS = (Long.SIZE + 1) * SUB_BUCKETS;
+
+	private final Map<Operation, Recorder> operations = new EnumMap<>(Operation.class);
+	private final Map<String, ScanRecorder> scans = new ConcurrentHashMap<>();
+
+	public RepositoryMetrics() {
+		for (Operation operation : Operation.values()) {
+			operations.put(operation, new Recorder());
+		}
+	}
+
+	/**
+	 * The repository operations that are measured.
+	 */
+	public enum Operation {
+		SAVE, SAVE_ALL, FIND_BY_ID, FIND_ALL, FIND_BY_EXAMPLE, FIND_BY_SPECIFICATION, QUERY, COUNT, EXISTS, DELETE,
+		DELETE_ALL
+	}
+
+	/**
+	 * Record an operation.
+	 *
+	 * @param operation the operation.
+	 * @param start     the value of {@link System#nanoTime()} when the operation started.
+	 */
+	public void record(final Operation operation, final long start) {
+		operations.get(operation).record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Get the counters for scans with an access pattern, recording the start of a scan.
+	 *
+	 * @param pattern the restrictions an index could have answered, or {@link #UNRESTRICTED}.
+	 * @param full    whether every entity is scanned, rather than those returned by an index.
+	 * @return the counters to which the scanned and returned entities are added.
+	 */
+	ScanRecorder scan(final String pattern, final boolean full) {
+		ScanRecorder recorder = scans.get(pattern);
+		if (recorder == null) {
+			recorder = scans.computeIfAbsent(pattern, key -> new ScanRecorder());
+		}
+		(full ? recorder.full : recorder.indexed).increment();
+		return recorder;
+	}
+
+	/**
+	 * Take a snapshot of the metrics. Each value is read atomically, but the snapshot as a whole is not, so it may
+	 * include part of an operation that is still in progress.
+	 *
+	 * @return the snapshot.
+	 */
+	public Snapshot snapshot() {
+		Map<Operation, Latency> latencies = new EnumMap<>(Operation.class);
+		operations.forEach((operation, recorder) -> latencies.put(operation, recorder.snapshot()));
+		Map<String, Scans> patterns = new TreeMap<>();
+		scans.forEach((pattern, recorder) -> patterns.put(pattern, recorder.snapshot()));
+		return new Snapshot(Collections.unmodifiableMap(latencies), Collections.unmodifiableMap(patterns));
+	}
+
+	/**
+	 * Clear all metrics, for example after a warm-up.
+	 */
+	public void reset() {
+		operations.values().forEach(Recorder::reset);
+		scans.clear();
+	}
+
+	/**
+	 * Describe the access pattern of a scan by its restrictions, such as {@code "name, tonnage (range)"}.
+	 *
+	 * @param restrictions the restrictions an index could have answered.
+	 * @return the sorted, restricted properties, or {@link #UNRESTRICTED}.
+	 */
+	static String pattern(final List<Restriction> restrictions) {
+		if (restrictions.isEmpty()) {
+			return UNRESTRICTED;
+		}
+		return restrictions.stream()
+				.map(restriction -> restriction instanceof Restriction.Range
+						? restriction.path() + " (range)" : restriction.path())
+				.sorted().distinct().collect(Collectors.joining(", "));
+	}
+
+	private static int bucket(final long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) Math.max(nanos, 0);
+		}
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+		int fraction = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return (exponent - 1) * SUB_BUCKETS + fraction;
+	}
+
+	private static long upperBound(final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + 1;
+		long fraction = bucket % SUB_BUCKETS;
+		return exponent >= Long.SIZE - 1 ? Long.MAX_VALUE : ((SUB_BUCKETS + fraction + 1) << (exponent - 2)) - 1;
+	}
+
+	/**
+	 * The metrics at one point in time.
+	 *
+	 * @param operations the latencies of each operation.
+	 * @param scans      the scans by access pattern.
+	 */
+	public record Snapshot(Map<Operation, Latency> operations, Map<String, Scans> scans) {
+
+	}
+
+	/**
+	 * The number and latency of calls to an operation.
+	 *
+	 * @param count      the number of calls.
+	 * @param totalNanos the total time taken.
+	 * @param maxNanos   the longest time taken.
+	 * @param buckets    the histogram of times taken.
+	 */
+	public record Latency(long count, long totalNanos, long maxNanos, long[] buckets) {
+
+		/**
+		 * The mean time taken.
+		 *
+		 * @return the mean in nanoseconds, or {@literal 0} if there were no calls.
+		 */
+		public double mean() {
+			return count > 0 ? (double) totalNanos / count : 0;
+		}
+
+		/**
+		 * The time within which a proportion of calls completed, to the resolution of the histogram.
+		 *
+		 * @param quantile the proportion of calls, between {@literal 0} and {@literal 1}.
+		 * @return the time in nanoseconds, or {@literal 0} if there were no calls.
+		 */
+		public long percentile(final double quantile) {
+			if (quantile < 0 || quantile > 1) {
+				throw new IllegalArgumentException(String.format("Quantile `%s` is not between 0 and 1", quantile));
+			}
+			long total = 0;
+			for (long bucket : buckets) {
+				total += bucket;
+			}
+			long rank = (long) Math.ceil(quantile * total);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					return Math.min(upperBound(i), maxNanos);
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * The scans with one access pattern.
+	 *
+	 * @param indexed  the number of scans answered by an index.
+	 * @param full     the number of scans of every entity.
+	 * @param scanned  the number of entities tested.
+	 * @param returned the number of entities that passed.
+	 */
+	public record Scans(long indexed, long full, long scanned, long returned) {
+
+		/**
+		 * The number of entities tested for each one returned.
+		 *
+		 * @return the ratio, or the number scanned if none were returned.
+		 */
+		public double ratio() {
+			return returned > 0 ? (double) scanned / returned : scanned;
+		}
+	}
+
+	/**
+	 * The mutable counters behind a {@link Latency}.
+	 */
+	private static final class Recorder {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		private void record(final long nanos) {
+			count.increment();
+			total.add(nanos);
+			buckets.getAndIncrement(bucket(nanos));
+			if (nanos > max.get()) {
+				max.accumulateAndGet(nanos, Math::max);
+			}
+		}
+
+		private Latency snapshot() {
+			long[] values = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				values[i] = buckets.get(i);
+			}
+			return new Latency(count.sum(), total.sum(), max.get(), values);
+		}
+
+		private void reset() {
+			count.reset();
+			total.reset();
+			max.set(0);
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets.set(i, 0);
+			}
+		}
+	}
+
+	/**
+	 * The mutable counters behind a {@link Scans}.
+	 */
+	static final class ScanRecorder {
+
+		private final LongAdder indexed = new LongAdder();
+		private final LongAdder full = new LongAdder();
+		final LongAdder scanned = new LongAdder();
+		final LongAdder returned = new LongAdder();
+
+		private Scans snapshot() {
+			return new Scans(indexed.sum(), full.sum(), scanned.sum(), returned.sum());
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.data.repository.core.support.AbstractRepositoryMetadata;
+
+/**
+ * The {@link InMemoryRepository} instances of a test, by entity type, and the {@link RepositoryRelation}s between
+ * them.
+ * <p>
+ * Relations replace nested loops over {@code findAll()}: the children of a parent are found by the reverse-reference
+ * index of the relation, the parent of a child by id, and other joins between repositories are hash joins. Repository
+ * interfaces created by the registry can run JPQL queries joining any of its repositories.
+ * <pre>{@code
+ * RepositoryRegistry registry = new RepositoryRegistry()
+ *         .register(Vessel.class, vessels)
+ *         .register(Voyage.class, voyages)
+ *         .register(PortCall.class, portCalls);
+ * registry.relate(Voyage.class, "vesselId", Vessel.class, true);
+ * RepositoryRelation<PortCall, Long, Voyage, Long> calls = registry.relate(PortCall.class, "voyageId", Voyage.class, true);
+ * List<PortCall> timeline = calls.children(voyage.getId());
+ * }</pre>
+ */
+public final class RepositoryRegistry implements AutoCloseable {
+
+	private final Map<Class<?>, InMemoryRepository<?, ?>> repositories = new ConcurrentHashMap<>();
+	private final List<RepositoryRelation<?, ?, ?, ?>> relations = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Register the repository of an entity type.
+	 *
+	 * @param type       the entity type.
+	 * @param repository the repository holding the entities.
+	 * @param <T>        the type of the entities.
+	 * @param <ID>       the type of the entity ids.
+	 * @return this registry.
+	 * @throws IllegalArgumentException if another repository is registered for the type.
+	 */
+	public <T, ID> RepositoryRegistry register(final Class<T> type, final InMemoryRepository<T, ID> repository) {
+		InMemoryRepository<?, ?> existing = repositories.putIfAbsent(type, repository);
+		if (existing != null && existing != repository) {
+			throw new IllegalArgumentException(
+					String.format("Type `%s` already has a repository", type.getSimpleName()));
+		}
+		return this;
+	}
+
+	/**
+	 * Get the repository of an entity type.
+	 *
+	 * @param type the entity type.
+	 * @param <T>  the type of the entities.
+	 * @param <ID> the type of the entity ids.
+	 * @return the repository.
+	 * @throws IllegalArgumentException if no repository is registered for the type.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T, ID> InMemoryRepository<T, ID> repository(final Class<T> type) {
+		InMemoryRepository<?, ?> repository = repositories.get(type);
+		if (repository == null) {
+			throw new IllegalArgumentException(String.format("Type `%s` has no repository", type.getSimpleName()));
+		}
+		return (InMemoryRepository<T, ID>) repository;
+	}
+
+	/**
+	 * Relate each child to the parent whose id it holds in a property, without cascading deletes.
+	 *
+	 * @param child    the type of the child entities.
+	 * @param property the property of the children holding the id of their parent.
+	 * @param parent   the type of the parent entities.
+	 * @param <C>      the type of the child entities.
+	 * @param <CID>    the type of the child entity ids.
+	 * @param <P>      the type of the parent entities.
+	 * @param <PID>    the type of the parent entity ids.
+	 * @return the relation.
+	 * @see #relate(Class, String, Class, boolean)
+	 */
+	public <C, CID, P, PID> RepositoryRelation<C, CID, P, PID> relate(final Class<C> child, final String property,
+			final Class<P> parent) {
+		return relate(child, property, parent, false);
+	}
+
+	/**
+	 * Relate each child to the parent whose id it holds in a property. The child repository is given a hash index on
+	 * the property, if it does not already have an index on it, which serves as the reverse-reference index.
+	 *
+	 * @param child    the type of the child entities.
+	 * @param property the property of the children holding the id of their parent.
+	 * @param parent   the type of the parent entities.
+	 * @param cascade  whether deleting a parent deletes its children.
+	 * @param <C>      the type of the child entities.
+	 * @param <CID>    the type of the child entity ids.
+	 * @param <P>      the type of the parent entities.
+	 * @param <PID>    the type of the parent entity ids.
+	 * @return the relation.
+	 * @throws IllegalArgumentException if either type has no repository, or the relation cascades and deletes would
+	 *                                  cascade back to the parent, whether within one repository or through other
+	 *                                  cascading relations.
+	 */
+	public synchronized <C, CID, P, PID> RepositoryRelation<C, CID, P, PID> relate(final Class<C> child,
+			final String property, final Class<P> parent, final boolean cascade) {
+		InMemoryRepository<C, CID> children = repository(child);
+		InMemoryRepository<P, PID> parents = repository(parent);
+		if (cascade && children != parents && cascades(children, parents, new HashSet<>())) {
+			throw new IllegalArgumentException(String.format("Relation `%s` of `%s` to `%s` would cascade in a cycle",
+					property, child.getSimpleName(), parent.getSimpleName()));
+		}
+		RepositoryRelation<C, CID, P, PID> relation = new RepositoryRelation<>(children, property, parents, cascade);
+		relations.add(relation);
+		return relation;
+	}
+
+	/**
+	 * Get the relations declared so far.
+	 *
+	 * @return the relations, in the order declared.
+	 */
+	public List<RepositoryRelation<?, ?, ?, ?>> relations() {
+		return Collections.unmodifiableList(relations);
+	}
+
+	/**
+	 * Hash join the entities of two repositories on equal property values, ignoring {@literal null} values. When the
+	 * right repository indexes its property, each left entity is matched by an index lookup; otherwise a hash table of
+	 * the right entities is built once, when the stream is first read.
+	 *
+	 * @param left          the type of the left entities.
+	 * @param leftProperty  the property of the left entities to match.
+	 * @param right         the type of the right entities.
+	 * @param rightProperty the property of the right entities to match.
+	 * @param combiner      combine a pair of matching entities into a result.
+	 * @param <L>           the type of the left entities.
+	 * @param <R>           the type of the right entities.
+	 * @param <O>           the type of the results.
+	 * @return a lazy stream of the results, one for each matching pair.
+	 */
+	public <L, R, O> Stream<O> join(final Class<L> left, final String leftProperty, final Class<R> right,
+			final String rightProperty, final BiFunction<? super L, ? super R, ? extends O> combiner) {
+		InMemoryRepository<L, ?> lefts = repository(left);
+		InMemoryRepository<R, ?> rights = repository(right);
+		Function<Object, Object> leftKey = PropertyAccessor.of(leftProperty);
+		Function<Object, List<R>> matches;
+		if (rights.indexes.containsKey(rightProperty)) {
+			matches = key -> rights.scan(Filter.where(new Restriction.Equal(rightProperty, key)))
+					.collect(Collectors.toList());
+		} else {
+			Function<Object, Object> rightKey = PropertyAccessor.of(rightProperty);
+			Supplier<Map<Object, List<R>>> table = new Supplier<>() {
+				private Map<Object, List<R>> built;
+
+				@Override
+				public Map<Object, List<R>> get() {
+					if (built == null) {
+						built = rights.streamAll().filter(entity -> rightKey.apply(entity) != null)
+								.collect(Collectors.groupingBy(rightKey, HashMap::new, Collectors.toList()));
+					}
+					return built;
+				}
+			};
+			matches = key -> table.get().getOrDefault(key, List.of());
+		}
+		return lefts.streamAll().flatMap(entity -> {
+			Object key = leftKey.apply(entity);
+			return key != null ? matches.apply(key).stream().map(match -> combiner.apply(entity, match))
+					: Stream.empty();
+		});
+	}
+
+	/**
+	 * Create an implementation of a repository interface backed by the registered repository of its domain type,
+	 * whose JPQL queries may join any registered repository.
+	 *
+	 * @param repositoryInterface the repository interface to implement.
+	 * @param <R>                 the type of the repository.
+	 * @return an implementation of the repository interface.
+	 * @throws IllegalArgumentException if the domain type has no repository, or the interface is invalid.
+	 * @see InMemoryRepositoryFactory#create(Class, InMemoryRepository, Map)
+	 */
+	public <R> R create(final Class<R> repositoryInterface) {
+		Class<?> domainType = AbstractRepositoryMetadata.getMetadata(repositoryInterface).getDomainType();
+		return InMemoryRepositoryFactory.create(repositoryInterface, repository(domainType), repositories);
+	}
+
+	/**
+	 * Whether deleting from one repository cascades, through the cascading relations declared so far, to another.
+	 */
+	private boolean cascades(final InMemoryRepository<?, ?> from, final InMemoryRepository<?, ?> to,
+			final Set<InMemoryRepository<?, ?>> visited) {
+		if (from == to) {
+			return true;
+		}
+		if (!visited.add(from)) {
+			return false;
+		}
+		for (RepositoryRelation<?, ?, ?, ?> relation : relations) {
+			if (relation.cascades() && relation.parentRepository() == from
+					&& cascades(relation.childRepository(), to, visited)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stop the relations cascading deletes. The repositories and their indexes are unchanged.
+	 */
+	@Override
+	public void close() {
+		relations.forEach(RepositoryRelation::close);
+		relations.clear();
+	}
+}
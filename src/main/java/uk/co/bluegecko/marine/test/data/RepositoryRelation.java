@@ -0,0 +1,165 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import uk.co.bluegecko.marine.test.data.RepositoryMetrics.Operation;
+
+/**
+ * A many-to-one relationship between the entities of two {@link InMemoryRepository} instances, such as voyage to
+ * vessel, where each child holds the id of its parent in a property.
+ * <p>
+ * The child repository indexes the property, so its {@link Index} is the reverse-reference index: it is kept up to
+ * date by every save and delete, and finds the children of a parent without scanning. Finding the parent of a child
+ * is a lookup by id. When the relation cascades, deleting a parent deletes its children, within the same
+ * transaction if there is one, and so on down any cascading relations of the children. The children are deleted just
+ * after the parent, once it is unlocked, so a reader may briefly see them without it.
+ *
+ * @param <C>   the type of the child entities.
+ * @param <CID> the type of the child entity ids.
+ * @param <P>   the type of the parent entities.
+ * @param <PID> the type of the parent entity ids.
+ * @see RepositoryRegistry#relate(Class, String, Class, boolean)
+ */
+public final class RepositoryRelation<C, CID, P, PID> {
+
+	private final InMemoryRepository<C, CID> children;
+	private final String property;
+	private final Function<Object, Object> reference;
+	private final InMemoryRepository<P, PID> parents;
+	private final boolean cascade;
+	private final RepositoryListener<P, PID> cascader;
+
+	RepositoryRelation(final InMemoryRepository<C, CID> children, final String property,
+			final InMemoryRepository<P, PID> parents, final boolean cascade) {
+		if (cascade && children == parents) {
+			throw new IllegalArgumentException(
+					String.format("Relation `%s` cannot cascade within one repository", property));
+		}
+		this.children = children;
+		this.property = property;
+		this.reference = PropertyAccessor.of(property);
+		this.parents = parents;
+		this.cascade = cascade;
+		if (!children.indexes.containsKey(property)) {
+			children.index(property);
+		}
+		this.cascader = cascade ? this::cascade : null;
+		if (cascade) {
+			parents.listen(cascader);
+		}
+	}
+
+	/**
+	 * Get the property of the children holding the id of their parent.
+	 *
+	 * @return the property path.
+	 */
+	public String property() {
+		return property;
+	}
+
+	/**
+	 * Whether deleting a parent deletes its children.
+	 *
+	 * @return whether deletes cascade.
+	 */
+	public boolean cascades() {
+		return cascade;
+	}
+
+	/**
+	 * Find the children of a parent, using the reverse-reference index.
+	 *
+	 * @param parentId the id of the parent.
+	 * @return the children, in no particular order.
+	 */
+	public List<C> children(final PID parentId) {
+		long start = children.started();
+		try {
+			return stream(parentId).collect(Collectors.toList());
+		} finally {
+			children.finished(Operation.QUERY, start);
+		}
+	}
+
+	/**
+	 * Count the children of a parent, using the reverse-reference index.
+	 *
+	 * @param parentId the id of the parent.
+	 * @return the number of children.
+	 */
+	public long count(final PID parentId) {
+		long start = children.started();
+		try {
+			return stream(parentId).count();
+		} finally {
+			children.finished(Operation.COUNT, start);
+		}
+	}
+
+	/**
+	 * Find the parent of a child.
+	 *
+	 * @param child the child.
+	 * @return the parent, or {@link Optional#empty()} if the child has no parent, or its parent does not exist.
+	 */
+	@SuppressWarnings("unchecked")
+	public Optional<P> parent(final C child) {
+		PID parentId = (PID) reference.apply(child);
+		return parentId != null ? parents.findById(parentId) : Optional.empty();
+	}
+
+	/**
+	 * Join every child to its parent, looking up each parent by id. Children with no existing parent are skipped.
+	 *
+	 * @param combiner combine a parent and one of its children into a result.
+	 * @param <R>      the type of the results.
+	 * @return a lazy stream of the results.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> Stream<R> join(final BiFunction<? super P, ? super C, ? extends R> combiner) {
+		return children.streamAll().flatMap(child -> {
+			PID parentId = (PID) reference.apply(child);
+			P parent = parentId != null ? parents.entities.get(parentId) : null;
+			return parent != null ? Stream.of(combiner.apply(parent, child)) : Stream.empty();
+		});
+	}
+
+	InMemoryRepository<C, CID> childRepository() {
+		return children;
+	}
+
+	InMemoryRepository<P, PID> parentRepository() {
+		return parents;
+	}
+
+	/**
+	 * Stop cascading deletes. The reverse-reference index remains.
+	 */
+	void close() {
+		if (cascader != null) {
+			parents.unlisten(cascader);
+		}
+	}
+
+	private Stream<C> stream(final PID parentId) {
+		return children.scan(Filter.where(new Restriction.Equal(property, parentId)));
+	}
+
+	/**
+	 * Delete the children of a deleted parent. Called by the parent repository while it holds the lock on the parent,
+	 * so the children are found and deleted once the parent is unlocked, on the same thread.
+	 */
+	private void cascade(final PID id, final P previous, final P current) {
+		if (previous != null && current == null) {
+			InMemoryRepository.afterChange(() -> {
+				List<CID> orphans = stream(id).map(children.extractor).collect(Collectors.toList());
+				children.deleteAllById(orphans);
+			});
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Objects;
+
+/**
+ * A constraint on a single property that an {@link Index} may be able to answer directly. Restrictions are hints
+ * only; a {@link Filter}'s predicate always has the final say.
+ */
+public sealed interface Restriction {
+
+	/**
+	 * The property path being restricted.
+	 *
+	 * @return a dotted property path.
+	 */
+	String path();
+
+	/**
+	 * Test a property value against the restriction.
+	 *
+	 * @param value the value of the property.
+	 * @return {@literal true} if the value satisfies the restriction.
+	 */
+	boolean test(Object value);
+
+	/**
+	 * The property must be equal to the value, where a {@literal null} value means the property must be null.
+	 *
+	 * @param path  the property path.
+	 * @param value the value to match.
+	 */
+	record Equal(String path, Object value) implements Restriction {
+
+		@Override
+		public boolean test(final Object value) {
+			return Objects.equals(this.value, value);
+		}
+	}
+
+	/**
+	 * The property must fall within a range, using the natural ordering of its values, or for numbers of different
+	 * types, their numeric values. A {@literal null} bound leaves that end of the range open, and a {@literal null}
+	 * property never matches.
+	 *
+	 * @param path           the property path.
+	 * @param lower          the lower bound, or {@literal null} if unbounded.
+	 * @param lowerInclusive whether the lower bound itself is included.
+	 * @param upper          the upper bound, or {@literal null} if unbounded.
+	 * @param upperInclusive whether the upper bound itself is included.
+	 */
+	record Range(String path, Comparable<?> lower, boolean lowerInclusive,
+				 Comparable<?> upper, boolean upperInclusive) implements Restriction {
+
+		/**
+		 * Values from {@code lower} to {@code upper}, inclusive.
+		 *
+		 * @param path  the property path.
+		 * @param lower the lower bound.
+		 * @param upper the upper bound.
+		 * @return a closed range.
+		 */
+		public static Range between(final String path, final Comparable<?> lower, final Comparable<?> upper) {
+			return new Range(path, lower, true, upper, true);
+		}
+
+		/**
+		 * Values strictly greater than {@code lower}.
+		 *
+		 * @param path  the property path.
+		 * @param lower the exclusive lower bound.
+		 * @return a range open above.
+		 */
+		public static Range after(final String path, final Comparable<?> lower) {
+			return new Range(path, lower, false, null, false);
+		}
+
+		/**
+		 * Values strictly less than {@code upper}.
+		 *
+		 * @param path  the property path.
+		 * @param upper the exclusive upper bound.
+		 * @return a range open below.
+		 */
+		public static Range before(final String path, final Comparable<?> upper) {
+			return new Range(path, null, false, upper, false);
+		}
+
+		@Override
+		public boolean test(final Object value) {
+			if (value == null) {
+				return false;
+			}
+			if (lower != null) {
+				int comparison = InMemoryCriteria.compare(value, lower);
+				if (comparison < 0 || comparison == 0 && !lowerInclusive) {
+					return false;
+				}
+			}
+			if (upper != null) {
+				int comparison = InMemoryCriteria.compare(value, upper);
+				return comparison < 0 || comparison == 0 && upperInclusive;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cold {@link Flow.Publisher} of the results of a query, which runs the query on an executor once per subscriber,
+ * then emits the results as the subscriber requests them.
+ *
+ * @param <E> the type of the results.
+ */
+final class ResultPublisher<E> implements Flow.Publisher<E> {
+
+	private final Executor executor;
+	private final Callable<? extends List<? extends E>> query;
+
+	ResultPublisher(final Executor executor, final Callable<? extends List<? extends E>> query) {
+		this.executor = executor;
+		this.query = query;
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super E> subscriber) {
+		Objects.requireNonNull(subscriber);
+		subscriber.onSubscribe(new ResultSubscription(subscriber));
+	}
+
+	/**
+	 * The results and outstanding demand of one subscriber. Emission runs on the executor, at most one task at a time,
+	 * rescheduled by any request made while it runs.
+	 */
+	private final class ResultSubscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super E> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger work = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable failure;
+		private List<? extends E> results;
+		private int next;
+
+		private ResultSubscription(final Flow.Subscriber<? super E> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				failure = new IllegalArgumentException(String.format("Request `%d` must be positive", n));
+			} else {
+				demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+			}
+			if (!cancelled && work.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (emit()) {
+					cancelled = true;
+					return;
+				}
+				missed = work.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		/**
+		 * Run the query if it has not run yet, and emit results while there is demand.
+		 *
+		 * @return whether the subscription has ended.
+		 */
+		private boolean emit() {
+			if (cancelled) {
+				return true;
+			}
+			try {
+				if (failure != null) {
+					throw failure;
+				}
+				if (results == null) {
+					results = query.call();
+				}
+			} catch (Throwable ex) {
+				subscriber.onError(ex);
+				return true;
+			}
+			while (next < results.size() && demand.get() > 0) {
+				if (cancelled) {
+					return true;
+				}
+				subscriber.onNext(results.get(next++));
+				if (demand.get() != Long.MAX_VALUE) {
+					demand.decrementAndGet();
+				}
+			}
+			if (next == results.size()) {
+				results = List.of();
+				subscriber.onComplete();
+				return true;
+			}
+			return false;
+		}
+	}
+}
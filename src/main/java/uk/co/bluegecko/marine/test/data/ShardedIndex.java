@@ -0,0 +1,109 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * An {@link Index} partitioned in the same way as the entities of a {@link ShardedRepository}, with an independent
+ * index for each shard, so that index maintenance only contends with writes to the same shard.
+ * <p>
+ * A lookup gathers the ids from every shard into one view, without copying. Shards cannot be
+ * {@link Index#ordered ordered} as a whole here, since the index does not know the values it orders by; the sharded
+ * repository merges the ordered {@link #shard(int) shards} instead.
+ *
+ * @param <T>  the type of the entities.
+ * @param <ID> the type of the entity ids.
+ */
+final class ShardedIndex<T, ID> implements Index<T, ID> {
+
+	private final List<Index<T, ID>> shards;
+	private final ToIntFunction<Object> router;
+
+	/**
+	 * Create an empty sharded index.
+	 *
+	 * @param index  the index to create an empty copy of for each shard.
+	 * @param count  the number of shards.
+	 * @param router find the shard of an id.
+	 */
+	ShardedIndex(final Index<T, ID> index, final int count, final ToIntFunction<Object> router) {
+		this.shards = Stream.generate(index::empty).limit(count).toList();
+		this.router = router;
+	}
+
+	/**
+	 * The index of one shard.
+	 *
+	 * @param shard the shard.
+	 * @return the index of the entities in the shard.
+	 */
+	Index<T, ID> shard(final int shard) {
+		return shards.get(shard);
+	}
+
+	@Override
+	public String property() {
+		return shards.get(0).property();
+	}
+
+	/**
+	 * Create an empty, unsharded, index over the same property, as a {@link InMemoryRepository#fork() fork} is not
+	 * sharded.
+	 *
+	 * @return a new, empty index.
+	 */
+	@Override
+	public Index<T, ID> empty() {
+		return shards.get(0).empty();
+	}
+
+	@Override
+	public void add(final ID id, final T entity) {
+		shards.get(router.applyAsInt(id)).add(id, entity);
+	}
+
+	@Override
+	public void remove(final ID id) {
+		shards.get(router.applyAsInt(id)).remove(id);
+	}
+
+	@Override
+	public void clear() {
+		shards.forEach(Index::clear);
+	}
+
+	@Override
+	public Collection<ID> lookup(final Restriction restriction) {
+		List<Collection<ID>> parts = new ArrayList<>(shards.size());
+		for (Index<T, ID> shard : shards) {
+			Collection<ID> ids = shard.lookup(restriction);
+			if (ids == null) {
+				return null;
+			}
+			if (!ids.isEmpty()) {
+				parts.add(ids);
+			}
+		}
+		return new AbstractCollection<>() {
+			@Override
+			public Iterator<ID> iterator() {
+				return ShardedMap.concat(parts, part -> part);
+			}
+
+			@Override
+			public int size() {
+				return parts.stream().mapToInt(Collection::size).sum();
+			}
+
+			@Override
+			public Stream<ID> stream() {
+				return parts.stream().flatMap(Collection::stream);
+			}
+		};
+	}
+}
@@ -0,0 +1,282 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ConcurrentMap} partitioned by key hash across a power-of-two number of independent
+ * {@link ConcurrentHashMap} shards, so that writers to different shards never share a bin, a resize or a size
+ * counter.
+ * <p>
+ * The shard of a key is taken from the high bits of its Fibonacci-scrambled hash, leaving the low bits, which each
+ * shard uses to choose a bin, evenly spread. Operations on one key are those of its shard, so are atomic in the same
+ * way. Views and bulk operations visit the shards in turn, and are weakly consistent across them.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+final class ShardedMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+	private final ConcurrentHashMap<K, V>[] shards;
+	private final int shift;
+
+	/**
+	 * Create an empty map.
+	 *
+	 * @param count        the minimum number of shards, rounded up to a power of two.
+	 * @param expectedSize the expected number of entries, across all shards.
+	 * @throws IllegalArgumentException if the number of shards is not from 1 to 65536.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	ShardedMap(final int count, final int expectedSize) {
+		if (count < 1 || count > 1 << 16) {
+			throw new IllegalArgumentException(String.format("Shard count `%d` must be from 1 to 65536", count));
+		}
+		int bits = 32 - Integer.numberOfLeadingZeros(count - 1);
+		this.shards = new ConcurrentHashMap[1 << bits];
+		this.shift = 32 - bits;
+		int capacity = Math.max(expectedSize / shards.length, 16);
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new ConcurrentHashMap<>(capacity);
+		}
+	}
+
+	/**
+	 * The number of shards.
+	 *
+	 * @return a power of two.
+	 */
+	int shards() {
+		return shards.length;
+	}
+
+	/**
+	 * The shard holding a key.
+	 *
+	 * @param key the key.
+	 * @return the index of the shard.
+	 */
+	int shard(final Object key) {
+		return shift == 32 ? 0 : (key.hashCode() * 0x9E3779B9) >>> shift;
+	}
+
+	/**
+	 * Stream the values of every shard in parallel, one shard to a task.
+	 *
+	 * @return a parallel stream of the values.
+	 */
+	Stream<V> parallelValues() {
+		return IntStream.range(0, shards.length).parallel().boxed()
+				.flatMap(i -> shards[i].values().stream());
+	}
+
+	private ConcurrentHashMap<K, V> of(final Object key) {
+		return shards[shard(key)];
+	}
+
+	@Override
+	public V get(final Object key) {
+		return of(key).get(key);
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return of(key).containsKey(key);
+	}
+
+	@Override
+	public V put(final K key, final V value) {
+		return of(key).put(key, value);
+	}
+
+	@Override
+	public V remove(final Object key) {
+		return of(key).remove(key);
+	}
+
+	@Override
+	public V putIfAbsent(final K key, final V value) {
+		return of(key).putIfAbsent(key, value);
+	}
+
+	@Override
+	public boolean remove(final Object key, final Object value) {
+		return of(key).remove(key, value);
+	}
+
+	@Override
+	public boolean replace(final K key, final V oldValue, final V newValue) {
+		return of(key).replace(key, oldValue, newValue);
+	}
+
+	@Override
+	public V replace(final K key, final V value) {
+		return of(key).replace(key, value);
+	}
+
+	@Override
+	public V compute(final K key, final BiFunction<? super K, ? super V, ? extends V> function) {
+		return of(key).compute(key, function);
+	}
+
+	@Override
+	public V computeIfPresent(final K key, final BiFunction<? super K, ? super V, ? extends V> function) {
+		return of(key).computeIfPresent(key, function);
+	}
+
+	@Override
+	public V computeIfAbsent(final K key, final Function<? super K, ? extends V> function) {
+		return of(key).computeIfAbsent(key, function);
+	}
+
+	@Override
+	public V merge(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> function) {
+		return of(key).merge(key, value, function);
+	}
+
+	@Override
+	public int size() {
+		long size = 0;
+		for (ConcurrentHashMap<K, V> shard : shards) {
+			size += shard.mappingCount();
+		}
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (ConcurrentHashMap<K, V> shard : shards) {
+			if (!shard.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		for (ConcurrentHashMap<K, V> shard : shards) {
+			shard.clear();
+		}
+	}
+
+	@Override
+	public void forEach(final BiConsumer<? super K, ? super V> action) {
+		for (ConcurrentHashMap<K, V> shard : shards) {
+			shard.forEach(action);
+		}
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				return concat(List.of(shards), Map::entrySet);
+			}
+
+			@Override
+			public int size() {
+				return ShardedMap.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<K> iterator() {
+				return concat(List.of(shards), Map::keySet);
+			}
+
+			@Override
+			public int size() {
+				return ShardedMap.this.size();
+			}
+
+			@Override
+			public boolean contains(final Object key) {
+				return containsKey(key);
+			}
+		};
+	}
+
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<>() {
+			@Override
+			public Iterator<V> iterator() {
+				return concat(List.of(shards), Map::values);
+			}
+
+			@Override
+			public int size() {
+				return ShardedMap.this.size();
+			}
+
+			@Override
+			public Stream<V> stream() {
+				return Stream.of(shards).flatMap(shard -> shard.values().stream());
+			}
+
+			@Override
+			public Stream<V> parallelStream() {
+				return parallelValues();
+			}
+		};
+	}
+
+	/**
+	 * Iterate the elements of a collection drawn from each of several parts in turn.
+	 *
+	 * @param parts      the parts.
+	 * @param collection get the collection to iterate from a part.
+	 * @param <P>        the type of the parts.
+	 * @param <E>        the type of the elements.
+	 * @return an iterator over the elements of every part; removal removes from the part.
+	 */
+	static <P, E> Iterator<E> concat(final List<P> parts,
+			final Function<? super P, ? extends Collection<E>> collection) {
+		return new Iterator<>() {
+			private int next;
+			private Iterator<E> current = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext() && next < parts.size()) {
+					current = collection.apply(parts.get(next++)).iterator();
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public E next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+
+			@Override
+			public void remove() {
+				current.remove();
+			}
+		};
+	}
+}
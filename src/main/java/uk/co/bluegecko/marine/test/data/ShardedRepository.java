@@ -0,0 +1,198 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.springframework.data.domain.Sort;
+
+/**
+ * An {@link InMemoryRepository} partitioned by id hash across independent shards, for tests with many concurrent
+ * writers.
+ * <p>
+ * Each shard has its own storage and its own copy of every index, so a save or delete only contends with writes to
+ * the same shard, and {@link #count()} sums a counter per shard rather than contending on one. Full scans, including
+ * those behind counts and finds by {@link org.springframework.data.domain.Example Example} or
+ * {@link org.springframework.data.jpa.domain.Specification Specification}, test the shards in parallel, one task to a
+ * shard, once the repository holds at least {@link #PARALLEL_SCAN_THRESHOLD} entities; the matches are collected
+ * before the stream is returned, so it is safe to consume in any way. Index lookups gather the ids from every shard
+ * without copying, and reads in the order of an {@link #orderedIndex ordered index} merge the ordered shards.
+ * <p>
+ * Transactions, listeners, versioning and metrics behave as for any other repository. A {@link #fork() fork} is an
+ * ordinary persistent repository, which is not sharded.
+ *
+ * @param <T>  the type of the entities.
+ * @param <ID> the type of the entity ids.
+ */
+public class ShardedRepository<T, ID> extends InMemoryRepository<T, ID> {
+
+	/**
+	 * Number of entities from which full scans test the shards in parallel.
+	 */
+	protected static final int PARALLEL_SCAN_THRESHOLD = 1 << 12;
+
+	private final ShardedMap<ID, T> storage;
+
+	@SafeVarargs
+	public ShardedRepository(final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator,
+			final T... entities) {
+		this(extractor, inserter, generator);
+		populate(Arrays.stream(entities));
+	}
+
+	public ShardedRepository(final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator,
+			final Stream<T> entities) {
+		this(extractor, inserter, generator);
+		populate(entities);
+	}
+
+	/**
+	 * Create an empty repository, with a shard for each available processor.
+	 *
+	 * @param extractor extract the id from an entity.
+	 * @param inserter  set the id of an entity.
+	 * @param generator generate ids for new entities.
+	 */
+	public ShardedRepository(final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator) {
+		this(extractor, inserter, generator, Runtime.getRuntime().availableProcessors(), 0);
+	}
+
+	/**
+	 * Create an empty repository, with storage presized for the expected number of entities.
+	 *
+	 * @param extractor    extract the id from an entity.
+	 * @param inserter     set the id of an entity.
+	 * @param generator    generate ids for new entities.
+	 * @param shards       the minimum number of shards, rounded up to a power of two.
+	 * @param expectedSize the expected number of entities.
+	 * @throws IllegalArgumentException if the number of shards is not from 1 to 65536.
+	 */
+	public ShardedRepository(final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator,
+			final int shards,
+			final int expectedSize) {
+		this(new ShardedMap<>(shards, expectedSize), extractor, inserter, generator);
+	}
+
+	private ShardedRepository(final ShardedMap<ID, T> storage,
+			final Function<T, ID> extractor,
+			final BiConsumer<ID, T> inserter,
+			final Supplier<ID> generator) {
+		super(storage, extractor, inserter, generator);
+		this.storage = storage;
+	}
+
+	/**
+	 * Get the number of shards.
+	 *
+	 * @return a power of two.
+	 */
+	public int shards() {
+		return storage.shards();
+	}
+
+	/**
+	 * Declare an index, giving each shard its own copy.
+	 *
+	 * @param index the index.
+	 * @return this repository.
+	 */
+	@Override
+	protected InMemoryRepository<T, ID> index(final Index<T, ID> index) {
+		return super.index(index instanceof ShardedIndex<T, ID> ? index
+				: new ShardedIndex<>(index, storage.shards(), storage::shard));
+	}
+
+	@Override
+	protected Stream<T> scan(final Filter<? super T> filter) {
+		buildDeferred();
+		Collection<ID> candidates = candidates(filter);
+		if (candidates != null) {
+			return filter(candidates.stream().map(storage::get).filter(Objects::nonNull), filter, false);
+		}
+		if (storage.shards() == 1 || storage.size() < PARALLEL_SCAN_THRESHOLD) {
+			return filter(storage.values().stream(), filter, true);
+		}
+		List<T> matches = filter(storage.parallelValues(), filter, true).collect(Collectors.toList());
+		return matches.stream();
+	}
+
+	@Override
+	protected Stream<T> ordered(final Sort sort) {
+		buildDeferred();
+		if (!(indexes.get(sort.iterator().next().getProperty()) instanceof ShardedIndex<T, ID> index)) {
+			return null;
+		}
+		List<Iterator<T>> runs = new ArrayList<>(storage.shards());
+		for (int shard = 0; shard < storage.shards(); shard++) {
+			Stream<T> run = ordered(index.shard(shard), sort);
+			if (run == null) {
+				return null;
+			}
+			runs.add(run.iterator());
+		}
+		Iterator<T> merged = merge(runs, SortComparators.of(sort));
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false);
+	}
+
+	/**
+	 * Merge runs of values, each in order, into one run. Equal values are taken from the earlier run first.
+	 *
+	 * @param runs       the runs to merge.
+	 * @param comparator the order of the runs.
+	 * @param <E>        the type of the values.
+	 * @return an iterator over the values of every run, in order.
+	 */
+	private static <E> Iterator<E> merge(final List<Iterator<E>> runs, final Comparator<? super E> comparator) {
+		PriorityQueue<Head<E>> heads = new PriorityQueue<>(Math.max(runs.size(), 1),
+				Comparator.<Head<E>, E>comparing(Head::value, comparator).thenComparingInt(Head::run));
+		for (int run = 0; run < runs.size(); run++) {
+			if (runs.get(run).hasNext()) {
+				heads.add(new Head<>(runs.get(run).next(), run));
+			}
+		}
+		return new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return !heads.isEmpty();
+			}
+
+			@Override
+			public E next() {
+				Head<E> head = heads.poll();
+				if (head == null) {
+					throw new NoSuchElementException();
+				}
+				Iterator<E> run = runs.get(head.run());
+				if (run.hasNext()) {
+					heads.add(new Head<>(run.next(), head.run()));
+				}
+				return head.value();
+			}
+		};
+	}
+
+	private record Head<E>(E value, int run) {
+
+	}
+}
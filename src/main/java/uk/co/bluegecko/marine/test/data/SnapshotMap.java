@@ -0,0 +1,426 @@
+package uk.co.bluegecko.marine.test.data;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A concurrent map over a memory-mapped snapshot file, decoding each value on first access.
+ * <p>
+ * The file holds the keys and values encoded as JSON by an {@link ObjectMapper}, followed by a table of record
+ * offsets. Opening it decodes only the keys; the values stay in the page cache, shared by every process that maps the
+ * file, until they are read. Changes never touch the file: a changed or removed value replaces its slot, and new keys
+ * are held alongside in a {@link ConcurrentHashMap}. The {@code compute} family is atomic, using a lock stripe for keys
+ * from the snapshot.
+ * <p>
+ * The file layout is:
+ * <pre>
+ * header   magic (int), format version (int)
+ * records  key bytes, value bytes, ...
+ * table    per record: key offset (long), key length (int), value length (int)
+ * trailer  table offset (long), record count (int), magic (int)
+ * </pre>
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+final class SnapshotMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+	private static final int MAGIC = 0x494d5253;
+	private static final int FORMAT = 1;
+	private static final int HEADER = Integer.BYTES * 2;
+	private static final int RECORD = Long.BYTES + Integer.BYTES * 2;
+	private static final int TRAILER = Long.BYTES + Integer.BYTES * 2;
+	private static final int CHUNK = 1 << 30;
+	private static final int STRIPES = 64;
+	private static final Object REMOVED = new Object();
+
+	private final ObjectMapper mapper;
+	private final JavaType valueType;
+	private final ByteBuffer[] chunks;
+	private final long tableOffset;
+	private final Object[] keys;
+	private final Map<Object, Integer> ordinals;
+	private final AtomicReferenceArray<Object> values;
+	private final Object[] locks = new Object[STRIPES];
+	private final Map<K, V> added = new ConcurrentHashMap<>();
+	private final AtomicInteger size;
+
+	private SnapshotMap(final ObjectMapper mapper, final JavaType keyType, final JavaType valueType,
+			final ByteBuffer[] chunks, final long tableOffset, final int count) throws IOException {
+		this.mapper = mapper;
+		this.valueType = valueType;
+		this.chunks = chunks;
+		this.tableOffset = tableOffset;
+		this.keys = new Object[count];
+		this.ordinals = new HashMap<>((int) (count / 0.75f) + 1);
+		for (int i = 0; i < count; i++) {
+			long offset = readLong(chunks, tableOffset + (long) i * RECORD);
+			int length = readInt(chunks, tableOffset + (long) i * RECORD + Long.BYTES);
+			keys[i] = mapper.readValue(read(chunks, offset, length), keyType);
+			ordinals.put(keys[i], i);
+		}
+		this.values = new AtomicReferenceArray<>(count);
+		this.size = new AtomicInteger(count);
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Write the entries of a map to a snapshot file.
+	 *
+	 * @param entries the entries to write.
+	 * @param file    the file to write, replacing any existing file.
+	 * @param mapper  the mapper encoding the keys and values.
+	 * @throws IOException if the file cannot be written.
+	 */
+	static void write(final Map<?, ?> entries, final Path file, final ObjectMapper mapper) throws IOException {
+		ByteBuffer table = ByteBuffer.allocate(Math.max(entries.size(), 1) * RECORD);
+		long position = HEADER;
+		int count = 0;
+		try (OutputStream stream = Files.newOutputStream(file);
+				DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT);
+			for (Map.Entry<?, ?> entry : entries.entrySet()) {
+				byte[] key = mapper.writeValueAsBytes(entry.getKey());
+				byte[] value = mapper.writeValueAsBytes(entry.getValue());
+				if (!table.hasRemaining()) {
+					table = ByteBuffer.allocate(table.capacity() * 2).put(table.flip());
+				}
+				table.putLong(position).putInt(key.length).putInt(value.length);
+				output.write(key);
+				output.write(value);
+				position += key.length + value.length;
+				count++;
+			}
+			output.write(table.array(), 0, table.position());
+			output.writeLong(position);
+			output.writeInt(count);
+			output.writeInt(MAGIC);
+		}
+	}
+
+	/**
+	 * Open a snapshot file. The file is mapped into memory and only its keys decoded.
+	 *
+	 * @param file      the file to open.
+	 * @param mapper    the mapper decoding the keys and values.
+	 * @param keyType   the type of the keys.
+	 * @param valueType the type of the values.
+	 * @param <K>       the type of the keys.
+	 * @param <V>       the type of the values.
+	 * @return a map over the file.
+	 * @throws IOException if the file cannot be read, or is not a snapshot.
+	 */
+	static <K, V> SnapshotMap<K, V> open(final Path file, final ObjectMapper mapper, final JavaType keyType,
+			final JavaType valueType) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER + TRAILER) {
+				throw new IOException(String.format("File `%s` is not a repository snapshot", file));
+			}
+			ByteBuffer[] chunks = new ByteBuffer[(int) ((length + CHUNK - 1) / CHUNK)];
+			for (int i = 0; i < chunks.length; i++) {
+				long start = (long) i * CHUNK;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK, length - start));
+			}
+			if (readInt(chunks, 0) != MAGIC || readInt(chunks, length - Integer.BYTES) != MAGIC) {
+				throw new IOException(String.format("File `%s` is not a repository snapshot", file));
+			}
+			if (readInt(chunks, Integer.BYTES) != FORMAT) {
+				throw new IOException(String.format("File `%s` has unsupported format `%d`", file,
+						readInt(chunks, Integer.BYTES)));
+			}
+			long tableOffset = readLong(chunks, length - TRAILER);
+			int count = readInt(chunks, length - TRAILER + Long.BYTES);
+			return new SnapshotMap<>(mapper, keyType, valueType, chunks, tableOffset, count);
+		}
+	}
+
+	@Override
+	public V get(final Object key) {
+		Integer ordinal = ordinals.get(key);
+		return ordinal != null ? value(ordinal) : added.get(key);
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public V put(final K key, final V value) {
+		Objects.requireNonNull(value);
+		Object[] previous = {null};
+		compute(key, (k, v) -> {
+			previous[0] = v;
+			return value;
+		});
+		@SuppressWarnings("unchecked")
+		V result = (V) previous[0];
+		return result;
+	}
+
+	@Override
+	public V putIfAbsent(final K key, final V value) {
+		Objects.requireNonNull(value);
+		Object[] previous = {null};
+		compute(key, (k, v) -> {
+			previous[0] = v;
+			return v != null ? v : value;
+		});
+		@SuppressWarnings("unchecked")
+		V result = (V) previous[0];
+		return result;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(final Object key) {
+		Object[] previous = {null};
+		if (key != null && containsKey(key)) {
+			computeIfPresent((K) key, (k, v) -> {
+				previous[0] = v;
+				return null;
+			});
+		}
+		return (V) previous[0];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean remove(final Object key, final Object value) {
+		boolean[] removed = {false};
+		if (key != null && value != null && containsKey(key)) {
+			computeIfPresent((K) key, (k, v) -> {
+				removed[0] = value.equals(v);
+				return removed[0] ? null : v;
+			});
+		}
+		return removed[0];
+	}
+
+	@Override
+	public boolean replace(final K key, final V oldValue, final V newValue) {
+		Objects.requireNonNull(newValue);
+		boolean[] replaced = {false};
+		computeIfPresent(key, (k, v) -> {
+			replaced[0] = v.equals(oldValue);
+			return replaced[0] ? newValue : v;
+		});
+		return replaced[0];
+	}
+
+	@Override
+	public V replace(final K key, final V value) {
+		Objects.requireNonNull(value);
+		Object[] previous = {null};
+		computeIfPresent(key, (k, v) -> {
+			previous[0] = v;
+			return value;
+		});
+		@SuppressWarnings("unchecked")
+		V result = (V) previous[0];
+		return result;
+	}
+
+	@Override
+	public V computeIfAbsent(final K key, final Function<? super K, ? extends V> mapping) {
+		V value = get(key);
+		return value != null ? value : compute(key, (k, v) -> v != null ? v : mapping.apply(k));
+	}
+
+	@Override
+	public V computeIfPresent(final K key, final BiFunction<? super K, ? super V, ? extends V> remapping) {
+		return compute(key, (k, v) -> v != null ? remapping.apply(k, v) : null);
+	}
+
+	@Override
+	public V merge(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> remapping) {
+		Objects.requireNonNull(value);
+		return compute(key, (k, v) -> v == null ? value : remapping.apply(v, value));
+	}
+
+	@Override
+	public V compute(final K key, final BiFunction<? super K, ? super V, ? extends V> remapping) {
+		Integer ordinal = ordinals.get(key);
+		if (ordinal == null) {
+			return added.compute(key, (k, previous) -> {
+				V value = remapping.apply(k, previous);
+				size.addAndGet((value != null ? 1 : 0) - (previous != null ? 1 : 0));
+				return value;
+			});
+		}
+		synchronized (locks[ordinal & (STRIPES - 1)]) {
+			V previous = value(ordinal);
+			V value = remapping.apply(key, previous);
+			if (value != previous) {
+				values.set(ordinal, value != null ? value : REMOVED);
+				size.addAndGet((value != null ? 1 : 0) - (previous != null ? 1 : 0));
+			}
+			return value;
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < keys.length; i++) {
+			synchronized (locks[i & (STRIPES - 1)]) {
+				if (values.getAndSet(i, REMOVED) != REMOVED) {
+					size.decrementAndGet();
+				}
+			}
+		}
+		added.keySet().forEach(this::remove);
+	}
+
+	@Override
+	public void forEach(final BiConsumer<? super K, ? super V> action) {
+		for (Map.Entry<K, V> entry : entrySet()) {
+			action.accept(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new Entries();
+			}
+
+			@Override
+			public int size() {
+				return SnapshotMap.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Get the value at an ordinal, decoding it if this is its first access.
+	 */
+	@SuppressWarnings("unchecked")
+	private V value(final int ordinal) {
+		Object value = values.get(ordinal);
+		if (value == null) {
+			Object decoded = decode(ordinal);
+			value = values.compareAndSet(ordinal, null, decoded) ? decoded : values.get(ordinal);
+		}
+		return value != REMOVED ? (V) value : null;
+	}
+
+	private Object decode(final int ordinal) {
+		long record = tableOffset + (long) ordinal * RECORD;
+		long offset = readLong(chunks, record) + readInt(chunks, record + Long.BYTES);
+		int length = readInt(chunks, record + Long.BYTES + Integer.BYTES);
+		try {
+			return mapper.readValue(read(chunks, offset, length), valueType);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(String.format("Unable to decode snapshot entry `%s`", keys[ordinal]), ex);
+		}
+	}
+
+	/**
+	 * Copy bytes out of the mapped chunks, which a record may straddle.
+	 */
+	private static byte[] read(final ByteBuffer[] chunks, final long offset, final int length) {
+		byte[] bytes = new byte[length];
+		int done = 0;
+		while (done < length) {
+			long position = offset + done;
+			ByteBuffer chunk = chunks[(int) (position / CHUNK)];
+			int index = (int) (position % CHUNK);
+			int count = Math.min(length - done, chunk.limit() - index);
+			chunk.get(index, bytes, done, count);
+			done += count;
+		}
+		return bytes;
+	}
+
+	private static long readLong(final ByteBuffer[] chunks, final long offset) {
+		return ByteBuffer.wrap(read(chunks, offset, Long.BYTES)).getLong();
+	}
+
+	private static int readInt(final ByteBuffer[] chunks, final long offset) {
+		return ByteBuffer.wrap(read(chunks, offset, Integer.BYTES)).getInt();
+	}
+
+	/**
+	 * Iterates the snapshot entries in file order, skipping removed ones, then the added entries.
+	 */
+	private final class Entries implements Iterator<Map.Entry<K, V>> {
+
+		private final Iterator<Map.Entry<K, V>> extra = added.entrySet().iterator();
+		private int ordinal;
+		private Map.Entry<K, V> next;
+		private K last;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean hasNext() {
+			while (next == null && ordinal < keys.length) {
+				int i = ordinal++;
+				V value = value(i);
+				if (value != null) {
+					next = new SimpleImmutableEntry<>((K) keys[i], value);
+				}
+			}
+			if (next == null && extra.hasNext()) {
+				Map.Entry<K, V> entry = extra.next();
+				next = new SimpleImmutableEntry<>(entry);
+			}
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<K, V> entry = next;
+			next = null;
+			last = entry.getKey();
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			SnapshotMap.this.remove(last);
+			last = null;
+		}
+	}
+}
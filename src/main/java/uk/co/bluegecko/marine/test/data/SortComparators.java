@@ -0,0 +1,76 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.experimental.UtilityClass;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Compiles a {@link Sort} into a {@link Comparator} chain. Compiled comparators are cached per {@link Sort}, and use
+ * {@link PropertyAccessor} to read values, so sorting does no reflection once the entity type has been seen.
+ */
+@UtilityClass
+public class SortComparators {
+
+	private static final Map<Sort, Comparator<Object>> COMPARATORS = new ConcurrentHashMap<>();
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static final Comparator<Object> NATURAL = (a, b) -> ((Comparable) a).compareTo(b);
+
+	private static final Comparator<Object> IGNORE_CASE = (a, b) ->
+			a instanceof String x && b instanceof String y ? String.CASE_INSENSITIVE_ORDER.compare(x, y)
+					: NATURAL.compare(a, b);
+
+	/**
+	 * Get the comparator for a {@link Sort}.
+	 * <p>
+	 * {@link Sort.NullHandling#NATIVE} treats {@literal null} as the largest value, so nulls sort last when ascending
+	 * and first when descending.
+	 *
+	 * @param sort the sort to compile, must not be {@link Sort#unsorted()}.
+	 * @param <T>  the type being sorted.
+	 * @return a comparator honouring each {@link Sort.Order} in turn.
+	 * @throws IllegalArgumentException if the sort is unsorted.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Comparator<T> of(final Sort sort) {
+		if (sort.isUnsorted()) {
+			throw new IllegalArgumentException("Sort must not be `unsorted`");
+		}
+		return (Comparator<T>) COMPARATORS.computeIfAbsent(sort, SortComparators::compile);
+	}
+
+	/**
+	 * Get the comparator for a single {@link Sort.Order}.
+	 *
+	 * @param order the order to compile.
+	 * @param <T>   the type being sorted.
+	 * @return a comparator for the order.
+	 */
+	public static <T> Comparator<T> of(final Sort.Order order) {
+		return of(Sort.by(order));
+	}
+
+	private static Comparator<Object> compile(final Sort sort) {
+		Comparator<Object> comparator = null;
+		for (Sort.Order order : sort) {
+			Comparator<Object> next = compile(order);
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		return comparator;
+	}
+
+	private static Comparator<Object> compile(final Sort.Order order) {
+		Comparator<Object> values = order.isIgnoreCase() ? IGNORE_CASE : NATURAL;
+		if (order.isDescending()) {
+			values = values.reversed();
+		}
+		Comparator<Object> nulls = switch (order.getNullHandling()) {
+			case NULLS_FIRST -> Comparator.nullsFirst(values);
+			case NULLS_LAST -> Comparator.nullsLast(values);
+			case NATIVE -> order.isAscending() ? Comparator.nullsLast(values) : Comparator.nullsFirst(values);
+		};
+		return Comparator.comparing(PropertyAccessor.of(order.getProperty()), nulls);
+	}
+}
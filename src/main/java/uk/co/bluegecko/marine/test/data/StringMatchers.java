@@ -0,0 +1,93 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import lombok.experimental.UtilityClass;
+
+/**
+ * String tests shared by the query engines, optionally ignoring case without allocating a lower-cased copy of each
+ * value tested.
+ */
+@UtilityClass
+class StringMatchers {
+
+	static Predicate<String> equalTo(final String value, final boolean ignoreCase) {
+		return ignoreCase ? value::equalsIgnoreCase : value::equals;
+	}
+
+	static Predicate<String> startingWith(final String value, final boolean ignoreCase) {
+		return actual -> actual.regionMatches(ignoreCase, 0, value, 0, value.length());
+	}
+
+	static Predicate<String> endingWith(final String value, final boolean ignoreCase) {
+		return actual -> actual.length() >= value.length()
+				&& actual.regionMatches(ignoreCase, actual.length() - value.length(), value, 0, value.length());
+	}
+
+	static Predicate<String> containing(final String value, final boolean ignoreCase) {
+		if (!ignoreCase) {
+			return actual -> actual.contains(value);
+		}
+		return actual -> {
+			for (int i = 0, last = actual.length() - value.length(); i <= last; i++) {
+				if (actual.regionMatches(true, i, value, 0, value.length())) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+
+	static Predicate<String> matching(final String regex, final boolean ignoreCase) {
+		Pattern pattern = Pattern.compile(regex, ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+		return actual -> pattern.matcher(actual).matches();
+	}
+
+	/**
+	 * Match a SQL {@code LIKE} pattern, where {@code %} matches any sequence of characters and {@code _} any single
+	 * character.
+	 *
+	 * @param like       the pattern.
+	 * @param ignoreCase whether to ignore case.
+	 * @return a predicate testing the whole value against the pattern.
+	 */
+	static Predicate<String> like(final String like, final boolean ignoreCase) {
+		return like(like, null, ignoreCase);
+	}
+
+	/**
+	 * Match a SQL {@code LIKE} pattern with an escape character, which makes the character following it literal.
+	 *
+	 * @param like       the pattern.
+	 * @param escape     the escape character, or {@literal null} if there is none.
+	 * @param ignoreCase whether to ignore case.
+	 * @return a predicate testing the whole value against the pattern.
+	 */
+	static Predicate<String> like(final String like, final Character escape, final boolean ignoreCase) {
+		StringBuilder regex = new StringBuilder(like.length() + 8);
+		StringBuilder literal = new StringBuilder();
+		boolean escaped = false;
+		for (char ch : like.toCharArray()) {
+			if (escaped) {
+				literal.append(ch);
+				escaped = false;
+			} else if (escape != null && ch == escape) {
+				escaped = true;
+			} else if (ch == '%' || ch == '_') {
+				if (!literal.isEmpty()) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(ch == '%' ? ".*" : ".");
+			} else {
+				literal.append(ch);
+			}
+		}
+		if (!literal.isEmpty()) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		Pattern pattern = Pattern.compile(regex.toString(),
+				Pattern.DOTALL | (ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0));
+		return actual -> pattern.matcher(actual).matches();
+	}
+}
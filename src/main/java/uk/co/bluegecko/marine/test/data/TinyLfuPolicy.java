@@ -0,0 +1,210 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link EvictionPolicy} implementing W-TinyLFU.
+ * <p>
+ * New entities enter a window holding about one percent of the entities, in order of addition. When the window
+ * overflows, its oldest entity is admitted to the main region only if a count-min sketch of recent uses rates it more
+ * popular than the entity the main region would evict, which is chosen by CLOCK; the less popular of the two is
+ * evicted. Any further overflow, as when the repository first fills, moves to the main region without competing. The
+ * sketch halves its counts periodically, so popularity ages.
+ * <p>
+ * Accesses increment the sketch and set a flag, without locking or allocating; increments may occasionally be lost
+ * under contention, which only makes the sketch a little less accurate. The main region is only touched by
+ * {@link #victim()}, so needs no synchronisation of its own.
+ *
+ * @param <ID> the type of the entity ids.
+ */
+final class TinyLfuPolicy<ID> implements EvictionPolicy<ID> {
+
+	private final FrequencySketch sketch;
+	private final Map<ID, Node<ID>> nodes = new ConcurrentHashMap<>();
+	private final Queue<Node<ID>> window = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger windowed = new AtomicInteger();
+	private final Deque<Node<ID>> main = new ArrayDeque<>();
+
+	/**
+	 * Create a policy.
+	 *
+	 * @param expectedSize the expected number of entities, to size the frequency sketch.
+	 */
+	TinyLfuPolicy(final int expectedSize) {
+		this.sketch = new FrequencySketch(expectedSize);
+	}
+
+	@Override
+	public void added(final ID id) {
+		sketch.increment(id);
+		Node<ID> node = new Node<>(id);
+		nodes.put(id, node);
+		window.add(node);
+		windowed.incrementAndGet();
+	}
+
+	@Override
+	public void accessed(final ID id) {
+		sketch.increment(id);
+		Node<ID> node = nodes.get(id);
+		if (node != null && !node.referenced) {
+			node.referenced = true;
+		}
+	}
+
+	@Override
+	public void removed(final ID id) {
+		nodes.remove(id);
+	}
+
+	@Override
+	public ID victim() {
+		sketch.age();
+		int limit = Math.max(1, nodes.size() / 100);
+		while (windowed.get() > limit + 1) {
+			Node<ID> candidate = poll();
+			if (candidate != null) {
+				main.addLast(candidate);
+			}
+		}
+		if (windowed.get() > limit) {
+			Node<ID> candidate = poll();
+			Node<ID> victim = candidate != null ? clock() : null;
+			if (victim != null && sketch.frequency(candidate.id) <= sketch.frequency(victim.id)) {
+				return candidate.id;
+			}
+			if (candidate != null) {
+				main.addLast(candidate);
+			}
+			if (victim != null) {
+				main.pollFirst();
+				return victim.id;
+			}
+		}
+		Node<ID> victim = clock();
+		if (victim != null) {
+			main.pollFirst();
+			return victim.id;
+		}
+		Node<ID> candidate = poll();
+		return candidate != null ? candidate.id : null;
+	}
+
+	/**
+	 * Take the oldest entity from the window, skipping any removed.
+	 *
+	 * @return the node of the entity, or {@literal null} if the window is empty.
+	 */
+	private Node<ID> poll() {
+		for (Node<ID> node = window.poll(); node != null; node = window.poll()) {
+			windowed.decrementAndGet();
+			if (nodes.get(node.id) == node) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the entity the main region would evict, giving a second chance to those used since last considered.
+	 *
+	 * @return the node at the head of the main region, left in place, or {@literal null} if it is empty.
+	 */
+	private Node<ID> clock() {
+		for (Node<ID> node = main.peekFirst(); node != null; node = main.peekFirst()) {
+			if (nodes.get(node.id) != node) {
+				main.pollFirst();
+			} else if (node.referenced) {
+				node.referenced = false;
+				main.addLast(main.pollFirst());
+			} else {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	private static final class Node<ID> {
+
+		private final ID id;
+		private volatile boolean referenced;
+
+		private Node(final ID id) {
+			this.id = id;
+		}
+	}
+
+	/**
+	 * A count-min sketch of counters saturating at {@literal 15}, four for each expected key, estimating how often
+	 * each key has been used since the counts were last halved.
+	 */
+	private static final class FrequencySketch {
+
+		private static final int[] SEEDS = {0x97CB3127, 0xB3C3F1B7, 0x8F1BBCDD, 0xCA62C1D7};
+		private static final int MAXIMUM = 15;
+
+		private final int[] table;
+		private final int mask;
+		private final int sampleSize;
+		private int additions;
+
+		private FrequencySketch(final int expectedSize) {
+			int width = 4 << 32 - Integer.numberOfLeadingZeros(Math.min(Math.max(expectedSize, 16), 1 << 24) - 1);
+			this.table = new int[width];
+			this.mask = width - 1;
+			this.sampleSize = 10 * width;
+		}
+
+		private void increment(final Object key) {
+			int hash = spread(key.hashCode());
+			boolean added = false;
+			for (int seed : SEEDS) {
+				int slot = slot(hash, seed);
+				if (table[slot] < MAXIMUM) {
+					table[slot]++;
+					added = true;
+				}
+			}
+			if (added) {
+				additions++;
+			}
+		}
+
+		private int frequency(final Object key) {
+			int hash = spread(key.hashCode());
+			int frequency = MAXIMUM;
+			for (int seed : SEEDS) {
+				frequency = Math.min(frequency, table[slot(hash, seed)]);
+			}
+			return frequency;
+		}
+
+		/**
+		 * Halve every count once enough uses have been counted, so that old popularity fades.
+		 */
+		private void age() {
+			if (additions >= sampleSize) {
+				for (int i = 0; i < table.length; i++) {
+					table[i] >>>= 1;
+				}
+				additions >>>= 1;
+			}
+		}
+
+		private int slot(final int hash, final int seed) {
+			int slot = hash * seed;
+			return (slot ^ slot >>> 16) & mask;
+		}
+
+		private static int spread(final int hash) {
+			int spread = hash * 0x9E3779B9;
+			return spread ^ spread >>> 15;
+		}
+	}
+}
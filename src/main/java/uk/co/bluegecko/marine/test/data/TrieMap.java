@@ -0,0 +1,568 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A concurrent map backed by a persistent hash array mapped trie, so that {@link #fork()} can hand out an
+ * independent copy in constant time.
+ * <p>
+ * The trie is immutable: each write copies only the nodes on the path to the changed entry, at most seven for a
+ * 32-bit hash, and publishes a new root, so a fork and its parent share every node that neither has changed since.
+ * Reads and iteration work from the root current when they start, taking no lock and seeing a consistent snapshot.
+ * Writes to the same map are serialised by a lock, which also makes the {@code compute} family atomic, as with
+ * {@link java.util.concurrent.ConcurrentHashMap}.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+final class TrieMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+	private static final Root EMPTY = new Root(null, 0);
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private volatile Root root;
+
+	TrieMap() {
+		this(EMPTY);
+	}
+
+	/**
+	 * Create a map holding the entries of another.
+	 *
+	 * @param entries the entries to copy.
+	 */
+	TrieMap(final Map<? extends K, ? extends V> entries) {
+		this(EMPTY);
+		putAll(entries);
+	}
+
+	private TrieMap(final Root root) {
+		this.root = root;
+	}
+
+	/**
+	 * Create an independent copy of this map, sharing its current trie. Later changes to either map are not seen by
+	 * the other.
+	 *
+	 * @return the copy.
+	 */
+	TrieMap<K, V> fork() {
+		return new TrieMap<>(root);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(final Object key) {
+		Node node = root.node();
+		return node != null ? (V) node.get(0, hash(key), key) : null;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public int size() {
+		return root.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return root.size() == 0;
+	}
+
+	@Override
+	public V put(final K key, final V value) {
+		Objects.requireNonNull(value);
+		Object[] previous = {null};
+		compute(key, (k, v) -> {
+			previous[0] = v;
+			return value;
+		});
+		@SuppressWarnings("unchecked")
+		V result = (V) previous[0];
+		return result;
+	}
+
+	@Override
+	public void putAll(final Map<? extends K, ? extends V> entries) {
+		lock.lock();
+		try {
+			Root current = root;
+			Node node = current.node();
+			int size = current.size();
+			for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+				K key = Objects.requireNonNull(entry.getKey());
+				Object value = Objects.requireNonNull(entry.getValue());
+				int hash = hash(key);
+				if (node == null) {
+					node = BitmapNode.EMPTY;
+				}
+				if (node.get(0, hash, key) == null) {
+					size++;
+				}
+				node = node.put(0, hash, key, value);
+			}
+			root = new Root(node, size);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public V putIfAbsent(final K key, final V value) {
+		Objects.requireNonNull(value);
+		V current = get(key);
+		if (current != null) {
+			return current;
+		}
+		Object[] previous = {null};
+		compute(key, (k, v) -> {
+			previous[0] = v;
+			return v != null ? v : value;
+		});
+		@SuppressWarnings("unchecked")
+		V result = (V) previous[0];
+		return result;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(final Object key) {
+		Object[] previous = {null};
+		if (key != null) {
+			compute((K) key, (k, v) -> {
+				previous[0] = v;
+				return null;
+			}, false, true);
+		}
+		return (V) previous[0];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean remove(final Object key, final Object value) {
+		boolean[] removed = {false};
+		if (key != null && value != null) {
+			compute((K) key, (k, v) -> {
+				removed[0] = value.equals(v);
+				return removed[0] ? null : v;
+			}, false, true);
+		}
+		return removed[0];
+	}
+
+	@Override
+	public boolean replace(final K key, final V oldValue, final V newValue) {
+		Objects.requireNonNull(newValue);
+		boolean[] replaced = {false};
+		computeIfPresent(key, (k, v) -> {
+			replaced[0] = v.equals(oldValue);
+			return replaced[0] ? newValue : v;
+		});
+		return replaced[0];
+	}
+
+	@Override
+	public V replace(final K key, final V value) {
+		Objects.requireNonNull(value);
+		Object[] previous = {null};
+		computeIfPresent(key, (k, v) -> {
+			previous[0] = v;
+			return value;
+		});
+		@SuppressWarnings("unchecked")
+		V result = (V) previous[0];
+		return result;
+	}
+
+	@Override
+	public V compute(final K key, final BiFunction<? super K, ? super V, ? extends V> remapping) {
+		return compute(key, remapping, false, false);
+	}
+
+	@Override
+	public V computeIfPresent(final K key, final BiFunction<? super K, ? super V, ? extends V> remapping) {
+		return compute(key, remapping, false, true);
+	}
+
+	@Override
+	public V computeIfAbsent(final K key, final Function<? super K, ? extends V> mapping) {
+		V value = get(key);
+		return value != null ? value : compute(key, (k, v) -> mapping.apply(k), true, false);
+	}
+
+	@Override
+	public V merge(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> remapping) {
+		Objects.requireNonNull(value);
+		return compute(key, (k, v) -> v == null ? value : remapping.apply(v, value), false, false);
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			root = EMPTY;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void forEach(final BiConsumer<? super K, ? super V> action) {
+		Iterator<Map.Entry<K, V>> entries = entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<K, V> entry = entries.next();
+			action.accept(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new Entries(root);
+			}
+
+			@Override
+			public Spliterator<Map.Entry<K, V>> spliterator() {
+				Root snapshot = root;
+				return Spliterators.spliterator(new Entries(snapshot), snapshot.size(),
+						Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+			}
+
+			@Override
+			public int size() {
+				return TrieMap.this.size();
+			}
+
+			@Override
+			public boolean contains(final Object o) {
+				return o instanceof Map.Entry<?, ?> entry && entry.getValue() != null
+						&& entry.getValue().equals(get(entry.getKey()));
+			}
+
+			@Override
+			public boolean remove(final Object o) {
+				return o instanceof Map.Entry<?, ?> entry && TrieMap.this.remove(entry.getKey(), entry.getValue());
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private V compute(final K key, final BiFunction<? super K, ? super V, ? extends V> remapping,
+			final boolean ifAbsent, final boolean ifPresent) {
+		int hash = hash(key);
+		lock.lock();
+		try {
+			Root current = root;
+			Node node = current.node();
+			V previous = node != null ? (V) node.get(0, hash, key) : null;
+			if (previous == null ? ifPresent : ifAbsent) {
+				return previous;
+			}
+			V value = remapping.apply(key, previous);
+			if (value != null) {
+				if (value != previous) {
+					root = new Root((node != null ? node : BitmapNode.EMPTY).put(0, hash, key, value),
+							previous == null ? current.size() + 1 : current.size());
+				}
+			} else if (previous != null) {
+				root = new Root(node.remove(0, hash, key), current.size() - 1);
+			}
+			return value;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static int hash(final Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private record Root(Node node, int size) {
+
+	}
+
+	/**
+	 * A node of the trie. Nodes are never changed once published, so writes return a new node.
+	 */
+	private abstract static class Node {
+
+		abstract Object get(int shift, int hash, Object key);
+
+		abstract Node put(int shift, int hash, Object key, Object value);
+
+		/**
+		 * @return the node without the key, or {@literal null} if that leaves it empty.
+		 */
+		abstract Node remove(int shift, int hash, Object key);
+
+		/**
+		 * @return the keys and values, and sub-nodes with a {@literal null} key, in pairs.
+		 */
+		abstract Object[] slots();
+	}
+
+	/**
+	 * Up to 32 slots, one for each value of five bits of the hash, each holding an entry or a sub-node for the next
+	 * five bits. Only occupied slots are stored, located by counting the bits set in the bitmap below the slot.
+	 */
+	private static final class BitmapNode extends Node {
+
+		private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+		private final int bitmap;
+		private final Object[] slots;
+
+		private BitmapNode(final int bitmap, final Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+		@Override
+		Object get(final int shift, final int hash, final Object key) {
+			int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0) {
+				return null;
+			}
+			int i = index(bit) << 1;
+			Object k = slots[i];
+			if (k == null) {
+				return ((Node) slots[i + 1]).get(shift + 5, hash, key);
+			}
+			return key.equals(k) ? slots[i + 1] : null;
+		}
+
+		@Override
+		Node put(final int shift, final int hash, final Object key, final Object value) {
+			int bit = bit(hash, shift);
+			int i = index(bit) << 1;
+			if ((bitmap & bit) == 0) {
+				Object[] copy = new Object[slots.length + 2];
+				System.arraycopy(slots, 0, copy, 0, i);
+				copy[i] = key;
+				copy[i + 1] = value;
+				System.arraycopy(slots, i, copy, i + 2, slots.length - i);
+				return new BitmapNode(bitmap | bit, copy);
+			}
+			Object k = slots[i];
+			Object v = slots[i + 1];
+			if (k == null) {
+				Node child = (Node) v;
+				Node updated = child.put(shift + 5, hash, key, value);
+				return updated == child ? this : with(i + 1, null, updated);
+			}
+			if (key.equals(k)) {
+				return v == value ? this : with(i + 1, k, value);
+			}
+			return with(i + 1, null, split(shift + 5, k, v, hash, key, value));
+		}
+
+		@Override
+		Node remove(final int shift, final int hash, final Object key) {
+			int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0) {
+				return this;
+			}
+			int i = index(bit) << 1;
+			Object k = slots[i];
+			if (k == null) {
+				Node child = (Node) slots[i + 1];
+				Node updated = child.remove(shift + 5, hash, key);
+				if (updated == child) {
+					return this;
+				}
+				if (updated != null) {
+					return with(i + 1, null, updated);
+				}
+			} else if (!key.equals(k)) {
+				return this;
+			}
+			if (bitmap == bit) {
+				return null;
+			}
+			Object[] copy = new Object[slots.length - 2];
+			System.arraycopy(slots, 0, copy, 0, i);
+			System.arraycopy(slots, i + 2, copy, i, slots.length - i - 2);
+			return new BitmapNode(bitmap & ~bit, copy);
+		}
+
+		@Override
+		Object[] slots() {
+			return slots;
+		}
+
+		private BitmapNode with(final int valueIndex, final Object key, final Object value) {
+			Object[] copy = slots.clone();
+			copy[valueIndex - 1] = key;
+			copy[valueIndex] = value;
+			return new BitmapNode(bitmap, copy);
+		}
+
+		private int index(final int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		private static int bit(final int hash, final int shift) {
+			return 1 << ((hash >>> shift) & 31);
+		}
+
+		private static Node split(final int shift, final Object key1, final Object value1,
+				final int hash2, final Object key2, final Object value2) {
+			int hash1 = hash(key1);
+			if (hash1 == hash2) {
+				return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+			}
+			return EMPTY.put(shift, hash1, key1, value1).put(shift, hash2, key2, value2);
+		}
+	}
+
+	/**
+	 * Entries whose keys have the same full hash.
+	 */
+	private static final class CollisionNode extends Node {
+
+		private final int hash;
+		private final Object[] slots;
+
+		private CollisionNode(final int hash, final Object[] slots) {
+			this.hash = hash;
+			this.slots = slots;
+		}
+
+		@Override
+		Object get(final int shift, final int hash, final Object key) {
+			int i = find(key);
+			return i >= 0 ? slots[i + 1] : null;
+		}
+
+		@Override
+		Node put(final int shift, final int hash, final Object key, final Object value) {
+			if (hash != this.hash) {
+				Object[] nested = {null, this};
+				return new BitmapNode(BitmapNode.bit(this.hash, shift), nested).put(shift, hash, key, value);
+			}
+			int i = find(key);
+			if (i >= 0) {
+				if (slots[i + 1] == value) {
+					return this;
+				}
+				Object[] copy = slots.clone();
+				copy[i + 1] = value;
+				return new CollisionNode(hash, copy);
+			}
+			Object[] copy = Arrays.copyOf(slots, slots.length + 2);
+			copy[slots.length] = key;
+			copy[slots.length + 1] = value;
+			return new CollisionNode(hash, copy);
+		}
+
+		@Override
+		Node remove(final int shift, final int hash, final Object key) {
+			int i = find(key);
+			if (i < 0) {
+				return this;
+			}
+			if (slots.length == 2) {
+				return null;
+			}
+			Object[] copy = new Object[slots.length - 2];
+			System.arraycopy(slots, 0, copy, 0, i);
+			System.arraycopy(slots, i + 2, copy, i, slots.length - i - 2);
+			return new CollisionNode(hash, copy);
+		}
+
+		@Override
+		Object[] slots() {
+			return slots;
+		}
+
+		private int find(final Object key) {
+			for (int i = 0; i < slots.length; i += 2) {
+				if (key.equals(slots[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Walks a snapshot of the trie depth first.
+	 */
+	private final class Entries implements Iterator<Map.Entry<K, V>> {
+
+		private final Deque<Object[]> nodes = new ArrayDeque<>();
+		private final Deque<Integer> positions = new ArrayDeque<>();
+		private Map.Entry<K, V> next;
+		private K last;
+
+		private Entries(final Root snapshot) {
+			if (snapshot.node() != null) {
+				nodes.push(snapshot.node().slots());
+				positions.push(0);
+			}
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean hasNext() {
+			while (next == null && !nodes.isEmpty()) {
+				Object[] slots = nodes.peek();
+				int i = positions.pop();
+				if (i >= slots.length) {
+					nodes.pop();
+					continue;
+				}
+				positions.push(i + 2);
+				if (slots[i] == null) {
+					nodes.push(((Node) slots[i + 1]).slots());
+					positions.push(0);
+				} else {
+					next = new SimpleImmutableEntry<>((K) slots[i], (V) slots[i + 1]);
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<K, V> entry = next;
+			next = null;
+			last = entry.getKey();
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			TrieMap.this.remove(last);
+			last = null;
+		}
+	}
+}
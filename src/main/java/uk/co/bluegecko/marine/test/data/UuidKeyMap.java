@@ -0,0 +1,41 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.UUID;
+
+/**
+ * A concurrent map from {@link UUID} keys to values, holding each key as two inline {@code long}s, so that each entry
+ * costs two {@code long} slots and a reference slot, rather than a {@link UUID} object and a map node.
+ *
+ * @param <V> the type of the values.
+ * @see PrimitiveKeyMap
+ */
+final class UuidKeyMap<V> extends PrimitiveKeyMap<UUID, V> {
+
+	UuidKeyMap() {
+		this(0);
+	}
+
+	/**
+	 * Create a map presized for a number of entries.
+	 *
+	 * @param expectedSize the expected number of entries.
+	 */
+	UuidKeyMap(final int expectedSize) {
+		super(UUID.class, 2, expectedSize);
+	}
+
+	@Override
+	long high(final UUID key) {
+		return key.getMostSignificantBits();
+	}
+
+	@Override
+	long low(final UUID key) {
+		return key.getLeastSignificantBits();
+	}
+
+	@Override
+	UUID key(final long high, final long low) {
+		return new UUID(high, low);
+	}
+}
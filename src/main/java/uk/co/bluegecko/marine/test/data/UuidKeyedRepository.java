@@ -0,0 +1,101 @@
+package uk.co.bluegecko.marine.test.data;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * An {@link InMemoryRepository} for entities with {@link UUID} ids, such as those from {@link Generators#uuid()}.
+ * <p>
+ * Entities are held in a {@link UuidKeyMap}, which stores each id as two inline {@code long}s in open-addressed tables,
+ * rather than as a {@link UUID} in a map node, so storage costs two {@code long}s and a reference per entity.
+ * {@link #findById(long, long)} and {@link #existsById(long, long)} look entities up without creating a {@link UUID}.
+ *
+ * @param <T> the type of the entities.
+ */
+public class UuidKeyedRepository<T> extends InMemoryRepository<T, UUID> {
+
+	private final UuidKeyMap<T> storage;
+
+	@SafeVarargs
+	public UuidKeyedRepository(final Function<T, UUID> extractor,
+			final BiConsumer<UUID, T> inserter,
+			final Supplier<UUID> generator,
+			final T... entities) {
+		this(entities.length, extractor, inserter, generator);
+		populate(Arrays.stream(entities));
+	}
+
+	public UuidKeyedRepository(final Function<T, UUID> extractor,
+			final BiConsumer<UUID, T> inserter,
+			final Supplier<UUID> generator,
+			final Stream<T> entities) {
+		this(extractor, inserter, generator);
+		populate(entities);
+	}
+
+	public UuidKeyedRepository(final Function<T, UUID> extractor,
+			final BiConsumer<UUID, T> inserter,
+			final Supplier<UUID> generator) {
+		this(0, extractor, inserter, generator);
+	}
+
+	/**
+	 * Create an empty repository, with storage presized for the expected number of entities.
+	 *
+	 * @param expectedSize the expected number of entities.
+	 * @param extractor    extract the id from an entity.
+	 * @param inserter     set the id of an entity.
+	 * @param generator    generate ids for new entities.
+	 */
+	public UuidKeyedRepository(final int expectedSize,
+			final Function<T, UUID> extractor,
+			final BiConsumer<UUID, T> inserter,
+			final Supplier<UUID> generator) {
+		this(new UuidKeyMap<>(expectedSize), extractor, inserter, generator);
+	}
+
+	private UuidKeyedRepository(final UuidKeyMap<T> storage,
+			final Function<T, UUID> extractor,
+			final BiConsumer<UUID, T> inserter,
+			final Supplier<UUID> generator) {
+		super(storage, extractor, inserter, generator);
+		this.storage = storage;
+	}
+
+	/**
+	 * Retrieves an entity by the bits of its id, without creating a {@link UUID}.
+	 *
+	 * @param most  the most significant bits of the id.
+	 * @param least the least significant bits of the id.
+	 * @return the entity with the given id or {@literal Optional#empty()} if none found.
+	 */
+	public Optional<T> findById(final long most, final long least) {
+		long start = started();
+		try {
+			return Optional.ofNullable(storage.get(most, least));
+		} finally {
+			finished(RepositoryMetrics.Operation.FIND_BY_ID, start);
+		}
+	}
+
+	/**
+	 * Returns whether an entity with the given id exists, without creating a {@link UUID}.
+	 *
+	 * @param most  the most significant bits of the id.
+	 * @param least the least significant bits of the id.
+	 * @return {@literal true} if an entity with the given id exists, {@literal false} otherwise.
+	 */
+	public boolean existsById(final long most, final long least) {
+		long start = started();
+		try {
+			return storage.get(most, least) != null;
+		} finally {
+			finished(RepositoryMetrics.Operation.EXISTS, start);
+		}
+	}
+}
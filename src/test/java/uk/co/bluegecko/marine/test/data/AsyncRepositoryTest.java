@@ -0,0 +1,113 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+class AsyncRepositoryTest {
+
+	@Data
+	@AllArgsConstructor
+	static final class Ship {
+
+		private Long id;
+		private String name;
+	}
+
+	/**
+	 * Collects every item, requesting one at a time.
+	 */
+	private static final class Collector implements Flow.Subscriber<Ship> {
+
+		private final List<Ship> items = new CopyOnWriteArrayList<>();
+		private final CompletableFuture<List<Ship>> done = new CompletableFuture<>();
+		private Flow.Subscription subscription;
+
+		@Override
+		public void onSubscribe(final Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(final Ship item) {
+			items.add(item);
+			subscription.request(1);
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			done.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			done.complete(items);
+		}
+	}
+
+	@Test
+	void testSharesStorage() throws Exception {
+		InMemoryRepository<Ship, Long> repository = repository();
+		AsyncRepository<Ship, Long> async = new AsyncRepository<>(repository);
+
+		Ship saved = async.save(new Ship(null, "Alpha")).get(10, TimeUnit.SECONDS);
+		assertThat(repository.findById(saved.getId())).contains(saved);
+		assertThat(async.findById(saved.getId()).get(10, TimeUnit.SECONDS)).isEqualTo(Optional.of(saved));
+		assertThat(async.count().get(10, TimeUnit.SECONDS)).isEqualTo(1);
+
+		async.deleteById(saved.getId()).get(10, TimeUnit.SECONDS);
+		assertThat(repository.count()).isZero();
+		assertThat(async.blocking()).isSameAs(repository);
+	}
+
+	@Test
+	void testLatency() throws Exception {
+		AsyncRepository<Ship, Long> async = new AsyncRepository<>(repository(), Duration.ofMillis(50),
+				Duration.ofMillis(60));
+
+		long start = System.nanoTime();
+		List<CompletableFuture<Ship>> saves = IntStream.range(0, 1_000)
+				.mapToObj(i -> async.save(new Ship(null, "Ship " + i))).toList();
+		CompletableFuture.allOf(saves.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+		long elapsed = System.nanoTime() - start;
+
+		assertThat(elapsed).isGreaterThanOrEqualTo(Duration.ofMillis(50).toNanos());
+		assertThat(async.count().get(10, TimeUnit.SECONDS)).isEqualTo(1_000);
+	}
+
+	@Test
+	void testPublishAll() throws Exception {
+		InMemoryRepository<Ship, Long> repository = repository();
+		IntStream.range(0, 20).forEach(i -> repository.save(new Ship(null, "Ship " + i)));
+		AsyncRepository<Ship, Long> async = new AsyncRepository<>(repository);
+
+		Collector collector = new Collector();
+		async.publishAll(Sort.by(Sort.Direction.DESC, "id")).subscribe(collector);
+		assertThat(collector.done.get(10, TimeUnit.SECONDS)).hasSize(20)
+				.extracting(Ship::getId).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+	}
+
+	@Test
+	void testInvalidLatency() {
+		assertThatThrownBy(() -> new AsyncRepository<>(repository(), Duration.ofMillis(2), Duration.ofMillis(1)))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Latency `PT0.002S` to `PT0.001S` is not a valid range");
+	}
+
+	private static InMemoryRepository<Ship, Long> repository() {
+		return new InMemoryRepository<>(Ship::getId, (id, ship) -> ship.setId(id), Generators.number());
+	}
+}
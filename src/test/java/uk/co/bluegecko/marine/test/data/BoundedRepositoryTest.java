@@ -0,0 +1,201 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Example;
+
+class BoundedRepositoryTest {
+
+	@Data
+	@AllArgsConstructor
+	@Accessors(fluent = true)
+	static final class Foo {
+
+		private Long id;
+		private String name;
+	}
+
+	/**
+	 * A clock that only moves when told to.
+	 */
+	static final class TestClock extends Clock {
+
+		private volatile Instant instant = Instant.parse("2000-06-15T12:30:00Z");
+
+		void advance(final Duration duration) {
+			instant = instant.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(final ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return instant;
+		}
+	}
+
+	private static BoundedRepository<Foo, Long> repository(final EvictionPolicy<Long> policy) {
+		return new BoundedRepository<>(Foo::id, (i, e) -> e.id(i), Generators.number(), policy);
+	}
+
+	private static void save(final BoundedRepository<Foo, Long> repository, final int count) {
+		for (int i = 0; i < count; i++) {
+			repository.save(new Foo(null, "Foo" + i));
+		}
+	}
+
+	@Test
+	void testLru() {
+		var repository = repository(EvictionPolicy.lru()).maximumSize(3);
+		save(repository, 3);
+		repository.findById(0L);
+		save(repository, 1);
+
+		assertThat(repository.findAll()).extracting(Foo::id).containsExactlyInAnyOrder(0L, 2L, 3L);
+		assertThat(repository.evictions()).isEqualTo(1);
+		assertThat(repository.weight()).isEqualTo(3);
+	}
+
+	@Test
+	void testLfu() {
+		var repository = repository(EvictionPolicy.lfu()).maximumSize(3);
+		save(repository, 3);
+		for (int i = 0; i < 3; i++) {
+			repository.findById(0L);
+			repository.findById(2L);
+		}
+		save(repository, 1);
+
+		assertThat(repository.findAll()).extracting(Foo::id).containsExactlyInAnyOrder(0L, 2L, 3L);
+	}
+
+	@Test
+	void testTinyLfuResistsScans() {
+		var tinyLfu = repository(EvictionPolicy.tinyLfu(100)).maximumSize(100);
+		var lru = repository(EvictionPolicy.lru()).maximumSize(100);
+		for (var repository : List.of(tinyLfu, lru)) {
+			save(repository, 100);
+			for (int i = 0; i < 5; i++) {
+				LongStream.range(0, 100).forEach(repository::findById);
+			}
+			save(repository, 1_000);
+			assertThat(repository.count()).isEqualTo(100);
+		}
+
+		assertThat(LongStream.range(0, 100).filter(tinyLfu::existsById).count()).isGreaterThanOrEqualTo(90);
+		assertThat(LongStream.range(0, 100).filter(lru::existsById).count()).isLessThan(10);
+	}
+
+	@Test
+	void testMaximumWeight() {
+		var repository = repository(EvictionPolicy.lru());
+		repository.save(new Foo(null, "Victory"));
+		repository.save(new Foo(null, "Bounty"));
+		repository.maximumWeight(20, foo -> foo.name().length());
+		assertThat(repository.weight()).isEqualTo(13);
+
+		repository.save(new Foo(null, "Endeavour"));
+		assertThat(repository.findAll()).extracting(Foo::name).containsExactlyInAnyOrder("Bounty", "Endeavour");
+		assertThat(repository.weight()).isEqualTo(15);
+
+		repository.maximumSize(1);
+		assertThat(repository.count()).isEqualTo(1);
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> repository.maximumSize(-1))
+				.withMessage("Maximum `-1` must not be negative");
+	}
+
+	@Test
+	void testExpireAfterWrite() {
+		TestClock clock = new TestClock();
+		List<Long> deleted = Collections.synchronizedList(new ArrayList<>());
+		var repository = repository(EvictionPolicy.lru()).expireAfterWrite(Duration.ofMinutes(5), clock);
+		repository.listen((id, previous, current) -> {
+			if (current == null) {
+				deleted.add(id);
+			}
+		});
+		save(repository, 1);
+		clock.advance(Duration.ofMinutes(3));
+		save(repository, 1);
+		clock.advance(Duration.ofMinutes(3));
+
+		assertThat(repository.findById(0L)).isEmpty();
+		assertThat(repository.existsById(0L)).isFalse();
+		assertThat(repository.findById(1L)).isPresent();
+		assertThat(deleted).isEmpty();
+
+		assertThat(repository.findAll()).extracting(Foo::id).containsExactly(1L);
+		assertThat(repository.expiries()).isEqualTo(1);
+		assertThat(deleted).containsExactly(0L);
+
+		repository.save(repository.findById(1L).orElseThrow());
+		clock.advance(Duration.ofMinutes(4));
+		assertThat(repository.count()).isEqualTo(1);
+		clock.advance(Duration.ofMinutes(1));
+		assertThat(repository.count()).isZero();
+	}
+
+	@Test
+	void testExpirePerEntity() {
+		TestClock clock = new TestClock();
+		var repository = repository(EvictionPolicy.lru());
+		save(repository, 2);
+		repository.expireAfterWrite(foo -> foo.name().equals("Foo1") ? null : Duration.ofSeconds(10), clock);
+		repository.save(new Foo(null, "Short"));
+
+		clock.advance(Duration.ofHours(1));
+		repository.cleanUp();
+
+		assertThat(repository.findAll()).extracting(Foo::name).containsExactly("Foo1");
+		assertThat(repository.findAll(Example.of(new Foo(null, "Short")))).isEmpty();
+	}
+
+	@Test
+	void testConcurrent() throws InterruptedException {
+		var repository = repository(EvictionPolicy.tinyLfu(1_000)).maximumSize(1_000);
+		int threads = 16;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(() -> {
+				for (int i = 0; i < 2_000; i++) {
+					repository.save(new Foo(null, "Foo"));
+					repository.findById(ThreadLocalRandom.current().nextLong(i + 1));
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+		repository.cleanUp();
+
+		assertThat(repository.count()).isEqualTo(1_000);
+		assertThat(repository.weight()).isEqualTo(1_000);
+		assertThat(repository.evictions()).isEqualTo(threads * 2_000 - 1_000);
+	}
+}
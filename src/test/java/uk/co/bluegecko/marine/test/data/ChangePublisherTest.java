@@ -0,0 +1,136 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import uk.co.bluegecko.marine.test.data.ChangeEvent.Type;
+
+class ChangePublisherTest {
+
+	@Data
+	@AllArgsConstructor
+	static final class Ship {
+
+		private Long id;
+		private String name;
+	}
+
+	/**
+	 * Collects every batch, requesting a fixed number of batches up front.
+	 */
+	private static final class Collector implements Flow.Subscriber<List<ChangeEvent<Ship, Long>>> {
+
+		private final long initial;
+		private final List<List<ChangeEvent<Ship, Long>>> batches = new CopyOnWriteArrayList<>();
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+		private Flow.Subscription subscription;
+
+		private Collector(final long initial) {
+			this.initial = initial;
+		}
+
+		@Override
+		public void onSubscribe(final Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(initial);
+		}
+
+		@Override
+		public void onNext(final List<ChangeEvent<Ship, Long>> batch) {
+			batches.add(batch);
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			done.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			done.complete(null);
+		}
+
+		private List<ChangeEvent<Ship, Long>> events() {
+			return batches.stream().flatMap(List::stream).toList();
+		}
+	}
+
+	@Test
+	void testEvents() throws Exception {
+		InMemoryRepository<Ship, Long> repository = repository();
+		Collector collector = new Collector(Long.MAX_VALUE);
+		ChangePublisher<Ship, Long> publisher = repository.changes();
+		publisher.subscribe(collector);
+		assertThat(repository.changes()).isSameAs(publisher);
+
+		Ship alpha = repository.save(new Ship(null, "Alpha"));
+		Ship renamed = repository.save(new Ship(alpha.getId(), "Alpha!"));
+		repository.delete(renamed);
+		publisher.close();
+
+		collector.done.get(10, TimeUnit.SECONDS);
+		assertThat(collector.events()).containsExactly(
+				new ChangeEvent<>(Type.CREATED, 0L, null, alpha),
+				new ChangeEvent<>(Type.UPDATED, 0L, alpha, renamed),
+				new ChangeEvent<>(Type.DELETED, 0L, renamed, null));
+	}
+
+	@Test
+	void testBackPressure() throws Exception {
+		InMemoryRepository<Ship, Long> repository = repository();
+		ChangePublisher<Ship, Long> publisher = new ChangePublisher<>(Runnable::run, 10, 1_000);
+		repository.listen(publisher);
+		Collector collector = new Collector(2);
+		publisher.subscribe(collector);
+
+		IntStream.range(0, 100).forEach(i -> repository.save(new Ship(null, "Ship " + i)));
+		assertThat(collector.batches).hasSize(2).allSatisfy(batch -> assertThat(batch).hasSizeBetween(1, 10));
+
+		collector.subscription.request(Long.MAX_VALUE);
+		publisher.close();
+		collector.done.get(10, TimeUnit.SECONDS);
+		assertThat(collector.events()).hasSize(100)
+				.extracting(ChangeEvent::id).isSorted();
+	}
+
+	@Test
+	void testOverflow() {
+		InMemoryRepository<Ship, Long> repository = repository();
+		ChangePublisher<Ship, Long> publisher = new ChangePublisher<>(Runnable::run, 10, 5);
+		repository.listen(publisher);
+		Collector slow = new Collector(0);
+		publisher.subscribe(slow);
+
+		IntStream.range(0, 10).forEach(i -> repository.save(new Ship(null, "Ship " + i)));
+		assertThat(slow.done).isCompletedExceptionally();
+		assertThat(publisher.subscribers()).isZero();
+		assertThat(repository.count()).isEqualTo(10);
+	}
+
+	@Test
+	void testCancel() {
+		InMemoryRepository<Ship, Long> repository = repository();
+		ChangePublisher<Ship, Long> publisher = new ChangePublisher<>(Runnable::run, 10, 100);
+		repository.listen(publisher);
+		Collector collector = new Collector(Long.MAX_VALUE);
+		publisher.subscribe(collector);
+
+		repository.save(new Ship(null, "Alpha"));
+		collector.subscription.cancel();
+		repository.save(new Ship(null, "Bravo"));
+		assertThat(collector.events()).hasSize(1);
+		assertThat(publisher.subscribers()).isZero();
+	}
+
+	private static InMemoryRepository<Ship, Long> repository() {
+		return new InMemoryRepository<>(Ship::getId, (id, ship) -> ship.setId(id), Generators.number());
+	}
+}
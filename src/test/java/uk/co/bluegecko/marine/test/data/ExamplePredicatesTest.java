@@ -0,0 +1,137 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.domain.ExampleMatcher.GenericPropertyMatchers.contains;
+import static org.springframework.data.domain.ExampleMatcher.GenericPropertyMatchers.endsWith;
+import static org.springframework.data.domain.ExampleMatcher.GenericPropertyMatchers.exact;
+import static org.springframework.data.domain.ExampleMatcher.GenericPropertyMatchers.regex;
+
+import java.util.List;
+import java.util.Optional;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+
+class ExamplePredicatesTest {
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	static class Port {
+
+		private String name;
+		private String country;
+	}
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	static class Vessel {
+
+		private Long id;
+		private String name;
+		private String flag;
+		private Port port;
+	}
+
+	private final List<Vessel> vessels = List.of(
+			new Vessel(1L, "Queen Mary", "GB", new Port("Southampton", "GB")),
+			new Vessel(2L, "Queen Elizabeth", "GB", new Port("Southampton", "GB")),
+			new Vessel(3L, "Ever Given", "PA", new Port("Rotterdam", "NL")),
+			new Vessel(4L, "Maersk Mc-Kinney", null, null));
+
+	private List<Long> match(final Vessel probe, final ExampleMatcher matcher) {
+		return vessels.stream()
+				.filter(ExamplePredicates.of(Example.of(probe, matcher)))
+				.map(Vessel::getId)
+				.toList();
+	}
+
+	private Vessel probe(final String name) {
+		Vessel vessel = new Vessel();
+		vessel.setName(name);
+		return vessel;
+	}
+
+	@Test
+	void testExact() {
+		assertThat(match(probe("Queen Mary"), ExampleMatcher.matching()))
+				.containsExactly(1L);
+		assertThat(match(probe("queen mary"), ExampleMatcher.matching()))
+				.isEmpty();
+	}
+
+	@Test
+	void testIgnoreCase() {
+		assertThat(match(probe("queen mary"), ExampleMatcher.matching().withIgnoreCase()))
+				.containsExactly(1L);
+		assertThat(match(probe("queen mary"), ExampleMatcher.matching().withMatcher("name", exact().ignoreCase())))
+				.containsExactly(1L);
+	}
+
+	@Test
+	void testStringMatchers() {
+		assertThat(match(probe("Queen"), ExampleMatcher.matching()
+				.withStringMatcher(ExampleMatcher.StringMatcher.STARTING)))
+				.containsExactly(1L, 2L);
+		assertThat(match(probe("GIVEN"), ExampleMatcher.matching().withMatcher("name", endsWith().ignoreCase())))
+				.containsExactly(3L);
+		assertThat(match(probe("mc-k"), ExampleMatcher.matching().withMatcher("name", contains().ignoreCase())))
+				.containsExactly(4L);
+		assertThat(match(probe("E.*n"), ExampleMatcher.matching().withMatcher("name", regex())))
+				.containsExactly(3L);
+	}
+
+	@Test
+	void testNestedProperty() {
+		Vessel probe = new Vessel(null, null, null, new Port("Southampton", null));
+		assertThat(match(probe, ExampleMatcher.matching()))
+				.containsExactly(1L, 2L);
+	}
+
+	@Test
+	void testIgnoredPaths() {
+		Vessel probe = new Vessel(1L, null, "GB", null);
+		assertThat(match(probe, ExampleMatcher.matching()))
+				.containsExactly(1L);
+		assertThat(match(probe, ExampleMatcher.matching().withIgnorePaths("id")))
+				.containsExactly(1L, 2L);
+	}
+
+	@Test
+	void testNullHandling() {
+		Vessel probe = new Vessel(null, "Maersk Mc-Kinney", null, null);
+		assertThat(match(probe, ExampleMatcher.matching().withIgnorePaths("id").withIncludeNullValues()))
+				.containsExactly(4L);
+		assertThat(match(new Vessel(null, "Queen Mary", null, null),
+				ExampleMatcher.matching().withIgnorePaths("id").withIncludeNullValues()))
+				.isEmpty();
+	}
+
+	@Test
+	void testMatchAny() {
+		Vessel probe = new Vessel(null, "Ever Given", "GB", null);
+		assertThat(match(probe, ExampleMatcher.matchingAny()))
+				.containsExactly(1L, 2L, 3L);
+	}
+
+	@Test
+	void testTransformer() {
+		assertThat(match(probe("queen elizabeth"), ExampleMatcher.matching()
+				.withTransformer("name", v -> v.map(n -> ((String) n).toUpperCase()))
+				.withIgnoreCase("name")))
+				.containsExactly(2L);
+		assertThat(match(probe("Queen Mary"), ExampleMatcher.matching()
+				.withTransformer("name", v -> Optional.empty())))
+				.containsExactly(1L, 2L, 3L, 4L);
+	}
+
+	@Test
+	void testEmptyProbe() {
+		assertThat(match(new Vessel(), ExampleMatcher.matching()))
+				.containsExactly(1L, 2L, 3L, 4L);
+	}
+}
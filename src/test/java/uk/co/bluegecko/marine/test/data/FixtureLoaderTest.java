@@ -0,0 +1,90 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.co.bluegecko.marine.test.base.ObjectMappers;
+
+class FixtureLoaderTest {
+
+	@TempDir
+	private Path directory;
+
+	@Data
+	static final class Ship {
+
+		private Long id;
+		private String name;
+		private LocalDate launched;
+	}
+
+	@Test
+	void testLoadNdjson() throws IOException {
+		Path file = Files.writeString(directory.resolve("ships.ndjson"), IntStream.range(0, 5_000)
+				.mapToObj(FixtureLoaderTest::json).collect(Collectors.joining("\n")));
+
+		InMemoryRepository<Ship, Long> repository = repository();
+		assertThat(FixtureLoader.load(file, Ship.class, repository)).isEqualTo(5_000);
+		assertThat(repository.count()).isEqualTo(5_000);
+		assertThat(repository.findById(42L)).hasValueSatisfying(ship -> {
+			assertThat(ship.getName()).isEqualTo("Ship 42");
+			assertThat(ship.getLaunched()).isEqualTo(LocalDate.of(2000, 1, 1).plusDays(42));
+		});
+	}
+
+	@Test
+	void testLoadArray() throws IOException {
+		String json = IntStream.range(0, 1_000).mapToObj(FixtureLoaderTest::json)
+				.collect(Collectors.joining(",", "[", "]"));
+
+		InMemoryRepository<Ship, Long> repository = repository();
+		try (InputStream input = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))) {
+			assertThat(FixtureLoader.load(input, ObjectMappers.standard(), Ship.class, repository, 7, 3))
+					.isEqualTo(1_000);
+		}
+		assertThat(repository.count()).isEqualTo(1_000);
+		assertThat(repository.existsById(999L)).isTrue();
+	}
+
+	@Test
+	void testGeneratedIds() throws IOException {
+		String json = "{\"name\": \"Alpha\"}\n{\"name\": \"Bravo\"}";
+
+		InMemoryRepository<Ship, Long> repository = repository();
+		try (InputStream input = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))) {
+			FixtureLoader.load(input, ObjectMappers.standard(), Ship.class, repository, 1, 2);
+		}
+		assertThat(repository.findAll()).extracting(Ship::getId).containsExactlyInAnyOrder(0L, 1L);
+	}
+
+	@Test
+	void testInvalid() {
+		String json = "{\"id\": 1, \"launched\": \"not a date\"}";
+
+		assertThatThrownBy(() -> FixtureLoader.load(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+				ObjectMappers.standard(), Ship.class, repository(), 4, 2))
+				.isInstanceOf(JsonProcessingException.class);
+	}
+
+	private static String json(final int i) {
+		return String.format("{\"id\": %d, \"name\": \"Ship %d\", \"launched\": \"%s\"}", i, i,
+				LocalDate.of(2000, 1, 1).plusDays(i));
+	}
+
+	private static InMemoryRepository<Ship, Long> repository() {
+		return new InMemoryRepository<>(Ship::getId, (id, ship) -> ship.setId(id), Generators.number());
+	}
+}
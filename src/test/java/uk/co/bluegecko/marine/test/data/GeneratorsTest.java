@@ -42,6 +42,30 @@ class GeneratorsTest {
 						() -> assertThat(generator.get()).isEqualTo(value)));
 	}
 
+	@Test
+	void testNumberReserve() {
+		var generator = Generators.number(10);
+		var block = generator.reserve(3);
+		assertThat(generator.get()).isEqualTo(13);
+		assertThat(IntStream.range(0, 3).mapToObj(block))
+				.containsExactly(10L, 11L, 12L);
+	}
+
+	@Test
+	void testUuidReserve() {
+		var generator = Generators.uuid(1, 0);
+		var block = generator.reserve(2);
+		assertThat(generator.get()).isEqualTo(new UUID(1, 2));
+		assertThat(block.apply(1)).isEqualTo(new UUID(1, 1));
+	}
+
+	@Test
+	void testReserveNegative() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> Generators.number().reserve(-1))
+				.withMessage("Count must not be negative");
+	}
+
 	@Test
 	void testStr() {
 		assertThat(Generators.str(10, 6).get()).isEqualTo("AAAAAK");
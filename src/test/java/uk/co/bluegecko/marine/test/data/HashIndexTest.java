@@ -0,0 +1,62 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HashIndexTest {
+
+	static final class Vessel {
+
+		private String flag;
+
+		Vessel(final String flag) {
+			this.flag = flag;
+		}
+	}
+
+	private HashIndex<Vessel, Long> index;
+
+	@BeforeEach
+	void setUp() {
+		index = new HashIndex<>("flag", v -> v.flag);
+	}
+
+	@Test
+	void testLookup() {
+		index.add(1L, new Vessel("GB"));
+		index.add(2L, new Vessel("GB"));
+		index.add(3L, new Vessel("PA"));
+		assertThat(index.lookup(new Restriction.Equal("flag", "GB"))).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(index.lookup(new Restriction.Equal("flag", "NL"))).isEmpty();
+	}
+
+	@Test
+	void testNullValues() {
+		index.add(1L, new Vessel(null));
+		index.add(2L, new Vessel("GB"));
+		assertThat(index.lookup(new Restriction.Equal("flag", null))).containsExactly(1L);
+	}
+
+	@Test
+	void testChangedInPlace() {
+		Vessel vessel = new Vessel("GB");
+		index.add(1L, vessel);
+		vessel.flag = "PA";
+		index.add(1L, vessel);
+		assertThat(index.lookup(new Restriction.Equal("flag", "GB"))).isEmpty();
+		assertThat(index.lookup(new Restriction.Equal("flag", "PA"))).containsExactly(1L);
+	}
+
+	@Test
+	void testRemove() {
+		index.add(1L, new Vessel("GB"));
+		index.add(2L, new Vessel("GB"));
+		index.remove(1L);
+		index.remove(3L);
+		assertThat(index.lookup(new Restriction.Equal("flag", "GB"))).containsExactly(2L);
+		index.clear();
+		assertThat(index.lookup(new Restriction.Equal("flag", "GB"))).isEmpty();
+	}
+}
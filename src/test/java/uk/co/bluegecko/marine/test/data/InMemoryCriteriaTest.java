@@ -0,0 +1,210 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import jakarta.persistence.criteria.Join;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import uk.co.bluegecko.marine.test.data.RepositoryMetrics.Scans;
+
+class InMemoryCriteriaTest {
+
+	@Data
+	@AllArgsConstructor
+	static final class Ship {
+
+		private Long id;
+		private String name;
+		private String flag;
+		private Integer tonnage;
+		private List<Crew> crew;
+	}
+
+	@Data
+	@AllArgsConstructor
+	static final class Crew {
+
+		private String name;
+		private String rank;
+	}
+
+	private RepositoryMetrics metrics;
+	private InMemoryRepository<Ship, Long> repository;
+
+	@BeforeEach
+	void setUp() {
+		metrics = new RepositoryMetrics();
+		repository = new InMemoryRepository<>(Ship::getId, (id, ship) -> ship.setId(id), Generators.number())
+				.instrument(metrics).index("flag");
+		repository.saveAll(List.of(
+				new Ship(null, "Victory", "GB", 3500, List.of(new Crew("Nelson", "Admiral"), new Crew("Hardy", "Captain"))),
+				new Ship(null, "Bounty", "GB", 215, List.of(new Crew("Bligh", "Lieutenant"))),
+				new Ship(null, "Belem", "FR", 534, List.of()),
+				new Ship(null, "Unnamed", null, null, List.of())));
+	}
+
+	@Test
+	void testEqual() {
+		assertThat(repository.findAll((root, query, cb) -> cb.equal(root.get("flag"), "GB")))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Victory", "Bounty");
+		assertThat(repository.findOne((root, query, cb) -> cb.equal(root.get("name"), "Belem")))
+				.map(Ship::getFlag).contains("FR");
+		assertThat(repository.findOne((root, query, cb) -> cb.equal(root.get("name"), "Missing"))).isEmpty();
+		assertThatThrownBy(() -> repository.findOne((root, query, cb) -> cb.equal(root.get("flag"), "GB")))
+				.isInstanceOf(IncorrectResultSizeDataAccessException.class);
+	}
+
+	@Test
+	void testComparisons() {
+		assertThat(repository.findAll((root, query, cb) -> cb.between(root.get("tonnage"), 200, 600)))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Bounty", "Belem");
+		assertThat(repository.findAll((root, query, cb) -> cb.greaterThan(root.get("tonnage"), 534)))
+				.extracting(Ship::getName).containsExactly("Victory");
+		assertThat(repository.count((root, query, cb) -> cb.le(root.get("tonnage"), 534))).isEqualTo(2);
+		assertThat(repository.findAll((root, query, cb) -> root.get("flag").in("FR", "DE")))
+				.extracting(Ship::getName).containsExactly("Belem");
+		assertThat(repository.findAll((root, query, cb) -> cb.between(root.get("flag"), "GB", "FR")))
+				.isEmpty();
+	}
+
+	@Test
+	void testValuesReadOnEachQuery() {
+		AtomicReference<String> flag = new AtomicReference<>("GB");
+		Specification<Ship> flagged = (root, query, cb) -> cb.equal(root.get("flag"), flag.get());
+		assertThat(repository.findAll(flagged))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Victory", "Bounty");
+
+		flag.set("FR");
+		assertThat(repository.findAll(flagged))
+				.extracting(Ship::getName).containsExactly("Belem");
+	}
+
+	@Test
+	void testLike() {
+		assertThat(repository.findAll((root, query, cb) -> cb.like(root.get("name"), "B%")))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Bounty", "Belem");
+		assertThat(repository.findAll((root, query, cb) -> cb.like(cb.lower(root.get("name")), "%t%y")))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Victory", "Bounty");
+		assertThat(repository.findAll((root, query, cb) -> cb.notLike(root.get("name"), "%e%")))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Victory", "Bounty");
+	}
+
+	@Test
+	void testCompound() {
+		Specification<Ship> british = (root, query, cb) -> cb.equal(root.get("flag"), "GB");
+		Specification<Ship> small = (root, query, cb) -> cb.lessThan(root.get("tonnage"), 1000);
+
+		assertThat(repository.findAll(british.and(small))).extracting(Ship::getName).containsExactly("Bounty");
+		assertThat(repository.findAll(british.or(small)))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Victory", "Bounty", "Belem");
+		assertThat(repository.findAll(Specification.not(british)))
+				.extracting(Ship::getName).containsExactly("Belem");
+		assertThat(repository.findAll((Specification<Ship>) null)).hasSize(4);
+	}
+
+	@Test
+	void testNulls() {
+		assertThat(repository.findAll((root, query, cb) -> cb.isNull(root.get("flag"))))
+				.extracting(Ship::getName).containsExactly("Unnamed");
+		assertThat(repository.count((root, query, cb) -> cb.isNotNull(root.get("tonnage")))).isEqualTo(3);
+		assertThat(repository.count((root, query, cb) -> cb.not(cb.equal(root.get("flag"), "GB")))).isEqualTo(1);
+		assertThat(repository.count((root, query, cb) -> cb.equal(cb.coalesce(root.get("flag"), "XX"), "XX")))
+				.isEqualTo(1);
+	}
+
+	@Test
+	void testJoin() {
+		assertThat(repository.findAll((root, query, cb) -> {
+			Join<Ship, Crew> crew = root.join("crew");
+			return cb.equal(crew.get("rank"), "Captain");
+		})).extracting(Ship::getName).containsExactly("Victory");
+		assertThat(repository.findAll((root, query, cb) -> cb.isEmpty(root.get("crew"))))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Belem", "Unnamed");
+		assertThat(repository.findAll((root, query, cb) -> cb.gt(cb.size(root.get("crew")), 1)))
+				.extracting(Ship::getName).containsExactly("Victory");
+
+		repository.save(new Ship(null, "Ghost", null, null, null));
+		assertThat(repository.findAll((root, query, cb) -> cb.isEmpty(root.get("crew"))))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Belem", "Unnamed", "Ghost");
+		assertThat(repository.findAll((root, query, cb) -> cb.isNotEmpty(root.get("crew"))))
+				.extracting(Ship::getName).containsExactlyInAnyOrder("Victory", "Bounty");
+	}
+
+	@Test
+	void testOrder() {
+		assertThat(repository.findAll((root, query, cb) -> {
+			query.orderBy(cb.desc(root.get("tonnage")));
+			return cb.isNotNull(root.get("flag"));
+		})).extracting(Ship::getName).containsExactly("Victory", "Belem", "Bounty");
+		assertThat(repository.findAll((root, query, cb) -> cb.isNotNull(root.get("flag")), Sort.by("name")))
+				.extracting(Ship::getName).containsExactly("Belem", "Bounty", "Victory");
+
+		Page<Ship> page = repository.findAll((root, query, cb) -> {
+			query.orderBy(cb.asc(root.get("name")));
+			return cb.conjunction();
+		}, PageRequest.of(1, 2));
+		assertThat(page.getTotalElements()).isEqualTo(4);
+		assertThat(page.getContent()).extracting(Ship::getName).containsExactly("Unnamed", "Victory");
+	}
+
+	@Test
+	void testOtherNumberType() {
+		Specification<Ship> heavy = (root, query, cb) -> cb.gt(root.get("tonnage"), 500L);
+		Specification<Ship> middling = (root, query, cb) -> cb.between(root.get("tonnage"), 200L, 600L);
+		for (boolean indexed : new boolean[]{false, true}) {
+			if (indexed) {
+				repository.orderedIndex("tonnage");
+			}
+			assertThat(repository.findAll(heavy)).as("indexed %s", indexed)
+					.extracting(Ship::getName).containsExactlyInAnyOrder("Victory", "Belem");
+			assertThat(repository.findAll(middling)).as("indexed %s", indexed)
+					.extracting(Ship::getName).containsExactlyInAnyOrder("Bounty", "Belem");
+		}
+		assertThat(metrics.snapshot().scans().get("tonnage (range)").indexed()).isEqualTo(2);
+	}
+
+	@Test
+	void testIndexed() {
+		assertThat(repository.exists((root, query, cb) -> cb.and(cb.equal(root.get("flag"), "FR"),
+				cb.like(root.get("name"), "B%")))).isTrue();
+		assertThat(repository.exists((root, query, cb) -> cb.or(cb.equal(root.get("flag"), "FR"),
+				cb.like(root.get("name"), "V%")))).isTrue();
+
+		Scans indexed = metrics.snapshot().scans().get("flag");
+		assertThat(indexed.indexed()).isEqualTo(1);
+		assertThat(indexed.scanned()).isEqualTo(1);
+		assertThat(metrics.snapshot().scans().get(RepositoryMetrics.UNRESTRICTED).full()).isEqualTo(1);
+	}
+
+	@Test
+	void testDelete() {
+		assertThat(repository.delete((root, query, cb) -> cb.equal(root.get("flag"), "GB"))).isEqualTo(2);
+		assertThat(repository.findAll()).extracting(Ship::getName).containsExactlyInAnyOrder("Belem", "Unnamed");
+	}
+
+	@Test
+	void testFluent() {
+		Specification<Ship> flagged = (root, query, cb) -> cb.isNotNull(root.get("flag"));
+		Optional<Ship> first = repository.findBy(flagged, q -> q.sortBy(Sort.by("name")).first());
+		assertThat(first).map(Ship::getName).contains("Belem");
+	}
+
+	@Test
+	void testUnsupported() {
+		assertThatThrownBy(() -> repository.findAll((root, query, cb) -> {
+			query.subquery(Long.class);
+			return cb.conjunction();
+		})).isInstanceOf(UnsupportedOperationException.class);
+	}
+}
@@ -0,0 +1,144 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+class InMemoryFluentQueryTest {
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Vessel {
+
+		private Long id;
+		private String name;
+		private String flag;
+	}
+
+	public interface VesselName {
+
+		String getName();
+	}
+
+	@Data
+	public static class VesselSummary {
+
+		private String name;
+		private String flag;
+	}
+
+	private static final Example<Vessel> BRITISH = Example.of(new Vessel(null, null, "GB"));
+
+	private InMemoryRepository<Vessel, Long> repository;
+
+	@BeforeEach
+	void setUp() {
+		repository = new InMemoryRepository<>(Vessel::getId, (i, e) -> e.setId(i), Generators.number(),
+				new Vessel(1L, "Queen Mary", "GB"), new Vessel(2L, "Ever Given", "PA"),
+				new Vessel(3L, "Queen Elizabeth", "GB"), new Vessel(4L, "Britannia", "GB"));
+	}
+
+	@Test
+	void testAll() {
+		var sorted = repository.findBy(BRITISH, q -> q.sortBy(Sort.by("name")).all());
+		assertThat(sorted)
+				.extracting(Vessel::getName)
+				.containsExactly("Britannia", "Queen Elizabeth", "Queen Mary");
+	}
+
+	@Test
+	void testLimit() {
+		var limited = repository.findBy(BRITISH,
+				q -> q.sortBy(Sort.by(Sort.Direction.DESC, "name")).limit(2).all());
+		assertThat(limited)
+				.extracting(Vessel::getName)
+				.containsExactly("Queen Mary", "Queen Elizabeth");
+		var count = repository.findBy(BRITISH, q -> q.limit(2).count());
+		assertThat(count)
+				.isEqualTo(2);
+	}
+
+	@Test
+	void testFirst() {
+		var first = repository.findBy(BRITISH, q -> q.sortBy(Sort.by("name")).first());
+		assertThat(first)
+				.get()
+				.extracting(Vessel::getId)
+				.isEqualTo(4L);
+		var none = repository.findBy(Example.of(new Vessel(null, null, "NL")), q -> q.first());
+		assertThat(none)
+				.isEmpty();
+	}
+
+	@Test
+	void testOne() {
+		var one = repository.findBy(Example.of(new Vessel(null, null, "PA")), q -> q.one());
+		assertThat(one)
+				.get()
+				.extracting(Vessel::getName)
+				.isEqualTo("Ever Given");
+		assertThatExceptionOfType(IncorrectResultSizeDataAccessException.class)
+				.isThrownBy(() -> repository.findBy(BRITISH, q -> q.one()));
+	}
+
+	@Test
+	void testPage() {
+		var page = repository.findBy(BRITISH, q -> q.page(PageRequest.of(1, 2, Sort.by("name"))));
+		assertThat(page)
+				.extracting(Vessel::getName)
+				.containsExactly("Queen Mary");
+		assertThat(page.getTotalElements()).isEqualTo(3);
+	}
+
+	@Test
+	void testCountAndExists() {
+		var count = repository.findBy(BRITISH, q -> q.count());
+		assertThat(count).isEqualTo(3);
+		var exists = repository.findBy(BRITISH, q -> q.exists());
+		assertThat(exists).isTrue();
+		var missing = repository.findBy(Example.of(new Vessel(null, null, "NL")), q -> q.exists());
+		assertThat(missing).isFalse();
+	}
+
+	@Test
+	void testInterfaceProjection() {
+		var names = repository.findBy(BRITISH, q -> q.as(VesselName.class).sortBy(Sort.by("name")).all());
+		assertThat(names)
+				.extracting(VesselName::getName)
+				.containsExactly("Britannia", "Queen Elizabeth", "Queen Mary");
+	}
+
+	@Test
+	void testClassProjection() {
+		var summary = repository.findBy(Example.of(new Vessel(null, "Ever", null),
+						ExampleMatcher.matching().withStringMatcher(ExampleMatcher.StringMatcher.STARTING)),
+				q -> q.as(VesselSummary.class).first());
+		assertThat(summary)
+				.get()
+				.extracting(VesselSummary::getFlag)
+				.isEqualTo("PA");
+	}
+
+	@Test
+	void testLazyStream() {
+		AtomicInteger pulled = new AtomicInteger();
+		var query = InMemoryFluentQuery.of(() -> Stream.iterate(0, i -> i + 1).peek(i -> pulled.incrementAndGet()));
+		assertThat(query.stream().limit(3)).containsExactly(0, 1, 2);
+		assertThat(query.exists()).isTrue();
+		assertThat(query.first()).contains(0);
+		assertThat(pulled.get()).isEqualTo(5);
+	}
+}
@@ -0,0 +1,299 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+class InMemoryRepositoryFactoryTest {
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Vessel {
+
+		private Long id;
+		private String name;
+		private String flag;
+		private Integer tonnage;
+		private boolean active;
+	}
+
+	public interface VesselName {
+
+		String getName();
+	}
+
+	public interface VesselRepository extends JpaRepository<Vessel, Long> {
+
+		List<Vessel> findByFlagAndActiveOrderByTonnageDesc(String flag, boolean active);
+
+		List<Vessel> findByNameStartingWithIgnoreCase(String prefix, Sort sort);
+
+		List<Vessel> findByTonnageBetween(Integer from, Integer to);
+
+		List<Vessel> findByTonnageGreaterThan(long tonnage);
+
+		List<Vessel> findByFlagOrName(String flag, String name);
+
+		List<Vessel> findByFlagIn(Collection<String> flags);
+
+		List<Vessel> findByNameLike(String pattern);
+
+		List<Vessel> findByTonnageIsNull();
+
+		Optional<Vessel> findByName(String name);
+
+		Vessel findByFlag(String flag);
+
+		Optional<Vessel> findFirstByFlagOrderByTonnageAsc(String flag);
+
+		Optional<Vessel> findByFlagOrderByTonnageAsc(String flag);
+
+		List<Vessel> findTop2ByTonnageIsNotNullOrderByTonnageDesc();
+
+		Page<Vessel> findByActiveTrue(PageRequest pageable);
+
+		Slice<Vessel> findByFlagNot(String flag, PageRequest pageable);
+
+		Page<Vessel> findTop3ByFlag(String flag, PageRequest pageable);
+
+		Stream<Vessel> streamByTonnageGreaterThan(Integer tonnage);
+
+		List<VesselName> findByFlagOrderByName(String flag);
+
+		<P> List<P> findByActive(boolean active, Class<P> type);
+
+		long countByFlag(String flag);
+
+		int countByActiveFalse();
+
+		boolean existsByName(String name);
+
+		long deleteByFlag(String flag);
+
+		default List<Vessel> british() {
+			return findByFlagAndActiveOrderByTonnageDesc("GB", true);
+		}
+	}
+
+	public interface BrokenRepository extends JpaRepository<Vessel, Long> {
+
+		List<Vessel> findByDraught(Integer draught);
+	}
+
+	private InMemoryRepository<Vessel, Long> repository;
+	private VesselRepository vessels;
+
+	@BeforeEach
+	void setUp() {
+		repository = new InMemoryRepository<>(Vessel::getId, (i, e) -> e.setId(i), Generators.number(),
+				new Vessel(1L, "Queen Mary", "GB", 149_215, true),
+				new Vessel(2L, "Ever Given", "PA", 220_940, true),
+				new Vessel(3L, "Queen Elizabeth", "GB", 90_901, true),
+				new Vessel(4L, "Britannia", "GB", 5_769, false),
+				new Vessel(5L, "Mayflower", "GB", null, false));
+		vessels = InMemoryRepositoryFactory.create(VesselRepository.class, repository);
+	}
+
+	@Test
+	void testDelegatesCrudMethods() {
+		vessels.save(new Vessel(null, "Oasis of the Seas", "BS", 226_838, true));
+		assertThat(vessels.count())
+				.isEqualTo(6);
+		assertThat(vessels.findById(2L))
+				.get()
+				.extracting(Vessel::getName)
+				.isEqualTo("Ever Given");
+		assertThat(repository.findAll())
+				.extracting(Vessel::getName)
+				.contains("Oasis of the Seas");
+	}
+
+	@Test
+	void testAndWithOrderBy() {
+		assertThat(vessels.findByFlagAndActiveOrderByTonnageDesc("GB", true))
+				.extracting(Vessel::getId)
+				.containsExactly(1L, 3L);
+	}
+
+	@Test
+	void testIgnoreCaseWithDynamicSort() {
+		assertThat(vessels.findByNameStartingWithIgnoreCase("queen", Sort.by("name")))
+				.extracting(Vessel::getId)
+				.containsExactly(3L, 1L);
+	}
+
+	@Test
+	void testBetween() {
+		assertThat(vessels.findByTonnageBetween(90_000, 150_000))
+				.extracting(Vessel::getId)
+				.containsExactlyInAnyOrder(1L, 3L);
+	}
+
+	@Test
+	void testOr() {
+		assertThat(vessels.findByFlagOrName("PA", "Britannia"))
+				.extracting(Vessel::getId)
+				.containsExactlyInAnyOrder(2L, 4L);
+	}
+
+	@Test
+	void testInLikeAndNull() {
+		assertThat(vessels.findByFlagIn(List.of("PA", "BS")))
+				.extracting(Vessel::getId)
+				.containsExactly(2L);
+		assertThat(vessels.findByNameLike("Queen%"))
+				.extracting(Vessel::getId)
+				.containsExactlyInAnyOrder(1L, 3L);
+		assertThat(vessels.findByTonnageIsNull())
+				.extracting(Vessel::getId)
+				.containsExactly(5L);
+	}
+
+	@Test
+	void testSingleResults() {
+		assertThat(vessels.findByName("Britannia"))
+				.get()
+				.extracting(Vessel::getId)
+				.isEqualTo(4L);
+		assertThat(vessels.findByName("Titanic"))
+				.isEmpty();
+		assertThat(vessels.findByFlag("PA"))
+				.extracting(Vessel::getId)
+				.isEqualTo(2L);
+		assertThatExceptionOfType(IncorrectResultSizeDataAccessException.class)
+				.isThrownBy(() -> vessels.findByFlag("GB"));
+		assertThat(vessels.findFirstByFlagOrderByTonnageAsc("GB"))
+				.get()
+				.extracting(Vessel::getId)
+				.isEqualTo(4L);
+		assertThat(vessels.findByFlagOrderByTonnageAsc("PA"))
+				.get()
+				.extracting(Vessel::getId)
+				.isEqualTo(2L);
+		assertThatExceptionOfType(IncorrectResultSizeDataAccessException.class)
+				.isThrownBy(() -> vessels.findByFlagOrderByTonnageAsc("GB"));
+	}
+
+	@Test
+	void testLimiting() {
+		assertThat(vessels.findTop2ByTonnageIsNotNullOrderByTonnageDesc())
+				.extracting(Vessel::getId)
+				.containsExactly(2L, 1L);
+	}
+
+	@Test
+	void testPageAndSlice() {
+		Page<Vessel> page = vessels.findByActiveTrue(PageRequest.of(1, 2, Sort.by("name")));
+		assertThat(page.getTotalElements())
+				.isEqualTo(3);
+		assertThat(page.getContent())
+				.extracting(Vessel::getId)
+				.containsExactly(1L);
+
+		Slice<Vessel> slice = vessels.findByFlagNot("PA", PageRequest.of(0, 3, Sort.by("id")));
+		assertThat(slice.hasNext())
+				.isTrue();
+		assertThat(slice.getContent())
+				.extracting(Vessel::getId)
+				.containsExactly(1L, 3L, 4L);
+
+		Page<Vessel> limited = vessels.findTop3ByFlag("GB", PageRequest.of(1, 2, Sort.by("id")));
+		assertThat(limited.getTotalElements())
+				.isEqualTo(3);
+		assertThat(limited.getContent())
+				.extracting(Vessel::getId)
+				.containsExactly(4L);
+	}
+
+	@Test
+	void testStream() {
+		try (Stream<Vessel> stream = vessels.streamByTonnageGreaterThan(100_000)) {
+			assertThat(stream)
+					.extracting(Vessel::getId)
+					.containsExactlyInAnyOrder(1L, 2L);
+		}
+	}
+
+	@Test
+	void testProjections() {
+		assertThat(vessels.findByFlagOrderByName("GB"))
+				.extracting(VesselName::getName)
+				.containsExactly("Britannia", "Mayflower", "Queen Elizabeth", "Queen Mary");
+		assertThat(vessels.findByActive(false, VesselName.class))
+				.extracting(VesselName::getName)
+				.containsExactlyInAnyOrder("Britannia", "Mayflower");
+	}
+
+	@Test
+	void testCountExistsAndDelete() {
+		assertThat(vessels.countByFlag("GB"))
+				.isEqualTo(4);
+		assertThat(vessels.countByActiveFalse())
+				.isEqualTo(2);
+		assertThat(vessels.existsByName("Ever Given"))
+				.isTrue();
+		assertThat(vessels.existsByName("Titanic"))
+				.isFalse();
+		assertThat(vessels.deleteByFlag("GB"))
+				.isEqualTo(4);
+		assertThat(repository.findAll())
+				.extracting(Vessel::getId)
+				.containsExactly(2L);
+	}
+
+	@Test
+	void testUsesIndexes() {
+		repository.index("flag");
+		repository.orderedIndex("tonnage");
+		assertThat(vessels.findByFlagAndActiveOrderByTonnageDesc("GB", true))
+				.extracting(Vessel::getId)
+				.containsExactly(1L, 3L);
+		assertThat(vessels.findByTonnageBetween(90_000, 150_000))
+				.extracting(Vessel::getId)
+				.containsExactlyInAnyOrder(1L, 3L);
+	}
+
+	@Test
+	void testOtherNumberType() {
+		for (boolean indexed : new boolean[]{false, true}) {
+			if (indexed) {
+				repository.orderedIndex("tonnage");
+			}
+			assertThat(vessels.findByTonnageGreaterThan(100_000L)).as("indexed %s", indexed)
+					.extracting(Vessel::getId)
+					.containsExactlyInAnyOrder(1L, 2L);
+			assertThat(vessels.findByTonnageGreaterThan(10_000_000_000L)).as("indexed %s", indexed)
+					.isEmpty();
+		}
+	}
+
+	@Test
+	void testDefaultMethod() {
+		assertThat(vessels.british())
+				.extracting(Vessel::getId)
+				.containsExactly(1L, 3L);
+	}
+
+	@Test
+	void testUnknownProperty() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> InMemoryRepositoryFactory.create(BrokenRepository.class, repository))
+				.withMessageContaining("findByDraught");
+	}
+}
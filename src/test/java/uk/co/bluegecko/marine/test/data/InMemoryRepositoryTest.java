@@ -3,14 +3,24 @@ package uk.co.bluegecko.marine.test.data;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.experimental.Accessors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 
 class InMemoryRepositoryTest {
@@ -24,6 +34,23 @@ class InMemoryRepositoryTest {
 		private String name;
 	}
 
+	@Data
+	@AllArgsConstructor
+	@Accessors(fluent = true)
+	static final class Bar {
+
+		private Long id;
+		private Long version;
+		private int count;
+
+		Bar copy() {
+			return new Bar(id, version, count);
+		}
+	}
+
+	private static final ExampleMatcher STARTING_WITH = ExampleMatcher.matching()
+			.withStringMatcher(ExampleMatcher.StringMatcher.STARTING);
+
 	private InMemoryRepository<Foo, Long> repository;
 
 	@BeforeEach
@@ -88,6 +115,42 @@ class InMemoryRepositoryTest {
 				.isEqualTo(new Foo(5L, "Five"));
 	}
 
+	@Test
+	void testSaveAllMixed() {
+		var generator = Generators.number(10);
+		var repo = new InMemoryRepository<Foo, Long>(4, Foo::id, (i, e) -> e.id(i), generator);
+		assertThat(repo.saveAll(Stream.of(new Foo(null, "A"), new Foo(2L, "B"), new Foo(null, "C"))::iterator))
+				.extracting(Foo::id)
+				.containsExactly(10L, 2L, 11L);
+		assertThat(generator.get()).isEqualTo(12L);
+		assertThat(repo.count()).isEqualTo(3);
+	}
+
+	@Test
+	void testSaveAllWithNullId() {
+		var repo = new InMemoryRepository<Foo, Long>(Foo::id, (i, e) -> e.id(i), Generators.noop());
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> repo.saveAll(List.of(new Foo(null, "Four"))))
+				.withMessage("Id must not be `null`");
+	}
+
+	@Test
+	void testPopulateLarge() {
+		var repo = new InMemoryRepository<Foo, Long>(100_000, Foo::id, (i, e) -> e.id(i), Generators.number())
+				.populate(Stream.generate(() -> new Foo(null, "Foo")).limit(100_000));
+		assertThat(repo.count()).isEqualTo(100_000);
+		assertThat(repo.findById(99_999L)).isPresent();
+	}
+
+	@Test
+	void testIntegerEntities() {
+		var repo = new InMemoryRepository<Integer, Integer>(i -> i, (i, e) -> {
+		}, () -> 0, 5);
+		assertThat(repo.findAll()).containsExactly(5);
+		assertThat(new InMemoryRepository<Integer, Integer>(5, i -> i, (i, e) -> {
+		}, () -> 0).count()).isZero();
+	}
+
 	@SuppressWarnings("AssertBetweenInconvertibleTypes")
 	@Test
 	void testFindById() {
@@ -176,63 +239,374 @@ class InMemoryRepositoryTest {
 
 	@Test
 	void testFindAllSorted() {
-		// will always return unsorted results
 		assertThat(repository.findAll(Sort.by(Sort.Direction.ASC, "name")))
-				.hasSize(3)
 				.extracting(Foo::name)
-				.contains("One", "Two", "Three");
+				.containsExactly("One", "Three", "Two");
+		assertThat(repository.findAll(Sort.by(Sort.Direction.DESC, "name")))
+				.extracting(Foo::name)
+				.containsExactly("Two", "Three", "One");
+	}
+
+	@Test
+	void testFindAllSortedLarge() {
+		repository.deleteAll();
+		repository.populate(LongStream.range(0, 20_000)
+				.mapToObj(i -> new Foo(i, Generators.base26Encode(19_999 - i, 4))));
+		assertThat(repository.findAll(Sort.by("name")))
+				.hasSize(20_000)
+				.extracting(Foo::id)
+				.startsWith(19_999L, 19_998L, 19_997L)
+				.endsWith(1L, 0L);
 	}
 
 	@Test
 	void testFindAllPaged() {
-		// will always return un-paged results
 		assertThat(repository.findAll(PageRequest.of(0, 2)))
-				.hasSize(3)
+				.hasSize(2)
 				.extracting(Foo::name)
-				.contains("One", "Two", "Three");
+				.containsAnyOf("One", "Two", "Three");
+		assertThat(repository.findAll(PageRequest.of(1, 2)))
+				.hasSize(1);
+		assertThat(repository.findAll(PageRequest.of(2, 2)))
+				.isEmpty();
+		assertThat(repository.findAll(PageRequest.of(0, 2)).getTotalElements())
+				.isEqualTo(3);
+	}
+
+	@Test
+	void testFindAllPagedSorted() {
+		var page = repository.findAll(PageRequest.of(0, 2, Sort.by("name")));
+		assertThat(page)
+				.extracting(Foo::name)
+				.containsExactly("One", "Three");
+		assertThat(page.getTotalElements()).isEqualTo(3);
+		assertThat(page.getTotalPages()).isEqualTo(2);
+		assertThat(repository.findAll(PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "name"))))
+				.extracting(Foo::name)
+				.containsExactly("One");
+	}
+
+	@Test
+	void testFindAllPagedSortedLarge() {
+		repository.deleteAll();
+		repository.populate(LongStream.range(0, 10_000)
+				.mapToObj(i -> new Foo(i, Generators.base26Encode(i % 100, 2))));
+		List<Foo> walked = new ArrayList<>();
+		Pageable pageable = PageRequest.of(0, 10, Sort.by("name"));
+		for (int i = 0; i < 5; i++) {
+			var page = repository.findAll(pageable);
+			assertThat(page.getTotalElements()).isEqualTo(10_000);
+			walked.addAll(page.getContent());
+			pageable = page.nextPageable();
+		}
+		assertThat(walked)
+				.hasSize(50)
+				.doesNotHaveDuplicates()
+				.extracting(Foo::name)
+				.containsOnly("AA");
+		assertThat(repository.findAll(PageRequest.of(101, 10, Sort.by(Sort.Direction.DESC, "name"))))
+				.extracting(Foo::name)
+				.containsOnly("DL");
+	}
+
+	@Test
+	void testFindAllUnpaged() {
+		assertThat(repository.findAll(Pageable.unpaged()))
+				.hasSize(3);
 	}
 
 	@Test
 	void testFindOneExample() {
-		assertThat(repository.findOne(Example.of(new Foo(0L, null))))
+		assertThat(repository.findOne(Example.of(new Foo(null, "Two"))))
 				.isPresent().get()
-				.isEqualTo(new Foo(1L, "One"));
+				.isEqualTo(new Foo(2L, "Two"));
+		assertThat(repository.findOne(Example.of(new Foo(null, "Four"))))
+				.isEmpty();
+	}
+
+	@Test
+	void testFindOneExampleNotUnique() {
+		assertThatExceptionOfType(IncorrectResultSizeDataAccessException.class)
+				.isThrownBy(() -> repository.findOne(Example.of(new Foo(null, "T"), STARTING_WITH)))
+				.withMessage("Example matches more than one entity");
 	}
 
 	@Test
 	void testFindAllExample() {
-		assertThat(repository.findAll(Example.of(new Foo(0L, null))))
-				.hasSize(3)
+		assertThat(repository.findAll(Example.of(new Foo(null, "T"), STARTING_WITH)))
+				.hasSize(2)
 				.extracting(Foo::name)
-				.contains("One", "Two", "Three");
+				.contains("Two", "Three");
+		assertThat(repository.findAll(Example.of(new Foo(0L, null))))
+				.as("id 0")
+				.isEmpty();
 	}
 
 	@Test
 	void testFindAllExampleSorted() {
-		assertThat(repository.findAll(Example.of(new Foo(0L, null)), Sort.by(Sort.Direction.ASC, "name")))
-				.hasSize(3)
+		assertThat(repository.findAll(Example.of(new Foo(null, "T"), STARTING_WITH),
+				Sort.by(Sort.Direction.ASC, "name")))
 				.extracting(Foo::name)
-				.contains("One", "Two", "Three");
+				.containsExactly("Three", "Two");
 	}
 
 	@Test
 	void testFindAllExamplePaged() {
-		assertThat(repository.findAll(Example.of(new Foo(0L, null)), PageRequest.of(1, 2)))
-				.hasSize(3)
+		var page = repository.findAll(Example.of(new Foo(null, "T"), STARTING_WITH),
+				PageRequest.of(1, 1, Sort.by("name")));
+		assertThat(page)
 				.extracting(Foo::name)
-				.contains("One", "Two", "Three");
+				.containsExactly("Two");
+		assertThat(page.getTotalElements()).isEqualTo(2);
 	}
 
 	@Test
 	void testCountExample() {
-		assertThat(repository.count(Example.of(new Foo(0L, null))))
+		assertThat(repository.count(Example.of(new Foo(null, "T"), STARTING_WITH)))
+				.isEqualTo(2);
+		assertThat(repository.count(Example.of(new Foo(null, null))))
 				.isEqualTo(3);
 	}
 
 	@Test
 	void testExistsExample() {
-		assertThat(repository.exists(Example.of(new Foo(0L, null))))
+		assertThat(repository.exists(Example.of(new Foo(null, "One"))))
 				.isTrue();
+		assertThat(repository.exists(Example.of(new Foo(null, "one"))))
+				.isFalse();
+	}
+
+	@Test
+	void testIndexMaintained() {
+		repository.index("name");
+		repository.save(new Foo(null, "Four"));
+		repository.save(new Foo(1L, "Uno"));
+		repository.deleteById(2L);
+		repository.populate(Stream.of(new Foo(10L, "Ten"), new Foo(11L, "Uno")));
+
+		Index<Foo, Long> index = repository.indexes.get("name");
+		assertThat(index.lookup(new Restriction.Equal("name", "One"))).isEmpty();
+		assertThat(index.lookup(new Restriction.Equal("name", "Two"))).isEmpty();
+		assertThat(index.lookup(new Restriction.Equal("name", "Uno"))).containsExactlyInAnyOrder(1L, 11L);
+		assertThat(index.lookup(new Restriction.Equal("name", "Four"))).containsExactly(4L);
+
+		repository.deleteAll();
+		assertThat(index.lookup(new Restriction.Equal("name", "Uno"))).isEmpty();
+	}
+
+	@Test
+	void testIndexedExample() {
+		repository.index("name", Foo::name);
+		assertThat(repository.findAll(Example.of(new Foo(null, "Two"))))
+				.containsExactly(new Foo(2L, "Two"));
+		assertThat(repository.findAll(Example.of(new Foo(3L, "Two"))))
+				.isEmpty();
+		assertThat(repository.findAll(Example.of(new Foo(null, "T"), STARTING_WITH)))
+				.as("not answered by index")
+				.hasSize(2);
+	}
+
+	@Test
+	void testFindAllRange() {
+		assertThat(repository.findAllBetween("name", "One", "Three"))
+				.as("scanned")
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("One", "Three");
+		repository.orderedIndex("name");
+		assertThat(repository.findAllBetween("name", "One", "Three"))
+				.as("indexed")
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("One", "Three");
+		assertThat(repository.findAllAfter("name", "One"))
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("Three", "Two");
+		assertThat(repository.findAllBefore("name", "Three"))
+				.extracting(Foo::name)
+				.containsExactly("One");
+	}
+
+	@Test
+	void testFindAllRangeOtherNumberType() {
+		var repo = new InMemoryRepository<Bar, Long>(Bar::id, (i, e) -> e.id(i), Generators.number());
+		LongStream.range(0, 10).forEach(i -> repo.save(new Bar(null, null, (int) i)));
+		assertThat(repo.findAllAfter("count", 6L))
+				.as("scanned")
+				.extracting(Bar::count)
+				.containsExactlyInAnyOrder(7, 8, 9);
+		repo.orderedIndex("count");
+		assertThat(repo.findAllAfter("count", 6L))
+				.as("indexed")
+				.extracting(Bar::count)
+				.containsExactlyInAnyOrder(7, 8, 9);
+		assertThat(repo.findAllBetween("count", 2L, 3.5))
+				.as("inexact bound")
+				.extracting(Bar::count)
+				.containsExactlyInAnyOrder(2, 3);
+		assertThat(repo.findAllBefore("count", 10_000_000_000L))
+				.as("out of range")
+				.hasSize(10);
+	}
+
+	@Test
+	void testFindAllSortedIndexed() {
+		repository.orderedIndex("name", Foo::name);
+		repository.save(new Foo(4L, null));
+		assertThat(repository.findAll(Sort.by("name")))
+				.extracting(Foo::id)
+				.containsExactly(1L, 3L, 2L, 4L);
+		assertThat(repository.findAll(Sort.by(Sort.Order.desc("name").nullsLast())))
+				.extracting(Foo::id)
+				.containsExactly(2L, 3L, 1L, 4L);
+		assertThat(repository.findAll(PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "name"))))
+				.extracting(Foo::id)
+				.containsExactly(3L, 1L);
+	}
+
+	@Test
+	void testFindAllSortedIndexedTies() {
+		repository.orderedIndex("name");
+		repository.save(new Foo(4L, "One"));
+		assertThat(repository.findAll(Sort.by("name").and(Sort.by(Sort.Direction.DESC, "id"))))
+				.extracting(Foo::id)
+				.containsExactly(4L, 1L, 3L, 2L);
+	}
+
+	@Test
+	void testStreamAll() {
+		assertThat(repository.streamAll())
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("One", "Two", "Three");
+		assertThat(repository.streamAll(f -> f.name().startsWith("T")))
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("Two", "Three");
+		assertThat(repository.streamAll(Example.of(new Foo(null, "One"))))
+				.extracting(Foo::id)
+				.containsExactly(1L);
+		assertThat(repository.streamAllById(List.of(3L, 5L, 1L)))
+				.extracting(Foo::name)
+				.containsExactly("Three", "One");
+	}
+
+	@Test
+	void testStreamAllParallel() {
+		repository.populate(LongStream.range(10, 100_010).mapToObj(i -> new Foo(i, null)));
+		assertThat(repository.streamAll().parallel().mapToLong(Foo::id).sum())
+				.isEqualTo(LongStream.range(10, 100_010).sum() + 6);
+		assertThat(repository.streamAll().spliterator().trySplit())
+				.isNotNull();
+	}
+
+	@Test
+	void testSaveVersioned() {
+		var repo = new InMemoryRepository<Bar, Long>(Bar::id, (i, e) -> e.id(i), Generators.number())
+				.versioned(Bar::version, (v, e) -> e.version(v));
+
+		Bar saved = repo.save(new Bar(null, null, 0));
+		assertThat(saved.version()).isEqualTo(0L);
+
+		Bar first = saved.copy().count(1);
+		Bar second = saved.copy().count(2);
+		assertThat(repo.save(first).version()).isEqualTo(1L);
+		assertThatExceptionOfType(OptimisticLockingFailureException.class)
+				.isThrownBy(() -> repo.save(second));
+		assertThat(repo.findById(saved.id()))
+				.get()
+				.extracting(Bar::count)
+				.isEqualTo(1);
+
+		assertThatExceptionOfType(OptimisticLockingFailureException.class)
+				.isThrownBy(() -> repo.save(new Bar(99L, 3L, 0)));
+		assertThatExceptionOfType(OptimisticLockingFailureException.class)
+				.isThrownBy(() -> repo.delete(second));
+		repo.delete(first);
+		assertThat(repo.count()).isZero();
+	}
+
+	@Test
+	void testSaveVersionedConcurrently() throws InterruptedException {
+		var repo = new InMemoryRepository<Bar, Long>(Bar::id, (i, e) -> e.id(i), Generators.number())
+				.versioned(Bar::version, (v, e) -> e.version(v));
+		long id = repo.save(new Bar(null, null, 0)).id();
+
+		int threads = 64;
+		int increments = 100;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(() -> {
+				for (int i = 0; i < increments; ) {
+					Bar bar = repo.findById(id).orElseThrow().copy();
+					try {
+						repo.save(bar.count(bar.count() + 1));
+						i++;
+					} catch (OptimisticLockingFailureException ex) {
+						// lost the race, so retry with a fresh copy
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+		Bar bar = repo.findById(id).orElseThrow();
+		assertThat(bar.count()).isEqualTo(threads * increments);
+		assertThat(bar.version()).isEqualTo((long) threads * increments);
 	}
 
-}
\ No newline at end of file
+	@Test
+	void testIndexWhileWriting() throws InterruptedException {
+		var repo = new InMemoryRepository<Foo, Long>(Foo::id, (i, e) -> e.id(i), Generators.number());
+		LongStream.range(0, 10_000).forEach(i -> repo.save(new Foo(i, i % 2 == 0 ? "Even" : "Odd")));
+
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			long offset = t;
+			executor.execute(() -> {
+				for (long i = offset; i < 20_000; i += threads) {
+					repo.save(new Foo(i, i % 3 == 0 ? "Even" : "Odd"));
+					repo.deleteById(i - 5_000);
+				}
+			});
+		}
+		repo.index("name");
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+		assertThat(repo.findAll(Example.of(new Foo(null, "Even"))))
+				.containsExactlyInAnyOrderElementsOf(repo.findAll().stream()
+						.filter(foo -> foo.name().equals("Even")).toList());
+	}
+
+	@Test
+	void testFork() {
+		var base = InMemoryRepository.<Foo, Long>persistent(Foo::id, (i, e) -> e.id(i), Generators.number(10))
+				.populate(Stream.of(new Foo(1L, "One"), new Foo(2L, "Two"), new Foo(3L, "Three")))
+				.index("name");
+		var fork = base.fork();
+		var other = base.fork();
+
+		fork.save(new Foo(2L, "Deux"));
+		fork.deleteById(3L);
+		other.save(new Foo(null, "Ten"));
+
+		assertThat(base.findAll(Sort.by("id")))
+				.extracting(Foo::name)
+				.containsExactly("One", "Two", "Three");
+		assertThat(fork.findAll(Example.of(new Foo(null, "Deux"))))
+				.extracting(Foo::id)
+				.containsExactly(2L);
+		assertThat(fork.findAll(Example.of(new Foo(null, "Two"))))
+				.isEmpty();
+		assertThat(other.findAll(Sort.by("id")))
+				.extracting(Foo::name)
+				.containsExactly("One", "Two", "Three", "Ten");
+	}
+
+	@Test
+	void testForkCopiesOnce() {
+		var fork = repository.fork();
+		fork.deleteAll();
+		assertThat(repository.count()).isEqualTo(3);
+		assertThat(fork.fork().count()).isZero();
+	}
+}
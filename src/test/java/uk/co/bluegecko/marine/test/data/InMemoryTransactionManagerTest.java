@@ -0,0 +1,106 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class InMemoryTransactionManagerTest {
+
+	@Data
+	@AllArgsConstructor
+	@Accessors(fluent = true)
+	static final class Foo {
+
+		private Long id;
+		private String name;
+	}
+
+	private final InMemoryTransactionManager manager = new InMemoryTransactionManager();
+	private InMemoryRepository<Foo, Long> repository;
+
+	@BeforeEach
+	void setUp() {
+		repository = new InMemoryRepository<>(Foo::id, (i, e) -> e.id(i), Generators.number(4),
+				new Foo(1L, "One"), new Foo(2L, "Two"), new Foo(3L, "Three"));
+	}
+
+	@Test
+	void testCommit() {
+		new TransactionTemplate(manager).executeWithoutResult(status -> repository.deleteById(1L));
+		assertThat(repository.count()).isEqualTo(2);
+	}
+
+	@Test
+	void testRollback() {
+		new TransactionTemplate(manager).executeWithoutResult(status -> {
+			repository.deleteById(1L);
+			repository.save(new Foo(null, "Four"));
+			status.setRollbackOnly();
+		});
+		assertThat(repository.findAll())
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("One", "Two", "Three");
+		assertThat(InMemoryTransaction.current()).isNull();
+	}
+
+	@Test
+	void testNested() {
+		TransactionTemplate outer = new TransactionTemplate(manager);
+		TransactionTemplate nested = new TransactionTemplate(manager);
+		nested.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+
+		outer.executeWithoutResult(status -> {
+			repository.deleteById(1L);
+			nested.executeWithoutResult(inner -> {
+				repository.deleteById(2L);
+				inner.setRollbackOnly();
+			});
+		});
+		assertThat(repository.findAll())
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("Two", "Three");
+	}
+
+	@Test
+	void testRequiresNew() {
+		TransactionTemplate outer = new TransactionTemplate(manager);
+		TransactionTemplate independent = new TransactionTemplate(manager);
+		independent.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		outer.executeWithoutResult(status -> {
+			repository.deleteById(1L);
+			independent.executeWithoutResult(inner -> repository.deleteById(2L));
+			status.setRollbackOnly();
+		});
+		assertThat(repository.findAll())
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("One", "Three");
+	}
+
+	@Test
+	void testRequiresNewSurvivesOuterRollback() {
+		TransactionTemplate outer = new TransactionTemplate(manager);
+		TransactionTemplate independent = new TransactionTemplate(manager);
+		independent.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		assertThatExceptionOfType(OptimisticLockingFailureException.class)
+				.isThrownBy(() -> outer.executeWithoutResult(status -> {
+					repository.save(new Foo(1L, "Un"));
+					repository.deleteById(2L);
+					independent.executeWithoutResult(inner -> repository.save(new Foo(1L, "Eins")));
+					status.setRollbackOnly();
+				}));
+		assertThat(InMemoryTransaction.current()).isNull();
+		assertThat(repository.findAll())
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("Eins", "Two", "Three");
+	}
+}
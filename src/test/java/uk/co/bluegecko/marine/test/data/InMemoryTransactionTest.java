@@ -0,0 +1,139 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.concurrent.CompletableFuture;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Example;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.TransactionUsageException;
+
+class InMemoryTransactionTest {
+
+	@Data
+	@AllArgsConstructor
+	@Accessors(fluent = true)
+	static final class Foo {
+
+		private Long id;
+		private String name;
+	}
+
+	private InMemoryRepository<Foo, Long> repository;
+
+	@BeforeEach
+	void setUp() {
+		repository = new InMemoryRepository<Foo, Long>(Foo::id, (i, e) -> e.id(i), Generators.number(4),
+				new Foo(1L, "One"), new Foo(2L, "Two"), new Foo(3L, "Three"))
+				.index("name");
+	}
+
+	@AfterEach
+	void tearDown() {
+		InMemoryTransaction transaction = InMemoryTransaction.current();
+		if (transaction != null) {
+			transaction.close();
+		}
+	}
+
+	@Test
+	void testCommit() {
+		InMemoryTransaction transaction = InMemoryTransaction.begin();
+		repository.save(new Foo(null, "Four"));
+		repository.deleteById(1L);
+		transaction.commit();
+
+		assertThat(InMemoryTransaction.current()).isNull();
+		assertThat(repository.findAll())
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("Two", "Three", "Four");
+	}
+
+	@Test
+	void testRollback() {
+		try (InMemoryTransaction ignored = InMemoryTransaction.begin()) {
+			repository.save(new Foo(null, "Four"));
+			repository.save(new Foo(2L, "Deux"));
+			repository.deleteById(1L);
+			repository.deleteAll();
+			assertThat(repository.count()).isZero();
+		}
+
+		assertThat(repository.findAll())
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("One", "Two", "Three");
+		assertThat(repository.findAll(Example.of(new Foo(null, "Two"))))
+				.extracting(Foo::id)
+				.containsExactly(2L);
+		assertThat(repository.findAll(Example.of(new Foo(null, "Deux"))))
+				.isEmpty();
+	}
+
+	@Test
+	void testRollbackKeepsOtherWriters() {
+		InMemoryTransaction transaction = InMemoryTransaction.begin();
+		repository.save(new Foo(1L, "Un"));
+		repository.save(new Foo(2L, "Deux"));
+		repository.deleteById(3L);
+		CompletableFuture.runAsync(() -> {
+			repository.save(new Foo(1L, "Eins"));
+			repository.save(new Foo(3L, "Drei"));
+		}).join();
+
+		assertThatExceptionOfType(OptimisticLockingFailureException.class)
+				.isThrownBy(transaction::rollback)
+				.withMessage("Entities `[3, 1]` were changed outside the transaction, so were not rolled back");
+		assertThat(transaction.isActive()).isFalse();
+		assertThat(repository.findAll())
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("Eins", "Two", "Drei");
+		assertThat(repository.findAll(Example.of(new Foo(null, "Eins"))))
+				.extracting(Foo::id)
+				.containsExactly(1L);
+	}
+
+	@Test
+	void testSavepoint() {
+		InMemoryTransaction transaction = InMemoryTransaction.begin();
+		repository.save(new Foo(null, "Four"));
+		Object savepoint = transaction.createSavepoint();
+		repository.save(new Foo(null, "Five"));
+		repository.deleteById(2L);
+		transaction.rollbackToSavepoint(savepoint);
+		transaction.releaseSavepoint(savepoint);
+		transaction.commit();
+
+		assertThat(repository.findAll())
+				.extracting(Foo::name)
+				.containsExactlyInAnyOrder("One", "Two", "Three", "Four");
+	}
+
+	@Test
+	void testInvalidUse() {
+		InMemoryTransaction transaction = InMemoryTransaction.begin();
+		assertThatExceptionOfType(IllegalTransactionStateException.class)
+				.isThrownBy(InMemoryTransaction::begin);
+		assertThatExceptionOfType(TransactionUsageException.class)
+				.isThrownBy(() -> transaction.rollbackToSavepoint("savepoint"));
+		transaction.commit();
+		assertThatExceptionOfType(IllegalTransactionStateException.class)
+				.isThrownBy(transaction::rollback);
+	}
+
+	@Test
+	void testRollbackOnly() {
+		InMemoryTransaction transaction = InMemoryTransaction.begin();
+		repository.deleteById(1L);
+		transaction.setRollbackOnly();
+		assertThatExceptionOfType(IllegalTransactionStateException.class)
+				.isThrownBy(transaction::commit);
+		assertThat(repository.existsById(1L)).isTrue();
+	}
+}
@@ -0,0 +1,254 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+class JpqlQueryTest {
+
+	@Data
+	@AllArgsConstructor
+	public static class Vessel {
+
+		private Long id;
+		private String name;
+		private String flag;
+		private Integer tonnage;
+		private List<String> crew;
+	}
+
+	@Data
+	@AllArgsConstructor
+	public static class Voyage {
+
+		private Long id;
+		private String vessel;
+		private String port;
+		private Integer day;
+	}
+
+	public interface VesselRepository extends JpaRepository<Vessel, Long> {
+
+		@Query("select v from Vessel v where v.flag = :flag order by v.tonnage desc")
+		List<Vessel> findByFlag(@Param("flag") String flag);
+
+		@Query("SELECT v FROM Vessel v WHERE v.name LIKE ?1 AND v.tonnage BETWEEN ?2 AND ?3")
+		List<Vessel> findByNameAndTonnage(String pattern, Integer from, Integer to);
+
+		@Query("select v from Vessel v where v.flag in :flags or v.tonnage is null order by v.name")
+		List<Vessel> findByFlags(@Param("flags") Collection<String> flags);
+
+		@Query("select v from Vessel v where not (v.tonnage > 500) and v.flag <> 'FR'")
+		List<Vessel> findSmall();
+
+		@Query("select v from Vessel v where v.name = :name")
+		Optional<Vessel> findByName(@Param("name") String name);
+
+		@Query("select count(v) from Vessel v where v.flag = :flag")
+		long countByFlag(@Param("flag") String flag);
+
+		@Query("select count(distinct v.flag) from Vessel v")
+		int countFlags();
+
+		@Query("select v.name from Vessel v where v.tonnage >= 500 order by v.name")
+		List<String> findLargeNames();
+
+		@Query("select v.name, v.tonnage * 2 from Vessel v where v.name = 'Victory'")
+		List<Object[]> findDoubled();
+
+		@Query("select distinct v from Vessel v join v.crew c where lower(c) like 'n%'")
+		List<Vessel> findByCrewInitial();
+
+		@Query("select v from Vessel v where size(v.crew) = 0 or v.crew is empty")
+		List<Vessel> findUncrewed();
+
+		@Query("select v from Vessel v where :member member of v.crew")
+		List<Vessel> findByCrewMember(@Param("member") String member);
+
+		@Query("select v from Vessel v")
+		Page<Vessel> findPage(Pageable pageable);
+
+		@Query("select v from Vessel v where v.flag = 'GB'")
+		List<Vessel> findBritish(Sort sort);
+
+		@Query("select v from Vessel v where concat(v.flag, '-', v.name) = :code")
+		List<Vessel> findByCode(@Param("code") String code);
+
+		@Modifying
+		@Query("delete from Vessel v where v.flag = :flag")
+		int deleteByFlag(@Param("flag") String flag);
+	}
+
+	public interface VoyageRepository extends JpaRepository<Voyage, Long> {
+
+		@Query("select y from Voyage y join Vessel v on v.name = y.vessel where v.flag = :flag order by y.day")
+		List<Voyage> findByFlag(@Param("flag") String flag);
+
+		@Query("select y.port, v.name from Voyage y, Vessel v where y.vessel = v.name and v.tonnage > 1000")
+		List<Object[]> findLargePorts();
+
+		@Query("select v.name, y.port from Vessel v left join Voyage y on y.vessel = v.name order by v.name, y.port")
+		List<Object[]> findVesselPorts();
+	}
+
+	public interface InvalidRepository extends JpaRepository<Vessel, Long> {
+
+		@Query("select v from Vessel v where v.name = :missing")
+		List<Vessel> findByName(@Param("name") String name);
+	}
+
+	public interface UnsupportedRepository extends JpaRepository<Vessel, Long> {
+
+		@Query("select v from Vessel v where exists (select y from Voyage y)")
+		List<Vessel> findWithVoyages();
+	}
+
+	private RepositoryMetrics metrics;
+	private InMemoryRepository<Vessel, Long> vessels;
+	private InMemoryRepository<Voyage, Long> voyages;
+	private VesselRepository vesselRepository;
+	private VoyageRepository voyageRepository;
+
+	@BeforeEach
+	void setUp() {
+		metrics = new RepositoryMetrics();
+		vessels = new InMemoryRepository<>(Vessel::getId, (id, vessel) -> vessel.setId(id), Generators.number())
+				.instrument(metrics).index("flag").orderedIndex("tonnage");
+		voyages = new InMemoryRepository<>(Voyage::getId, (id, voyage) -> voyage.setId(id), Generators.number());
+		vessels.saveAll(List.of(
+				new Vessel(null, "Victory", "GB", 3500, List.of("Nelson", "Hardy")),
+				new Vessel(null, "Bounty", "GB", 215, List.of("Bligh")),
+				new Vessel(null, "Belem", "FR", 534, List.of()),
+				new Vessel(null, "Endeavour", "GB", null, List.of("Cook", "Banks"))));
+		voyages.saveAll(List.of(
+				new Voyage(null, "Victory", "Portsmouth", 3),
+				new Voyage(null, "Victory", "Cadiz", 1),
+				new Voyage(null, "Bounty", "Tahiti", 2),
+				new Voyage(null, "Belem", "Nantes", 4)));
+		vesselRepository = InMemoryRepositoryFactory.create(VesselRepository.class, vessels);
+		voyageRepository = InMemoryRepositoryFactory.create(VoyageRepository.class, voyages,
+				Map.of(Vessel.class, vessels));
+	}
+
+	@Test
+	void testWhere() {
+		assertThat(vesselRepository.findByFlag("GB")).extracting(Vessel::getName)
+				.containsExactly("Endeavour", "Victory", "Bounty");
+		assertThat(vesselRepository.findByNameAndTonnage("B%", 200, 300)).extracting(Vessel::getName)
+				.containsExactly("Bounty");
+		assertThat(vesselRepository.findByNameAndTonnage("B%", 300, 200)).isEmpty();
+		assertThat(vesselRepository.findByFlags(List.of("FR", "DE"))).extracting(Vessel::getName)
+				.containsExactly("Belem", "Endeavour");
+		assertThat(vesselRepository.findSmall()).extracting(Vessel::getName).containsExactly("Bounty");
+		assertThat(vesselRepository.findByName("Belem")).map(Vessel::getFlag).contains("FR");
+		assertThat(vesselRepository.findByName("Missing")).isEmpty();
+		assertThat(vesselRepository.findByCode("FR-Belem")).hasSize(1);
+	}
+
+	@Test
+	void testSelection() {
+		assertThat(vesselRepository.countByFlag("GB")).isEqualTo(3);
+		assertThat(vesselRepository.countFlags()).isEqualTo(2);
+		assertThat(vesselRepository.findLargeNames()).containsExactly("Belem", "Victory");
+		assertThat(vesselRepository.findDoubled()).singleElement()
+				.satisfies(row -> assertThat(row).containsExactly("Victory", 7000));
+	}
+
+	@Test
+	void testPathJoin() {
+		assertThat(vesselRepository.findByCrewInitial()).extracting(Vessel::getName).containsExactly("Victory");
+		assertThat(vesselRepository.findUncrewed()).extracting(Vessel::getName).containsExactly("Belem");
+		assertThat(vesselRepository.findByCrewMember("Cook")).extracting(Vessel::getName)
+				.containsExactly("Endeavour");
+	}
+
+	@Test
+	void testEntityJoin() {
+		assertThat(voyageRepository.findByFlag("GB")).extracting(Voyage::getPort)
+				.containsExactly("Cadiz", "Tahiti", "Portsmouth");
+		assertThat(voyageRepository.findLargePorts()).extracting(row -> row[0])
+				.containsExactlyInAnyOrder("Portsmouth", "Cadiz");
+		assertThat(voyageRepository.findVesselPorts()).extracting(row -> row[0] + ":" + row[1])
+				.containsExactly("Belem:Nantes", "Bounty:Tahiti", "Endeavour:null", "Victory:Cadiz",
+						"Victory:Portsmouth");
+
+		voyages.index("vessel");
+		assertThat(voyageRepository.findVesselPorts()).hasSize(5);
+	}
+
+	@Test
+	void testPagingAndSorting() {
+		Page<Vessel> page = vesselRepository.findPage(PageRequest.of(1, 3, Sort.by("name")));
+		assertThat(page.getTotalElements()).isEqualTo(4);
+		assertThat(page.getContent()).extracting(Vessel::getName).containsExactly("Victory");
+		assertThat(vesselRepository.findBritish(Sort.by(Sort.Direction.DESC, "v.name")))
+				.extracting(Vessel::getName).containsExactly("Victory", "Endeavour", "Bounty");
+	}
+
+	@Test
+	void testIndexed() {
+		vesselRepository.findByFlag("FR");
+		vesselRepository.findByNameAndTonnage("%", 500, 600);
+
+		assertThat(metrics.snapshot().scans().get("flag").indexed()).isEqualTo(1);
+		assertThat(metrics.snapshot().scans().get("flag").scanned()).isEqualTo(1);
+		assertThat(metrics.snapshot().scans().get("tonnage (range)").scanned()).isEqualTo(1);
+		assertThat(metrics.snapshot().operations().get(RepositoryMetrics.Operation.QUERY).count()).isEqualTo(2);
+	}
+
+	@Test
+	void testDelete() {
+		assertThat(vesselRepository.deleteByFlag("GB")).isEqualTo(3);
+		assertThat(vessels.findAll()).extracting(Vessel::getName).containsExactly("Belem");
+	}
+
+	@Test
+	void testPlanCached() {
+		String jpql = "select v from Vessel v where v.flag = :flag order by v.tonnage desc";
+		assertThat(JpqlPlan.of(jpql)).isSameAs(JpqlPlan.of(jpql));
+		assertThat(JpqlPlan.of(jpql).sources().get(0).hints()).singleElement()
+				.satisfies(hint -> assertThat(hint.property()).isEqualTo("flag"));
+	}
+
+	@Test
+	void testHashJoinPlan() {
+		JpqlPlan plan = JpqlPlan.of("select y from Voyage y join Vessel v on v.name = y.vessel where v.flag = 'GB'");
+		assertThat(plan.sources().get(1).key()).isEqualTo("name");
+		assertThat(plan.sources().get(1).hints()).singleElement()
+				.satisfies(hint -> assertThat(hint.property()).isEqualTo("flag"));
+		assertThat(plan.filters()).allSatisfy(filters -> assertThat(filters).isEmpty());
+	}
+
+	@Test
+	void testInvalid() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> InMemoryRepositoryFactory.create(InvalidRepository.class, vessels))
+				.havingCause().withMessageContaining("Parameter `missing`");
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> InMemoryRepositoryFactory.create(UnsupportedRepository.class, vessels))
+				.havingCause().isInstanceOf(UnsupportedOperationException.class)
+				.withMessage("JPQL `EXISTS` is not supported in memory");
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> JpqlParser.parse("select v from Vessel v where v.name = "))
+				.withMessage("Unexpected `end` at position 38 of query `select v from Vessel v where v.name = `");
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> InMemoryRepositoryFactory.create(VoyageRepository.class, voyages).findByFlag("GB"))
+				.withMessage("Entity `Vessel` has no in-memory repository");
+	}
+}
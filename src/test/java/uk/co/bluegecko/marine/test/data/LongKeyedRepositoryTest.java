@@ -0,0 +1,78 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Sort;
+
+class LongKeyedRepositoryTest {
+
+	@Data
+	@AllArgsConstructor
+	@Accessors(fluent = true)
+	static final class Foo {
+
+		private Long id;
+		private String name;
+	}
+
+	private LongKeyedRepository<Foo> repository;
+
+	@BeforeEach
+	void setUp() {
+		repository = new LongKeyedRepository<>(Foo::id, (i, e) -> e.id(i), Generators.number(4),
+				new Foo(1L, "One"), new Foo(2L, "Two"), new Foo(3L, "Three"));
+	}
+
+	@Test
+	void testFindByPrimitiveId() {
+		assertThat(repository.findById(2L))
+				.get()
+				.isEqualTo(new Foo(2L, "Two"));
+		assertThat(repository.findById(5L))
+				.isEmpty();
+		assertThat(repository.existsById(3L)).isTrue();
+		assertThat(repository.existsById(4L)).isFalse();
+	}
+
+	@Test
+	void testSaveAndDelete() {
+		assertThat(repository.saveAll(List.of(new Foo(null, "Four"), new Foo(null, "Five"))))
+				.extracting(Foo::id)
+				.containsExactly(4L, 5L);
+		repository.deleteById(1L);
+		assertThat(repository.findAll(Sort.by("id")))
+				.extracting(Foo::name)
+				.containsExactly("Two", "Three", "Four", "Five");
+		repository.deleteAll();
+		assertThat(repository.count()).isZero();
+	}
+
+	@Test
+	void testQueries() {
+		repository.index("name");
+		assertThat(repository.findAll(Example.of(new Foo(null, "Two"))))
+				.extracting(Foo::id)
+				.containsExactly(2L);
+		assertThat(repository.findAllById(List.of(3L, 1L)))
+				.extracting(Foo::name)
+				.containsExactly("Three", "One");
+	}
+
+	@Test
+	void testPopulateLarge() {
+		var repo = new LongKeyedRepository<Foo>(200_000, Foo::id, (i, e) -> e.id(i), Generators.number())
+				.populate(Stream.generate(() -> new Foo(null, "Foo")).limit(200_000));
+		assertThat(repo.count()).isEqualTo(200_000);
+		assertThat(LongStream.range(0, 200_000).allMatch(((LongKeyedRepository<Foo>) repo)::existsById))
+				.isTrue();
+	}
+}
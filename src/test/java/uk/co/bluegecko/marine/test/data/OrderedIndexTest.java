@@ -0,0 +1,84 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+class OrderedIndexTest {
+
+	record Position(Long id, Instant timestamp) {
+
+	}
+
+	private static final Instant NOON = Instant.parse("2000-06-15T12:00:00Z");
+
+	private OrderedIndex<Position, Long> index;
+
+	@BeforeEach
+	void setUp() {
+		index = new OrderedIndex<>("timestamp", Position::timestamp);
+		for (long i = 0; i < 10; i++) {
+			index.add(i, new Position(i, NOON.plusSeconds(i * 60)));
+		}
+	}
+
+	@Test
+	void testEqual() {
+		assertThat(index.lookup(new Restriction.Equal("timestamp", NOON.plusSeconds(120))))
+				.containsExactly(2L);
+	}
+
+	@Test
+	void testBetween() {
+		assertThat(index.lookup(Restriction.Range.between("timestamp", NOON.plusSeconds(120), NOON.plusSeconds(240))))
+				.containsExactly(2L, 3L, 4L);
+	}
+
+	@Test
+	void testEmptyRange() {
+		assertThat(index.lookup(Restriction.Range.between("timestamp", NOON.plusSeconds(240), NOON.plusSeconds(120))))
+				.isEmpty();
+		assertThat(index.lookup(new Restriction.Range("timestamp", NOON.plusSeconds(120), false,
+				NOON.plusSeconds(120), true)))
+				.isEmpty();
+		assertThat(index.lookup(Restriction.Range.between("timestamp", NOON.plusSeconds(120), NOON.plusSeconds(120))))
+				.containsExactly(2L);
+	}
+
+	@Test
+	void testAfterAndBefore() {
+		assertThat(index.lookup(Restriction.Range.after("timestamp", NOON.plusSeconds(420))))
+				.containsExactly(8L, 9L);
+		assertThat(index.lookup(Restriction.Range.before("timestamp", NOON.plusSeconds(60))))
+				.containsExactly(0L);
+	}
+
+	@Test
+	void testMoved() {
+		index.add(0L, new Position(0L, NOON.plusSeconds(3600)));
+		index.remove(9L);
+		assertThat(index.lookup(Restriction.Range.after("timestamp", NOON.plusSeconds(420))))
+				.containsExactly(8L, 0L);
+	}
+
+	@Test
+	void testOrdered() {
+		index.add(10L, new Position(10L, null));
+		assertThat(flatten(index.ordered(Sort.Order.desc("timestamp"))))
+				.containsExactly(10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L, 0L);
+		assertThat(flatten(index.ordered(Sort.Order.asc("timestamp").nullsFirst())))
+				.startsWith(10L, 0L, 1L);
+		assertThat(index.ordered(Sort.Order.asc("timestamp").ignoreCase()))
+				.isNull();
+	}
+
+	private static List<Long> flatten(final Stream<? extends Collection<Long>> groups) {
+		return groups.flatMap(Collection::stream).toList();
+	}
+}
@@ -0,0 +1,130 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+class PrimitiveKeyMapTest {
+
+	@Test
+	void testPutGetRemove() {
+		LongKeyMap<String> map = new LongKeyMap<>();
+		assertThat(map.put(1L, "One")).isNull();
+		assertThat(map.put(1L, "Uno")).isEqualTo("One");
+		assertThat(map.putIfAbsent(1L, "Ein")).isEqualTo("Uno");
+		assertThat(map.get(1L)).isEqualTo("Uno");
+		assertThat(map.get((Object) 1L)).isEqualTo("Uno");
+		assertThat(map.get("1")).isNull();
+		assertThat(map.containsKey(1L)).isTrue();
+		assertThat(map.remove(1L)).isEqualTo("Uno");
+		assertThat(map.containsKey(1L)).isFalse();
+		assertThat(map).isEmpty();
+	}
+
+	@Test
+	void testCompute() {
+		LongKeyMap<Integer> map = new LongKeyMap<>();
+		assertThat(map.computeIfPresent(7L, (k, v) -> v + 1)).isNull();
+		assertThat(map.computeIfAbsent(7L, k -> 1)).isEqualTo(1);
+		assertThat(map.compute(7L, (k, v) -> v + 1)).isEqualTo(2);
+		assertThat(map.merge(7L, 3, Integer::sum)).isEqualTo(5);
+		assertThat(map.replace(7L, 4, 10)).isFalse();
+		assertThat(map.replace(7L, 5, 10)).isTrue();
+		assertThat(map.remove(7L, 5)).isFalse();
+		assertThat(map.compute(7L, (k, v) -> null)).isNull();
+		assertThat(map).isEmpty();
+	}
+
+	@Test
+	void testMatchesHashMap() {
+		LongKeyMap<Long> map = new LongKeyMap<>();
+		Map<Long, Long> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 200_000; i++) {
+			long key = random.nextInt(5_000);
+			if (random.nextInt(3) == 0) {
+				assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+			} else {
+				assertThat(map.put(key, (long) i)).isEqualTo(expected.put(key, (long) i));
+			}
+		}
+		assertThat(map).hasSize(expected.size());
+		assertThat(map).isEqualTo(expected);
+	}
+
+	@Test
+	void testIteratorRemove() {
+		LongKeyMap<Long> map = new LongKeyMap<>();
+		LongStream.range(0, 1_000).forEach(i -> map.put(i, i));
+		map.values().removeIf(v -> v % 2 == 0);
+		assertThat(map).hasSize(500);
+		assertThat(map.keySet()).allMatch(k -> k % 2 == 1);
+	}
+
+	@Test
+	void testParallelStream() {
+		LongKeyMap<Long> map = new LongKeyMap<>(100_000);
+		LongStream.range(0, 100_000).forEach(i -> map.put(i, i));
+		assertThat(map.values().parallelStream().mapToLong(Long::longValue).sum())
+				.isEqualTo(LongStream.range(0, 100_000).sum());
+		assertThat(map.entrySet().stream().filter(e -> e.getKey().equals(e.getValue())).count())
+				.isEqualTo(100_000);
+	}
+
+	@Test
+	void testConcurrentCompute() throws InterruptedException {
+		LongKeyMap<Long> map = new LongKeyMap<>();
+		int threads = 16;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(() -> {
+				for (long i = 0; i < 10_000; i++) {
+					map.merge(i % 1_000, 1L, Long::sum);
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+		assertThat(map).hasSize(1_000);
+		assertThat(map.values()).allMatch(v -> v == threads * 10L);
+	}
+
+	@Test
+	void testUuidKeys() {
+		UuidKeyMap<String> map = new UuidKeyMap<>();
+		UUID one = new UUID(1, 1);
+		assertThat(map.put(one, "One")).isNull();
+		assertThat(map.put(new UUID(1, 2), "Two")).isNull();
+		assertThat(map.put(new UUID(2, 1), "Three")).isNull();
+		assertThat(map.get(new UUID(1, 1))).isEqualTo("One");
+		assertThat(map.get(1, 2)).isEqualTo("Two");
+		assertThat(map.get(1L)).isNull();
+		assertThat(map.keySet()).containsExactlyInAnyOrder(one, new UUID(1, 2), new UUID(2, 1));
+		assertThat(map.remove(one)).isEqualTo("One");
+		assertThat(map).hasSize(2);
+	}
+
+	@Test
+	void testUuidMatchesHashMap() {
+		UuidKeyMap<Integer> map = new UuidKeyMap<>();
+		Map<UUID, Integer> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 200_000; i++) {
+			UUID key = new UUID(random.nextInt(8), random.nextInt(1_000));
+			if (random.nextInt(3) == 0) {
+				assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+			} else {
+				assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+			}
+		}
+		assertThat(map).isEqualTo(expected);
+	}
+}
@@ -0,0 +1,184 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RepositoryJournalTest {
+
+	private final ObjectMapper mapper = JsonMapper.builder().build();
+	private final TickingClock clock = new TickingClock();
+
+	@TempDir
+	private Path directory;
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	static final class Ship {
+
+		private Long id;
+		private String name;
+	}
+
+	/**
+	 * A clock that advances one second every time it is read.
+	 */
+	private static final class TickingClock extends Clock {
+
+		private final AtomicLong millis = new AtomicLong(1_000_000);
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(final ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public long millis() {
+			return millis.getAndAdd(1_000);
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis());
+		}
+	}
+
+	@Test
+	void testReplay() throws Exception {
+		Path file = directory.resolve("ships.journal");
+		InMemoryRepository<Ship, Long> repository = repository();
+		try (RepositoryJournal journal = RepositoryJournal.open(file, mapper, clock, true)) {
+			repository.listen(journal);
+			repository.save(new Ship(null, "Alpha"));
+			repository.save(new Ship(null, "Bravo"));
+			repository.save(new Ship(0L, "Alpha!"));
+			repository.deleteById(1L);
+			journal.flush();
+		}
+
+		InMemoryRepository<Ship, Long> replayed = repository();
+		assertThat(RepositoryJournal.replay(file, mapper, Ship.class, Long.class, replayed)).isEqualTo(4);
+		assertThat(replayed.findAll()).containsExactlyInAnyOrderElementsOf(repository.findAll());
+	}
+
+	@Test
+	void testConcurrentWriters() throws Exception {
+		Path file = directory.resolve("ships.journal");
+		InMemoryRepository<Ship, Long> repository = repository();
+		RepositoryJournal journal = RepositoryJournal.open(file, mapper);
+		repository.listen(journal);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		IntStream.range(0, 10_000).forEach(i -> executor.submit(() -> {
+			repository.save(new Ship((long) i % 500, "Ship " + i));
+			if (i % 7 == 0) {
+				repository.deleteById((long) i % 500);
+			}
+		}));
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+		journal.close();
+		assertThatThrownBy(() -> repository.save(new Ship(1L, "Late"))).isInstanceOf(IllegalStateException.class);
+
+		InMemoryRepository<Ship, Long> replayed = repository();
+		RepositoryJournal.replay(file, mapper, Ship.class, Long.class, replayed);
+		assertThat(replayed.findAll()).containsExactlyInAnyOrderElementsOf(repository.findAll());
+	}
+
+	@Test
+	void testTruncate() throws Exception {
+		Path file = directory.resolve("ships.journal");
+		InMemoryRepository<Ship, Long> repository = repository();
+		try (RepositoryJournal journal = RepositoryJournal.open(file, mapper, clock, false)) {
+			repository.listen(journal);
+			IntStream.range(0, 10).forEach(i -> repository.save(new Ship(null, "Ship " + i)));
+		}
+
+		assertThat(RepositoryJournal.truncate(file, Instant.MAX)).isEqualTo(10);
+		assertThat(RepositoryJournal.truncate(file, Instant.ofEpochMilli(1_004_000))).isEqualTo(5);
+		InMemoryRepository<Ship, Long> replayed = repository();
+		assertThat(RepositoryJournal.replay(file, mapper, Ship.class, Long.class, replayed)).isEqualTo(5);
+		assertThat(replayed.count()).isEqualTo(5);
+
+		try (RepositoryJournal journal = RepositoryJournal.open(file, mapper, clock, false)) {
+			replayed.listen(journal);
+			replayed.save(new Ship(null, "Appended"));
+		}
+		assertThat(RepositoryJournal.replay(file, mapper, Ship.class, Long.class, repository())).isEqualTo(6);
+	}
+
+	@Test
+	void testTornRecord() throws Exception {
+		Path file = directory.resolve("ships.journal");
+		InMemoryRepository<Ship, Long> repository = repository();
+		try (RepositoryJournal journal = RepositoryJournal.open(file, mapper)) {
+			repository.listen(journal);
+			repository.save(new Ship(null, "Alpha"));
+			repository.save(new Ship(null, "Bravo"));
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(Files.size(file) - 3);
+		}
+
+		assertThat(RepositoryJournal.replay(file, mapper, Ship.class, Long.class, repository())).isEqualTo(1);
+		try (RepositoryJournal journal = RepositoryJournal.open(file, mapper)) {
+			journal.changed(3L, null, new Ship(3L, "Charlie"));
+		}
+		InMemoryRepository<Ship, Long> replayed = repository();
+		assertThat(RepositoryJournal.replay(file, mapper, Ship.class, Long.class, replayed)).isEqualTo(2);
+		assertThat(replayed.findAll()).extracting(Ship::getName).containsExactlyInAnyOrder("Alpha", "Charlie");
+	}
+
+	@Test
+	void testFullQueue() throws Exception {
+		Path file = directory.resolve("ships.journal");
+		try (RepositoryJournal journal = RepositoryJournal.open(file, mapper)) {
+			IntStream.range(0, 100_000).forEach(i -> journal.changed((long) i, null, new Ship((long) i, "Ship")));
+		}
+
+		assertThat(RepositoryJournal.replay(file, mapper, Ship.class, Long.class, repository())).isEqualTo(100_000);
+	}
+
+	@Test
+	void testWriteFailure() throws Exception {
+		Path file = directory.resolve("ships.journal");
+		RepositoryJournal journal = RepositoryJournal.open(file, mapper);
+		journal.changed(1L, null, new Object());
+		assertThatThrownBy(journal::flush).isInstanceOf(IOException.class);
+
+		IntStream.range(0, 100_000).forEach(i -> journal.changed((long) i, null, new Ship((long) i, "Dropped")));
+		assertThatThrownBy(journal::flush).isInstanceOf(IOException.class);
+		assertThatThrownBy(journal::close).isInstanceOf(IOException.class);
+		assertThat(RepositoryJournal.replay(file, mapper, Ship.class, Long.class, repository())).isZero();
+	}
+
+	private static InMemoryRepository<Ship, Long> repository() {
+		return new InMemoryRepository<>(Ship::getId, (id, ship) -> ship.setId(id), Generators.number());
+	}
+}
@@ -0,0 +1,134 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Example;
+import uk.co.bluegecko.marine.test.data.RepositoryMetrics.Latency;
+import uk.co.bluegecko.marine.test.data.RepositoryMetrics.Operation;
+import uk.co.bluegecko.marine.test.data.RepositoryMetrics.Scans;
+
+class RepositoryMetricsTest {
+
+	@Data
+	@AllArgsConstructor
+	static final class Ship {
+
+		private Long id;
+		private String name;
+		private String flag;
+	}
+
+	@Test
+	void testLatency() {
+		RepositoryMetrics metrics = new RepositoryMetrics();
+		for (int i = 0; i < 99; i++) {
+			metrics.record(Operation.SAVE, System.nanoTime() - 1_000_000);
+		}
+		metrics.record(Operation.SAVE, System.nanoTime() - 50_000_000);
+
+		Latency latency = metrics.snapshot().operations().get(Operation.SAVE);
+		assertThat(latency.count()).isEqualTo(100);
+		assertThat(latency.percentile(0.5)).isBetween(1_000_000L, 1_400_000L);
+		assertThat(latency.percentile(1)).isBetween(50_000_000L, latency.maxNanos());
+		assertThat(latency.mean()).isBetween(1_490_000.0, 2_000_000.0);
+		assertThat(metrics.snapshot().operations().get(Operation.DELETE).percentile(0.99)).isZero();
+		assertThatThrownBy(() -> latency.percentile(2)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Quantile `2.0` is not between 0 and 1");
+	}
+
+	@Test
+	void testConcurrentRecording() throws InterruptedException {
+		RepositoryMetrics metrics = new RepositoryMetrics();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		IntStream.range(0, 80_000).forEach(i -> executor.execute(
+				() -> metrics.record(Operation.FIND_BY_ID, System.nanoTime() - i)));
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+		Latency latency = metrics.snapshot().operations().get(Operation.FIND_BY_ID);
+		assertThat(latency.count()).isEqualTo(80_000);
+		assertThat(latency.buckets()).matches(buckets -> IntStream.range(0, buckets.length)
+				.mapToLong(i -> buckets[i]).sum() == 80_000);
+	}
+
+	@Test
+	void testRepository() {
+		RepositoryMetrics metrics = new RepositoryMetrics();
+		InMemoryRepository<Ship, Long> repository = new InMemoryRepository<>(Ship::getId, (id, ship) -> ship.setId(id),
+				Generators.number()).instrument(metrics).index("flag");
+		repository.saveAll(IntStream.range(0, 100)
+				.mapToObj(i -> new Ship(null, "Ship " + i, i % 2 == 0 ? "GB" : "FR")).toList());
+		repository.findById(1L);
+		repository.findById(2L);
+
+		assertThat(repository.findAll(Example.of(new Ship(null, "Ship 7", null)))).hasSize(1);
+		assertThat(repository.findAll(Example.of(new Ship(null, null, "FR")))).hasSize(50);
+		assertThat(repository.streamAll(ship -> ship.getId() < 10).toList()).hasSize(10);
+
+		RepositoryMetrics.Snapshot snapshot = metrics.snapshot();
+		assertThat(snapshot.operations().get(Operation.SAVE_ALL).count()).isEqualTo(1);
+		assertThat(snapshot.operations().get(Operation.FIND_BY_ID).count()).isEqualTo(2);
+		assertThat(snapshot.operations().get(Operation.FIND_BY_EXAMPLE).count()).isEqualTo(2);
+		assertThat(snapshot.scans()).containsExactly(
+				entry(RepositoryMetrics.UNRESTRICTED, new Scans(0, 1, 100, 10)),
+				entry("flag", new Scans(1, 0, 50, 50)),
+				entry("name", new Scans(0, 1, 100, 1)));
+		assertThat(snapshot.scans().get("name").ratio()).isEqualTo(100.0);
+
+		metrics.reset();
+		assertThat(metrics.snapshot().scans()).isEmpty();
+		repository.instrument(null).findById(1L);
+		assertThat(metrics.snapshot().operations().get(Operation.FIND_BY_ID).count()).isZero();
+	}
+
+	@Test
+	void testBatchDeletes() {
+		RepositoryMetrics metrics = new RepositoryMetrics();
+		InMemoryRepository<Ship, Long> repository = new InMemoryRepository<>(Ship::getId, (id, ship) -> ship.setId(id),
+				Generators.number()).instrument(metrics);
+		repository.saveAll(IntStream.range(0, 10).mapToObj(i -> new Ship(null, "Ship " + i, "GB")).toList());
+		repository.deleteAllById(List.of(1L, 2L, 3L));
+		repository.deleteAll(repository.findAllById(List.of(4L, 5L)));
+
+		RepositoryMetrics.Snapshot snapshot = metrics.snapshot();
+		assertThat(repository.count()).isEqualTo(5);
+		assertThat(snapshot.operations().get(Operation.DELETE_ALL).count()).isEqualTo(2);
+		assertThat(snapshot.operations().get(Operation.DELETE).count()).isZero();
+	}
+
+	@Test
+	void testPrimitiveKeys() {
+		RepositoryMetrics metrics = new RepositoryMetrics();
+		LongKeyedRepository<Ship> repository = new LongKeyedRepository<>(Ship::getId, (id, ship) -> ship.setId(id),
+				Generators.number(), new Ship(1L, "Victory", "GB"));
+		repository.instrument(metrics);
+		assertThat(repository.findById(1L)).isPresent();
+		assertThat(repository.findById(2)).isEmpty();
+		assertThat(repository.existsById(1)).isTrue();
+
+		RepositoryMetrics.Snapshot snapshot = metrics.snapshot();
+		assertThat(snapshot.operations().get(Operation.FIND_BY_ID).count()).isEqualTo(2);
+		assertThat(snapshot.operations().get(Operation.EXISTS).count()).isEqualTo(1);
+	}
+
+	@Test
+	void testPattern() {
+		assertThat(RepositoryMetrics.pattern(List.of())).isEqualTo(RepositoryMetrics.UNRESTRICTED);
+		assertThat(RepositoryMetrics.pattern(List.of(Restriction.Range.after("tonnage", 10),
+				new Restriction.Equal("name", "x")))).isEqualTo("name, tonnage (range)");
+	}
+
+	private static Map.Entry<String, Scans> entry(final String pattern, final Scans scans) {
+		return Map.entry(pattern, scans);
+	}
+}
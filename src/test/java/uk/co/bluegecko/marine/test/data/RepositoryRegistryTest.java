@@ -0,0 +1,205 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+class RepositoryRegistryTest {
+
+	@Data
+	@AllArgsConstructor
+	public static class Vessel {
+
+		private Long id;
+		private String name;
+	}
+
+	@Data
+	@AllArgsConstructor
+	public static class Voyage {
+
+		private Long id;
+		private Long vesselId;
+		private String port;
+	}
+
+	@Data
+	@AllArgsConstructor
+	public static class PortCall {
+
+		private Long id;
+		private Long voyageId;
+		private String port;
+		private Integer day;
+	}
+
+	public interface VoyageRepository extends JpaRepository<Voyage, Long> {
+
+		@Query("select y from Voyage y join Vessel v on v.id = y.vesselId where v.name = :name order by y.port")
+		List<Voyage> findByVesselName(@Param("name") String name);
+	}
+
+	private RepositoryMetrics metrics;
+	private InMemoryRepository<Vessel, Long> vessels;
+	private InMemoryRepository<Voyage, Long> voyages;
+	private InMemoryRepository<PortCall, Long> portCalls;
+	private RepositoryRegistry registry;
+	private Vessel victory;
+	private Vessel bounty;
+	private Voyage trafalgar;
+
+	@BeforeEach
+	void setUp() {
+		metrics = new RepositoryMetrics();
+		vessels = new InMemoryRepository<>(Vessel::getId, (id, vessel) -> vessel.setId(id), Generators.number());
+		voyages = new InMemoryRepository<>(Voyage::getId, (id, voyage) -> voyage.setId(id), Generators.number())
+				.instrument(metrics);
+		portCalls = new InMemoryRepository<>(PortCall::getId, (id, call) -> call.setId(id), Generators.number());
+		registry = new RepositoryRegistry()
+				.register(Vessel.class, vessels)
+				.register(Voyage.class, voyages)
+				.register(PortCall.class, portCalls);
+
+		victory = vessels.save(new Vessel(null, "Victory"));
+		bounty = vessels.save(new Vessel(null, "Bounty"));
+		vessels.save(new Vessel(null, "Belem"));
+		trafalgar = voyages.save(new Voyage(null, victory.getId(), "Cadiz"));
+		Voyage blockade = voyages.save(new Voyage(null, victory.getId(), "Brest"));
+		Voyage breadfruit = voyages.save(new Voyage(null, bounty.getId(), "Tahiti"));
+		voyages.save(new Voyage(null, null, "Nowhere"));
+		portCalls.saveAll(List.of(
+				new PortCall(null, trafalgar.getId(), "Gibraltar", 1),
+				new PortCall(null, trafalgar.getId(), "Cadiz", 2),
+				new PortCall(null, blockade.getId(), "Brest", 1),
+				new PortCall(null, breadfruit.getId(), "Tahiti", 1)));
+	}
+
+	@Test
+	void testChildren() {
+		RepositoryRelation<Voyage, Long, Vessel, Long> relation = registry.relate(Voyage.class, "vesselId",
+				Vessel.class);
+
+		assertThat(relation.children(victory.getId())).extracting(Voyage::getPort)
+				.containsExactlyInAnyOrder("Cadiz", "Brest");
+		assertThat(relation.count(bounty.getId())).isEqualTo(1);
+		assertThat(relation.children(-1L)).isEmpty();
+		assertThat(metrics.snapshot().scans().get("vesselId").indexed()).isEqualTo(3);
+
+		voyages.save(new Voyage(null, bounty.getId(), "Spithead"));
+		assertThat(relation.count(bounty.getId())).isEqualTo(2);
+	}
+
+	@Test
+	void testParent() {
+		RepositoryRelation<Voyage, Long, Vessel, Long> relation = registry.relate(Voyage.class, "vesselId",
+				Vessel.class);
+
+		assertThat(relation.parent(trafalgar)).contains(victory);
+		assertThat(relation.parent(new Voyage(null, null, "Nowhere"))).isEmpty();
+		assertThat(relation.join((vessel, voyage) -> vessel.getName() + ":" + voyage.getPort()))
+				.containsExactlyInAnyOrder("Victory:Cadiz", "Victory:Brest", "Bounty:Tahiti");
+	}
+
+	@Test
+	void testCascade() {
+		registry.relate(Voyage.class, "vesselId", Vessel.class, true);
+		registry.relate(PortCall.class, "voyageId", Voyage.class, true);
+
+		vessels.deleteById(victory.getId());
+
+		assertThat(voyages.findAll()).extracting(Voyage::getPort).containsExactlyInAnyOrder("Tahiti", "Nowhere");
+		assertThat(portCalls.findAll()).extracting(PortCall::getPort).containsExactly("Tahiti");
+
+		registry.close();
+		vessels.deleteById(bounty.getId());
+		assertThat(voyages.count()).isEqualTo(2);
+	}
+
+	@Test
+	void testCascadeAfterParent() {
+		registry.relate(Voyage.class, "vesselId", Vessel.class, true);
+		List<Boolean> parentsFound = new ArrayList<>();
+		voyages.listen((id, previous, current) -> {
+			if (current == null) {
+				parentsFound.add(vessels.existsById(previous.getVesselId()));
+			}
+		});
+
+		try (InMemoryTransaction ignored = InMemoryTransaction.begin()) {
+			vessels.deleteById(victory.getId());
+			assertThat(voyages.count()).isEqualTo(2);
+		}
+
+		assertThat(parentsFound).containsExactly(false, false);
+		assertThat(voyages.count()).isEqualTo(4);
+	}
+
+	@Test
+	void testNoCascade() {
+		RepositoryRelation<Voyage, Long, Vessel, Long> relation = registry.relate(Voyage.class, "vesselId",
+				Vessel.class);
+
+		vessels.deleteById(victory.getId());
+
+		assertThat(relation.cascades()).isFalse();
+		assertThat(voyages.count()).isEqualTo(4);
+		assertThat(relation.join((vessel, voyage) -> voyage)).extracting(Voyage::getPort)
+				.containsExactly("Tahiti");
+	}
+
+	@Test
+	void testJoin() {
+		assertThat(registry.join(PortCall.class, "voyageId", Voyage.class, "id",
+				(call, voyage) -> voyage.getPort() + ">" + call.getPort()))
+				.containsExactlyInAnyOrder("Cadiz>Gibraltar", "Cadiz>Cadiz", "Brest>Brest", "Tahiti>Tahiti");
+
+		assertThat(registry.join(Voyage.class, "port", PortCall.class, "port", (voyage, call) -> call.getDay()))
+				.containsExactlyInAnyOrder(2, 1, 1);
+
+		portCalls.index("port");
+		assertThat(registry.join(Voyage.class, "port", PortCall.class, "port", (voyage, call) -> call.getDay()))
+				.containsExactlyInAnyOrder(2, 1, 1);
+	}
+
+	@Test
+	void testCreate() {
+		VoyageRepository repository = registry.create(VoyageRepository.class);
+
+		assertThat(repository.findByVesselName("Victory")).extracting(Voyage::getPort)
+				.containsExactly("Brest", "Cadiz");
+		assertThat(repository.count()).isEqualTo(4);
+	}
+
+	@Test
+	void testInvalid() {
+		assertThat(registry.register(Vessel.class, vessels)).isSameAs(registry);
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> registry.register(Vessel.class, new InMemoryRepository<>(Vessel::getId,
+						(id, vessel) -> vessel.setId(id), Generators.number())))
+				.withMessage("Type `Vessel` already has a repository");
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> registry.repository(String.class))
+				.withMessage("Type `String` has no repository");
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> registry.relate(Vessel.class, "id", Vessel.class, true))
+				.withMessage("Relation `id` cannot cascade within one repository");
+		assertThat(registry.relations()).isEmpty();
+
+		registry.relate(Voyage.class, "vesselId", Vessel.class, true);
+		registry.relate(PortCall.class, "voyageId", Voyage.class, true);
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> registry.relate(Vessel.class, "id", PortCall.class, true))
+				.withMessage("Relation `id` of `Vessel` to `PortCall` would cascade in a cycle");
+		assertThat(registry.relate(Vessel.class, "id", PortCall.class).cascades()).isFalse();
+		assertThat(registry.relations()).hasSize(3);
+	}
+}
@@ -0,0 +1,133 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+class ShardedRepositoryTest {
+
+	@Data
+	@AllArgsConstructor
+	@Accessors(fluent = true)
+	static final class Foo {
+
+		private Long id;
+		private String name;
+		private Integer size;
+	}
+
+	private RepositoryMetrics metrics;
+	private ShardedRepository<Foo, Long> repository;
+
+	@BeforeEach
+	void setUp() {
+		metrics = new RepositoryMetrics();
+		repository = new ShardedRepository<Foo, Long>(Foo::id, (i, e) -> e.id(i), Generators.number(), 5, 0);
+		repository.instrument(metrics);
+		repository.populate(IntStream.range(0, 10_000).mapToObj(i -> new Foo(null, "Foo" + i % 10, i % 100)));
+	}
+
+	@Test
+	void testShards() {
+		assertThat(repository.shards()).isEqualTo(8);
+		assertThat(new ShardedRepository<Foo, Long>(Foo::id, (i, e) -> e.id(i), Generators.number()).shards())
+				.isPositive();
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> new ShardedRepository<Foo, Long>(Foo::id, (i, e) -> e.id(i), Generators.number(),
+						0, 0))
+				.withMessage("Shard count `0` must be from 1 to 65536");
+	}
+
+	@Test
+	void testSaveAndDelete() {
+		assertThat(repository.count()).isEqualTo(10_000);
+		assertThat(repository.save(new Foo(null, "Bar", 1)).id()).isEqualTo(10_000L);
+		assertThat(repository.findById(10_000L)).map(Foo::name).contains("Bar");
+		assertThat(repository.findById(42L)).map(Foo::name).contains("Foo2");
+
+		repository.deleteAllById(List.of(1L, 2L, 3L));
+		assertThat(repository.existsById(2L)).isFalse();
+		assertThat(repository.count()).isEqualTo(9_998);
+
+		repository.deleteAll();
+		assertThat(repository.count()).isZero();
+		assertThat(repository.findAll()).isEmpty();
+	}
+
+	@Test
+	void testIndexedLookup() {
+		repository.index("name");
+		repository.deleteById(7L);
+
+		assertThat(repository.findAll(Example.of(new Foo(null, "Foo7", null)))).hasSize(999)
+				.allSatisfy(foo -> assertThat(foo.name()).isEqualTo("Foo7"));
+		assertThat(metrics.snapshot().scans().get("name").indexed()).isEqualTo(1);
+		assertThat(metrics.snapshot().scans().get("name").scanned()).isEqualTo(999);
+	}
+
+	@Test
+	void testParallelScan() {
+		assertThat(repository.count(Example.of(new Foo(null, "Foo3", null)))).isEqualTo(1_000);
+		assertThat(repository.streamAll(foo -> foo.size() == 99)).extracting(Foo::id)
+				.containsExactlyInAnyOrderElementsOf(IntStream.range(0, 100).mapToObj(i -> i * 100L + 99).toList());
+		assertThat(metrics.snapshot().scans().get("name").full()).isEqualTo(1);
+		assertThat(metrics.snapshot().scans().get("name").scanned()).isEqualTo(10_000);
+	}
+
+	@Test
+	void testOrderedIndex() {
+		repository.orderedIndex("size");
+		Sort sort = Sort.by(Sort.Order.desc("size"), Sort.Order.asc("id"));
+
+		Comparator<Foo> order = Comparator.<Foo, Integer>comparing(Foo::size, Comparator.reverseOrder())
+				.thenComparingLong(foo -> foo.id());
+		assertThat(repository.findAll(sort)).hasSize(10_000).isSortedAccordingTo(order);
+		assertThat(repository.findAll(PageRequest.of(2, 3, sort))).extracting(Foo::id)
+				.containsExactly(699L, 799L, 899L);
+		assertThat(repository.findAllBetween("size", 10, 11)).hasSize(200);
+	}
+
+	@Test
+	void testSaveConcurrently() throws InterruptedException {
+		repository.index("name");
+		int threads = 32;
+		int saves = 500;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			String name = "Thread" + t;
+			executor.execute(() -> Stream.generate(() -> new Foo(null, name, 0)).limit(saves)
+					.forEach(repository::save));
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+		assertThat(repository.count()).isEqualTo(10_000 + threads * saves);
+		assertThat(repository.findAll(Example.of(new Foo(null, "Thread7", null)))).hasSize(saves);
+	}
+
+	@Test
+	void testFork() {
+		repository.index("name");
+		var fork = repository.fork();
+		fork.deleteAll();
+
+		assertThat(fork).isNotInstanceOf(ShardedRepository.class);
+		assertThat(repository.count()).isEqualTo(10_000);
+		assertThat(repository.count(Example.of(new Foo(null, "Foo1", null)))).isEqualTo(1_000);
+	}
+}
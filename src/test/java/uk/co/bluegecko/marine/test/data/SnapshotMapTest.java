@@ -0,0 +1,116 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Sort;
+
+class SnapshotMapTest {
+
+	private static final AtomicInteger DECODED = new AtomicInteger();
+
+	private final ObjectMapper mapper = JsonMapper.builder().build();
+
+	@TempDir
+	private Path directory;
+
+	private record Ship(Long id, String name, int tonnage) {
+
+		private Ship {
+			DECODED.incrementAndGet();
+		}
+	}
+
+	@BeforeEach
+	void setUp() {
+		DECODED.set(0);
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		Map<Long, Ship> source = ships(1_000);
+		Path file = directory.resolve("ships.snapshot");
+		SnapshotMap.write(source, file, mapper);
+		DECODED.set(0);
+
+		SnapshotMap<Long, Ship> map = open(file);
+		assertThat(DECODED).hasValue(0);
+		assertThat(map).hasSize(1_000);
+		assertThat(map.get(42L)).isEqualTo(source.get(42L));
+		assertThat(map.get(42L)).isSameAs(map.get(42L));
+		assertThat(DECODED).hasValue(1);
+		assertThat(map).isEqualTo(source);
+	}
+
+	@Test
+	void testChanges() throws IOException {
+		Path file = directory.resolve("ships.snapshot");
+		SnapshotMap.write(ships(10), file, mapper);
+		SnapshotMap<Long, Ship> map = open(file);
+
+		assertThat(map.put(1L, new Ship(1L, "Changed", 1))).isEqualTo(new Ship(1L, "Ship 1", 100));
+		assertThat(map.remove(2L)).isEqualTo(new Ship(2L, "Ship 2", 200));
+		assertThat(map.remove(2L)).isNull();
+		assertThat(map.put(20L, new Ship(20L, "Added", 2))).isNull();
+		assertThat(map.compute(3L, (k, v) -> null)).isNull();
+
+		assertThat(map).hasSize(9).doesNotContainKeys(2L, 3L).containsKeys(1L, 20L);
+		assertThat(map.get(1L).name()).isEqualTo("Changed");
+		assertThat(open(file)).hasSize(10).containsKeys(2L, 3L);
+
+		map.clear();
+		assertThat(map).isEmpty();
+	}
+
+	@Test
+	void testNotSnapshot() throws IOException {
+		Path file = Files.writeString(directory.resolve("other.json"), "{\"not\": \"a snapshot\"}");
+		assertThatThrownBy(() -> open(file)).isInstanceOf(IOException.class)
+				.hasMessageContaining("is not a repository snapshot");
+	}
+
+	@Test
+	void testRepository() throws IOException {
+		InMemoryRepository<Ship, Long> source = new InMemoryRepository<>(Ship::id, null, Generators.number(),
+				ships(100).values().stream());
+		Path file = directory.resolve("ships.snapshot");
+		source.snapshot(file, mapper);
+		DECODED.set(0);
+
+		InMemoryRepository<Ship, Long> repository = InMemoryRepository.open(file, mapper, Ship.class, Long.class,
+				Ship::id, null, Generators.number());
+		assertThat(repository.count()).isEqualTo(100);
+		Optional<Ship> found = repository.findById(7L);
+		assertThat(DECODED).hasValue(1);
+		assertThat(found).isEqualTo(Optional.of(new Ship(7L, "Ship 7", 700)));
+		assertThat(repository.findAll(Sort.by(Sort.Direction.DESC, "tonnage")).stream().limit(2).map(Ship::id)
+				.toList()).isEqualTo(List.of(99L, 98L));
+
+		repository.deleteById(7L);
+		assertThat(repository.existsById(7L)).isFalse();
+		assertThat(source.existsById(7L)).isTrue();
+	}
+
+	private SnapshotMap<Long, Ship> open(final Path file) throws IOException {
+		return SnapshotMap.open(file, mapper, mapper.constructType(Long.class), mapper.constructType(Ship.class));
+	}
+
+	private static Map<Long, Ship> ships(final int count) {
+		return IntStream.range(0, count).mapToObj(i -> new Ship((long) i, "Ship " + i, i * 100))
+				.collect(Collectors.toMap(Ship::id, ship -> ship));
+	}
+}
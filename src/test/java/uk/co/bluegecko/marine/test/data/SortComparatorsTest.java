@@ -0,0 +1,101 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.Order;
+
+class SortComparatorsTest {
+
+	record Port(String name) {
+
+	}
+
+	record Vessel(String name, Integer tonnage, Port port) {
+
+	}
+
+	private final List<Vessel> vessels = List.of(
+			new Vessel("bravo", 200, new Port("Dover")),
+			new Vessel("Alpha", null, new Port("Calais")),
+			new Vessel("charlie", 100, null));
+
+	private List<String> sort(final Sort sort) {
+		List<Vessel> sorted = new ArrayList<>(vessels);
+		sorted.sort(SortComparators.of(sort));
+		return sorted.stream().map(Vessel::name).toList();
+	}
+
+	@Test
+	void testAscending() {
+		assertThat(sort(Sort.by(Direction.ASC, "name")))
+				.containsExactly("Alpha", "bravo", "charlie");
+	}
+
+	@Test
+	void testIgnoreCase() {
+		assertThat(sort(Sort.by(Order.asc("name").ignoreCase())))
+				.containsExactly("Alpha", "bravo", "charlie");
+		assertThat(sort(Sort.by(Order.desc("name").ignoreCase())))
+				.containsExactly("charlie", "bravo", "Alpha");
+	}
+
+	@Test
+	void testNullHandling() {
+		assertThat(sort(Sort.by(Order.asc("tonnage"))))
+				.as("native ascending")
+				.containsExactly("charlie", "bravo", "Alpha");
+		assertThat(sort(Sort.by(Order.desc("tonnage"))))
+				.as("native descending")
+				.containsExactly("Alpha", "bravo", "charlie");
+		assertThat(sort(Sort.by(Order.asc("tonnage").nullsFirst())))
+				.as("nulls first")
+				.containsExactly("Alpha", "charlie", "bravo");
+		assertThat(sort(Sort.by(Order.desc("tonnage").nullsLast())))
+				.as("nulls last")
+				.containsExactly("bravo", "charlie", "Alpha");
+	}
+
+	@Test
+	void testNestedProperty() {
+		assertThat(sort(Sort.by("port.name")))
+				.containsExactly("Alpha", "bravo", "charlie");
+	}
+
+	@Test
+	void testMultipleOrders() {
+		List<Vessel> sorted = new ArrayList<>(List.of(
+				new Vessel("b", 1, null), new Vessel("a", 2, null), new Vessel("a", 1, null)));
+		sorted.sort(SortComparators.of(Sort.by("name").and(Sort.by(Direction.DESC, "tonnage"))));
+		assertThat(sorted)
+				.extracting(Vessel::tonnage)
+				.containsExactly(2, 1, 1);
+	}
+
+	@Test
+	void testCached() {
+		Comparator<Vessel> comparator = SortComparators.of(Sort.by("name"));
+		assertThat(SortComparators.<Vessel>of(Sort.by("name")))
+				.isSameAs(comparator);
+	}
+
+	@Test
+	void testUnknownProperty() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> sort(Sort.by("flag")))
+				.withMessageContaining("No property `flag` found");
+	}
+
+	@Test
+	void testUnsorted() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> SortComparators.of(Sort.unsorted()))
+				.withMessage("Sort must not be `unsorted`");
+	}
+}
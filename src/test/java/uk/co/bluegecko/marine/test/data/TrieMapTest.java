@@ -0,0 +1,93 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class TrieMapTest {
+
+	/**
+	 * A key whose hash code is shared by all keys with the same {@code group}.
+	 */
+	private record Colliding(int group, int value) {
+
+		@Override
+		public int hashCode() {
+			return group;
+		}
+	}
+
+	@Test
+	void testPutGetRemove() {
+		TrieMap<String, Integer> map = new TrieMap<>();
+		assertThat(map.put("one", 1)).isNull();
+		assertThat(map.put("one", 11)).isEqualTo(1);
+		assertThat(map.putIfAbsent("one", 111)).isEqualTo(11);
+		assertThat(map.get("one")).isEqualTo(11);
+		assertThat(map.remove("one")).isEqualTo(11);
+		assertThat(map.remove("one")).isNull();
+		assertThat(map).isEmpty();
+	}
+
+	@Test
+	void testMatchesHashMap() {
+		TrieMap<Integer, Integer> map = new TrieMap<>();
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 200_000; i++) {
+			int key = random.nextInt(20_000);
+			if (random.nextInt(3) == 0) {
+				assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+			} else {
+				assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+			}
+		}
+		assertThat(map).hasSize(expected.size());
+		assertThat(map).isEqualTo(expected);
+	}
+
+	@Test
+	void testCollisions() {
+		TrieMap<Colliding, Integer> map = new TrieMap<>();
+		IntStream.range(0, 100).forEach(i -> map.put(new Colliding(i % 3, i), i));
+		assertThat(map).hasSize(100);
+		assertThat(map.get(new Colliding(1, 40))).isEqualTo(40);
+		IntStream.range(0, 100).filter(i -> i % 2 == 0).forEach(i -> map.remove(new Colliding(i % 3, i)));
+		assertThat(map).hasSize(50);
+		assertThat(map.get(new Colliding(1, 40))).isNull();
+		assertThat(map.get(new Colliding(1, 49))).isEqualTo(49);
+	}
+
+	@Test
+	void testFork() {
+		TrieMap<Integer, String> parent = new TrieMap<>();
+		IntStream.range(0, 1_000).forEach(i -> parent.put(i, "P" + i));
+		TrieMap<Integer, String> fork = parent.fork();
+
+		fork.put(1, "F1");
+		fork.remove(2);
+		fork.put(1_000, "F1000");
+		parent.put(3, "P3!");
+
+		assertThat(parent).hasSize(1_000).containsEntry(1, "P1").containsEntry(2, "P2").containsEntry(3, "P3!");
+		assertThat(fork).hasSize(1_000).containsEntry(1, "F1").doesNotContainKey(2).containsEntry(3, "P3");
+	}
+
+	@Test
+	void testIteratorSnapshot() {
+		TrieMap<Integer, Integer> map = new TrieMap<>();
+		IntStream.range(0, 100).forEach(i -> map.put(i, i));
+		var iterator = map.keySet().iterator();
+		map.clear();
+		int count = 0;
+		while (iterator.hasNext()) {
+			iterator.next();
+			count++;
+		}
+		assertThat(count).isEqualTo(100);
+	}
+}
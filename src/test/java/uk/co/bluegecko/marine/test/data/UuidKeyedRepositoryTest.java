@@ -0,0 +1,68 @@
+package uk.co.bluegecko.marine.test.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Sort;
+
+class UuidKeyedRepositoryTest {
+
+	@Data
+	@AllArgsConstructor
+	@Accessors(fluent = true)
+	static final class Event {
+
+		private UUID id;
+		private String type;
+	}
+
+	private UuidKeyedRepository<Event> repository;
+
+	@BeforeEach
+	void setUp() {
+		repository = new UuidKeyedRepository<>(Event::id, (i, e) -> e.id(i), Generators.uuid(7, 0),
+				Stream.of(new Event(null, "Arrived"), new Event(null, "Departed"), new Event(null, "Arrived")));
+	}
+
+	@Test
+	void testFindById() {
+		assertThat(repository.findById(new UUID(7, 1)))
+				.get()
+				.extracting(Event::type)
+				.isEqualTo("Departed");
+		assertThat(repository.findById(7, 2))
+				.get()
+				.extracting(Event::type)
+				.isEqualTo("Arrived");
+		assertThat(repository.existsById(7, 3)).isFalse();
+		assertThat(repository.existsById(new UUID(7, 0))).isTrue();
+	}
+
+	@Test
+	void testSaveAndDelete() {
+		assertThat(repository.saveAll(List.of(new Event(null, "Moored"))))
+				.extracting(Event::id)
+				.containsExactly(new UUID(7, 3));
+		repository.delete(repository.findById(7, 0).orElseThrow());
+		assertThat(repository.findAll(Sort.by("id")))
+				.extracting(Event::type)
+				.containsExactly("Departed", "Arrived", "Moored");
+	}
+
+	@Test
+	void testQueries() {
+		repository.index("type");
+		assertThat(repository.count(Example.of(new Event(null, "Arrived"))))
+				.isEqualTo(2);
+		assertThat(repository.streamAll().parallel().count())
+				.isEqualTo(3);
+	}
+}